@@ -87,7 +87,13 @@ public class CommCareApp implements AppFilePathBuilder {
     }
 
     public Stylizer getStylizer() {
-        return mStylizer;
+        synchronized (CommCareApp.class) {
+            // Built on first use rather than while the app is being initialized
+            if (mStylizer == null) {
+                mStylizer = new Stylizer(CommCareApplication.instance().getApplicationContext());
+            }
+            return mStylizer;
+        }
     }
 
     public String storageRoot() {
@@ -244,14 +250,7 @@ public class CommCareApp implements AppFilePathBuilder {
                 return false;
             }
 
-            initializeStylizer();
-
-            try {
-                HybridFileBackedSqlHelpers.removeOrphanedFiles(buildAndroidDbHelper().getHandle());
-            } catch (SessionUnavailableException e) {
-                Logger.log(LogTypes.SOFT_ASSERT,
-                        "Unable to get app db handle to clear orphaned files");
-            }
+            removeOrphanedFiles();
             return true;
         } else {
             SizeBoundUniqueVector<Resource> missingResources = new SizeBoundUniqueVector<>(1);
@@ -271,8 +270,31 @@ public class CommCareApp implements AppFilePathBuilder {
         }
     }
 
-    private void initializeStylizer() {
-        mStylizer = new Stylizer(CommCareApplication.instance().getApplicationContext());
+    /**
+     * Read which files are orphaned now, before any file-backed writes can
+     * start, and defer removing them. Files that writes mark as orphans while
+     * they're being written are left alone until the next startup.
+     */
+    private void removeOrphanedFiles() {
+        final SQLiteDatabase db;
+        final List<String> orphanedFiles;
+        try {
+            db = buildAndroidDbHelper().getHandle();
+            orphanedFiles = HybridFileBackedSqlHelpers.getOrphanedFiles(db);
+        } catch (SessionUnavailableException e) {
+            Logger.log(LogTypes.SOFT_ASSERT,
+                    "Unable to get app db handle to clear orphaned files");
+            return;
+        }
+        if (orphanedFiles.isEmpty()) {
+            return;
+        }
+        CommCareApplication.instance().runDeferredStartupWork("orphaned-file-removal", () -> {
+            // The app may have been unseated, or uninstalled, since this was deferred
+            if (CommCareApplication.instance().isSeated(record)) {
+                HybridFileBackedSqlHelpers.removeOrphanedFiles(db, orphanedFiles);
+            }
+        });
     }
 
 
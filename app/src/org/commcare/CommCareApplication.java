@@ -52,17 +52,20 @@ import org.commcare.engine.references.JavaHttpRoot;
 import org.commcare.engine.resource.ResourceInstallUtils;
 import org.commcare.heartbeat.HeartbeatRequester;
 import org.commcare.logging.AndroidLogger;
+import org.commcare.logging.BufferedAndroidLogger;
 import org.commcare.logging.DataChangeLog;
 import org.commcare.logging.DataChangeLogger;
 import org.commcare.logging.PreInitLogger;
 import org.commcare.logging.XPathErrorEntry;
 import org.commcare.logging.XPathErrorLogger;
 import org.commcare.logging.analytics.TimedStatsTracker;
+import org.commcare.logic.FormDefCache;
 import org.commcare.models.AndroidClassHasher;
 import org.commcare.models.AndroidSessionWrapper;
 import org.commcare.models.database.AndroidDbHelper;
 import org.commcare.models.database.AndroidPrototypeFactorySetup;
 import org.commcare.models.database.HybridFileBackedSqlHelpers;
+import org.commcare.models.database.DecodedRecordCache;
 import org.commcare.models.database.HybridFileBackedSqlStorage;
 import org.commcare.models.database.MigrationException;
 import org.commcare.models.database.SqlStorage;
@@ -103,6 +106,7 @@ import org.commcare.utils.PendingCalcs;
 import org.commcare.utils.SessionActivityRegistration;
 import org.commcare.utils.SessionStateUninitException;
 import org.commcare.utils.SessionUnavailableException;
+import org.commcare.utils.StartupStages;
 import org.javarosa.core.model.User;
 import org.javarosa.core.reference.ReferenceManager;
 import org.javarosa.core.reference.RootTranslator;
@@ -136,8 +140,10 @@ public class CommCareApplication extends MultiDexApplication {
     public static final int STATE_MIGRATION_QUESTIONABLE = 32;
 
     private int dbState;
+    private StartupStages startupStages;
 
     private static CommCareApplication app;
+    private static BufferedAndroidLogger bufferedLogger;
 
     private CommCareApp currentApp;
 
@@ -187,13 +193,18 @@ public class CommCareApplication extends MultiDexApplication {
         }
 
         CommCareApplication.app = this;
-        CrashUtil.init(this);
-        DataChangeLogger.init(this);
-        logFirstCommCareRun();
+        startupStages = createStartupStages();
+        StartupStages stages = startupStages;
+
+        stages.run("crash-and-change-logging", () -> {
+            CrashUtil.init(this);
+            DataChangeLogger.init(this);
+            logFirstCommCareRun();
+        });
         CommCarePreferenceManagerFactory.init(new AndroidPreferenceManager());
 
-        configureCommCareEngineConstantsAndStaticRegistrations();
-        initNotifications();
+        stages.run("engine-registrations", this::configureCommCareEngineConstantsAndStaticRegistrations);
+        stages.run("notifications", this::initNotifications);
 
         //TODO: Make this robust
         PreInitLogger pil = new PreInitLogger();
@@ -205,30 +216,61 @@ public class CommCareApplication extends MultiDexApplication {
 
         Thread.setDefaultUncaughtExceptionHandler(new CommCareExceptionHandler(Thread.getDefaultUncaughtExceptionHandler(), this));
 
-        SQLiteDatabase.loadLibs(this);
-
-        setRoots();
+        // Loading the database libraries and clearing temporary storage don't
+        // depend on each other. The default strings are loaded on this thread,
+        // since the stages that run here read Localization's static state.
+        stages.runInBackground("sqlcipher-libs", () -> SQLiteDatabase.loadLibs(this));
+        stages.run("reference-roots", this::setRoots);
+        stages.runInBackground("temporary-storage", this::prepareTemporaryStorage);
+        stages.run("default-localizer", this::initializeDefaultLocalizerData, "reference-roots");
+
+        stages.runInBackground("global-db", () -> {
+            if (LegacyInstallUtils.checkForLegacyInstall(this)) {
+                dbState = STATE_LEGACY_DETECTED;
+            } else {
+                // Init global storage (Just application records, logs, etc)
+                dbState = initGlobalDb();
+            }
+        }, "sqlcipher-libs");
 
-        prepareTemporaryStorage();
+        stages.run("logger-storage", () -> {
+            setupLoggerStorage(false);
+            pil.dumpToNewLogger();
+        }, "global-db");
 
-        if (LegacyInstallUtils.checkForLegacyInstall(this)) {
-            dbState = STATE_LEGACY_DETECTED;
-        } else {
-            // Init global storage (Just application records, logs, etc)
-            dbState = initGlobalDb();
+        if (dbState != STATE_MIGRATION_FAILED && dbState != STATE_MIGRATION_QUESTIONABLE) {
+            stages.run("app-init", () -> {
+                AppUtils.checkForIncompletelyUninstalledApps();
+                initializeAnAppOnStartup();
+            }, "global-db", "default-localizer", "temporary-storage");
         }
 
-        setupLoggerStorage(false);
-        pil.dumpToNewLogger();
+        LocalePreferences.saveDeviceLocale(Locale.getDefault());
+        stages.finish();
+    }
 
-        initializeDefaultLocalizerData();
+    /**
+     * @return The stages that startup is run in, which run alongside one
+     * another where they can
+     */
+    protected StartupStages createStartupStages() {
+        return new StartupStages(true);
+    }
 
-        if (dbState != STATE_MIGRATION_FAILED && dbState != STATE_MIGRATION_QUESTIONABLE) {
-            AppUtils.checkForIncompletelyUninstalledApps();
-            initializeAnAppOnStartup();
-        }
+    /**
+     * Run work that isn't needed to show the first screen on a background
+     * thread, once startup has finished
+     */
+    public void runDeferredStartupWork(String name, Runnable work) {
+        startupStages.defer(name, work);
+    }
 
-        LocalePreferences.saveDeviceLocale(Locale.getDefault());
+    /**
+     * @return Milliseconds taken by each startup stage, for startup
+     * benchmarks
+     */
+    public Map<String, Long> getStartupStageTimings() {
+        return startupStages.getTimings();
     }
 
     @Override
@@ -340,6 +382,7 @@ public class CommCareApplication extends MultiDexApplication {
 
     public void releaseUserResourcesAndServices() {
         String userBeingLoggedOut = CommCareApplication.instance().getCurrentUserId();
+        haltBufferedLogger();
         try {
             CommCareApplication.instance().getSession().closeServiceResources();
         } catch (SessionUnavailableException e) {
@@ -347,6 +390,8 @@ public class CommCareApplication extends MultiDexApplication {
                     "been closed down. Proceeding to close the session.");
         }
 
+        EntityStorageCache.clearMemoryCache();
+        DecodedRecordCache.clear();
         unbindUserSessionService();
         TimedStatsTracker.registerEndSession(userBeingLoggedOut);
     }
@@ -976,10 +1021,11 @@ public class CommCareApplication extends MultiDexApplication {
     }
 
     private static void setupLoggerStorage(boolean userStorageAvailable) {
+        haltBufferedLogger();
         boolean loggingEnabled = HiddenPreferences.isLoggingEnabled();
         if (userStorageAvailable) {
             if (loggingEnabled) {
-                Logger.registerLogger(new AndroidLogger(app.getUserStorage(AndroidLogEntry.STORAGE_KEY,
+                Logger.registerLogger(createLogger(app.getUserStorage(AndroidLogEntry.STORAGE_KEY,
                         AndroidLogEntry.class)));
             } else {
                 Logger.detachLogger();
@@ -990,7 +1036,7 @@ public class CommCareApplication extends MultiDexApplication {
                     XPathErrorEntry.class));
         } else {
             if (loggingEnabled) {
-                Logger.registerLogger(new AndroidLogger(
+                Logger.registerLogger(createLogger(
                         app.getGlobalStorage(AndroidLogEntry.STORAGE_KEY, AndroidLogEntry.class)));
             } else {
                 Logger.detachLogger();
@@ -1000,6 +1046,34 @@ public class CommCareApplication extends MultiDexApplication {
         }
     }
 
+    private static AndroidLogger createLogger(SqlStorage<AndroidLogEntry> storage) {
+        if (DeveloperPreferences.isBufferedLoggingEnabled()) {
+            bufferedLogger = new BufferedAndroidLogger(storage);
+            return bufferedLogger;
+        }
+        return new AndroidLogger(storage);
+    }
+
+    /**
+     * Write out any buffered log entries and stop buffering, before the
+     * storage behind the logger goes away or the logger is replaced
+     */
+    private static void haltBufferedLogger() {
+        if (bufferedLogger != null) {
+            bufferedLogger.halt();
+            bufferedLogger = null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN && bufferedLogger != null) {
+            // the app was backgrounded and may be killed without further notice
+            bufferedLogger.requestFlush();
+        }
+    }
+
     public void setPendingRefreshToLatestBuild(boolean b) {
         this.latestBuildRefreshPending = b;
     }
@@ -1012,6 +1086,14 @@ public class CommCareApplication extends MultiDexApplication {
         return false;
     }
 
+    /**
+     * Serialize the app's forms into the form cache in the background, so
+     * that first form entry after an install or update is fast
+     */
+    public void prewarmFormDefCache(CommCareApp app) {
+        FormDefCache.prewarmInBackground(app);
+    }
+
     public DataPullRequester getDataPullRequester() {
         return DataPullResponseFactory.INSTANCE;
     }
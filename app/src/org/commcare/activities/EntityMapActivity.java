@@ -3,16 +3,19 @@ package org.commcare.activities;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.os.Bundle;
-import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
-import android.util.Pair;
 
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
@@ -26,33 +29,58 @@ import org.commcare.session.CommCareSession;
 import org.commcare.suite.model.Detail;
 import org.commcare.suite.model.EntityDatum;
 import org.commcare.suite.model.SessionDatum;
+import org.commcare.tasks.EntityMapLoaderTask;
 import org.commcare.utils.AndroidInstanceInitializer;
+import org.commcare.utils.MapMarkerClusterer;
 import org.commcare.utils.SerializationUtil;
 import org.commcare.views.UserfacingErrorHandling;
 import org.javarosa.core.model.condition.EvaluationContext;
-import org.javarosa.core.model.data.GeoPointData;
-import org.javarosa.core.model.data.UncastData;
 import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.xpath.XPathException;
 
 import java.util.HashMap;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * Shows the entities of a case list on a map.
+ *
+ * Only the address fields of the entities are evaluated up front, in the
+ * background. Markers are clustered per zoom level for the visible region
+ * whenever the camera settles, and the fields shown in a marker's info
+ * window are only computed once the marker is tapped.
+ *
  * @author Forest Tong (ftong@dimagi.com)
  */
 public class EntityMapActivity extends CommCareActivity implements OnMapReadyCallback,
-        GoogleMap.OnInfoWindowClickListener {
+        GoogleMap.OnInfoWindowClickListener, GoogleMap.OnMarkerClickListener,
+        GoogleMap.OnCameraIdleListener, EntityMapLoaderTask.EntityMapLoaderListener {
     private static final String TAG = EntityMapActivity.class.getSimpleName();
     private static final int MAP_PADDING = 50;  // Number of pixels to pad bounding region of markers
+    private static final int CLUSTER_ICON_RADIUS_DP = 18;
+    private static final int CLUSTER_ZOOM_STEP = 2;
 
     private final CommCareSession session = CommCareApplication.instance().getCurrentSession();
     private EntityDatum selectDatum;
+    private Detail detail;
+    private EvaluationContext evaluationContext;
+    private EntityMapLoaderTask loaderTask;
 
-    private final Vector<Pair<Entity<TreeReference>, LatLng>> entityLocations = new Vector<>();
-    private final HashMap<Marker, TreeReference> markerReferences = new HashMap<>();
+    private List<TreeReference> locatedReferences;
+    private MapMarkerClusterer clusterer;
+    private LatLngBounds locationBounds;
+    private final ExecutorService clusteringExecutor = Executors.newSingleThreadExecutor();
+    private int clusteringGeneration;
+
+    private final HashMap<Marker, MapMarkerClusterer.Cluster> markerClusters = new HashMap<>();
+    // title and snippet of the entities whose markers have been tapped
+    private final HashMap<Integer, String[]> entityDetails = new HashMap<>();
+    private final HashMap<String, BitmapDescriptor> clusterIcons = new HashMap<>();
 
     private GoogleMap mMap;
+    private boolean mapLoaded;
+    private boolean cameraPositioned;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -65,92 +93,206 @@ public class EntityMapActivity extends CommCareActivity implements OnMapReadyCal
         SessionDatum datum = session.getNeededDatum();
         if (datum instanceof EntityDatum) {
             selectDatum = (EntityDatum)datum;
+            detail = session.getDetail(selectDatum.getShortDetail());
+
+            evaluationContext = session.getEvaluationContext(new AndroidInstanceInitializer(session));
+            evaluationContext.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
+
+            loaderTask = new EntityMapLoaderTask(detail, evaluationContext,
+                    selectDatum.getNodeset(), this);
+            loaderTask.execute();
+        }
+    }
+
+    @Override
+    public void onLocationsLoaded(EntityMapLoaderTask.EntityLocations locations) {
+        loaderTask = null;
+        locatedReferences = locations.references;
+        double[] latitudes = locations.getLatitudes();
+        double[] longitudes = locations.getLongitudes();
+        clusterer = new MapMarkerClusterer(latitudes, longitudes);
+        Log.d(TAG, "Loaded. " + locatedReferences.size() + " addresses discovered for " +
+                locations.getEntityCount() + " entities");
+
+        if (latitudes.length > 0) {
+            LatLngBounds.Builder builder = new LatLngBounds.Builder();
+            for (int i = 0; i < latitudes.length; i++) {
+                builder.include(new LatLng(latitudes[i], longitudes[i]));
+            }
+            locationBounds = builder.build();
+        }
+        positionCamera();
+        refreshMarkers();
+    }
+
+    @Override
+    public void onLocationsLoadError(XPathException e) {
+        loaderTask = null;
+        UserfacingErrorHandling.logErrorAndShowDialog(this, e, true);
+    }
 
-            Detail detail = session.getDetail(selectDatum.getShortDetail());
-            addEntityLocations(detail);
-            Log.d(TAG, "Loaded. " + entityLocations.size() + " addresses discovered, " + (
-                    detail.getHeaderForms().length - entityLocations.size()) + " could not be located");
+    @Override
+    public void onMapReady(final GoogleMap map) {
+        mMap = map;
+
+        mMap.setOnMapLoadedCallback(() -> {
+            mapLoaded = true;
+            positionCamera();
+        });
+        mMap.setOnInfoWindowClickListener(this);
+        mMap.setOnMarkerClickListener(this);
+        mMap.setOnCameraIdleListener(this);
+
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+            mMap.setMyLocationEnabled(true);
         }
     }
 
     /**
-     * Gets entity locations, and adds corresponding pairs to the vector entityLocations.
+     * Move camera to include all markers, once both the map and the
+     * locations are ready
      */
-    private void addEntityLocations(Detail detail) {
-        for (Entity<TreeReference> entity : getEntities(detail)) {
-            for (int i = 0; i < detail.getHeaderForms().length; ++i) {
-                if ("address".equals(detail.getTemplateForms()[i])) {
-                    String address = entity.getFieldString(i).trim();
-                    if (!"".equals(address)) {
-                        LatLng location = getLatLngFromAddress(address);
-                        if (location != null) {
-                            entityLocations.add(new Pair<>(entity, location));
-                        }
-                    }
-                }
-            }
+    private void positionCamera() {
+        if (mMap != null && mapLoaded && locationBounds != null && !cameraPositioned) {
+            cameraPositioned = true;
+            mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(locationBounds, MAP_PADDING));
         }
     }
 
-    private Vector<Entity<TreeReference>> getEntities(Detail detail) {
-        EvaluationContext evaluationContext = session.getEvaluationContext(
-                new AndroidInstanceInitializer(session));
-        evaluationContext.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
+    @Override
+    public void onCameraIdle() {
+        refreshMarkers();
+    }
+
+    /**
+     * Recluster the markers for the visible region in the background,
+     * replacing the current markers once done
+     */
+    private void refreshMarkers() {
+        if (mMap == null || clusterer == null) {
+            return;
+        }
+        final LatLngBounds visible = mMap.getProjection().getVisibleRegion().latLngBounds;
+        final float zoom = mMap.getCameraPosition().zoom;
+        final int generation = ++clusteringGeneration;
+        final MapMarkerClusterer currentClusterer = clusterer;
+        clusteringExecutor.execute(() -> {
+            final List<MapMarkerClusterer.Cluster> clusters = currentClusterer.cluster(
+                    visible.southwest.latitude, visible.southwest.longitude,
+                    visible.northeast.latitude, visible.northeast.longitude, zoom);
+            runOnUiThread(() -> {
+                // skip results that a later camera move has already superseded
+                if (generation == clusteringGeneration && mMap != null) {
+                    showClusters(clusters);
+                }
+            });
+        });
+    }
 
-        NodeEntityFactory factory = new NodeEntityFactory(detail, evaluationContext);
-        Vector<TreeReference> references = evaluationContext.expandReference(
-                selectDatum.getNodeset());
+    private void showClusters(List<MapMarkerClusterer.Cluster> clusters) {
+        for (Marker marker : markerClusters.keySet()) {
+            marker.remove();
+        }
+        markerClusters.clear();
 
-        Vector<Entity<TreeReference>> entities = new Vector<>();
-        try {
-            for (TreeReference ref : references) {
-                entities.add(factory.getEntity(ref));
+        for (MapMarkerClusterer.Cluster cluster : clusters) {
+            MarkerOptions options = new MarkerOptions()
+                    .position(new LatLng(cluster.getLatitude(), cluster.getLongitude()));
+            if (cluster.getSize() > 1) {
+                options.icon(getClusterIcon(cluster.getSize())).anchor(0.5f, 0.5f);
+            } else {
+                String[] details = entityDetails.get(cluster.getFirstIndex());
+                if (details != null) {
+                    options.title(details[0]).snippet(details[1]);
+                }
             }
-        } catch (XPathException xe) {
-            UserfacingErrorHandling.logErrorAndShowDialog(this, xe, true);
+            markerClusters.put(mMap.addMarker(options), cluster);
         }
-        return entities;
     }
 
-    private LatLng getLatLngFromAddress(@NonNull String address) {
-        LatLng location = null;
-        try {
-            GeoPointData data = new GeoPointData().cast(new UncastData(address));
-            if (data != null) {
-                location = new LatLng(data.getLatitude(), data.getLongitude());
+    @Override
+    public boolean onMarkerClick(Marker marker) {
+        MapMarkerClusterer.Cluster cluster = markerClusters.get(marker);
+        if (cluster == null) {
+            return false;
+        }
+        if (cluster.getSize() > 1) {
+            zoomIntoCluster(cluster);
+            return true;
+        }
+        if (marker.getTitle() == null) {
+            String[] details = loadEntityDetails(cluster.getFirstIndex());
+            if (details == null) {
+                return true;
             }
-        } catch (IllegalArgumentException ignored) {
+            marker.setTitle(details[0]);
+            marker.setSnippet(details[1]);
         }
-        return location;
+        // let the map center the marker and show its info window
+        return false;
     }
 
-    @Override
-    public void onMapReady(final GoogleMap map) {
-        mMap = map;
+    private void zoomIntoCluster(MapMarkerClusterer.Cluster cluster) {
+        if (cluster.getMinLatitude() == cluster.getMaxLatitude() &&
+                cluster.getMinLongitude() == cluster.getMaxLongitude()) {
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(cluster.getLatitude(), cluster.getLongitude()),
+                    mMap.getCameraPosition().zoom + CLUSTER_ZOOM_STEP));
+        } else {
+            LatLngBounds bounds = new LatLngBounds(
+                    new LatLng(cluster.getMinLatitude(), cluster.getMinLongitude()),
+                    new LatLng(cluster.getMaxLatitude(), cluster.getMaxLongitude()));
+            mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, MAP_PADDING));
+        }
+    }
 
-        if (entityLocations.size() > 0) {
-            LatLngBounds.Builder builder = new LatLngBounds.Builder();
-            // Add markers to map and find bounding region
-            for (Pair<Entity<TreeReference>, LatLng> entityLocation : entityLocations) {
-                Marker marker = mMap.addMarker(new MarkerOptions()
-                        .position(entityLocation.second)
-                        .title(entityLocation.first.getFieldString(0))
-                        .snippet(entityLocation.first.getFieldString(1)));
-                markerReferences.put(marker, entityLocation.first.getElement());
-                builder.include(entityLocation.second);
+    /**
+     * Compute the fields shown in the info window of an entity's marker
+     *
+     * @return The title and snippet, or null if they couldn't be computed
+     */
+    private String[] loadEntityDetails(int index) {
+        String[] details = entityDetails.get(index);
+        if (details == null) {
+            try {
+                Entity<TreeReference> entity = new NodeEntityFactory(detail, evaluationContext)
+                        .getEntity(locatedReferences.get(index));
+                details = new String[]{entity.getFieldString(0), entity.getFieldString(1)};
+            } catch (XPathException xe) {
+                UserfacingErrorHandling.logErrorAndShowDialog(this, xe, true);
+                return null;
             }
-            final LatLngBounds bounds = builder.build();
-
-            // Move camera to be include all markers
-            mMap.setOnMapLoadedCallback(() -> mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, MAP_PADDING)));
+            entityDetails.put(index, details);
         }
+        return details;
+    }
 
-        mMap.setOnInfoWindowClickListener(this);
+    private BitmapDescriptor getClusterIcon(int size) {
+        String label = size < 100 ? String.valueOf(size) : (size / 100) * 100 + "+";
+        BitmapDescriptor icon = clusterIcons.get(label);
+        if (icon == null) {
+            float density = getResources().getDisplayMetrics().density;
+            int radius = (int)(CLUSTER_ICON_RADIUS_DP * density);
+            Bitmap bitmap = Bitmap.createBitmap(radius * 2, radius * 2, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
 
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
-                || ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            mMap.setMyLocationEnabled(true);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(ContextCompat.getColor(this, R.color.white));
+            canvas.drawCircle(radius, radius, radius, paint);
+            paint.setColor(ContextCompat.getColor(this, R.color.cc_brand_color));
+            canvas.drawCircle(radius, radius, radius * 0.85f, paint);
+
+            paint.setColor(ContextCompat.getColor(this, R.color.white));
+            paint.setTextAlign(Paint.Align.CENTER);
+            paint.setTextSize(radius * (label.length() > 3 ? 0.6f : 0.8f));
+            float baseline = radius - (paint.descent() + paint.ascent()) / 2;
+            canvas.drawText(label, radius, baseline, paint);
+
+            icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+            clusterIcons.put(label, icon);
         }
+        return icon;
     }
 
     @Override
@@ -176,10 +318,22 @@ public class EntityMapActivity extends CommCareActivity implements OnMapReadyCal
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (loaderTask != null) {
+            loaderTask.detachListener();
+            loaderTask.cancel(true);
+        }
+        clusteringExecutor.shutdownNow();
+        mMap = null;
+    }
+
     @Override
     public void onInfoWindowClick(Marker marker) {
         Intent i = new Intent(getIntent());
-        TreeReference ref = markerReferences.get(marker);
+        TreeReference ref = locatedReferences.get(markerClusters.get(marker).getFirstIndex());
         SerializationUtil.serializeToIntent(i, EntityDetailActivity.CONTEXT_REFERENCE, ref);
 
         setResult(RESULT_OK, i);
@@ -39,6 +39,7 @@ import org.commcare.fragments.ContainerFragment;
 import org.commcare.google.services.ads.AdLocation;
 import org.commcare.google.services.ads.AdMobManager;
 import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.HiddenPreferences;
 import org.commcare.provider.SimprintsCalloutProcessing;
 import org.commcare.session.CommCareSession;
@@ -73,6 +74,7 @@ import org.javarosa.xpath.XPathTypeMismatchException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -158,6 +160,9 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
 
     private boolean containsHereFunction = false;
     private boolean locationChangedWhileLoading = false;
+    // Whether the load in progress was started by a location change, so
+    // that only location dependent fields need to be searched anew
+    private boolean reloadingForLocationChange = false;
 
     // Handler for displaying alert dialog when no location providers are found
     private final LocationNotificationHandler locationNotificationHandler =
@@ -358,6 +363,7 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
             EntitySelectViewSetup.setupDivider(this, (ListView)view, shortSelect.usesEntityTileView());
         }
         findViewById(R.id.entity_select_loading).setVisibility(View.GONE);
+        findViewById(R.id.entity_select_loading_progress).setVisibility(View.GONE);
         entitySelectSearchUI.setSearchBannerState();
     }
 
@@ -473,6 +479,12 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
 
         if (loader == null && !EntityLoaderTask.attachToActivity(this)) {
             EntityLoaderTask entityLoader = new EntityLoaderTask(shortSelect, evalContext());
+            // A new instance initializer gives each context its own case instance and caches
+            entityLoader.enableParallelPriming(
+                    () -> session.getEvaluationContext(new AndroidInstanceInitializer(session)));
+            if (DeveloperPreferences.isPagedEntityLoadingEnabled()) {
+                entityLoader.enablePagedLoading();
+            }
             entityLoader.attachListener(this);
             entityLoader.executeParallel(selectDatum.getNodeset());
             return true;
@@ -528,6 +540,9 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
 
         if (adapter != null) {
             adapter.signalKilled();
+            if (isFinishing()) {
+                adapter.cancelPageLoading();
+            }
         }
     }
 
@@ -825,6 +840,10 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
                                   List<TreeReference> references,
                                   NodeEntityFactory factory, int focusTargetIndex) {
         loader = null;
+        if (adapter != null) {
+            // a reload replaces the entities still being paged in
+            adapter.cancelPageLoading();
+        }
 
         AdapterView visibleView;
         if (shortSelect.shouldBeLaidOutInGrid()) {
@@ -835,8 +854,13 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
             visibleView = listView;
         }
 
+        EntityListAdapter previousAdapter = adapter;
         adapter = new EntityListAdapter(this, shortSelect, references, entities, factory,
                 hideActionsFromEntityList, shortSelect.getCustomActions(evalContext()), inAwesomeMode);
+        if (reloadingForLocationChange && previousAdapter != null) {
+            adapter.reuseSearchIndexAfterLocationChange(previousAdapter);
+        }
+        reloadingForLocationChange = false;
         visibleView.setAdapter(adapter);
         adapter.registerDataSetObserver(this.mListStateObserver);
         containerFragment.setData(adapter);
@@ -857,6 +881,7 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
         }
 
         findViewById(R.id.entity_select_loading).setVisibility(View.GONE);
+        findViewById(R.id.entity_select_loading_progress).setVisibility(View.GONE);
 
         if (adapter != null) {
             // filter by additional session data (search string, callout result data)
@@ -876,7 +901,7 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
         if (locationChangedWhileLoading) {
             Log.i("HereFunctionHandler", "location changed while reloading");
             locationChangedWhileLoading = false;
-            loadEntities();
+            reloadingForLocationChange = loadEntities();
         }
     }
 
@@ -968,6 +993,14 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
         displayCaseListLoadException(e);
     }
 
+    @Override
+    public void deliverLoadProgress(int entitiesPrepared, int totalEntities) {
+        TextView progressView = findViewById(R.id.entity_select_loading_progress);
+        progressView.setText(String.format(Locale.getDefault(), "%d%%",
+                entitiesPrepared * 100 / Math.max(totalEntities, 1)));
+        progressView.setVisibility(View.VISIBLE);
+    }
+
     @Override
     protected boolean onForwardSwipe() {
         // If user has picked an entity, move along to form entry
@@ -1001,7 +1034,9 @@ public class EntitySelectActivity extends SaveSessionCommCareActivity
     @Override
     public void onEvalLocationChanged() {
         boolean loaded = loadEntities();
-        if (!loaded) {
+        if (loaded) {
+            reloadingForLocationChange = true;
+        } else {
             locationChangedWhileLoading = true;
         }
     }
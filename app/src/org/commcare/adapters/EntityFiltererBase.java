@@ -20,7 +20,7 @@ public abstract class EntityFiltererBase {
     protected final List<Entity<TreeReference>> matchList;
     protected final List<Entity<TreeReference>> fullEntityList;
     private Thread thread;
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
     private final Activity context;
 
     public EntityFiltererBase(Activity context,
@@ -39,6 +39,9 @@ public abstract class EntityFiltererBase {
             //Make sure that we have loaded the necessary cached data
             //before we attempt to search over it
             while (!nodeFactory.isEntitySetReady()) {
+                if (cancelled) {
+                    return;
+                }
                 try {
                     Thread.sleep(100);
                 } catch (InterruptedException e) {
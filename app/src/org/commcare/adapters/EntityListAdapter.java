@@ -12,13 +12,17 @@ import android.widget.ListAdapter;
 import org.commcare.CommCareApplication;
 import org.commcare.activities.CommCareActivity;
 import org.commcare.cases.entity.Entity;
+import org.commcare.cases.entity.EntitySorter;
 import org.commcare.cases.entity.NodeEntityFactory;
 import org.commcare.dalvik.R;
 import org.commcare.interfaces.AndroidSortableEntityAdapter;
+import org.commcare.models.AsyncNodeEntityFactory;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.MainConfigurablePreferences;
 import org.commcare.session.SessionInstanceBuilder;
 import org.commcare.suite.model.Action;
 import org.commcare.suite.model.Detail;
+import org.commcare.tasks.EntityPageLoaderTask;
 import org.commcare.utils.AndroidUtil;
 import org.commcare.utils.CachingAsyncImageLoader;
 import org.commcare.utils.StringUtils;
@@ -30,9 +34,11 @@ import org.javarosa.core.services.locale.Localization;
 import org.javarosa.core.util.OrderedHashtable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * This adapter class handles displaying the cases for a CommCareODK user.
@@ -84,6 +90,14 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
 
     private final boolean selectActivityInAwesomeMode;
 
+    // Loads the rest of the entities when the list was loaded in pages
+    private EntityPageLoaderTask pageLoader;
+    // Whether loading ended before all of the entities were loaded
+    private boolean entitySetIncomplete = false;
+
+    // Built up by string filtering when enabled, null otherwise
+    private EntitySearchIndex searchIndex;
+
     public EntityListAdapter(CommCareActivity activity, Detail detail,
                              List<TreeReference> references,
                              List<Entity<TreeReference>> full, NodeEntityFactory factory,
@@ -114,8 +128,83 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
 
         this.usesCaseTiles = detail.usesEntityTileView();
         this.mFuzzySearchEnabled = MainConfigurablePreferences.isFuzzySearchEnabled();
+        if (DeveloperPreferences.isEntitySearchIndexEnabled()) {
+            searchIndex = new EntitySearchIndex(Locale.getDefault(), detail.getFields());
+        } else {
+            searchIndex = null;
+        }
 
         setCurrent(new ArrayList<>(full));
+
+        if (factory instanceof AsyncNodeEntityFactory) {
+            AsyncNodeEntityFactory asyncFactory = (AsyncNodeEntityFactory)factory;
+            List<TreeReference> pendingReferences = asyncFactory.getPendingReferences();
+            if (pendingReferences != null) {
+                pageLoader = new EntityPageLoaderTask(asyncFactory, this, pendingReferences);
+                pageLoader.executeParallel();
+            }
+        }
+    }
+
+    /**
+     * Add entities that were loaded after this adapter was created. They are
+     * only shown right away if no filter is active, since filtering waits
+     * for the full entity set anyway.
+     */
+    public void appendEntities(List<Entity<TreeReference>> page) {
+        full.addAll(page);
+        if (current != full && !isFilteringByCalloutResult && "".equals(searchQuery)) {
+            current.addAll(page);
+            if (actionsCount > 0) {
+                dividerPosition = current.size();
+            }
+        }
+        update();
+    }
+
+    /**
+     * Entities are appended in the approximate order of their cached sort
+     * keys, so re-apply the actual sort once all of them are present.
+     *
+     * @param complete False if loading ended early, leaving some entities out
+     */
+    public void onAllEntitiesLoaded(boolean complete) {
+        pageLoader = null;
+        entitySetIncomplete = !complete;
+        int[] sortKeys = getCurrentSort();
+        if (sortKeys.length > 0) {
+            // Keep the current direction rather than toggling it as sort() does
+            Collections.sort(full, new EntitySorter(detail.getFields(),
+                    isCurrentSortReversed(), sortKeys, this));
+        }
+        if (!isFilteringByCalloutResult && "".equals(searchQuery)) {
+            setCurrent(new ArrayList<>(full));
+        } else {
+            update();
+        }
+    }
+
+    /**
+     * Take over the search index of the adapter this one replaces after a
+     * location change, so that only location dependent fields are indexed
+     * again. Both adapters must show the same detail over the same data.
+     */
+    public synchronized void reuseSearchIndexAfterLocationChange(EntityListAdapter previous) {
+        if (searchIndex != null && previous.searchIndex != null) {
+            previous.searchIndex.invalidateLocationDependentFields();
+            searchIndex = previous.searchIndex;
+        }
+    }
+
+    public synchronized void cancelPageLoading() {
+        if (pageLoader != null) {
+            pageLoader.cancel(false);
+            pageLoader = null;
+            // filtering waits for the full entity set, which won't arrive now
+            if (entityFilterer != null) {
+                entityFilterer.cancelSearch();
+            }
+        }
     }
 
     /**
@@ -324,7 +413,7 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
         searchQuery = filterRaw;
         entityFilterer =
                 new EntityStringFilterer(this, searchTerms,
-                        mFuzzySearchEnabled, mNodeFactory, full, commCareActivity);
+                        mFuzzySearchEnabled, mNodeFactory, full, commCareActivity, searchIndex);
         entityFilterer.start();
     }
 
@@ -406,6 +495,9 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
         if (entityFilterer != null) {
             entityFilterer.cancelSearch();
         }
+        if (mImageLoader != null) {
+            mImageLoader.cancelAll();
+        }
     }
 
     public String getSearchNotificationText() {
@@ -414,7 +506,9 @@ public class EntityListAdapter extends AndroidSortableEntityAdapter implements L
                     "" + getCurrentCount(),
                     "" + getFullCount()});
         } else {
-            return Localization.get("select.search.status", new String[]{
+            String statusKey = entitySetIncomplete ?
+                    "select.search.status.incomplete" : "select.search.status";
+            return Localization.get(statusKey, new String[]{
                     "" + getCurrentCount(),
                     "" + getFullCount(),
                     searchQuery});
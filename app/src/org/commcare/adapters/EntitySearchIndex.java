@@ -0,0 +1,410 @@
+package org.commcare.adapters;
+
+import org.commcare.cases.entity.Entity;
+import org.commcare.cases.util.StringUtils;
+import org.commcare.modern.util.Pair;
+import org.commcare.suite.model.DetailField;
+import org.commcare.suite.model.Text;
+import org.javarosa.core.model.instance.TreeReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index over the normalized fields of an entity list, so that
+ * string filtering doesn't have to evaluate and scan every entity on each
+ * keystroke.
+ *
+ * Substring (and so prefix) queries are answered from postings of every
+ * 1 to 3 character gram in the field values: the term's rarest gram gives a
+ * candidate set which is then verified against the stored values. Fuzzy
+ * queries are answered from postings of the distinct sort field pieces,
+ * only comparing pieces whose length is within the fuzzy edit distance of
+ * the term.
+ *
+ * Fields that depend on the current location, through here(), are kept out
+ * of the postings and scanned instead, so that a location change only has
+ * to reload those fields: after invalidateLocationDependentFields, entities
+ * re-added for the same references keep their other indexed values.
+ *
+ * Entities are identified by their references; adding an entity that is
+ * already indexed and up to date does nothing. Queries and additions never
+ * touch the db once field values are loaded.
+ */
+class EntitySearchIndex {
+    private static final int MAX_GRAM_LENGTH = 3;
+
+    // Edit distance cutoff used by StringUtils.fuzzyMatch; pieces further
+    // apart in length than this can't match
+    private static final int MAX_FUZZY_DISTANCE = 2;
+
+    private static final String HERE_FUNCTION = "here()";
+
+    private final Locale locale;
+    private final boolean[] locationDependentFields;
+    private final boolean hasLocationDependentFields;
+
+    private final List<Entity<TreeReference>> entities = new ArrayList<>();
+    private final List<String[]> fieldValues = new ArrayList<>();
+    // Sort field pieces of the location dependent fields, by entity
+    private final List<String[][]> locationPieces = new ArrayList<>();
+    // Generation in which each entity was last added; entities from earlier
+    // generations are left out of query results
+    private final IntList entityGenerations = new IntList();
+    private final HashMap<TreeReference, Integer> idsByReference = new HashMap<>();
+    private int generation = 0;
+    private int currentEntityCount = 0;
+
+    private final HashMap<String, IntList> gramPostings = new HashMap<>();
+    private final HashMap<String, IntList> piecePostings = new HashMap<>();
+    private final HashMap<Integer, Set<String>> piecesByLength = new HashMap<>();
+
+    EntitySearchIndex(Locale locale, DetailField[] fields) {
+        this(locale, getLocationDependentFields(fields));
+    }
+
+    /**
+     * @param locationDependentFields Whether each field's value may change
+     *                                with the current location
+     */
+    EntitySearchIndex(Locale locale, boolean[] locationDependentFields) {
+        this.locale = locale;
+        this.locationDependentFields = locationDependentFields;
+        boolean anyLocationDependent = false;
+        for (boolean locationDependent : locationDependentFields) {
+            anyLocationDependent |= locationDependent;
+        }
+        this.hasLocationDependentFields = anyLocationDependent;
+    }
+
+    private static boolean[] getLocationDependentFields(DetailField[] fields) {
+        boolean[] locationDependent = new boolean[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            locationDependent[i] = isLocationDependent(fields[i]);
+        }
+        return locationDependent;
+    }
+
+    /**
+     * @return Whether the field's display or sort value may change with the
+     * current location
+     */
+    static boolean isLocationDependent(DetailField field) {
+        return (field.getTemplate() instanceof Text && usesHere((Text)field.getTemplate()))
+                || usesHere(field.getSort());
+    }
+
+    private static boolean usesHere(Text text) {
+        return text != null && text.getArgument() != null
+                && text.getArgument().contains(HERE_FUNCTION);
+    }
+
+    synchronized boolean contains(Entity<TreeReference> entity) {
+        Integer id = idsByReference.get(entity.getElement());
+        return id != null && entities.get(id) == entity && isCurrent(id);
+    }
+
+    /**
+     * @return Number of entities indexed since the location dependent fields
+     * were last invalidated
+     */
+    synchronized int size() {
+        return currentEntityCount;
+    }
+
+    private boolean isCurrent(int id) {
+        return entityGenerations.get(id) == generation;
+    }
+
+    /**
+     * Mark the values of location dependent fields as out of date. Entities
+     * have to be added again, for the same references, before they show up
+     * in query results; only their location dependent fields are reloaded.
+     */
+    synchronized void invalidateLocationDependentFields() {
+        generation++;
+        currentEntityCount = 0;
+    }
+
+    /**
+     * Index the entity's normalized fields and sort field pieces. May
+     * evaluate the entity's fields, so callers should hold the db lock when
+     * adding entities in bulk.
+     */
+    synchronized void addEntity(Entity<TreeReference> entity) {
+        Integer existingId = idsByReference.get(entity.getElement());
+        if (existingId != null) {
+            if (!isCurrent(existingId)) {
+                refreshLocationDependentFields(existingId, entity);
+            }
+            return;
+        }
+        int id = entities.size();
+        entities.add(entity);
+        entityGenerations.add(generation);
+        idsByReference.put(entity.getElement(), id);
+        currentEntityCount++;
+
+        String[] values = new String[entity.getNumFields()];
+        String[][] entityLocationPieces = new String[values.length][];
+        HashSet<String> grams = new HashSet<>();
+        HashSet<String> pieces = new HashSet<>();
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = entity.getNormalizedField(i).toLowerCase(locale);
+            if (isLocationDependent(i)) {
+                entityLocationPieces[i] = entity.getSortFieldPieces(i);
+                continue;
+            }
+            addGrams(values[i], grams);
+            for (String piece : entity.getSortFieldPieces(i)) {
+                pieces.add(piece);
+            }
+        }
+        fieldValues.add(values);
+        locationPieces.add(entityLocationPieces);
+
+        for (String gram : grams) {
+            getPostings(gramPostings, gram).add(id);
+        }
+        for (String piece : pieces) {
+            getPostings(piecePostings, piece).add(id);
+            Set<String> sameLength = piecesByLength.get(piece.length());
+            if (sameLength == null) {
+                sameLength = new HashSet<>();
+                piecesByLength.put(piece.length(), sameLength);
+            }
+            sameLength.add(piece);
+        }
+    }
+
+    private void refreshLocationDependentFields(int id, Entity<TreeReference> entity) {
+        entities.set(id, entity);
+        entityGenerations.set(id, generation);
+        currentEntityCount++;
+
+        String[] values = fieldValues.get(id);
+        String[][] entityLocationPieces = locationPieces.get(id);
+        for (int i = 0; i < values.length; ++i) {
+            if (isLocationDependent(i)) {
+                values[i] = entity.getNormalizedField(i).toLowerCase(locale);
+                entityLocationPieces[i] = entity.getSortFieldPieces(i);
+            }
+        }
+    }
+
+    private boolean isLocationDependent(int field) {
+        return field < locationDependentFields.length && locationDependentFields[field];
+    }
+
+    private static void addGrams(String value, Set<String> grams) {
+        for (int start = 0; start < value.length(); ++start) {
+            for (int length = 1; length <= MAX_GRAM_LENGTH && start + length <= value.length(); ++length) {
+                grams.add(value.substring(start, start + length));
+            }
+        }
+    }
+
+    private static IntList getPostings(HashMap<String, IntList> postings, String key) {
+        IntList list = postings.get(key);
+        if (list == null) {
+            list = new IntList();
+            postings.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * Find the entities for which every term matches some field, either as
+     * a substring or, if enabled, fuzzily.
+     *
+     * @return Matching entities mapped to their summed fuzzy match scores,
+     * where 0 means every term matched exactly
+     */
+    synchronized Map<Entity<TreeReference>, Integer> query(String[] terms, boolean isFuzzySearchEnabled) {
+        HashMap<Integer, Integer> scores = null;
+        for (String term : terms) {
+            HashMap<Integer, Integer> termScores = matchTerm(term, isFuzzySearchEnabled);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                HashMap<Integer, Integer> combined = new HashMap<>();
+                for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+                    Integer termScore = termScores.get(entry.getKey());
+                    if (termScore != null) {
+                        combined.put(entry.getKey(), entry.getValue() + termScore);
+                    }
+                }
+                scores = combined;
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        IdentityHashMap<Entity<TreeReference>, Integer> matches = new IdentityHashMap<>();
+        if (scores != null) {
+            for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+                if (isCurrent(entry.getKey())) {
+                    matches.put(entities.get(entry.getKey()), entry.getValue());
+                }
+            }
+        }
+        return matches;
+    }
+
+    private HashMap<Integer, Integer> matchTerm(String term, boolean isFuzzySearchEnabled) {
+        HashMap<Integer, Integer> termScores = new HashMap<>();
+        String lowerTerm = term.toLowerCase(locale);
+
+        IntList candidates = getRarestGramPostings(lowerTerm);
+        if (candidates != null) {
+            for (int i = 0; i < candidates.size(); ++i) {
+                int id = candidates.get(i);
+                for (String value : fieldValues.get(id)) {
+                    if (!"".equals(value) && value.contains(lowerTerm)) {
+                        termScores.put(id, 0);
+                        break;
+                    }
+                }
+            }
+        }
+        if (hasLocationDependentFields) {
+            addLocationDependentMatches(lowerTerm, termScores);
+        }
+
+        if (isFuzzySearchEnabled) {
+            addFuzzyMatches(term, termScores);
+        }
+        return termScores;
+    }
+
+    /**
+     * Scan the location dependent fields, which aren't in the gram postings
+     */
+    private void addLocationDependentMatches(String lowerTerm, HashMap<Integer, Integer> termScores) {
+        if ("".equals(lowerTerm)) {
+            return;
+        }
+        for (int id = 0; id < fieldValues.size(); ++id) {
+            if (termScores.containsKey(id) || !isCurrent(id)) {
+                continue;
+            }
+            String[] values = fieldValues.get(id);
+            for (int i = 0; i < values.length; ++i) {
+                if (isLocationDependent(i) && values[i].contains(lowerTerm)) {
+                    termScores.put(id, 0);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The smallest posting list among the term's grams, or null if
+     * any gram doesn't occur at all, in which case nothing can contain it
+     */
+    private IntList getRarestGramPostings(String term) {
+        if ("".equals(term)) {
+            return null;
+        }
+        int gramLength = Math.min(MAX_GRAM_LENGTH, term.length());
+        IntList rarest = null;
+        for (int start = 0; start + gramLength <= term.length(); ++start) {
+            IntList postings = gramPostings.get(term.substring(start, start + gramLength));
+            if (postings == null) {
+                return null;
+            }
+            if (rarest == null || postings.size() < rarest.size()) {
+                rarest = postings;
+            }
+        }
+        return rarest;
+    }
+
+    private void addFuzzyMatches(String term, HashMap<Integer, Integer> termScores) {
+        for (int length = term.length() - MAX_FUZZY_DISTANCE;
+             length <= term.length() + MAX_FUZZY_DISTANCE; ++length) {
+            Set<String> pieces = piecesByLength.get(length);
+            if (pieces == null) {
+                continue;
+            }
+            for (String piece : pieces) {
+                Pair<Boolean, Integer> match = StringUtils.fuzzyMatch(term, piece);
+                if (!match.first) {
+                    continue;
+                }
+                IntList postings = piecePostings.get(piece);
+                for (int i = 0; i < postings.size(); ++i) {
+                    addFuzzyScore(termScores, postings.get(i), match.second);
+                }
+            }
+        }
+        if (hasLocationDependentFields) {
+            addLocationDependentFuzzyMatches(term, termScores);
+        }
+    }
+
+    private void addLocationDependentFuzzyMatches(String term, HashMap<Integer, Integer> termScores) {
+        for (int id = 0; id < locationPieces.size(); ++id) {
+            if (!isCurrent(id)) {
+                continue;
+            }
+            for (String[] fieldPieces : locationPieces.get(id)) {
+                if (fieldPieces == null) {
+                    continue;
+                }
+                for (String piece : fieldPieces) {
+                    if (Math.abs(piece.length() - term.length()) > MAX_FUZZY_DISTANCE) {
+                        continue;
+                    }
+                    Pair<Boolean, Integer> match = StringUtils.fuzzyMatch(term, piece);
+                    if (match.first) {
+                        addFuzzyScore(termScores, id, match.second);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addFuzzyScore(HashMap<Integer, Integer> termScores, int id, int score) {
+        Integer existing = termScores.get(id);
+        if (existing == null || score < existing) {
+            termScores.put(id, score);
+        }
+    }
+
+    /**
+     * Growable list of primitive ints, to keep postings compact
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[values.length * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void set(int i, int value) {
+            values[i] = value;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.commcare.CommCareApplication;
 import org.commcare.cases.entity.Entity;
 import org.commcare.cases.entity.NodeEntityFactory;
 import org.commcare.cases.util.StringUtils;
+import org.commcare.models.AsyncNodeEntityFactory;
 import org.commcare.modern.util.Pair;
 import org.commcare.util.EntityProvider;
 import org.commcare.util.EntitySortUtil;
@@ -20,6 +21,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 
 /**
@@ -30,18 +32,34 @@ public class EntityStringFilterer extends EntityFiltererBase {
     private final String[] searchTerms;
     private final ArrayList<Pair<Integer, Integer>> matchScores = new ArrayList<>();
     private final boolean isFuzzySearchEnabled;
+    private final EntitySearchIndex searchIndex;
+    // Taken before the db lock whenever entity fields are evaluated inside
+    // of a transaction, in the same order that entities take them
+    private final Object evaluationLock;
 
+    /**
+     * @param searchIndex Index to answer the query from, filled with any
+     *                    entities it doesn't cover yet; null to scan all
+     *                    entities instead
+     */
     public EntityStringFilterer(EntityListAdapter adapter,
                                 String[] searchTerms,
                                 boolean isFuzzySearchEnabled,
                                 NodeEntityFactory nodeFactory,
                                 List<Entity<TreeReference>> fullEntityList,
-                                Activity context) {
+                                Activity context,
+                                EntitySearchIndex searchIndex) {
         super(context, nodeFactory, adapter, fullEntityList);
 
         this.isFuzzySearchEnabled = isFuzzySearchEnabled;
+        this.searchIndex = searchIndex;
         this.isFilterEmpty = searchTerms == null || searchTerms.length == 0;
         this.searchTerms = searchTerms;
+        if (nodeFactory instanceof AsyncNodeEntityFactory) {
+            this.evaluationLock = ((AsyncNodeEntityFactory)nodeFactory).getEvaluationLock();
+        } else {
+            this.evaluationLock = new Object();
+        }
 
         if (isFilterEmpty) {
             matchList.addAll(fullEntityList);
@@ -53,7 +71,11 @@ public class EntityStringFilterer extends EntityFiltererBase {
         long startTime = System.currentTimeMillis();
 
         if (!isFilterEmpty) {
-            buildMatchList();
+            if (searchIndex != null) {
+                buildMatchListFromIndex();
+            } else {
+                buildMatchList();
+            }
         }
 
         if (isCancelled()) {
@@ -88,18 +110,84 @@ public class EntityStringFilterer extends EntityFiltererBase {
             this.cancelSearch();
             return;
         }
-        db.beginTransaction();
+        synchronized (evaluationLock) {
+            db.beginTransaction();
+            try {
+                EntitySortUtil.sortEntities(fullEntityList,
+                        searchTerms,
+                        currentLocale,
+                        isFuzzySearchEnabled,
+                        matchScores,
+                        matchList,
+                        index -> getEntityAtIndex(db, index));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Answers the query from the search index, so that the db only needs to
+     * be locked while indexing entities that haven't been seen before.
+     */
+    private void buildMatchListFromIndex() {
+        if (!indexNewEntities()) {
+            return;
+        }
+
+        Map<Entity<TreeReference>, Integer> matches = searchIndex.query(searchTerms, isFuzzySearchEnabled);
+        // keep the list's current order, then order by score like a full scan would
+        for (int index = 0; index < fullEntityList.size() && !isCancelled(); ++index) {
+            Integer score = matches.get(fullEntityList.get(index));
+            if (score != null) {
+                matchScores.add(new Pair<>(index, score));
+            }
+        }
+        if (isCancelled()) {
+            return;
+        }
+        if (isFuzzySearchEnabled) {
+            Collections.sort(matchScores, (lhs, rhs) -> lhs.second - rhs.second);
+        }
+        for (Pair<Integer, Integer> match : matchScores) {
+            matchList.add(fullEntityList.get(match.first));
+        }
+    }
+
+    /**
+     * @return False if indexing was cancelled
+     */
+    private boolean indexNewEntities() {
+        if (searchIndex.size() >= fullEntityList.size()) {
+            return true;
+        }
+        SQLiteDatabase db;
         try {
-            EntitySortUtil.sortEntities(fullEntityList,
-                    searchTerms,
-                    currentLocale,
-                    isFuzzySearchEnabled,
-                    matchScores,
-                    matchList,
-                    index -> getEntityAtIndex(db, index));
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
+            db = CommCareApplication.instance().getUserDbHandle();
+        } catch (SessionUnavailableException e) {
+            this.cancelSearch();
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        // Indexing evaluates the entities' sort fields
+        synchronized (evaluationLock) {
+            db.beginTransaction();
+            try {
+                for (int index = 0; index < fullEntityList.size(); ++index) {
+                    Entity<TreeReference> e = getEntityAtIndex(db, index);
+                    if (e == null) {
+                        return false;
+                    }
+                    searchIndex.addEntity(e);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
+        Logger.log("cache", "Indexed " + searchIndex.size() + " entities for search in " +
+                (System.currentTimeMillis() - startTime) + "ms");
+        return true;
     }
 }
@@ -4,6 +4,7 @@ package org.commcare.adapters;
 import android.content.Context;
 import android.database.DataSetObserver;
 import android.os.AsyncTask.Status;
+import android.support.v4.util.LruCache;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
@@ -12,6 +13,7 @@ import org.commcare.CommCareApplication;
 import org.commcare.activities.FormRecordListActivity.FormRecordFilter;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.models.database.user.models.FormRecordListQuery;
 import org.commcare.suite.model.Entry;
 import org.commcare.suite.model.FormEntry;
 import org.commcare.suite.model.Suite;
@@ -19,23 +21,32 @@ import org.commcare.suite.model.Text;
 import org.commcare.tasks.FormRecordLoadListener;
 import org.commcare.tasks.FormRecordLoaderTask;
 import org.commcare.utils.AndroidCommCarePlatform;
-import org.commcare.utils.StorageUtils;
 import org.commcare.views.IncompleteFormRecordView;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Vector;
 
 /**
  * Responsible for delegating the loading of form lists and performing filtering over them.
  *
+ * The list is queried in SQL: filtering, ordering and text search run in the
+ * database against the text stored with each record, rows are read a window
+ * at a time as they're displayed, and a record is only deserialized when
+ * it's opened or its quarantine reason is shown. Records saved before that
+ * text was stored are listed too; FormRecordLoaderTask stores their text in
+ * the background, after which the list is queried again so that search
+ * matches them.
+ *
  * @author ctsims
  */
 public class IncompleteFormListAdapter extends BaseAdapter implements FormRecordLoadListener {
+    private static final int WINDOW_SIZE = 50;
+    private static final int MAX_CACHED_WINDOWS = 4;
+
     private final Context context;
 
     private final List<DataSetObserver> observers = new ArrayList<>();
@@ -43,19 +54,8 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
     private FormRecordFilter filter;
 
     /**
-     * All loaded form records of a given status, with no filtering.
-     */
-    private final List<FormRecord> records = new ArrayList<>();
-
-    /**
-     * Filtered form records. getView reads from this to display all the forms.
-     */
-    private final List<FormRecord> current = new ArrayList<>();
-
-    /**
-     * Maps FormRecord ID to an array of text that will be shown to the user
-     * and query-able. Text should includes modified date, record title, and
-     * form name.
+     * Maps FormRecord ID to an array of text loaded for it, filled in by the
+     * loader for the records whose text it computes
      */
     private final Hashtable<Integer, String[]> searchCache = new Hashtable<>();
 
@@ -71,6 +71,28 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
 
     private FormRecordLoaderTask loader;
 
+    /**
+     * Query for the listed records, or null before they're first listed
+     */
+    private FormRecordListQuery listQuery;
+
+    /**
+     * Ids of the records matching the list query and the current text query,
+     * in list order
+     */
+    private int[] matchingIds = new int[0];
+
+    /**
+     * Whether the loader is storing text for records saved without it, so
+     * that the list should be queried again once it's done
+     */
+    private boolean storingMissingText;
+
+    /**
+     * Recently displayed windows of rows of matchingIds, by window index
+     */
+    private final LruCache<Integer, RowWindow> rowWindows = new LruCache<>(MAX_CACHED_WINDOWS);
+
     /**
      * Maps form namespace (unique id for forms) to their form title
      * (entry-point text). Needed because FormRecords don't have form title
@@ -78,6 +100,20 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
      */
     private final Hashtable<String, Text> names = new Hashtable<>();
 
+    /**
+     * The listed columns of a window of rows, along with the records of any
+     * quarantined rows, whose reason is only stored in the record itself
+     */
+    private static class RowWindow {
+        final FormRecordListQuery.Row[] rows;
+        final HashMap<Integer, FormRecord> quarantinedRecords;
+
+        RowWindow(FormRecordListQuery.Row[] rows, HashMap<Integer, FormRecord> quarantinedRecords) {
+            this.rows = rows;
+            this.quarantinedRecords = quarantinedRecords;
+        }
+    }
+
     public IncompleteFormListAdapter(Context context,
                                      AndroidCommCarePlatform platform,
                                      FormRecordLoaderTask loader) {
@@ -104,16 +140,10 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
         }
     }
 
-    /**
-     * Add a newly-loaded form to the current list if it satisfies the current
-     * query.
-     */
     @Override
     public void notifyPriorityLoaded(FormRecord record, boolean isLoaded) {
-        if (isLoaded && satisfiesQuery(record)) {
-            current.add(record);
-            notifyDataSetChanged();
-        }
+        // records are listed from their stored rows, which are refreshed
+        // once the loader has stored all of the missing text
     }
 
     /**
@@ -121,7 +151,12 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
      */
     @Override
     public void notifyLoaded() {
-        notifyDataSetChanged();
+        if (storingMissingText) {
+            storingMissingText = false;
+            runListQuery();
+        } else {
+            notifyDataSetChanged();
+        }
     }
 
     /**
@@ -138,9 +173,9 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
     }
 
     /**
-     * Reload form record list for current filter status and collect pertinent
-     * text data using FormRecordLoaderTask; results will then be re-filtered
-     * and displayed via callbacks.
+     * Re-query the form record list for the current filter status. Records
+     * saved without their listing text are handed to FormRecordLoaderTask,
+     * which stores it; the list is queried again once it's done.
      */
     public void resetRecords() {
         // reload the form records, even if they are currently being loaded
@@ -151,45 +186,84 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
             loader = loader.spawn();
         }
 
-        SqlStorage<FormRecord> storage = CommCareApplication.instance().getUserStorage(FormRecord.class);
-
         // choose a default filter if none set
         if (filter == null) {
             filter = FormRecordFilter.SubmittedAndPending;
         }
 
-        records.clear();
+        searchCache.clear();
         String currentAppId = CommCareApplication.instance().getCurrentApp().getAppRecord().getApplicationId();
-        Vector recordsVector = new Vector();
-        // Grab all form records that satisfy ANY of the statuses in the filter, AND belong to the
-        // currently seated app
-        for (String status : filter.getStatus()) {
-            recordsVector.addAll(storage.getRecordsForValues(
-                    new String[]{FormRecord.META_STATUS, FormRecord.META_APP_ID},
-                    new Object[]{status, currentAppId}));
-        }
 
-        if (filter.equals(FormRecordFilter.Pending)) {
-            StorageUtils.sortRecordsBySubmissionOrderingNumber(recordsVector);
-        } else {
-            StorageUtils.sortRecordsByLastModifiedTimeDescending(recordsVector);
+        listQuery = new FormRecordListQuery(
+                CommCareApplication.instance().getUserDbHandle(), filter.getStatus(),
+                currentAppId, filter.equals(FormRecordFilter.Pending));
+        runListQuery();
+
+        FormRecord[] recordsWithoutText = readRecords(listQuery.getIdsWithoutSearchText());
+        storingMissingText = recordsWithoutText.length > 0;
+
+        // Listeners wait on the loader to know the list is ready, even when
+        // it has nothing to load
+        loader.init(searchCache, names);
+        loader.executeParallel(recordsWithoutText);
+    }
+
+    private static FormRecord[] readRecords(int[] ids) {
+        if (ids.length == 0) {
+            return new FormRecord[0];
+        }
+        LinkedHashSet<Integer> idSet = new LinkedHashSet<>();
+        for (int id : ids) {
+            idSet.add(id);
         }
-        records.addAll(recordsVector);
+        HashMap<Integer, FormRecord> recordsById = new HashMap<>();
+        CommCareApplication.instance().getUserStorage(FormRecord.class).bulkRead(idSet, recordsById);
+        return recordsById.values().toArray(new FormRecord[recordsById.size()]);
+    }
 
-        searchCache.clear();
-        current.clear();
+    private void runListQuery() {
+        matchingIds = listQuery.getMatchingIds(queryPieces);
+        rowWindows.evictAll();
         notifyDataSetChanged();
+    }
 
-        // load specific data about the 'records' into the searchCache, such as
-        // record title, form name, modified date
-        loader.init(searchCache, names);
-        loader.executeParallel(records.toArray(new FormRecord[records.size()]));
+    private RowWindow getRowWindow(int position) {
+        int window = position / WINDOW_SIZE;
+        RowWindow rowWindow = rowWindows.get(window);
+        if (rowWindow == null) {
+            int start = window * WINDOW_SIZE;
+            FormRecordListQuery.Row[] rows = listQuery.readRows(matchingIds, start,
+                    Math.min(start + WINDOW_SIZE, matchingIds.length));
+
+            LinkedHashSet<Integer> quarantinedIds = new LinkedHashSet<>();
+            for (FormRecordListQuery.Row row : rows) {
+                if (row != null && FormRecord.STATUS_QUARANTINED.equals(row.status)) {
+                    quarantinedIds.add(row.recordId);
+                }
+            }
+            HashMap<Integer, FormRecord> quarantinedRecords = new HashMap<>();
+            if (!quarantinedIds.isEmpty()) {
+                CommCareApplication.instance().getUserStorage(FormRecord.class)
+                        .bulkRead(quarantinedIds, quarantinedRecords);
+            }
+
+            rowWindow = new RowWindow(rows, quarantinedRecords);
+            rowWindows.put(window, rowWindow);
+        }
+        return rowWindow;
+    }
+
+    /**
+     * @return The listed columns of the record at the given position, or
+     * null if the record has been removed since the list was queried
+     */
+    private FormRecordListQuery.Row getRow(int position) {
+        return getRowWindow(position).rows[position % WINDOW_SIZE];
     }
 
     public int findRecordPosition(int formRecordId) {
-        for (int i = 0; i < current.size(); ++i) {
-            FormRecord record = current.get(i);
-            if (record.getID() == formRecordId) {
+        for (int i = 0; i < matchingIds.length; ++i) {
+            if (matchingIds[i] == formRecordId) {
                 return i;
             }
         }
@@ -226,18 +300,22 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
 
     @Override
     public int getCount() {
-        return current.size();
+        return matchingIds.length;
     }
 
     @Override
     public Object getItem(int i) {
-        return current.get(i);
+        FormRecord quarantined = getRowWindow(i).quarantinedRecords.get(matchingIds[i]);
+        if (quarantined != null) {
+            return quarantined;
+        }
+        SqlStorage<FormRecord> storage = CommCareApplication.instance().getUserStorage(FormRecord.class);
+        return storage.read(matchingIds[i]);
     }
 
     @Override
     public long getItemId(int i) {
-        //Skeeeeetccchhyyyy maybe?
-        return current.get(i).getID();
+        return matchingIds[i];
     }
 
     @Override
@@ -247,20 +325,24 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
 
     @Override
     public View getView(int i, View v, ViewGroup vg) {
-        FormRecord r = current.get(i);
         IncompleteFormRecordView ifrv = (IncompleteFormRecordView) v;
         if (ifrv == null) {
             ifrv = new IncompleteFormRecordView(context);
         }
 
-        if (searchCache.containsKey(r.getID())) {
-            ifrv.setParams(r, searchCache.get(r.getID())[1], r.lastModified().getTime(), names);
+        RowWindow rowWindow = getRowWindow(i);
+        FormRecordListQuery.Row row = rowWindow.rows[i % WINDOW_SIZE];
+        if (row == null) {
+            ifrv.setParams(null, null, "", 0L, names);
+            return ifrv;
+        }
+        String title = row.recordTitle == null ? "" : row.recordTitle;
+        FormRecord quarantined = rowWindow.quarantinedRecords.get(row.recordId);
+        if (quarantined != null) {
+            ifrv.setParams(quarantined, title, row.lastModified, names);
         } else {
-            // notify the loader that we need access to this record immediately
-            loader.registerPriority(r);
-            ifrv.setParams(r, "Loading...", r.lastModified().getTime(), names);
+            ifrv.setParams(row.formNamespace, row.status, title, row.lastModified, names);
         }
-
         return ifrv;
     }
 
@@ -287,55 +369,6 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
         return this.filter;
     }
 
-    /**
-     * Filter loaded FormRecords by those whose data contains any word in the
-     * query field.
-     *
-     * Reads from FormRecords in the 'records' field and moves them into the
-     * cleared out the 'current' field.
-     */
-    private void filterValues() {
-        if (loader.doneLoadingFormRecords()) {
-            current.clear();
-
-            if ("".equals(query)) {
-                current.addAll(records);
-            } else {
-                // collect all forms that have text data that contains pieces.
-                for (FormRecord r : records) {
-                    if (satisfiesQuery(r)) {
-                        current.add(r);
-                    }
-                }
-            }
-            notifyDataSetChanged();
-        }
-    }
-
-    /**
-     * Does the form record have text that contains one of the query segments?
-     *
-     * @param r Lookup this form record's text and compare to the current query
-     *          segments.
-     * @return Did the text corresponding to the form record argument contain
-     * any of the query segments?
-     */
-    private boolean satisfiesQuery(FormRecord r) {
-        if (queryPieces.length == 0) {
-            // empty queries always pass
-            return true;
-        }
-
-        for (String cacheValue : searchCache.get(r.getID())) {
-            for (String piece : this.queryPieces) {
-                if (cacheValue.toLowerCase().contains(piece)) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     /**
      * Re-filter form listing based on query parameter.
      *
@@ -357,7 +390,9 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
             this.queryPieces = newQuery.toLowerCase().split(" ");
         }
 
-        filterValues();
+        if (listQuery != null) {
+            runListQuery();
+        }
 
         for (DataSetObserver o : observers) {
             o.onChanged();
@@ -382,6 +417,7 @@ public class IncompleteFormListAdapter extends BaseAdapter implements FormRecord
     }
 
     public boolean isValid(int i) {
-        return names.containsKey(current.get(i).getFormNamespace());
+        FormRecordListQuery.Row row = getRow(i);
+        return row != null && names.containsKey(row.formNamespace);
     }
 }
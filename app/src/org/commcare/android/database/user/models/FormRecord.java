@@ -18,6 +18,7 @@ import org.commcare.modern.models.MetaField;
 import org.commcare.tasks.FormRecordCleanupTask;
 import org.commcare.util.LogTypes;
 import org.commcare.utils.CrashUtil;
+import org.commcare.utils.FormRecordListingUtils;
 import org.commcare.utils.StorageUtils;
 import org.commcare.views.notifications.NotificationMessage;
 import org.commcare.views.notifications.NotificationMessageFactory;
@@ -48,6 +49,9 @@ public class FormRecord extends Persisted implements EncryptedModel {
     public static final String META_SUBMISSION_ORDERING_NUMBER = "SUBMISSION_ORDERING_NUMBER";
     public static final String META_DISPLAY_NAME = "displayName";
     public static final String META_FILE_PATH = "instanceFilePath";
+    public static final String META_RECORD_TITLE = "recordTitle";
+    public static final String META_FORM_NAME = "formName";
+    public static final String META_SEARCH_TEXT = "searchText";
 
 
     /**
@@ -146,6 +150,21 @@ public class FormRecord extends Persisted implements EncryptedModel {
     @MetaField(META_FILE_PATH)
     private String filePath;
 
+    // Text shown for the record in the saved forms list, computed when the
+    // record is written so the list doesn't need to replay each session
+
+    @Persisting(value = 11, nullable = true)
+    @MetaField(META_RECORD_TITLE)
+    private String recordTitle;
+
+    @Persisting(value = 12, nullable = true)
+    @MetaField(META_FORM_NAME)
+    private String formName;
+
+    @Persisting(value = 13, nullable = true)
+    @MetaField(META_SEARCH_TEXT)
+    private String searchText;
+
     public FormRecord() {
     }
 
@@ -178,6 +197,9 @@ public class FormRecord extends Persisted implements EncryptedModel {
         quarantineReason = oldRecord.quarantineReason;
         displayName = oldRecord.displayName;
         filePath = oldRecord.filePath;
+        recordTitle = oldRecord.recordTitle;
+        formName = oldRecord.formName;
+        searchText = oldRecord.searchText;
         recordId = oldRecord.recordId;
     }
 
@@ -326,6 +348,10 @@ public class FormRecord extends Persisted implements EncryptedModel {
         }
         this.status = status;
         lastModified = new Date();
+        if (searchText != null) {
+            // the listing is searched by the month the record was last modified in
+            searchText = FormRecordListingUtils.buildSearchText(CommCareApplication.instance(), this);
+        }
         formRecordStorage.update(getID(), this);
         finalizeRecord();
     }
@@ -454,6 +480,41 @@ public class FormRecord extends Persisted implements EncryptedModel {
         return xmlns;
     }
 
+    /**
+     * @return The title of the record computed from its session, e.g. the
+     * name of the case the form was filled out for, or null if it hasn't been
+     * computed for this record yet
+     */
+    public String getRecordTitle() {
+        return recordTitle;
+    }
+
+    public void setRecordTitle(String recordTitle) {
+        this.recordTitle = recordTitle;
+    }
+
+    /**
+     * @return The localized name of the form as of when the record was saved
+     */
+    public String getFormName() {
+        return formName;
+    }
+
+    public void setFormName(String formName) {
+        this.formName = formName;
+    }
+
+    /**
+     * @return Lower cased text the saved forms list search matches against
+     */
+    public String getSearchText() {
+        return searchText;
+    }
+
+    public void setSearchText(String searchText) {
+        this.searchText = searchText;
+    }
+
     public void setUuid(String uuid) {
         this.uuid = uuid;
     }
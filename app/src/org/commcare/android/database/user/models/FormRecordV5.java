@@ -0,0 +1,141 @@
+package org.commcare.android.database.user.models;
+
+import org.commcare.android.storage.framework.Persisted;
+import org.commcare.models.framework.Persisting;
+import org.commcare.modern.database.Table;
+import org.commcare.modern.models.MetaField;
+
+import java.util.Date;
+
+/**
+ * This class represents the version of a FormRecord that exists in user dbs from version 23
+ * through 28, before the record title, form name and search text shown in the saved forms list
+ * were stored with it. This class is used to read a form record that exists in such a database,
+ * in order to run a db upgrade.
+ */
+@Table("FORMRECORDS")
+public class FormRecordV5 extends Persisted {
+
+    private static final String QUARANTINE_REASON_AND_DETAIL_SEPARATOR = "@@SEP@@";
+
+    @Persisting(1)
+    @MetaField(FormRecord.META_XMLNS)
+    private String xmlns;
+
+    @Persisting(2)
+    @MetaField(FormRecord.META_STATUS)
+    private String status;
+
+    @Persisting(3)
+    private byte[] aesKey;
+
+    @Persisting(value = 4, nullable = true)
+    @MetaField(FormRecord.META_UUID)
+    private String uuid;
+
+    @Persisting(5)
+    @MetaField(FormRecord.META_LAST_MODIFIED)
+    private Date lastModified;
+
+    @Persisting(6)
+    @MetaField(FormRecord.META_APP_ID)
+    private String appId;
+
+    @Persisting(value = 7, nullable = true)
+    @MetaField(FormRecord.META_SUBMISSION_ORDERING_NUMBER)
+    private String submissionOrderingNumber;
+
+    @Persisting(value = 8, nullable = true)
+    private String quarantineReason;
+
+    @Persisting(value = 9, nullable = true)
+    @MetaField(FormRecord.META_DISPLAY_NAME)
+    private String displayName;
+
+    @Persisting(value = 10, nullable = true)
+    @MetaField(FormRecord.META_FILE_PATH)
+    private String filePath;
+
+    //   Deserialization only
+    public FormRecordV5() {
+    }
+
+    public FormRecordV5(String status, String xmlns, byte[] aesKey, String uuid,
+                        Date lastModified, String appId) {
+        this.status = status;
+        this.xmlns = xmlns;
+        this.aesKey = aesKey;
+
+        this.uuid = uuid;
+        this.lastModified = lastModified;
+        if (lastModified == null) {
+            this.lastModified = new Date();
+        }
+        this.appId = appId;
+    }
+
+    public byte[] getAesKey() {
+        return aesKey;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getInstanceID() {
+        return uuid;
+    }
+
+    public Date lastModified() {
+        return lastModified;
+    }
+
+    public String getFormNamespace() {
+        return xmlns;
+    }
+
+    public String getAppId() {
+        return this.appId;
+    }
+
+    public int getSubmissionOrderingNumber() {
+        if (submissionOrderingNumber == null) {
+            return -1;
+        }
+        return Integer.parseInt(submissionOrderingNumber);
+    }
+
+    public String getQuarantineReasonType() {
+        return (quarantineReason == null) ?
+                null :
+                quarantineReason.split(QUARANTINE_REASON_AND_DETAIL_SEPARATOR)[0];
+    }
+
+    public String getQuarantineReasonDetail() {
+        if (quarantineReason == null) {
+            return null;
+        }
+        String[] typeAndDetail = this.quarantineReason.split(QUARANTINE_REASON_AND_DETAIL_SEPARATOR);
+        if (typeAndDetail.length == 2) {
+            return typeAndDetail[1];
+        } else {
+            return null;
+        }
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+}
@@ -47,10 +47,15 @@ public class DeviceReportRecord extends Persisted implements EncryptedModel {
 
     public static DeviceReportRecord generateNewRecordStub() {
         DeviceReportRecord slr = new DeviceReportRecord();
-        slr.fileName = new File(
-                CommCareApplication.instance().getCurrentApp().fsPath((GlobalConstants.FILE_CC_LOGS))
-                        + FileUtil.SanitizeFileName(File.separator
-                        + DateUtils.formatDateTime(new Date(), DateUtils.FORMAT_ISO8601)) + ".xml").getAbsolutePath();
+        String basePath = CommCareApplication.instance().getCurrentApp().fsPath((GlobalConstants.FILE_CC_LOGS))
+                + FileUtil.SanitizeFileName(File.separator
+                + DateUtils.formatDateTime(new Date(), DateUtils.FORMAT_ISO8601));
+        // a large log backlog is split into several reports within the same second
+        File reportFile = new File(basePath + ".xml");
+        for (int i = 1; reportFile.exists(); i++) {
+            reportFile = new File(basePath + "_" + i + ".xml");
+        }
+        slr.fileName = reportFile.getAbsolutePath();
         slr.aesKey = CommCareApplication.instance().createNewSymmetricKey().getEncoded();
         return slr;
     }
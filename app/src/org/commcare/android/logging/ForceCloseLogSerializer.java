@@ -2,8 +2,9 @@ package org.commcare.android.logging;
 
 import org.commcare.logging.AndroidLogPurger;
 import org.commcare.logging.AndroidLogSerializer;
-import org.commcare.logging.DeviceReportElement;
 import org.commcare.logging.DeviceReportWriter;
+import org.commcare.logging.LogReportPager;
+import org.commcare.logging.PagedDeviceReportElement;
 import org.commcare.models.database.SqlStorage;
 import org.javarosa.core.log.LogEntry;
 import org.javarosa.core.log.StreamLogSerializer;
@@ -17,11 +18,12 @@ import java.io.IOException;
  *
  * @author Aliza Stone
  */
-public class ForceCloseLogSerializer extends StreamLogSerializer implements DeviceReportElement {
+public class ForceCloseLogSerializer extends StreamLogSerializer implements PagedDeviceReportElement {
 
     private ForceCloseLogEntry singleEntry;
     private SqlStorage<ForceCloseLogEntry> logStorage;
     private XmlSerializer serializer;
+    private LogReportPager<ForceCloseLogEntry> pager;
 
     public ForceCloseLogSerializer(ForceCloseLogEntry entry) {
         this.singleEntry = entry;
@@ -40,6 +42,8 @@ public class ForceCloseLogSerializer extends StreamLogSerializer implements Devi
         try {
             if (singleEntry != null) {
                 serializeLog(singleEntry.getID(), singleEntry);
+            } else if (pager != null) {
+                pager.writeNextReport(this::serializeLog);
             } else {
                 for (ForceCloseLogEntry entry : logStorage) {
                     serializeLog(entry.getID(), entry);
@@ -50,6 +54,21 @@ public class ForceCloseLogSerializer extends StreamLogSerializer implements Devi
         }
     }
 
+    @Override
+    public void enablePaging(int maxEntriesPerReport) {
+        pager = new LogReportPager<>(logStorage, maxEntriesPerReport);
+    }
+
+    @Override
+    public boolean hasMoreEntries() {
+        return pager != null && pager.hasMoreEntries();
+    }
+
+    @Override
+    public void purgeWrittenEntries() {
+        pager.purgeWritten();
+    }
+
     @Override
     protected void serializeLog(LogEntry entry) throws IOException {
         final ForceCloseLogEntry forceCloseEntry = (ForceCloseLogEntry)entry;
@@ -86,24 +86,31 @@ abstract class FileSystemInstaller implements ResourceInstaller<AndroidCommCareP
                            AndroidCommCarePlatform platform, boolean upgrade, boolean recovery)
             throws UnresolvedResourceException, UnfullfilledRequirementsException {
         try {
-            InputStream inputFileStream;
-            try {
-                inputFileStream = ref.getStream();
-            } catch (FileNotFoundException e) {
-                // Means the reference wasn't valid so let it keep iterating through options.
-                throw new UnresolvedResourceException(r,
-                        StringUtils.getStringRobust(CommCareApplication.instance(), R.string.install_error_file_not_found, r.getDescriptor()), true);
+            // Already downloaded if media prefetching picked this resource up
+            File prefetchedFile = takePrefetchedDownload(ref, platform);
+            InputStream inputFileStream = null;
+            if (prefetchedFile == null) {
+                try {
+                    inputFileStream = ref.getStream();
+                } catch (FileNotFoundException e) {
+                    // Means the reference wasn't valid so let it keep iterating through options.
+                    throw new UnresolvedResourceException(r,
+                            StringUtils.getStringRobust(CommCareApplication.instance(), R.string.install_error_file_not_found, r.getDescriptor()), true);
+                }
             }
 
-            File tempFile = new File(CommCareApplication.instance().getTempFilePath());
+            File tempFile = prefetchedFile != null ? prefetchedFile :
+                    new File(CommCareApplication.instance().getTempFilePath());
             Reference localReference;
-            OutputStream outputFileStream;
+            OutputStream outputFileStream = null;
             try {
                 Pair<String, String> fileNameAndExt = getResourceName(r, location);
                 String referenceRoot = upgrade ? upgradeDestination : localDestination;
                 localReference = getEmptyLocalReference(referenceRoot, fileNameAndExt.first, fileNameAndExt.second);
 
-                outputFileStream = new FileOutputStream(tempFile);
+                if (prefetchedFile == null) {
+                    outputFileStream = new FileOutputStream(tempFile);
+                }
 
                 //Get the actual local file we'll be putting the data into
                 localLocation = localReference.getURI();
@@ -113,7 +120,9 @@ abstract class FileSystemInstaller implements ResourceInstaller<AndroidCommCareP
                 throw new LocalStorageUnavailableException("Couldn't write to local reference " + localLocation + " for file system installation", localLocation);
             }
 
-            StreamsUtil.writeFromInputToOutputNew(inputFileStream, outputFileStream);
+            if (prefetchedFile == null) {
+                StreamsUtil.writeFromInputToOutputNew(inputFileStream, outputFileStream);
+            }
 
             renameFile(localReference.getLocalURI(), tempFile);
 
@@ -148,6 +157,13 @@ abstract class FileSystemInstaller implements ResourceInstaller<AndroidCommCareP
         }
     }
 
+    private static File takePrefetchedDownload(Reference ref, AndroidCommCarePlatform platform) {
+        if (platform == null || platform.getMediaPrefetcher() == null) {
+            return null;
+        }
+        return platform.getMediaPrefetcher().takeDownload(ref.getURI());
+    }
+
     private void renameFile(String newFilename, File currentFile) throws LocalStorageUnavailableException {
         File destination = new File(newFilename);
         FileUtil.ensureFilePathExists(destination);
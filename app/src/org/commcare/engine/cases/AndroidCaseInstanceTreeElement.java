@@ -28,9 +28,10 @@ import org.javarosa.core.services.storage.IStorageIterator;
 import org.javarosa.core.services.storage.IStorageUtilityIndexed;
 import org.javarosa.core.util.DataUtil;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Hashtable;
-import java.util.LinkedHashSet;
 import java.util.Vector;
 
 /**
@@ -41,9 +42,9 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
 
     private final AndroidCaseIndexTable mCaseIndexTable;
 
-    private final Hashtable<Integer, Integer> multiplicityIdMapping = new Hashtable<>();
+    private final MultiplicityIdMap multiplicityIdMapping = new MultiplicityIdMap();
 
-    private Hashtable<String, LinkedHashSet<Integer>> mIndexCache = new Hashtable<>();
+    private final Hashtable<String, CaseIdSet> mIndexCache = new Hashtable<>();
 
 
     public AndroidCaseInstanceTreeElement(AbstractTreeElement instanceRoot, SqlStorage<ACase> storage) {
@@ -85,9 +86,10 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
             int id = i.nextID();
             elements.add(buildElement(this, id, null, mult));
             objectIdMapping.put(DataUtil.integer(id), DataUtil.integer(mult));
-            multiplicityIdMapping.put(DataUtil.integer(mult), DataUtil.integer(id));
+            multiplicityIdMapping.append(id);
             mult++;
         }
+        multiplicityIdMapping.trimToSize();
         long value = System.currentTimeMillis() - timeInMillis;
         Log.d(TAG, "Case iterate took: " + value + "ms");
     }
@@ -99,12 +101,131 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
         //If the index object starts with "case-in-" it's actually a case index query and we need to run
         //this over the case index table
         String firstKey = profiles.elementAt(0).getKey();
+        if (currentQueryContext != null && getClauseKey(profiles.elementAt(0)) != null) {
+            return performBitmapQuery(profiles, storage,
+                    currentQueryContext.getQueryCache(CaseClauseMatchCache.class));
+        }
         if (firstKey.startsWith(Case.INDEX_CASE_INDEX_PRE)) {
             return performCaseIndexQuery(firstKey, profiles);
         }
         return super.getNextIndexMatch(profiles, storage, currentQueryContext);
     }
 
+    /**
+     * Answers all leading indexed lookups of the profile set at once, by
+     * intersecting the matches of each lookup as bitmaps of case record
+     * ids. The matches of each lookup are cached in the query context, so
+     * later queries sharing a clause don't fetch it again.
+     */
+    private Collection<Integer> performBitmapQuery(Vector<PredicateProfile> profiles,
+                                                   IStorageUtilityIndexed<?> storage,
+                                                   CaseClauseMatchCache cache) {
+        BitSet matches = null;
+        Vector<String> names = new Vector<>();
+        Vector<String> values = new Vector<>();
+        boolean primeable = true;
+
+        String clauseKey;
+        while (!profiles.isEmpty() && (clauseKey = getClauseKey(profiles.elementAt(0))) != null) {
+            PredicateProfile profile = profiles.elementAt(0);
+            profiles.removeElementAt(0);
+            if (matches != null && matches.isEmpty()) {
+                // nothing left to narrow down
+                continue;
+            }
+
+            BitSet clauseMatches = cache.get(clauseKey);
+            if (clauseMatches == null) {
+                clauseMatches = getClauseMatches(profile, storage, cache);
+                cache.put(clauseKey, clauseMatches);
+            }
+            if (matches == null) {
+                matches = (BitSet)clauseMatches.clone();
+            } else {
+                matches.and(clauseMatches);
+            }
+
+            if (profile instanceof IndexedValueLookup &&
+                    !profile.getKey().startsWith(Case.INDEX_CASE_INDEX_PRE)) {
+                names.add(profile.getKey());
+                values.add(String.valueOf(((IndexedValueLookup)profile).value));
+            } else {
+                primeable = false;
+            }
+        }
+
+        // Let the entity cache know which cases were most likely just listed
+        if (primeable) {
+            mMostRecentBatchFetch = new String[][]{
+                    names.toArray(new String[names.size()]),
+                    values.toArray(new String[values.size()])};
+        } else {
+            mMostRecentBatchFetch = new String[2][];
+        }
+        return toCaseIdSet(matches);
+    }
+
+    /**
+     * @return A key identifying the lookup a profile performs, or null if
+     * the profile isn't a lookup that can be answered as a bitmap
+     */
+    private static String getClauseKey(PredicateProfile profile) {
+        if (profile instanceof IndexedValueLookup) {
+            return profile.getKey() + "=" + ((IndexedValueLookup)profile).value;
+        }
+        if (profile instanceof IndexedSetMemberLookup) {
+            return profile.getKey() + " in " +
+                    Arrays.toString(((IndexedSetMemberLookup)profile).valueSet);
+        }
+        return null;
+    }
+
+    private BitSet getClauseMatches(PredicateProfile profile, IStorageUtilityIndexed<?> storage,
+                                    CaseClauseMatchCache cache) {
+        String key = profile.getKey();
+        BitSet matches = new BitSet();
+        if (key.startsWith(Case.INDEX_CASE_INDEX_PRE)) {
+            String indexName = key.substring(Case.INDEX_CASE_INDEX_PRE.length());
+            int[] ids;
+            if (profile instanceof IndexedValueLookup) {
+                ids = mCaseIndexTable.getCaseIdsMatchingIndex(indexName,
+                        (String)((IndexedValueLookup)profile).value);
+            } else {
+                ids = mCaseIndexTable.getCaseIdsMatchingValueSet(indexName,
+                        ((IndexedSetMemberLookup)profile).valueSet);
+            }
+            for (int id : ids) {
+                matches.set(id);
+            }
+        } else if (profile instanceof IndexedValueLookup) {
+            for (int id : storage.getIDsForValue(key, ((IndexedValueLookup)profile).value)) {
+                matches.set(id);
+            }
+        } else {
+            // union of the matches of each member, which are cached on their own
+            for (String value : ((IndexedSetMemberLookup)profile).valueSet) {
+                IndexedValueLookup member = new IndexedValueLookup(key, value);
+                String memberKey = getClauseKey(member);
+                BitSet memberMatches = cache.get(memberKey);
+                if (memberMatches == null) {
+                    memberMatches = getClauseMatches(member, storage, cache);
+                    cache.put(memberKey, memberMatches);
+                }
+                matches.or(memberMatches);
+            }
+        }
+        return matches;
+    }
+
+    private static CaseIdSet toCaseIdSet(BitSet matches) {
+        int[] ids = new int[matches.cardinality()];
+        int count = 0;
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            ids[count++] = id;
+        }
+        return new CaseIdSet(ids);
+    }
+
     @Override
     protected int getNumberOfBatchableKeysInProfileSet(Vector<PredicateProfile> profiles) {
         int keysToBatch = 0;
@@ -122,7 +243,27 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
     }
 
 
-    private LinkedHashSet<Integer> performCaseIndexQuery(String firstKey, Vector<PredicateProfile> optimizations) {
+    /**
+     * Answers the leading case index lookups of the profile set, intersecting
+     * the matches of consecutive lookups directly rather than leaving each
+     * one to be intersected as boxed collections.
+     */
+    private CaseIdSet performCaseIndexQuery(String firstKey, Vector<PredicateProfile> optimizations) {
+        CaseIdSet matchingCases = performSingleCaseIndexQuery(firstKey, optimizations);
+        while (matchingCases != null && !matchingCases.isEmpty() && !optimizations.isEmpty() &&
+                isCaseIndexLookup(optimizations.elementAt(0))) {
+            matchingCases = matchingCases.intersect(
+                    performSingleCaseIndexQuery(optimizations.elementAt(0).getKey(), optimizations));
+        }
+        return matchingCases;
+    }
+
+    private static boolean isCaseIndexLookup(PredicateProfile profile) {
+        return profile.getKey().startsWith(Case.INDEX_CASE_INDEX_PRE) &&
+                (profile instanceof IndexedValueLookup || profile instanceof IndexedSetMemberLookup);
+    }
+
+    private CaseIdSet performSingleCaseIndexQuery(String firstKey, Vector<PredicateProfile> optimizations) {
         //CTS - March 9, 2015 - Introduced a small cache for child index queries here because they
         //are a frequent target of bulk operations like graphing which do multiple requests across the
         //same query.
@@ -135,7 +276,7 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
 
         String indexCacheKey = null;
 
-        LinkedHashSet<Integer> matchingCases = null;
+        CaseIdSet matchingCases = null;
 
         if (op instanceof IndexedValueLookup) {
 
@@ -154,11 +295,11 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
                 return mIndexCache.get(indexCacheKey);
             }
 
-            matchingCases = mCaseIndexTable.getCasesMatchingIndex(indexName, value);
+            matchingCases = new CaseIdSet(mCaseIndexTable.getCaseIdsMatchingIndex(indexName, value));
         }
         if (op instanceof IndexedSetMemberLookup) {
             IndexedSetMemberLookup sop = (IndexedSetMemberLookup)op;
-            matchingCases = mCaseIndexTable.getCasesMatchingValueSet(indexName, sop.valueSet);
+            matchingCases = new CaseIdSet(mCaseIndexTable.getCaseIdsMatchingValueSet(indexName, sop.valueSet));
         }
 
         //Clear the most recent index and wipe it, because there is no way it is going to be useful
@@ -195,11 +336,11 @@ public class AndroidCaseInstanceTreeElement extends CaseInstanceTreeElement impl
         //Testing - Don't bother actually seeing whether this fits
         int i = ref.getMultiplicity(1);
         if (i != -1) {
-            Integer val = this.multiplicityIdMapping.get(DataUtil.integer(i));
-            if (val == null) {
+            int id = this.multiplicityIdMapping.getId(i);
+            if (id == -1) {
                 return null;
             } else {
-                return val.toString();
+                return String.valueOf(id);
             }
         }
         return null;
@@ -0,0 +1,43 @@
+package org.commcare.engine.cases;
+
+import org.commcare.cases.query.QueryCache;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Case record ids matching individual casedb predicate clauses, as bitmaps,
+ * kept for the life of a query context so that expressions repeating a
+ * clause (e.g. several counts over the same case type) only fetch its
+ * matches from the database once.
+ */
+public class CaseClauseMatchCache implements QueryCache {
+    private final HashMap<String, BitSet> clauseMatches = new HashMap<>();
+    private int hitCount;
+
+    public BitSet get(String clauseKey) {
+        BitSet matches = clauseMatches.get(clauseKey);
+        if (matches != null) {
+            hitCount++;
+        }
+        return matches;
+    }
+
+    public void put(String clauseKey, BitSet matches) {
+        clauseMatches.put(clauseKey, matches);
+    }
+
+    /**
+     * @return The number of clauses whose matches are cached
+     */
+    public int size() {
+        return clauseMatches.size();
+    }
+
+    /**
+     * @return How many lookups were answered from the cache
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+}
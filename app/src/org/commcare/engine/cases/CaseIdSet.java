@@ -0,0 +1,76 @@
+package org.commcare.engine.cases;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of case record ids held as a sorted int array, so that
+ * cached query results cost four bytes per id rather than a boxed Integer
+ * and a hash entry each. Membership is a binary search and two sets are
+ * intersected with a single merge pass.
+ */
+class CaseIdSet extends AbstractSet<Integer> {
+    private final int[] ids;
+
+    /**
+     * @param sortedIds Ascending ids without duplicates; not copied
+     */
+    CaseIdSet(int[] sortedIds) {
+        this.ids = sortedIds;
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer)o).intValue());
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= ids.length) {
+                    throw new NoSuchElementException();
+                }
+                return ids[next++];
+            }
+        };
+    }
+
+    public CaseIdSet intersect(CaseIdSet other) {
+        int[] a = ids;
+        int[] b = other.ids;
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return new CaseIdSet(count == result.length ? result : Arrays.copyOf(result, count));
+    }
+}
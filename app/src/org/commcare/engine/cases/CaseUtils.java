@@ -12,6 +12,7 @@ import org.commcare.cases.util.CasePurgeFilter;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.models.database.SqlStorageIterator;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.modern.engine.cases.CaseIndexTable;
 import org.commcare.modern.util.Pair;
 import org.commcare.util.LogTypes;
@@ -131,6 +132,7 @@ public class CaseUtils {
             for (int recordId : casesRemoved) {
                 indexTable.clearCaseIndices(recordId);
             }
+            new CaseGeoIndexTable(db).clearCaseIndices(casesRemoved);
 
 
             SqlStorage<Ledger> stockStorage = CommCareApplication.instance().getUserStorage(Ledger.STORAGE_KEY, Ledger.class);
@@ -0,0 +1,94 @@
+package org.commcare.engine.cases;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Maps the multiplicity of each case element to its record id. Case
+ * elements are numbered densely from zero as they're loaded, so the mapping
+ * is stored as a single int list indexed by multiplicity rather than a
+ * hashtable of boxed keys and values.
+ *
+ * Exposed as a read-only Map for the query handlers that expect one; values
+ * are only boxed when they're read.
+ */
+class MultiplicityIdMap extends AbstractMap<Integer, Integer> {
+    private final IntArrayList ids = new IntArrayList();
+
+    /**
+     * Record the id of the element with the next multiplicity
+     */
+    synchronized void append(int recordId) {
+        ids.add(recordId);
+    }
+
+    /**
+     * @return The record id for a multiplicity, or -1 if there's no such
+     * element
+     */
+    synchronized int getId(int multiplicity) {
+        if (multiplicity < 0 || multiplicity >= ids.size()) {
+            return -1;
+        }
+        return ids.get(multiplicity);
+    }
+
+    synchronized void trimToSize() {
+        ids.trimToSize();
+    }
+
+    @Override
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && getId((Integer)key) != -1;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int id = getId((Integer)key);
+        return id == -1 ? null : id;
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public int size() {
+                return MultiplicityIdMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new Iterator<Entry<Integer, Integer>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size();
+                    }
+
+                    @Override
+                    public Entry<Integer, Integer> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int multiplicity = next++;
+                        return new SimpleImmutableEntry<>(multiplicity, getId(multiplicity));
+                    }
+                };
+            }
+        };
+    }
+}
@@ -51,6 +51,17 @@ public class JavaHttpReference implements Reference {
         }
     }
 
+    /**
+     * Request the bytes of this reference from the given offset on, for
+     * resuming an interrupted download
+     *
+     * @return The server's response; a 206 if the range was honored, or a
+     * 200 with the full body if it wasn't
+     */
+    public Response<ResponseBody> getRangeResponse(long offset) throws IOException {
+        return generator.rangedGet(uri, offset);
+    }
+
     @Override
     public String getURI() {
         return uri;
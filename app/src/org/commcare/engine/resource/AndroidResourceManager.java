@@ -79,11 +79,11 @@ public class AndroidResourceManager extends ResourceManager {
 
                 if (updateNotNewer(getMasterProfile())) {
                     Logger.log(LogTypes.TYPE_RESOURCES, "App Resources up to Date");
-                    upgradeTable.clearUpgrade(platform);
+                    clearUpgrade();
                     return AppInstallStatus.UpToDate;
                 }
 
-                prepareUpgradeResources();
+                prepareUpgradeResourcesWithPrefetch();
             } catch (InstallCancelledException e) {
                 // The user cancelled the upgrade check process. The calling task
                 // should have caught and handled the cancellation
@@ -94,6 +94,47 @@ public class AndroidResourceManager extends ResourceManager {
         }
     }
 
+    /**
+     * Prepare the upgrade table while its media is downloaded in parallel
+     * ahead of the install loop. Downloads are kept for a retry if staging
+     * fails and dropped once the update is staged.
+     */
+    private void prepareUpgradeResourcesWithPrefetch()
+            throws UnfullfilledRequirementsException,
+            UnresolvedResourceException,
+            InstallCancelledException {
+        AndroidCommCarePlatform androidPlatform = (AndroidCommCarePlatform)platform;
+        MediaResourcePrefetcher prefetcher =
+                new MediaResourcePrefetcher(MediaResourcePrefetcher.getStagingDir(app));
+        androidPlatform.setMediaPrefetcher(prefetcher);
+        try {
+            prepareUpgradeResources();
+        } finally {
+            androidPlatform.setMediaPrefetcher(null);
+            prefetcher.shutdown();
+        }
+        MediaResourcePrefetcher.discardStagedDownloads(app);
+    }
+
+    /**
+     * Prefetch the media of suites as they're added to the upgrade table
+     */
+    private void prefetchNewMedia(ResourceTable table) {
+        AndroidCommCarePlatform androidPlatform = (AndroidCommCarePlatform)platform;
+        MediaResourcePrefetcher prefetcher = androidPlatform.getMediaPrefetcher();
+        if (prefetcher != null) {
+            prefetcher.prefetchMediaInTable(table, androidPlatform.getGlobalResourceTable(), profileRef);
+        }
+    }
+
+    /**
+     * Clear the upgrade table along with any media downloaded for it
+     */
+    private void clearUpgrade() {
+        upgradeTable.clearUpgrade(platform);
+        MediaResourcePrefetcher.discardStagedDownloads(app);
+    }
+
     /**
      * Load the latest profile into the upgrade table. Clears the upgrade table
      * if it's partially populated with an out-of-date version.
@@ -109,6 +150,7 @@ public class AndroidResourceManager extends ResourceManager {
             Log.i(TAG, "Clearing upgrade table because resource downloads " +
                     "failed too many times or started too long ago");
             upgradeTable.destroy();
+            MediaResourcePrefetcher.discardStagedDownloads(app);
             updateStats.resetStats(app);
         }
 
@@ -139,6 +181,8 @@ public class AndroidResourceManager extends ResourceManager {
 
         if (tempProfile != null && tempProfile.isNewer(upgradeProfile)) {
             upgradeTable.destroy();
+            // downloads staged for the superseded update may not match the new one
+            MediaResourcePrefetcher.discardStagedDownloads(app);
             tempUpgradeTable.copyToTable(upgradeTable);
         }
 
@@ -155,9 +199,25 @@ public class AndroidResourceManager extends ResourceManager {
      *                       launching process was cancelled
      */
     @Override
-    public void setUpgradeListeners(TableStateListener tableListener,
+    public void setUpgradeListeners(final TableStateListener tableListener,
                                     InstallCancelled cancelCheckker) {
-        super.setUpgradeListeners(tableListener, cancelCheckker);
+        super.setUpgradeListeners(new TableStateListener() {
+            @Override
+            public void compoundResourceAdded(ResourceTable table) {
+                prefetchNewMedia(table);
+                tableListener.compoundResourceAdded(table);
+            }
+
+            @Override
+            public void simpleResourceAdded() {
+                tableListener.simpleResourceAdded();
+            }
+
+            @Override
+            public void incrementProgress(int complete, int total) {
+                tableListener.incrementProgress(complete, total);
+            }
+        }, cancelCheckker);
 
         tempUpgradeTable.setStateListener(tableListener);
         tempUpgradeTable.setInstallCancellationChecker(cancelCheckker);
@@ -205,7 +265,7 @@ public class AndroidResourceManager extends ResourceManager {
         updateStats.registerUpdateException(new Exception(result.toString()));
 
         if (!result.canReusePartialUpdateTable()) {
-            upgradeTable.clearUpgrade(platform);
+            clearUpgrade();
         }
 
         retryUpdateOrGiveUp(ctx, isAutoUpdate);
@@ -222,7 +282,7 @@ public class AndroidResourceManager extends ResourceManager {
                 ResourceInstallUtils.recordAutoUpdateCompletion(app);
             }
 
-            upgradeTable.clearUpgrade(platform);
+            clearUpgrade();
         } else {
             Logger.log(LogTypes.TYPE_RESOURCES, "Retrying auto-update");
             UpdateStats.saveStatsPersistently(app, updateStats);
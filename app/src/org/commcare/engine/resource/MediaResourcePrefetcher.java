@@ -0,0 +1,349 @@
+package org.commcare.engine.resource;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.commcare.CommCareApp;
+import org.commcare.android.resource.installers.MediaFileAndroidInstaller;
+import org.commcare.engine.references.JavaHttpReference;
+import org.commcare.resources.ResourceManager;
+import org.commcare.resources.model.Resource;
+import org.commcare.resources.model.ResourceLocation;
+import org.commcare.resources.model.ResourceTable;
+import org.commcare.util.LogTypes;
+import org.commcare.utils.FileUtil;
+import org.commcare.utils.GlobalConstants;
+import org.javarosa.core.io.StreamsUtil;
+import org.javarosa.core.reference.InvalidReferenceException;
+import org.javarosa.core.reference.Reference;
+import org.javarosa.core.reference.ReferenceManager;
+import org.javarosa.core.services.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Downloads the multimedia of an app install or update over a few
+ * connections at once, ahead of the resource table's install loop, which
+ * otherwise fetches each file in turn as it reaches it. The media installer
+ * then takes the downloaded file instead of fetching it again; see
+ * {@link #takeDownload}.
+ *
+ * Downloads are staged in the app's prefetch folder. An interrupted download
+ * leaves its partial file behind and the next attempt asks the server for the
+ * remaining bytes only. A completed download is recorded with the MD5 of its
+ * contents, and a later attempt reuses it without a request as long as the
+ * file still matches. Staged downloads belong to the update being prepared,
+ * so they're discarded whenever the upgrade table is.
+ */
+public class MediaResourcePrefetcher {
+    private static final String TAG = MediaResourcePrefetcher.class.getSimpleName();
+
+    private static final String PARTIAL_EXT = ".part";
+    private static final String CHECKSUM_EXT = ".md5";
+    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
+    /**
+     * Source of the bytes of a remote file, from a given offset on
+     */
+    public interface RangedSource {
+        /**
+         * @return A 206 with the bytes from the offset on, or a 200 with the
+         * whole file if the range isn't supported
+         */
+        Response<ResponseBody> getRangeResponse(long offset) throws IOException;
+    }
+
+    private final File stagingDir;
+    private final ExecutorService pool = Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS);
+    private final HashMap<String, Future<File>> downloads = new HashMap<>();
+    private final HashSet<String> consideredResources = new HashSet<>();
+
+    private int fetchedCount;
+    private int resumedCount;
+    private int reusedCount;
+    private long bytesFetched;
+    private long fetchMillis;
+
+    public MediaResourcePrefetcher(File stagingDir) {
+        this.stagingDir = stagingDir;
+        stagingDir.mkdirs();
+    }
+
+    public static File getStagingDir(CommCareApp app) {
+        return new File(app.fsPath(GlobalConstants.FILE_CC_PREFETCH));
+    }
+
+    /**
+     * Remove all staged and partial downloads, e.g. when the upgrade table
+     * they were fetched for is cleared
+     */
+    public static void discardStagedDownloads(CommCareApp app) {
+        FileUtil.deleteFileOrDir(getStagingDir(app));
+    }
+
+    /**
+     * Start downloading the remote media resources in the table that haven't
+     * been installed yet. Resources already considered by an earlier call are
+     * skipped, so this can be called each time the table grows.
+     *
+     * @param masterTable Table of the installed app, if any; media whose
+     *                    installed copy is as new as the resource isn't
+     *                    fetched since the install reuses the installed copy
+     * @param contextRef  Reference that relative resource locations are
+     *                    resolved against, i.e. the profile's
+     */
+    public void prefetchMediaInTable(ResourceTable table, ResourceTable masterTable,
+                                     String contextRef) {
+        for (Resource resource : ResourceManager.getResourceListFromProfile(table)) {
+            if (resource.getStatus() != Resource.RESOURCE_STATUS_UNINITIALIZED ||
+                    !(resource.getInstaller() instanceof MediaFileAndroidInstaller) ||
+                    !consideredResources.add(resource.getResourceId())) {
+                continue;
+            }
+            if (masterTable != null) {
+                Resource installed = masterTable.getResourceWithId(resource.getResourceId());
+                if (installed != null && !resource.isNewer(installed)) {
+                    continue;
+                }
+            }
+            JavaHttpReference remoteRef = getRemoteReference(resource, contextRef);
+            if (remoteRef != null) {
+                prefetch(remoteRef.getURI(), remoteRef::getRangeResponse);
+            }
+        }
+    }
+
+    private static JavaHttpReference getRemoteReference(Resource resource, String contextRef) {
+        for (ResourceLocation location : resource.getLocations()) {
+            if (location.getAuthority() != Resource.RESOURCE_AUTHORITY_REMOTE) {
+                continue;
+            }
+            try {
+                Reference ref = location.isRelative() ?
+                        ReferenceManager.instance().DeriveReference(location.getLocation(), contextRef) :
+                        ReferenceManager.instance().DeriveReference(location.getLocation());
+                if (ref instanceof JavaHttpReference) {
+                    return (JavaHttpReference)ref;
+                }
+            } catch (InvalidReferenceException e) {
+                // the installer will report this when it reaches the resource
+            }
+        }
+        return null;
+    }
+
+    public synchronized void prefetch(final String uri, final RangedSource source) {
+        if (pool.isShutdown() || downloads.containsKey(uri)) {
+            return;
+        }
+        downloads.put(uri, pool.submit(() -> fetch(uri, source)));
+    }
+
+    /**
+     * Wait for the prefetch of the given uri to finish
+     *
+     * @return The downloaded file for the caller to move into place, or null
+     * if the uri wasn't prefetched or its download failed, in which case the
+     * caller should fetch it itself
+     */
+    public File takeDownload(String uri) {
+        Future<File> download;
+        synchronized (this) {
+            download = downloads.remove(uri);
+        }
+        if (download == null) {
+            return null;
+        }
+        try {
+            return download.get();
+        } catch (InterruptedException | CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Prefetch of " + uri + " failed: " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stop all downloads in flight, keeping what they've fetched so far for
+     * the next attempt, and log the totals
+     */
+    public void shutdown() {
+        synchronized (this) {
+            pool.shutdownNow();
+            downloads.clear();
+        }
+        logSummary();
+    }
+
+    private File fetch(String uri, RangedSource source) throws IOException {
+        String key = getKey(uri);
+        File complete = new File(stagingDir, key);
+        File checksumFile = new File(stagingDir, key + CHECKSUM_EXT);
+        if (isVerifiedDownload(complete, checksumFile)) {
+            synchronized (this) {
+                reusedCount++;
+            }
+            return complete;
+        }
+
+        File partial = new File(stagingDir, key + PARTIAL_EXT);
+        long offset = partial.length();
+        long start = SystemClock.elapsedRealtime();
+        Response<ResponseBody> response = source.getRangeResponse(offset);
+        if (response.code() == 416 && offset > 0) {
+            // the partial file is stale, e.g. the file changed on the server
+            partial.delete();
+            offset = 0;
+            response = source.getRangeResponse(0);
+        }
+        boolean resumed = offset > 0 && response.code() == HttpURLConnection.HTTP_PARTIAL;
+        if (!response.isSuccessful()) {
+            throw new IOException("Server responded with " + response.code());
+        }
+        if (!resumed) {
+            offset = 0;
+        }
+
+        ResponseBody body = response.body();
+        long expectedLength = body.contentLength();
+        long received = writeToFile(body.byteStream(), partial, resumed);
+        if (expectedLength != -1 && received != expectedLength) {
+            throw new IOException("Download ended after " + received + " of " +
+                    expectedLength + " bytes");
+        }
+        if (!partial.renameTo(complete)) {
+            throw new IOException("Unable to stage download at " + complete);
+        }
+        writeChecksum(checksumFile, FileUtil.getMd5Hash(complete));
+
+        recordThroughput(uri, received, offset, SystemClock.elapsedRealtime() - start);
+        return complete;
+    }
+
+    /**
+     * Copies the stream to the end of the file, stopping early if the
+     * prefetcher is shut down. Whatever was written is kept either way.
+     */
+    private static long writeToFile(InputStream in, File file, boolean append) throws IOException {
+        OutputStream out = null;
+        long written = 0;
+        try {
+            out = new FileOutputStream(file, append);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                written += read;
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Prefetch stopped");
+                }
+            }
+        } finally {
+            StreamsUtil.closeStream(in);
+            StreamsUtil.closeStream(out);
+        }
+        return written;
+    }
+
+    private static boolean isVerifiedDownload(File download, File checksumFile) {
+        if (!download.exists() || !checksumFile.exists()) {
+            return false;
+        }
+        String recorded = readChecksum(checksumFile);
+        if (recorded != null && recorded.equals(FileUtil.getMd5Hash(download))) {
+            return true;
+        }
+        download.delete();
+        checksumFile.delete();
+        return false;
+    }
+
+    private static String readChecksum(File checksumFile) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(checksumFile);
+            return new String(StreamsUtil.inputStreamToByteArray(in), "UTF-8").trim();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            StreamsUtil.closeStream(in);
+        }
+    }
+
+    private static void writeChecksum(File checksumFile, String checksum) throws IOException {
+        if (checksum == null) {
+            throw new IOException("Unable to checksum " + checksumFile);
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(checksumFile);
+            out.write(checksum.getBytes("UTF-8"));
+        } finally {
+            StreamsUtil.closeStream(out);
+        }
+    }
+
+    private void recordThroughput(String uri, long bytes, long resumedAt, long elapsedMillis) {
+        elapsedMillis = Math.max(1, elapsedMillis);
+        Log.i(TAG, String.format(Locale.US, "Fetched %s: %d bytes in %d ms (%.1f KB/s)%s",
+                uri, bytes, elapsedMillis, bytes / 1.024 / elapsedMillis,
+                resumedAt > 0 ? ", resumed at byte " + resumedAt : ""));
+        synchronized (this) {
+            fetchedCount++;
+            if (resumedAt > 0) {
+                resumedCount++;
+            }
+            bytesFetched += bytes;
+            fetchMillis += elapsedMillis;
+        }
+    }
+
+    private synchronized void logSummary() {
+        if (fetchedCount == 0 && reusedCount == 0) {
+            return;
+        }
+        // per-download rates summed over parallel downloads, not wall clock
+        Logger.log(LogTypes.TYPE_RESOURCES, String.format(Locale.US,
+                "Prefetched %d media files (%d resumed), %d KB at %.1f KB/s per download; " +
+                        "reused %d verified earlier downloads",
+                fetchedCount, resumedCount, bytesFetched / 1024,
+                bytesFetched / 1.024 / Math.max(1, fetchMillis), reusedCount));
+    }
+
+    private static String getKey(String uri) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] hash = digest.digest(uri.getBytes());
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16));
+            key.append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+}
@@ -99,6 +99,9 @@ public class ResourceInstallUtils {
         String authRef = profile.getAuthReference();
 
         updateProfileRef(currentApp.getAppPreferences(), authRef, profileRef);
+
+        // Spare the first entry of each new or updated form from parsing its XML
+        CommCareApplication.instance().prewarmFormDefCache(currentApp);
     }
 
     public static void updateProfileRef(SharedPreferences prefs,
@@ -100,4 +100,9 @@ public class EntitySubnodeDetailFragment extends EntityDetailFragment implements
     public void deliverLoadError(Exception e) {
         ((CommCareActivity)getActivity()).displayCaseListLoadException(e);
     }
+
+    @Override
+    public void deliverLoadProgress(int entitiesPrepared, int totalEntities) {
+        // subnode lists are small enough that progress isn't shown
+    }
 }
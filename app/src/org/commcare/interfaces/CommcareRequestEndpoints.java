@@ -33,5 +33,12 @@ public interface CommcareRequestEndpoints {
      */
     Response<ResponseBody> simpleGet(String uri, Map<String, String> httpParams) throws IOException;
 
+    /**
+     * Synchronous GET request for the bytes of a resource starting at the
+     * given offset. Servers that don't support ranges respond with the whole
+     * body and a 200 rather than a 206.
+     */
+    Response<ResponseBody> rangedGet(String uri, long offset) throws IOException;
+
     void abortCurrentRequest();
 }
@@ -13,12 +13,13 @@ import java.io.IOException;
  * @author ctsims
  */
 public class AndroidLogSerializer <T extends AndroidLogEntry>
-        extends StreamLogSerializer implements DeviceReportElement {
+        extends StreamLogSerializer implements PagedDeviceReportElement {
 
     private XmlSerializer serializer;
 
     private AndroidLogEntry singleEntry;
     private SqlStorage<T> logStorage;
+    private LogReportPager<T> pager;
 
     public AndroidLogSerializer(AndroidLogEntry entry) {
         this.singleEntry = entry;
@@ -66,8 +67,9 @@ public class AndroidLogSerializer <T extends AndroidLogEntry>
         try {
             if (singleEntry != null) {
                 serializeLog(singleEntry.getID(), singleEntry);
-            }
-            else {
+            } else if (pager != null) {
+                pager.writeNextReport(this::serializeLog);
+            } else {
                 for (AndroidLogEntry entry : logStorage) {
                     serializeLog(entry.getID(), entry);
                 }
@@ -76,4 +78,19 @@ public class AndroidLogSerializer <T extends AndroidLogEntry>
             serializer.endTag(DeviceReportWriter.XMLNS, "log_subreport");
         }
     }
+
+    @Override
+    public void enablePaging(int maxEntriesPerReport) {
+        pager = new LogReportPager<>(logStorage, maxEntriesPerReport);
+    }
+
+    @Override
+    public boolean hasMoreEntries() {
+        return pager != null && pager.hasMoreEntries();
+    }
+
+    @Override
+    public void purgeWrittenEntries() {
+        pager.purgeWritten();
+    }
 }
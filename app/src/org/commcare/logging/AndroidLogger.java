@@ -21,7 +21,7 @@ public class AndroidLogger implements ILogger {
     //TODO: Currently assumes that it gets back iterated records in RecordID order.
     //when serializing a limited number of records then clearing
 
-    private final SqlStorage<AndroidLogEntry> storage;
+    protected final SqlStorage<AndroidLogEntry> storage;
 
 
     public AndroidLogger(SqlStorage<AndroidLogEntry> storage) {
@@ -0,0 +1,182 @@
+package org.commcare.logging;
+
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.android.javarosa.AndroidLogEntry;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.util.LogTypes;
+import org.javarosa.core.log.IFullLogSerializer;
+import org.javarosa.core.log.StreamLogSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logger that queues entries in memory and writes them to storage from a
+ * background thread, one transaction per batch, rather than making every
+ * log call pay for its own database write.
+ *
+ * Entries are written every few seconds, as soon as the buffer starts
+ * filling up, on panic() and halt(), and when requested (e.g. when the app
+ * is backgrounded). If logging outpaces the writes, the oldest
+ * entries are dropped and a note of how many were lost is logged instead.
+ */
+public class BufferedAndroidLogger extends AndroidLogger {
+    private static final String TAG = BufferedAndroidLogger.class.getSimpleName();
+
+    private static final int BUFFER_CAPACITY = 1024;
+    private static final int FLUSH_THRESHOLD = BUFFER_CAPACITY / 4;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    private final DropOldestRingBuffer<AndroidLogEntry> buffer;
+    private final int flushThreshold;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Object flushLock = new Object();
+    private long droppedCountReported;
+    private volatile boolean halted;
+
+    public BufferedAndroidLogger(SqlStorage<AndroidLogEntry> storage) {
+        this(storage, BUFFER_CAPACITY, FLUSH_THRESHOLD, FLUSH_INTERVAL_MS);
+    }
+
+    BufferedAndroidLogger(SqlStorage<AndroidLogEntry> storage, int capacity,
+                          int flushThreshold, long flushIntervalMs) {
+        super(storage);
+        this.buffer = new DropOldestRingBuffer<>(capacity);
+        this.flushThreshold = flushThreshold;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void log(String type, String message, Date logDate) {
+        if (halted) {
+            super.log(type, message, logDate);
+            return;
+        }
+        int pending = buffer.add(new AndroidLogEntry(type, message, logDate));
+        if (halted) {
+            // halted while adding, after its final flush
+            flushQuietly();
+        } else if (pending >= flushThreshold) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Have the background writer flush the buffer as soon as it can
+     */
+    public void requestFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushScheduled.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // halted meanwhile, which flushes everything buffered
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Write all buffered entries to storage in a single transaction
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<AndroidLogEntry> batch = new ArrayList<>();
+            buffer.drainTo(batch);
+            long droppedCount = buffer.getDroppedCount();
+            if (droppedCount > droppedCountReported) {
+                batch.add(new AndroidLogEntry(LogTypes.TYPE_MAINTENANCE,
+                        "Log buffer overflowed, dropped " + (droppedCount - droppedCountReported) +
+                                " entries", new Date()));
+                droppedCountReported = droppedCount;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            SQLiteDatabase db = storage.getAccessLock();
+            db.beginTransaction();
+            try {
+                for (AndroidLogEntry entry : batch) {
+                    storage.write(entry);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // can't report through Logger without recursing into this logger;
+            // most likely the storage was closed out from under us
+            Log.e(TAG, "Unable to write buffered log entries", e);
+        }
+    }
+
+    public long getDroppedEntryCount() {
+        return buffer.getDroppedCount();
+    }
+
+    @Override
+    public <T> T serializeLogs(IFullLogSerializer<T> serializer) {
+        flushQuietly();
+        return super.serializeLogs(serializer);
+    }
+
+    @Override
+    public void serializeLogs(StreamLogSerializer serializer) throws IOException {
+        flushQuietly();
+        super.serializeLogs(serializer);
+    }
+
+    @Override
+    public void serializeLogs(StreamLogSerializer serializer, int limit) throws IOException {
+        flushQuietly();
+        super.serializeLogs(serializer, limit);
+    }
+
+    @Override
+    public int logSize() {
+        flushQuietly();
+        return super.logSize();
+    }
+
+    @Override
+    public void panic() {
+        flushQuietly();
+    }
+
+    /**
+     * Flush and stop the background writer; anything logged afterwards is
+     * written straight to storage
+     */
+    @Override
+    public void halt() {
+        halted = true;
+        flusher.shutdown();
+        flushQuietly();
+    }
+}
@@ -0,0 +1,105 @@
+package org.commcare.logging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity buffer that any number of threads can add to without
+ * locking, drained by one consumer at a time. When producers get more than
+ * a full buffer ahead of the consumer, the oldest items are overwritten and
+ * counted as dropped.
+ */
+class DropOldestRingBuffer<T> {
+
+    /**
+     * Items are published together with their sequence number, so the
+     * consumer can tell a slot that hasn't been written yet from one that
+     * has since been overwritten
+     */
+    private static class Slot<T> {
+        final long sequence;
+        final T item;
+
+        Slot(long sequence, T item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long readSequence;
+
+    /**
+     * @param capacity Must be a power of two
+     */
+    DropOldestRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @return Roughly how many items are waiting to be drained, including
+     * this one
+     */
+    int add(T item) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set(indexOf(sequence), new Slot<>(sequence, item));
+        return (int)Math.min(capacity, sequence + 1 - readSequence);
+    }
+
+    /**
+     * Move all published items, oldest first, into the given list
+     *
+     * @return The number of items drained
+     */
+    synchronized int drainTo(List<T> out) {
+        long end = nextSequence.get();
+        long sequence = readSequence;
+        if (end - sequence > capacity) {
+            droppedCount.addAndGet(end - capacity - sequence);
+            sequence = end - capacity;
+        }
+
+        int drained = 0;
+        while (sequence < end) {
+            int index = indexOf(sequence);
+            Slot<T> slot = slots.get(index);
+            if (slot == null || slot.sequence < sequence) {
+                // a producer has claimed this slot but not written it yet;
+                // pick it and anything after it up on the next drain
+                break;
+            }
+            if (slot.sequence == sequence) {
+                out.add(slot.item);
+                drained++;
+                // release the item, unless a producer already lapped us
+                slots.compareAndSet(index, slot, null);
+            } else {
+                droppedCount.incrementAndGet();
+            }
+            sequence++;
+        }
+        readSequence = sequence;
+        return drained;
+    }
+
+    /**
+     * @return Total number of items overwritten before they could be drained
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private int indexOf(long sequence) {
+        return (int)(sequence & mask);
+    }
+}
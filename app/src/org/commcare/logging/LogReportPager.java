@@ -0,0 +1,82 @@
+package org.commcare.logging;
+
+import org.commcare.models.database.SqlStorage;
+import org.javarosa.core.services.storage.Persistable;
+
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Walks a log table in id order, a bounded number of entries per device
+ * report, so that a large backlog of logs is split across several reports
+ * instead of being serialized into one. Entries are read a page at a time
+ * and can be purged by id range once the report holding them is saved.
+ *
+ * @param <T> The log entry type
+ */
+public class LogReportPager<T extends Persistable> {
+    private static final int PAGE_SIZE = 500;
+
+    /**
+     * Serializes a single entry into the current report
+     */
+    public interface EntryWriter<T> {
+        void write(T entry) throws IOException;
+    }
+
+    private final SqlStorage<T> storage;
+    private final int maxEntriesPerReport;
+    private int writtenThroughId = -1;
+    private int purgedThroughId = -1;
+    private boolean exhausted;
+
+    public LogReportPager(SqlStorage<T> storage, int maxEntriesPerReport) {
+        this.storage = storage;
+        this.maxEntriesPerReport = maxEntriesPerReport;
+    }
+
+    /**
+     * Write the entries following those written into the previous report,
+     * up to the per-report maximum
+     *
+     * @return The number of entries written
+     */
+    public int writeNextReport(EntryWriter<T> writer) throws IOException {
+        int written = 0;
+        while (!exhausted && written < maxEntriesPerReport) {
+            int remaining = maxEntriesPerReport - written;
+            int requested = Math.min(PAGE_SIZE, remaining);
+            // On the report's last page, read one entry past it so that a
+            // table ending exactly there is seen as exhausted now, instead of
+            // by writing an empty report next
+            int toRead = requested == remaining ? requested + 1 : requested;
+            Vector<T> page = storage.readPageAfterId(writtenThroughId, toRead);
+            int toWrite = Math.min(page.size(), requested);
+            for (int i = 0; i < toWrite; i++) {
+                T entry = page.get(i);
+                writer.write(entry);
+                writtenThroughId = entry.getID();
+                written++;
+            }
+            if (page.size() < toRead) {
+                exhausted = true;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return False once every entry in the table has been written
+     */
+    public boolean hasMoreEntries() {
+        return !exhausted;
+    }
+
+    /**
+     * Remove every entry written so far from storage
+     */
+    public void purgeWritten() {
+        storage.removeIdRange(purgedThroughId, writtenThroughId);
+        purgedThroughId = writtenThroughId;
+    }
+}
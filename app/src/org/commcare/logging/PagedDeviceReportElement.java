@@ -0,0 +1,23 @@
+package org.commcare.logging;
+
+/**
+ * A device report element backed by a log table, whose entries can be
+ * spread over several reports rather than all written into one
+ */
+public interface PagedDeviceReportElement extends DeviceReportElement {
+
+    /**
+     * Write at most this many entries into each report from here on
+     */
+    void enablePaging(int maxEntriesPerReport);
+
+    /**
+     * @return True if entries remain that haven't been written into a report
+     */
+    boolean hasMoreEntries();
+
+    /**
+     * Remove the entries written into reports so far from storage
+     */
+    void purgeWrittenEntries();
+}
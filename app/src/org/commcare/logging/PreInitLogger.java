@@ -23,11 +23,11 @@ public class PreInitLogger implements ILogger {
     }
 
     @Override
-    public void log(String type, String message, Date logDate) {
+    public synchronized void log(String type, String message, Date logDate) {
         logs.add(new AndroidLogEntry(type, message, logDate));
     }
 
-    public void dumpToNewLogger() {
+    public synchronized void dumpToNewLogger() {
         for (AndroidLogEntry log : logs) {
             if (Logger.instance() != null) {
                 Logger.instance().log(log.getType(), log.getMessage(), log.getTime());
@@ -15,9 +15,10 @@ import java.io.IOException;
  */
 public class XPathErrorSerializer
         extends StreamLogSerializer
-        implements DeviceReportElement {
+        implements PagedDeviceReportElement {
     private final SqlStorage<XPathErrorEntry> errorLogStorage;
     private XmlSerializer serializer;
+    private LogReportPager<XPathErrorEntry> pager;
 
     /**
      * Report format version for ability to dispatch different parser on server
@@ -37,14 +38,33 @@ public class XPathErrorSerializer
         serializer.attribute(null, "version", ERROR_FORMAT_VERSION + "");
 
         try {
-            for (XPathErrorEntry entry : errorLogStorage) {
-                serializeLog(entry.getID(), entry);
+            if (pager != null) {
+                pager.writeNextReport(this::serializeLog);
+            } else {
+                for (XPathErrorEntry entry : errorLogStorage) {
+                    serializeLog(entry.getID(), entry);
+                }
             }
         } finally {
             serializer.endTag(DeviceReportWriter.XMLNS, "user_error_subreport");
         }
     }
 
+    @Override
+    public void enablePaging(int maxEntriesPerReport) {
+        pager = new LogReportPager<>(errorLogStorage, maxEntriesPerReport);
+    }
+
+    @Override
+    public boolean hasMoreEntries() {
+        return pager != null && pager.hasMoreEntries();
+    }
+
+    @Override
+    public void purgeWrittenEntries() {
+        pager.purgeWritten();
+    }
+
     @Override
     protected void serializeLog(LogEntry entry) throws IOException {
         final XPathErrorEntry errorEntry = (XPathErrorEntry)entry;
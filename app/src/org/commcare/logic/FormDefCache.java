@@ -0,0 +1,336 @@
+package org.commcare.logic;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import org.commcare.CommCareApp;
+import org.commcare.CommCareApplication;
+import org.commcare.android.database.app.models.FormDefRecord;
+import org.commcare.android.logging.ForceCloseLogger;
+import org.commcare.android.resource.installers.XFormAndroidInstaller;
+import org.commcare.dalvik.BuildConfig;
+import org.commcare.engine.extensions.XFormExtensionUtils;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.preferences.DeveloperPreferences;
+import org.commcare.util.LogTypes;
+import org.commcare.utils.FileUtil;
+import org.commcare.utils.GlobalConstants;
+import org.javarosa.core.io.StreamsUtil;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.services.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Cache of serialized FormDefs, keyed by the md5 hash of the form's XML so
+ * that a new form version never picks up a stale entry.
+ *
+ * Entries carry a header with the CommCare build and app version they were
+ * written by, the payload length and a CRC32 checksum, which are verified on
+ * read; entries from other versions, or that fail verification, are deleted. Writes go
+ * to a temporary file that is renamed into place, so readers never see a
+ * partially written entry. The cache is kept under a size and entry limit by
+ * evicting the least recently used entries.
+ */
+public class FormDefCache {
+    private static final String TAG = FormDefCache.class.getSimpleName();
+
+    private static final String ENTRY_SUFFIX = ".formdef";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Distinguishes versioned, checksummed entries from the entries written
+    // by earlier versions, which are discarded on read
+    private static final int ENTRY_MAGIC = 0x46444332;
+
+    private static final long MAX_CACHE_BYTES = 64 * 1024 * 1024;
+    static final int MAX_ENTRIES = 300;
+
+    // Form parsing relies on static parser registration, so parses from
+    // form entry and prewarming shouldn't interleave
+    private static final Object parseLock = new Object();
+
+    private static final Object evictionLock = new Object();
+    private static final Object prewarmLock = new Object();
+    private static Thread prewarmThread;
+    private static boolean prewarmRequested;
+
+    private final File cacheDir;
+    private final int buildVersion;
+    private final int appVersion;
+
+    public FormDefCache(CommCareApp app) {
+        this(new File(app.fsPath(GlobalConstants.FILE_CC_CACHE)),
+                BuildConfig.VERSION_CODE, app.getAppRecord().getVersionNumber());
+    }
+
+    /**
+     * @param buildVersion Version of CommCare itself, since serialized forms
+     *                     depend on its model classes
+     * @param appVersion   Version of the app the forms belong to
+     */
+    FormDefCache(File cacheDir, int buildVersion, int appVersion) {
+        this.cacheDir = cacheDir;
+        this.buildVersion = buildVersion;
+        this.appVersion = appVersion;
+    }
+
+    public static String getFormHash(File formXml) {
+        return FileUtil.getMd5Hash(formXml);
+    }
+
+    /**
+     * @return The cached form, or null if there is no valid entry for it
+     */
+    public FormDef read(String formHash, Context context) {
+        File entry = getEntryFile(formHash);
+        if (!entry.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            if (in.readInt() != ENTRY_MAGIC) {
+                throw new IOException("Unrecognized cache entry header");
+            }
+            if (in.readInt() != buildVersion || in.readInt() != appVersion) {
+                throw new IOException("Cache entry written by another version");
+            }
+            long payloadLength = in.readLong();
+            long expectedChecksum = in.readLong();
+            if (payloadLength != entry.length() - getHeaderLength()) {
+                throw new IOException("Cache entry truncated");
+            }
+
+            CheckedInputStream checkedIn = new CheckedInputStream(in, new CRC32());
+            FormDef fd = new FormDef(DeveloperPreferences.useExpressionCachingInForms());
+            fd.readExternal(new DataInputStream(checkedIn),
+                    CommCareApplication.instance().getPrototypeFactory(context));
+            if (checkedIn.getChecksum().getValue() != expectedChecksum) {
+                throw new IOException("Cache entry checksum mismatch");
+            }
+
+            entry.setLastModified(System.currentTimeMillis());
+            return fd;
+        } catch (Throwable e) {
+            Logger.log(LogTypes.TYPE_RESOURCES,
+                    "Discarding unreadable cached form " + entry.getName() + ": " + e.getMessage());
+            StreamsUtil.closeStream(in);
+            in = null;
+            entry.delete();
+            return null;
+        } finally {
+            StreamsUtil.closeStream(in);
+        }
+    }
+
+    private static int getHeaderLength() {
+        // magic, build version, app version, payload length, checksum
+        return 4 + 4 + 4 + 8 + 8;
+    }
+
+    public boolean hasEntry(String formHash) {
+        return getEntryFile(formHash).exists();
+    }
+
+    /**
+     * Serialize the form into the cache, replacing any existing entry, then
+     * evict old entries if the cache has grown past its limits. Must be
+     * called before the form is initialized.
+     */
+    public void write(String formHash, FormDef fd) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        fd.writeExternal(payloadOut);
+        payloadOut.flush();
+        byte[] bytes = payload.toByteArray();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Couldn't create form cache directory " + cacheDir);
+        }
+        File entry = getEntryFile(formHash);
+        File temp = File.createTempFile(formHash, ENTRY_SUFFIX + TEMP_SUFFIX, cacheDir);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt(buildVersion);
+            out.writeInt(appVersion);
+            out.writeLong(bytes.length);
+            out.writeLong(checksum.getValue());
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!temp.renameTo(entry)) {
+                throw new IOException("Couldn't move cache entry into place for " + formHash);
+            }
+        } finally {
+            StreamsUtil.closeStream(out);
+            temp.delete();
+        }
+
+        evict(null);
+    }
+
+    /**
+     * Remove leftover temporary files and bring the cache back under its
+     * limits, dropping the least recently used entries first.
+     *
+     * @param liveHashes If provided, entries for any other form are removed
+     *                   regardless of the cache's size
+     */
+    public void evict(Set<String> liveHashes) {
+        synchronized (evictionLock) {
+            evictEntries(liveHashes);
+        }
+    }
+
+    private void evictEntries(Set<String> liveHashes) {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(ENTRY_SUFFIX + TEMP_SUFFIX) && isStale(file)) {
+                file.delete();
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                String hash = name.substring(0, name.length() - ENTRY_SUFFIX.length());
+                if (liveHashes != null && !liveHashes.contains(hash)) {
+                    file.delete();
+                } else {
+                    entries.add(file);
+                }
+            }
+        }
+
+        File[] byAge = entries.toArray(new File[entries.size()]);
+        Arrays.sort(byAge, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long totalBytes = 0;
+        for (File entry : byAge) {
+            totalBytes += entry.length();
+        }
+        int remaining = byAge.length;
+        for (File entry : byAge) {
+            if (totalBytes <= MAX_CACHE_BYTES && remaining <= MAX_ENTRIES) {
+                break;
+            }
+            totalBytes -= entry.length();
+            remaining--;
+            entry.delete();
+        }
+    }
+
+    /**
+     * Temp files of writes still in progress shouldn't be removed
+     */
+    private static boolean isStale(File tempFile) {
+        return System.currentTimeMillis() - tempFile.lastModified() > 60 * 1000;
+    }
+
+    private File getEntryFile(String formHash) {
+        return new File(cacheDir, formHash + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Parse the form's XML into a FormDef
+     */
+    public static FormDef parseForm(File formXmlFile) {
+        FileInputStream fis;
+        try {
+            fis = new FileInputStream(formXmlFile);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Error reading XForm file", e);
+        }
+        FormDef fd;
+        synchronized (parseLock) {
+            XFormAndroidInstaller.registerAndroidLevelFormParsers();
+            fd = XFormExtensionUtils.getFormFromInputStream(fis);
+        }
+        if (fd == null) {
+            throw new RuntimeException("Error reading XForm file: FormDef is null");
+        }
+        return fd;
+    }
+
+    /**
+     * Serialize all of the app's forms that aren't cached yet on a
+     * background thread, and drop entries for forms the app no longer has,
+     * so that the first form entry after an install or update doesn't pay
+     * for parsing the XML.
+     */
+    public static void prewarmInBackground(final CommCareApp app) {
+        synchronized (prewarmLock) {
+            if (prewarmThread != null && prewarmThread.isAlive()) {
+                prewarmRequested = true;
+                return;
+            }
+            prewarmThread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                boolean rerun;
+                do {
+                    synchronized (prewarmLock) {
+                        prewarmRequested = false;
+                    }
+                    prewarm(app);
+                    synchronized (prewarmLock) {
+                        rerun = prewarmRequested;
+                    }
+                } while (rerun);
+            }, TAG);
+            prewarmThread.start();
+        }
+    }
+
+    private static void prewarm(CommCareApp app) {
+        long start = System.currentTimeMillis();
+        FormDefCache cache = new FormDefCache(app);
+        Set<String> liveHashes = new HashSet<>();
+        int written = 0;
+        try {
+            SqlStorage<FormDefRecord> formDefStorage = app.getStorage(FormDefRecord.class);
+            for (FormDefRecord record : formDefStorage) {
+                File formXml = new File(record.getFilePath());
+                if (!formXml.exists()) {
+                    continue;
+                }
+                String hash = getFormHash(formXml);
+                liveHashes.add(hash);
+                if (!cache.hasEntry(hash)) {
+                    cache.write(hash, parseForm(formXml));
+                    written++;
+                }
+            }
+            cache.evict(liveHashes);
+        } catch (Exception e) {
+            // Forms that weren't prewarmed are cached on first use instead
+            Logger.log(LogTypes.TYPE_RESOURCES,
+                    "Form cache prewarming failed: " + ForceCloseLogger.getStackTrace(e));
+            return;
+        }
+        Log.d(TAG, "Prewarmed " + written + " of " + liveHashes.size() + " forms in " +
+                (System.currentTimeMillis() - start) + "ms");
+    }
+}
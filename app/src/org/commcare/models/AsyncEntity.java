@@ -49,6 +49,11 @@ public class AsyncEntity extends Entity<TreeReference> {
 
     private final EntityStorageCache mEntityStorageCache;
 
+    // Held while evaluating against the entity's context, which shares its
+    // instances and caches with the factory's other entities. Always taken
+    // before the db lock and the object's lock.
+    private final Object mEvaluationLock;
+
     /*
      * the Object's lock. NOTE: _DO NOT LOCK ANY CODE WHICH READS/WRITES THE CACHE
      * UNTIL YOU HAVE A LOCK FOR THE DB!
@@ -65,7 +70,7 @@ public class AsyncEntity extends Entity<TreeReference> {
     public AsyncEntity(DetailField[] fields, EvaluationContext ec,
                        TreeReference t, Hashtable<String, XPathExpression> variables,
                        EntityStorageCache cache, String cacheIndex, String detailId,
-                       String extraKey) {
+                       String extraKey, Object evaluationLock) {
         super(t, extraKey);
 
         this.fields = fields;
@@ -82,36 +87,41 @@ public class AsyncEntity extends Entity<TreeReference> {
         this.mCacheIndex = cacheIndex;
 
         this.mDetailId = detailId;
+        this.mEvaluationLock = evaluationLock;
     }
 
     private void loadVariableContext() {
-        synchronized (mAsyncLock) {
-            if (!mVariableContextLoaded) {
-                //These are actually in an ordered hashtable, so we can't just get the keyset, since it's
-                //in a 1.3 hashtable equivalent
-                for (Enumeration<String> en = mVariableDeclarations.keys(); en.hasMoreElements(); ) {
-                    String key = en.nextElement();
-                    context.setVariable(key, FunctionUtils.unpack(mVariableDeclarations.get(key).eval(context)));
+        synchronized (mEvaluationLock) {
+            synchronized (mAsyncLock) {
+                if (!mVariableContextLoaded) {
+                    //These are actually in an ordered hashtable, so we can't just get the keyset, since it's
+                    //in a 1.3 hashtable equivalent
+                    for (Enumeration<String> en = mVariableDeclarations.keys(); en.hasMoreElements(); ) {
+                        String key = en.nextElement();
+                        context.setVariable(key, FunctionUtils.unpack(mVariableDeclarations.get(key).eval(context)));
+                    }
+                    mVariableContextLoaded = true;
                 }
-                mVariableContextLoaded = true;
             }
         }
     }
 
     @Override
     public Object getField(int i) {
-        synchronized (mAsyncLock) {
-            loadVariableContext();
-            if (data[i] == null) {
-                try {
-                    data[i] = fields[i].getTemplate().evaluate(context);
-                } catch (XPathException xpe) {
-                    XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xpe);
-                    xpe.printStackTrace();
-                    data[i] = "<invalid xpath: " + xpe.getMessage() + ">";
+        synchronized (mEvaluationLock) {
+            synchronized (mAsyncLock) {
+                loadVariableContext();
+                if (data[i] == null) {
+                    try {
+                        data[i] = fields[i].getTemplate().evaluate(context);
+                    } catch (XPathException xpe) {
+                        XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xpe);
+                        xpe.printStackTrace();
+                        data[i] = "<invalid xpath: " + xpe.getMessage() + ">";
+                    }
                 }
+                return data[i];
             }
-            return data[i];
         }
     }
 
@@ -126,6 +136,15 @@ public class AsyncEntity extends Entity<TreeReference> {
 
     @Override
     public String getSortField(int i) {
+        if (fields[i].getSort() == null) {
+            return null;
+        }
+
+        String inMemoryValue = getSortFieldWithoutDbAccess(i);
+        if (inMemoryValue != null) {
+            return inMemoryValue;
+        }
+
         //Get a db handle so we can get an outer lock
         SQLiteDatabase db;
         try {
@@ -134,54 +153,150 @@ public class AsyncEntity extends Entity<TreeReference> {
             return null;
         }
 
-        //get the db lock
-        db.beginTransaction();
-        try {
-            //get our second lock.
-            synchronized (mAsyncLock) {
-                if (sortData[i] == null) {
-                    // sort data not in search field cache; load and store it
-                    Text sortText = fields[i].getSort();
-                    if (sortText == null) {
-                        db.setTransactionSuccessful();
-                        return null;
-                    }
-
-                    String cacheKey = AsyncNodeEntityFactory.getCacheKey(mDetailId, String.valueOf(i));
+        // Take the factory's evaluation lock before the db lock, as every
+        // other evaluation against the shared context does
+        synchronized (mEvaluationLock) {
+            //get the db lock
+            db.beginTransaction();
+            try {
+                //get our second lock.
+                synchronized (mAsyncLock) {
+                    if (sortData[i] == null) {
+                        // sort data not in search field cache; load and store it
+                        String cacheKey = AsyncNodeEntityFactory.getCacheKey(mDetailId, String.valueOf(i));
 
-                    if (mCacheIndex != null) {
-                        //Check the cache!
-                        String value = mEntityStorageCache.retrieveCacheValue(mCacheIndex, cacheKey);
-                        if (value != null) {
-                            this.setSortData(i, value);
-                            db.setTransactionSuccessful();
-                            return sortData[i];
+                        if (mCacheIndex != null) {
+                            //Check the cache!
+                            String value = mEntityStorageCache.retrieveCacheValue(mCacheIndex, cacheKey);
+                            if (value != null) {
+                                this.setSortData(i, value);
+                                db.setTransactionSuccessful();
+                                return sortData[i];
+                            }
                         }
-                    }
 
-                    loadVariableContext();
-                    try {
-                        sortText = fields[i].getSort();
-                        if (sortText == null) {
-                            this.setSortData(i, getFieldString(i));
-                        } else {
+                        loadVariableContext();
+                        try {
+                            Text sortText = fields[i].getSort();
                             this.setSortData(i, StringUtils.normalize(sortText.evaluate(context)));
-                        }
 
-                        mEntityStorageCache.cache(mCacheIndex, cacheKey, sortData[i]);
-                    } catch (XPathException xpe) {
-                        XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xpe);
-                        xpe.printStackTrace();
-                        sortData[i] = "<invalid xpath: " + xpe.getMessage() + ">";
+                            mEntityStorageCache.cache(mCacheIndex, cacheKey, sortData[i]);
+                        } catch (XPathException xpe) {
+                            XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xpe);
+                            xpe.printStackTrace();
+                            sortData[i] = "<invalid xpath: " + xpe.getMessage() + ">";
+                        }
                     }
+                    db.setTransactionSuccessful();
+                    return sortData[i];
                 }
-                db.setTransactionSuccessful();
+
+            } finally {
+                //free the db lock.
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Serves sort values that are already known to this entity or held in
+     * the in-memory tier of the entity cache, which doesn't require taking
+     * the db lock.
+     *
+     * @return the sort value, or null if it needs to be looked up or computed
+     */
+    private String getSortFieldWithoutDbAccess(int i) {
+        synchronized (mAsyncLock) {
+            if (sortData[i] != null) {
                 return sortData[i];
             }
+            if (mCacheIndex == null) {
+                return null;
+            }
+            String cacheKey = AsyncNodeEntityFactory.getCacheKey(mDetailId, String.valueOf(i));
+            String value = mEntityStorageCache.retrieveMemoryCacheValue(mCacheIndex, cacheKey);
+            if (value != null) {
+                this.setSortData(i, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Evaluates the sort fields that aren't already known to this entity.
+     * Unlike getSortField this doesn't hold the db lock while evaluating, so
+     * that many entities can be primed in parallel; the caller is expected
+     * to hand the results to cacheSortFields inside of a transaction.
+     *
+     * @param workerContext Context of the calling thread to evaluate against,
+     *                      in place of the entity's own context, or null to
+     *                      use the entity's context
+     * @return The newly computed sort values, indexed by field; null where
+     * no value was computed
+     */
+    public String[] evaluateUncachedSortFields(EvaluationContext workerContext) {
+        if (workerContext == null) {
+            // The entity's own context is shared with the factory's other
+            // entities, so only one thread may evaluate against it at a time
+            synchronized (mEvaluationLock) {
+                return evaluateSortFields(null);
+            }
+        }
+        return evaluateSortFields(workerContext);
+    }
+
+    private String[] evaluateSortFields(EvaluationContext workerContext) {
+        String[] computed = new String[fields.length];
+        EvaluationContext evalContext = null;
+        for (int i = 0; i < fields.length; ++i) {
+            Text sortText = fields[i].getSort();
+            if (sortText == null || getSortFieldWithoutDbAccess(i) != null) {
+                continue;
+            }
 
-        } finally {
-            //free the db lock.
-            db.endTransaction();
+            if (evalContext == null) {
+                evalContext = getSortEvaluationContext(workerContext);
+            }
+            try {
+                computed[i] = StringUtils.normalize(sortText.evaluate(evalContext));
+                setSortData(i, computed[i]);
+            } catch (XPathException xpe) {
+                XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xpe);
+                xpe.printStackTrace();
+                synchronized (mAsyncLock) {
+                    sortData[i] = "<invalid xpath: " + xpe.getMessage() + ">";
+                }
+            }
+        }
+        return computed;
+    }
+
+    private EvaluationContext getSortEvaluationContext(EvaluationContext workerContext) {
+        if (workerContext == null) {
+            loadVariableContext();
+            return context;
+        }
+        EvaluationContext nodeContext = new EvaluationContext(workerContext, getElement());
+        for (Enumeration<String> en = mVariableDeclarations.keys(); en.hasMoreElements(); ) {
+            String key = en.nextElement();
+            nodeContext.setVariable(key, FunctionUtils.unpack(mVariableDeclarations.get(key).eval(nodeContext)));
+        }
+        return nodeContext;
+    }
+
+    /**
+     * Persist sort values produced by evaluateUncachedSortFields. Must be
+     * called while holding the db lock.
+     */
+    public void cacheSortFields(String[] computed) {
+        if (mCacheIndex == null) {
+            return;
+        }
+        for (int i = 0; i < computed.length; ++i) {
+            if (computed[i] != null) {
+                String cacheKey = AsyncNodeEntityFactory.getCacheKey(mDetailId, String.valueOf(i));
+                mEntityStorageCache.cache(mCacheIndex, cacheKey, computed[i]);
+            }
         }
     }
 
@@ -195,20 +310,22 @@ public class AsyncEntity extends Entity<TreeReference> {
         //NOTE: This totally jacks the asynchronicity. It's only used in
         //detail fields for now, so not super important, but worth bearing
         //in mind
-        synchronized (mAsyncLock) {
-            loadVariableContext();
-            if (getField(fieldIndex).equals("")) {
-                return false;
-            }
+        synchronized (mEvaluationLock) {
+            synchronized (mAsyncLock) {
+                loadVariableContext();
+                if (getField(fieldIndex).equals("")) {
+                    return false;
+                }
 
-            try {
-                this.relevancyData[fieldIndex] = this.fields[fieldIndex].isRelevant(this.context);
-            } catch (XPathSyntaxException e) {
-                final String msg = "Invalid relevant condition for field : " + fields[fieldIndex].getHeader().toString();
-                XPathErrorLogger.INSTANCE.logErrorToCurrentApp(msg);
-                throw new RuntimeException(msg);
+                try {
+                    this.relevancyData[fieldIndex] = this.fields[fieldIndex].isRelevant(this.context);
+                } catch (XPathSyntaxException e) {
+                    final String msg = "Invalid relevant condition for field : " + fields[fieldIndex].getHeader().toString();
+                    XPathErrorLogger.INSTANCE.logErrorToCurrentApp(msg);
+                    throw new RuntimeException(msg);
+                }
+                return this.relevancyData[fieldIndex];
             }
-            return this.relevancyData[fieldIndex];
         }
     }
 
@@ -1,5 +1,6 @@
 package org.commcare.models;
 
+import android.location.Location;
 import android.util.Log;
 
 import net.sqlcipher.Cursor;
@@ -12,19 +13,36 @@ import org.commcare.cases.entity.Entity;
 import org.commcare.cases.entity.NodeEntityFactory;
 import org.commcare.models.database.DbUtil;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.modern.database.TableBuilder;
 import org.commcare.suite.model.Detail;
 import org.commcare.suite.model.DetailField;
+import org.commcare.suite.model.Text;
+import org.commcare.utils.SessionUnavailableException;
 import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.core.model.utils.CacheHost;
 import org.javarosa.core.util.OrderedHashtable;
 import org.javarosa.xpath.expr.XPathExpression;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author ctsims
@@ -41,9 +59,62 @@ public class AsyncNodeEntityFactory extends NodeEntityFactory {
     private static final Object mAsyncLock = new Object();
     private Thread mAsyncPrimingThread;
 
+    // Number of entities whose sort fields are computed and cached together
+    private static final int PRIMING_CHUNK_SIZE = 50;
+    private static final int MAX_PRIMING_THREADS = 4;
+    private static final long PRIMING_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // A sort on the distance between here() and a plain case property, which
+    // can be answered from the case geo index
+    private static final Pattern DISTANCE_FROM_HERE = Pattern.compile(
+            "\\s*distance\\(\\s*(?:here\\(\\)\\s*,\\s*(?:\\./)?([\\w-]+)|" +
+                    "(?:\\./)?([\\w-]+)\\s*,\\s*here\\(\\))\\s*\\)\\s*");
+
+    private volatile PrimingObserver mPrimingObserver;
+
+    // Held by any thread evaluating against the factory's context or the
+    // contexts of its entities, which share the same instances and caches
+    private final Object mEvaluationLock = new Object();
+
+    // Builds evaluation contexts for priming threads; without one, sort
+    // fields are primed on the calling thread
+    private volatile EvaluationContextProvider mWorkerContextProvider;
+    // Worker contexts not in use by a priming thread; each is only ever used
+    // by one thread at a time
+    private final ConcurrentLinkedQueue<EvaluationContext> mIdleWorkerContexts =
+            new ConcurrentLinkedQueue<>();
+    private ThreadPoolExecutor mPrimingPool;
+
+    // References whose entities are still to be loaded when the list is
+    // loaded in pages; null once all entities exist
+    private volatile List<TreeReference> mPendingReferences;
+
     // Don't show entity list until we primeCache and caches all fields
     private final boolean isBlockingAsyncMode;
 
+    public interface PrimingObserver {
+        /**
+         * Called from the priming thread each time a chunk of entities has
+         * had its sort fields computed and cached
+         */
+        void onPrimingProgress(int entitiesPrimed, int totalEntities);
+
+        /**
+         * Polled between entities; once true, remaining entities are left
+         * to compute their sort fields on demand.
+         */
+        boolean isPrimingCancelled();
+    }
+
+    public interface EvaluationContextProvider {
+        /**
+         * @return A new evaluation context equivalent to the factory's, that
+         * shares no instances or caches with it or with other contexts
+         * returned
+         */
+        EvaluationContext newEvaluationContext();
+    }
+
     public AsyncNodeEntityFactory(Detail d, EvaluationContext ec) {
         super(d, ec);
 
@@ -54,31 +125,36 @@ public class AsyncNodeEntityFactory extends NodeEntityFactory {
 
     @Override
     public Entity<TreeReference> getEntity(TreeReference data) {
-        EvaluationContext nodeContext = new EvaluationContext(ec, data);
+        // Entities are built on the page loading thread while others are
+        // being evaluated on the UI and filtering threads, all against the
+        // factory's context
+        synchronized (mEvaluationLock) {
+            EvaluationContext nodeContext = new EvaluationContext(ec, data);
 
-        mCacheHost = nodeContext.getCacheHost(data);
+            mCacheHost = nodeContext.getCacheHost(data);
 
-        String mCacheIndex = null;
-        if (mTemplateIsCachable == null) {
-            mTemplateIsCachable = mCacheHost != null && mCacheHost.isReferencePatternCachable(data);
-        }
-        if (mTemplateIsCachable) {
-            if (mCacheHost == null) {
-                Log.d(TAG, "Template is cachable, but there's no cache host for this instance?");
-            } else {
-                mCacheIndex = mCacheHost.getCacheIndex(data);
+            String mCacheIndex = null;
+            if (mTemplateIsCachable == null) {
+                mTemplateIsCachable = mCacheHost != null && mCacheHost.isReferencePatternCachable(data);
+            }
+            if (mTemplateIsCachable) {
+                if (mCacheHost == null) {
+                    Log.d(TAG, "Template is cachable, but there's no cache host for this instance?");
+                } else {
+                    mCacheIndex = mCacheHost.getCacheIndex(data);
+                }
             }
-        }
 
-        String entityKey = loadCalloutDataMapKey(nodeContext);
-        AsyncEntity entity =
-                new AsyncEntity(detail.getFields(), nodeContext, data, mVariableDeclarations,
-                        mEntityCache, mCacheIndex, detail.getId(), entityKey);
+            String entityKey = loadCalloutDataMapKey(nodeContext);
+            AsyncEntity entity =
+                    new AsyncEntity(detail.getFields(), nodeContext, data, mVariableDeclarations,
+                            mEntityCache, mCacheIndex, detail.getId(), entityKey, mEvaluationLock);
 
-        if (mCacheIndex != null) {
-            mEntitySet.put(mCacheIndex, entity);
+            if (mCacheIndex != null) {
+                mEntitySet.put(mCacheIndex, entity);
+            }
+            return entity;
         }
-        return entity;
     }
 
     @Override
@@ -160,6 +236,15 @@ public class AsyncNodeEntityFactory extends NodeEntityFactory {
         }
     }
 
+    /**
+     * @return The lock held while evaluating against this factory's entities.
+     * It must be taken before the user db lock by any thread that evaluates
+     * entity fields inside of a transaction, since entities take it first.
+     */
+    public Object getEvaluationLock() {
+        return mEvaluationLock;
+    }
+
     public static String getCacheKey(String detailId, String mFieldId) {
         return detailId + "_" + mFieldId;
     }
@@ -180,10 +265,11 @@ public class AsyncNodeEntityFactory extends NodeEntityFactory {
         //Should probably split this up SQL LIMIT based looped
         //For reference the current limitation is about 10k rows with 1 field each.
         Cursor walker = db.rawQuery(sqlStatement, args);
-        while (walker.moveToNext()) {
+        while (walker.moveToNext() && !isPrimingCancelled()) {
             String entityId = walker.getString(walker.getColumnIndex("entity_key"));
             String cacheId = walker.getString(walker.getColumnIndex("cache_key"));
             String val = walker.getString(walker.getColumnIndex("value"));
+            mEntityCache.primeMemoryCache(entityId, cacheId, val);
             if (this.mEntitySet.containsKey(entityId)) {
                 this.mEntitySet.get(entityId).setSortData(cacheId, val);
             }
@@ -209,18 +295,283 @@ public class AsyncNodeEntityFactory extends NodeEntityFactory {
         }
     }
 
+    /**
+     * Computes and caches the sort fields of all entities that weren't
+     * loaded from the cache. When a worker context provider is set, entities
+     * are split into chunks which are evaluated in parallel on the factory's
+     * priming pool. Each priming thread evaluates against its own worker
+     * context, since evaluation contexts share instances and query caches
+     * that aren't safe to use from several threads. The results of a chunk
+     * are written to the cache in a single transaction.
+     */
     private void setUnCachedData(List<Entity<TreeReference>> entities) {
-        for (int i = 0; i < entities.size(); i++) {
-            AsyncEntity e = (AsyncEntity)entities.get(i);
-            for (int col = 0; col < e.getNumFields(); ++col) {
-                e.getSortField(col);
+        int threadCount = getPrimingThreadCount();
+        if (mWorkerContextProvider == null || threadCount <= 1 ||
+                entities.size() <= PRIMING_CHUNK_SIZE) {
+            reportPrimingProgress(primeChunk(entities, null), entities.size());
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorCompletionService<Integer> completionService =
+                new ExecutorCompletionService<>(getPrimingPool(threadCount));
+        List<Future<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i += PRIMING_CHUNK_SIZE) {
+            final List<Entity<TreeReference>> chunk =
+                    entities.subList(i, Math.min(i + PRIMING_CHUNK_SIZE, entities.size()));
+            chunks.add(completionService.submit(() -> primeChunkWithWorkerContext(chunk)));
+        }
+
+        try {
+            int primed = 0;
+            for (int i = 0; i < chunks.size() && !isPrimingCancelled(); i++) {
+                primed += completionService.take().get();
+                reportPrimingProgress(primed, entities.size());
+            }
+        } catch (InterruptedException e) {
+            // the loader was cancelled outright; leave the rest to be computed lazily
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // surface evaluation errors to the loader like the sequential path would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            // chunks that haven't started are dropped; running ones stop at
+            // their next cancellation check
+            for (Future<Integer> chunk : chunks) {
+                chunk.cancel(false);
+            }
+        }
+
+        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+            Log.d(TAG, "Parallel sort field priming of " + entities.size() + " entities: " +
+                    (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static int getPrimingThreadCount() {
+        return Math.min(MAX_PRIMING_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return The pool that priming chunks run on, shared by every priming
+     * pass of this factory. Its threads go away when it's idle.
+     */
+    private synchronized ExecutorService getPrimingPool(int threadCount) {
+        if (mPrimingPool == null) {
+            mPrimingPool = new ThreadPoolExecutor(threadCount, threadCount,
+                    PRIMING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "entity-priming"));
+            mPrimingPool.allowCoreThreadTimeOut(true);
+        }
+        return mPrimingPool;
+    }
+
+    private int primeChunkWithWorkerContext(List<Entity<TreeReference>> chunk) {
+        EvaluationContext workerContext = mIdleWorkerContexts.poll();
+        if (workerContext == null) {
+            workerContext = mWorkerContextProvider.newEvaluationContext();
+        }
+        try {
+            return primeChunk(chunk, workerContext);
+        } finally {
+            mIdleWorkerContexts.offer(workerContext);
         }
     }
 
+    /**
+     * @return The number of entities in the chunk that were primed before
+     * priming was cancelled
+     */
+    private int primeChunk(List<Entity<TreeReference>> chunk, EvaluationContext workerContext) {
+        List<AsyncEntity> primedEntities = new ArrayList<>();
+        List<String[]> computedValues = new ArrayList<>();
+        for (Entity<TreeReference> entity : chunk) {
+            if (isPrimingCancelled()) {
+                break;
+            }
+            AsyncEntity e = (AsyncEntity)entity;
+            primedEntities.add(e);
+            computedValues.add(e.evaluateUncachedSortFields(workerContext));
+        }
+
+        // Sort values that didn't make it into the cache are recomputed
+        // lazily, so a failure to get the db here isn't fatal
+        SQLiteDatabase db;
+        try {
+            db = CommCareApplication.instance().getUserDbHandle();
+        } catch (SessionUnavailableException e) {
+            return primedEntities.size();
+        }
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < primedEntities.size(); i++) {
+                primedEntities.get(i).cacheSortFields(computedValues.get(i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return primedEntities.size();
+    }
+
+    private void reportPrimingProgress(int entitiesPrimed, int totalEntities) {
+        PrimingObserver observer = mPrimingObserver;
+        if (observer != null && !observer.isPrimingCancelled()) {
+            observer.onPrimingProgress(entitiesPrimed, totalEntities);
+        }
+    }
+
+    private boolean isPrimingCancelled() {
+        PrimingObserver observer = mPrimingObserver;
+        return observer != null && observer.isPrimingCancelled();
+    }
+
+    public void setPrimingObserver(PrimingObserver observer) {
+        mPrimingObserver = observer;
+    }
+
+    /**
+     * Allow sort fields to be primed in parallel, with each priming thread
+     * evaluating against its own context from the given provider
+     */
+    public void setWorkerContextProvider(EvaluationContextProvider provider) {
+        mWorkerContextProvider = provider;
+    }
+
+    /**
+     * Orders references by the value cached for their primary sort field,
+     * so that the first page of a paged entity list approximates the top of
+     * the fully sorted list. References without a cached value are placed
+     * after all others, in their original order. The full in-memory sort
+     * remains authoritative once all entities are loaded.
+     *
+     * When the primary sort is nearest first by the distance from here() to
+     * a case property and the current location is known, the cases nearest
+     * to the location are instead looked up in the case geo index and placed
+     * first, since cached distances go stale as the location changes. Only
+     * the cases behind the given references are considered.
+     *
+     * @param leadingCount How many references at the front of the result
+     *                     are loaded first, and so should be in sorted order
+     */
+    public List<TreeReference> presortReferences(List<TreeReference> references,
+                                                 Location here, int leadingCount) {
+        int[] sortOrder = detail.getOrderedFieldIndicesForSorting();
+        if (references.isEmpty() || sortOrder.length == 0) {
+            return references;
+        }
+        TreeReference first = references.get(0);
+        CacheHost cacheHost = new EvaluationContext(ec, first).getCacheHost(first);
+        if (cacheHost == null || !cacheHost.isReferencePatternCachable(first)) {
+            return references;
+        }
+
+        long start = System.currentTimeMillis();
+        int sortField = sortOrder[0];
+        boolean descending = detail.getFields()[sortField].getSortDirection() == DetailField.DIRECTION_DESCENDING;
+        // The geo index finds the nearest cases without reading the others,
+        // but has no cheap way to find the farthest ones
+        String geoProperty = here == null || descending ? null :
+                getDistanceFromHereProperty(detail.getFields()[sortField]);
+        List<String> orderedKeys;
+        if (geoProperty != null) {
+            // The index covers every case, so only look among this list's
+            orderedKeys = new ArrayList<>();
+            HashSet<Integer> recordIds = getRecordIds(references, cacheHost);
+            int count = Math.min(leadingCount, recordIds.size());
+            if (count > 0) {
+                for (CaseGeoIndexTable.IndexedPoint point : new CaseGeoIndexTable().getNearestPoints(
+                        geoProperty, here.getLatitude(), here.getLongitude(), count, recordIds)) {
+                    orderedKeys.add(String.valueOf(point.caseRecordId));
+                }
+            }
+        } else {
+            orderedKeys = mEntityCache.getEntityKeysOrderedByValue(
+                    getCacheKey(detail.getId(), String.valueOf(sortField)), descending);
+        }
+
+        HashMap<String, Integer> rankByKey = new HashMap<>();
+        for (int i = 0; i < orderedKeys.size(); ++i) {
+            rankByKey.put(orderedKeys.get(i), i);
+        }
+        final HashMap<TreeReference, Integer> rankByRef = new HashMap<>();
+        for (TreeReference ref : references) {
+            Integer rank = rankByKey.get(cacheHost.getCacheIndex(ref));
+            rankByRef.put(ref, rank == null ? Integer.MAX_VALUE : rank);
+        }
+
+        List<TreeReference> sorted = new ArrayList<>(references);
+        Collections.sort(sorted, (a, b) -> rankByRef.get(a).compareTo(rankByRef.get(b)));
+
+        if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+            Log.d(TAG, "Presorted " + references.size() + " references from cached sort keys in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        }
+        return sorted;
+    }
+
+    private static HashSet<Integer> getRecordIds(List<TreeReference> references, CacheHost cacheHost) {
+        HashSet<Integer> recordIds = new HashSet<>();
+        for (TreeReference ref : references) {
+            String cacheIndex = cacheHost.getCacheIndex(ref);
+            if (cacheIndex != null) {
+                try {
+                    recordIds.add(Integer.parseInt(cacheIndex));
+                } catch (NumberFormatException e) {
+                    // not a case record; it can't be in the geo index
+                }
+            }
+        }
+        return recordIds;
+    }
+
+    /**
+     * @return The case property a field sorts on the distance to here() from,
+     * or null if the field isn't sorted that way
+     */
+    private static String getDistanceFromHereProperty(DetailField field) {
+        Text sort = field.getSort();
+        if (sort == null || sort.getArgument() == null) {
+            return null;
+        }
+        Matcher matcher = DISTANCE_FROM_HERE.matcher(sort.getArgument());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    }
+
+    /**
+     * Prepare a page of entities created after the initial page of a paged
+     * list has been prepared with prepareEntities.
+     */
+    public void prepareEntityPage(List<Entity<TreeReference>> page) {
+        if (isBlockingAsyncMode) {
+            setUnCachedData(page);
+        }
+    }
+
+    public void setPendingReferences(List<TreeReference> references) {
+        mPendingReferences = references;
+    }
+
+    /**
+     * @return References that still need to be turned into entities, or null
+     * if the entity list was fully loaded
+     */
+    public List<TreeReference> getPendingReferences() {
+        return mPendingReferences;
+    }
+
     @Override
     protected boolean isEntitySetReadyInternal() {
         synchronized (mAsyncLock) {
+            if (mPendingReferences != null) {
+                return false;
+            }
             return mAsyncPrimingThread == null || !mAsyncPrimingThread.isAlive();
         }
     }
@@ -17,6 +17,7 @@ import org.javarosa.core.util.externalizable.PrototypeFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Essentially a wrapper around the Java-generic DatabaseHelper
@@ -83,6 +84,28 @@ public abstract class AndroidDbHelper extends DatabaseHelper {
         }
     }
 
+    /**
+     * Collects the same metadata values that would be placed in the record's
+     * ContentValues, sorted by column name, so that they can be bound
+     * positionally to a compiled statement for that column set.
+     */
+    public TreeMap<String, Object> getBindableMetaFieldsAndValues(Externalizable e) {
+        TreeMap<String, Object> bindableValues = new TreeMap<>();
+        HashMap<String, Object> metaFieldsAndValues = DatabaseHelper.getMetaFieldsAndValues(e);
+        for (Map.Entry<String, Object> entry : metaFieldsAndValues.entrySet()) {
+            Object obj = entry.getValue();
+            if (obj instanceof String || obj instanceof Integer || obj instanceof Long) {
+                bindableValues.put(entry.getKey(), obj);
+            } else if (obj instanceof byte[]) {
+                checkBlobSize((byte[]) obj);
+                bindableValues.put(entry.getKey(), obj);
+            } else {
+                Log.w(TAG, "Couldn't determine type of object: " + obj);
+            }
+        }
+        return bindableValues;
+    }
+
     private static void checkBlobSize(byte[] blob) {
         int blobSize = blob.length;
         if (blobSize > HybridFileBackedSqlStorage.ONE_MB_DB_SIZE_LIMIT) {
@@ -77,13 +77,18 @@ public class AndroidSandbox extends UserSandbox {
 
     @Override
     public IStorageUtilityIndexed<FormInstance> getUserFixtureStorage() {
-        return app.getFileBackedUserStorage(
+        HybridFileBackedSqlStorage<FormInstance> fixtureStorage = app.getFileBackedUserStorage(
                 HybridFileBackedSqlStorage.FIXTURE_STORAGE_TABLE_NAME, FormInstance.class);
+        fixtureStorage.enableDecodedRecordCache();
+        return fixtureStorage;
     }
 
     @Override
     public IStorageUtilityIndexed<FormInstance> getAppFixtureStorage() {
-        return app.getFileBackedAppStorage("fixture", FormInstance.class);
+        HybridFileBackedSqlStorage<FormInstance> fixtureStorage =
+                app.getFileBackedAppStorage("fixture", FormInstance.class);
+        fixtureStorage.enableDecodedRecordCache();
+        return fixtureStorage;
     }
 
     @Override
@@ -0,0 +1,65 @@
+package org.commcare.models.database;
+
+import android.support.v4.util.LruCache;
+
+import org.javarosa.core.services.storage.Persistable;
+
+/**
+ * Small in-memory cache of the decrypted contents of recently read
+ * file-backed records, such as large lookup table fixtures that are read
+ * repeatedly during form entry.
+ *
+ * The serialized records are cached rather than the records themselves, so
+ * that every reader deserializes its own copy and changes one reader makes
+ * to a record are never seen by others. Repeated reads still skip opening
+ * and decrypting the record's file.
+ *
+ * Entries are keyed by the path of the file the record was read from. File
+ * backed records are written to a new file on every update, so a path
+ * always refers to the same version of a record and entries never go
+ * stale; entries for removed or replaced files simply age out.
+ */
+public class DecodedRecordCache {
+    /**
+     * Bound on the memory held, in bytes of serialized records
+     */
+    private static final int MAX_CACHED_BYTES = 16 * 1024 * 1024;
+
+    private static final LruCache<String, byte[]> records =
+            new LruCache<String, byte[]>(MAX_CACHED_BYTES) {
+                @Override
+                protected int sizeOf(String filename, byte[] serializedRecord) {
+                    return serializedRecord.length;
+                }
+            };
+
+    /**
+     * @return Whether a record stored in a file of the given size is small
+     * enough to be cached
+     */
+    static boolean isCacheable(long fileSize) {
+        return fileSize <= MAX_CACHED_BYTES / 2;
+    }
+
+    /**
+     * @return The decrypted contents of the record's file, or null if they
+     * aren't cached. Callers must not modify the returned array.
+     */
+    static byte[] get(String filename) {
+        return records.get(filename);
+    }
+
+    static void put(String filename, byte[] serializedRecord) {
+        if (isCacheable(serializedRecord.length)) {
+            records.put(filename, serializedRecord);
+        }
+    }
+
+    /**
+     * Drop all cached records, e.g. so that a user's data doesn't outlive
+     * their session
+     */
+    public static void clear() {
+        records.evictAll();
+    }
+}
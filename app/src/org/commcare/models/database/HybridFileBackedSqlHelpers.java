@@ -111,6 +111,10 @@ public class HybridFileBackedSqlHelpers {
      * Order of operations expects filenames to be globally unique.
      */
     public static void removeOrphanedFiles(SQLiteDatabase db) {
+        removeOrphanedFiles(db, getOrphanedFiles(db));
+    }
+
+    public static List<String> getOrphanedFiles(SQLiteDatabase db) {
         Cursor cur = db.query(DbUtil.orphanFileTableName, new String[]{DatabaseHelper.FILE_COL}, null, null, null, null, null);
         ArrayList<String> files = new ArrayList<>();
         try {
@@ -127,12 +131,22 @@ public class HybridFileBackedSqlHelpers {
                 cur.close();
             }
         }
+        return files;
+    }
 
+    /**
+     * Remove the given orphaned files and their entries in the orphaned file
+     * table. Entries added since the files were read are left for the next
+     * cleanup.
+     */
+    public static void removeOrphanedFiles(SQLiteDatabase db, List<String> files) {
         removeFiles(files);
 
         db.beginTransaction();
         try {
-            db.delete(DbUtil.orphanFileTableName, null, null);
+            for (String filename : files) {
+                db.delete(DbUtil.orphanFileTableName, DatabaseHelper.FILE_COL + "=?", new String[]{filename});
+            }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
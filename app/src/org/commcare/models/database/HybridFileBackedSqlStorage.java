@@ -27,6 +27,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Vector;
@@ -60,6 +61,8 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
             {DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL,
                     DatabaseHelper.FILE_COL, DatabaseHelper.AES_COL};
 
+    private boolean cacheDecodedRecords = false;
+
     /**
      * Sql object storage layer that stores serialized objects on the filesystem.
      *
@@ -83,6 +86,15 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         return new File(fsPathBuilder.fsPath(subPath));
     }
 
+    /**
+     * Serve repeated reads of the same file-backed record from an in-memory
+     * cache of decrypted records, which saves reading and decrypting the
+     * record's file. Every read still returns a new copy of the record.
+     */
+    public void enableDecodedRecordCache() {
+        cacheDecodedRecords = true;
+    }
+
     private void setupDir() {
         if (!dbDir.exists() && !dbDir.mkdirs()) {
             throw new RuntimeException("Unable to create db storage directory: " + dbDir);
@@ -138,12 +150,33 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
 
     private T readObjectFromFile(Cursor cursor, int fileColIndex,
                                  int aesColIndex, int dbEntryId) {
-        String filename = cursor.getString(fileColIndex);
-        byte[] aesKeyBlob = cursor.getBlob(aesColIndex);
+        return readObjectFromFile(cursor.getString(fileColIndex),
+                cursor.getBlob(aesColIndex), dbEntryId);
+    }
+
+    /**
+     * Deserialize the record straight from its (mapped) file, decrypting as
+     * it is read, so the serialized form is never copied into memory whole.
+     * Records small enough for the decoded record cache, when it is enabled,
+     * are decrypted into memory and cached instead.
+     */
+    T readObjectFromFile(String filename, byte[] aesKeyBlob, int dbEntryId) {
+        if (cacheDecodedRecords) {
+            byte[] serializedRecord = DecodedRecordCache.get(filename);
+            if (serializedRecord == null && DecodedRecordCache.isCacheable(new File(filename).length())) {
+                serializedRecord = readDecryptedFile(filename, aesKeyBlob);
+                DecodedRecordCache.put(filename, serializedRecord);
+            }
+            if (serializedRecord != null) {
+                return newObject(serializedRecord, dbEntryId);
+            }
+        }
+
         InputStream inputStream = null;
+        T record;
         try {
             inputStream = getInputStreamFromFile(filename, aesKeyBlob);
-            return newObject(inputStream, dbEntryId);
+            record = newObject(inputStream, dbEntryId);
         } catch (FileNotFoundException e) {
             // TODO PLM: throw runtime or return null?
             throw new RuntimeException(e);
@@ -156,6 +189,25 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
                 }
             }
         }
+        return record;
+    }
+
+    private byte[] readDecryptedFile(String filename, byte[] aesKeyBlob) {
+        InputStream inputStream = null;
+        try {
+            inputStream = getInputStreamFromFile(filename, aesKeyBlob);
+            return StreamsUtil.inputStreamToByteArray(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
     }
 
     private SQLiteDatabase getDbOrThrow() {
@@ -164,7 +216,7 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
 
     protected InputStream getInputStreamFromFile(String filename, byte[] aesKeyBytes) throws FileNotFoundException {
         SecretKeySpec aesKey = new SecretKeySpec(aesKeyBytes, "AES");
-        return EncryptionIO.getFileInputStream(filename, aesKey);
+        return EncryptionIO.getMappedFileInputStream(filename, aesKey);
     }
 
     @Override
@@ -210,6 +262,26 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         return getRecordForValues(new String[]{rawFieldName}, new Object[]{value});
     }
 
+    @Override
+    public T read(int id) {
+        Cursor cur = getDbOrThrow().query(table, dataColumns,
+                DatabaseHelper.ID_COL + "=?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            if (!cur.moveToFirst()) {
+                throw new NoSuchElementException("No record in table " + table + " for ID " + id);
+            }
+            byte[] serializedObj = cur.getBlob(cur.getColumnIndexOrThrow(DatabaseHelper.DATA_COL));
+            if (serializedObj != null) {
+                return newObject(serializedObj, id);
+            } else {
+                return readObjectFromFile(cur, id);
+            }
+        } finally {
+            cur.close();
+        }
+    }
+
     @Override
     public byte[] readBytes(int id) {
         Cursor cur = getDbOrThrow().query(table, dataColumns,
@@ -308,6 +380,17 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         }
     }
 
+    /**
+     * Records may be routed to the filesystem on a per-record basis, so they
+     * can't share compiled statements; write each one individually.
+     */
+    @Override
+    public void writeAll(Collection<? extends T> records) {
+        for (T record : records) {
+            write(record);
+        }
+    }
+
     private ByteArrayOutputStream writeExternalizableToStream(Externalizable extObj) {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         try {
@@ -566,6 +649,17 @@ public class HybridFileBackedSqlStorage<T extends Persistable> extends SqlStorag
         throw new UnsupportedOperationException("iterate method unsupported");
     }
 
+    @Override
+    public Vector<T> readPageAfterId(int afterId, int pageSize) {
+        throw new UnsupportedOperationException("readPageAfterId method unsupported");
+    }
+
+    @Override
+    public void removeIdRange(int afterId, int throughId) {
+        // would leave the files of removed records behind
+        throw new UnsupportedOperationException("removeIdRange method unsupported");
+    }
+
     /**
      * For testing only
      */
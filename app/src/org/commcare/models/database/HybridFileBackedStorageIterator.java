@@ -5,9 +5,6 @@ import android.database.Cursor;
 import org.commcare.modern.database.DatabaseHelper;
 import org.javarosa.core.services.storage.Persistable;
 
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-
 /**
  * Iterator for storage layer that uses filesystem to store payload.
  *
@@ -39,13 +36,7 @@ public class HybridFileBackedStorageIterator<T extends Persistable>
             byte[] aesKeyBlob =
                     c.getBlob(c.getColumnIndexOrThrow(DatabaseHelper.AES_COL));
 
-            try {
-                InputStream fileInputStream =
-                        ((HybridFileBackedSqlStorage<T>)storage).getInputStreamFromFile(filename, aesKeyBlob);
-                return storage.newObject(fileInputStream, nextID());
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            }
+            return ((HybridFileBackedSqlStorage<T>)storage).readObjectFromFile(filename, aesKeyBlob, nextID());
         }
     }
 }
@@ -1,6 +1,8 @@
 package org.commcare.models.database;
 
 import android.database.Cursor;
+import android.database.SQLException;
+import android.text.TextUtils;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteQueryBuilder;
@@ -35,6 +37,8 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
 
 /**
@@ -444,6 +448,29 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         return iterate();
     }
 
+    /**
+     * Read the records following afterId, in id order. Lets callers walk a
+     * large table a page at a time, without a cursor held open over the
+     * whole table between pages.
+     */
+    public Vector<T> readPageAfterId(int afterId, int pageSize) {
+        Cursor c = helper.getHandle().query(table,
+                new String[]{DatabaseHelper.ID_COL, DatabaseHelper.DATA_COL},
+                DatabaseHelper.ID_COL + " > ?", new String[]{String.valueOf(afterId)},
+                null, null, DatabaseHelper.ID_COL, String.valueOf(pageSize));
+        Vector<T> page = new Vector<>();
+        try {
+            int idIndex = c.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
+            int dataIndex = c.getColumnIndexOrThrow(DatabaseHelper.DATA_COL);
+            while (c.moveToNext()) {
+                page.add(newObject(c.getBlob(dataIndex), c.getInt(idIndex)));
+            }
+        } finally {
+            c.close();
+        }
+        return page;
+    }
+
     @Override
     public T read(int id) {
         return newObject(readBytes(id), id);
@@ -492,6 +519,24 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         }
     }
 
+    /**
+     * Remove every record whose id falls in (afterId, throughId]
+     */
+    public void removeIdRange(int afterId, int throughId) {
+        if (throughId <= afterId) {
+            return;
+        }
+        SQLiteDatabase db = helper.getHandle();
+        db.beginTransaction();
+        try {
+            db.delete(table, DatabaseHelper.ID_COL + " > ? AND " + DatabaseHelper.ID_COL + " <= ?",
+                    new String[]{String.valueOf(afterId), String.valueOf(throughId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     @Override
     public void remove(Persistable p) {
         this.remove(p.getID());
@@ -608,6 +653,102 @@ public class SqlStorage<T extends Persistable> implements IStorageUtilityIndexed
         }
     }
 
+    /**
+     * Writes a set of records in a single transaction. New records are
+     * inserted and existing ones are updated, like {@link #write(Persistable)},
+     * but the insert and update statements are compiled once per column set
+     * and reused across records rather than rebuilt for each row.
+     */
+    public void writeAll(Collection<? extends T> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = helper.getHandle();
+        if (!STORAGE_OPTIMIZATIONS_ACTIVE) {
+            db.beginTransaction();
+            try {
+                for (T p : records) {
+                    write(p);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return;
+        }
+
+        HashMap<String, SQLiteStatement> statementCache = new HashMap<>();
+        db.beginTransaction();
+        try {
+            for (T p : records) {
+                TreeMap<String, Object> fieldsAndValues = helper.getBindableMetaFieldsAndValues(p);
+                if (p.getID() != -1) {
+                    SQLiteStatement update = getCachedStatement(db, statementCache, fieldsAndValues.keySet(), true);
+                    bindValues(update, fieldsAndValues.values());
+                    update.bindLong(fieldsAndValues.size() + 1, p.getID());
+                    update.execute();
+                } else {
+                    SQLiteStatement insert = getCachedStatement(db, statementCache, fieldsAndValues.keySet(), false);
+                    bindValues(insert, fieldsAndValues.values());
+                    long ret = insert.executeInsert();
+
+                    if (ret > Integer.MAX_VALUE) {
+                        throw new RuntimeException("Waaaaaaaaaay too many values");
+                    } else if (ret == -1) {
+                        throw new SQLException("Failed to insert record into " + table);
+                    }
+                    p.setID((int)ret);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (SQLiteStatement statement : statementCache.values()) {
+                statement.close();
+            }
+        }
+    }
+
+    private SQLiteStatement getCachedStatement(SQLiteDatabase db,
+                                               HashMap<String, SQLiteStatement> statementCache,
+                                               Set<String> columns, boolean isUpdate) {
+        String columnList = TextUtils.join(",", columns);
+        String cacheKey = (isUpdate ? "UPDATE|" : "INSERT|") + columnList;
+        SQLiteStatement statement = statementCache.get(cacheKey);
+        if (statement == null) {
+            String sql;
+            if (isUpdate) {
+                sql = "UPDATE " + table + " SET " + TextUtils.join(" = ?,", columns) +
+                        " = ? WHERE " + DatabaseHelper.ID_COL + " = ?";
+            } else {
+                String[] placeholders = new String[columns.size()];
+                Arrays.fill(placeholders, "?");
+                sql = "INSERT INTO " + table + " (" + columnList + ") VALUES (" +
+                        TextUtils.join(",", placeholders) + ")";
+            }
+            statement = db.compileStatement(sql);
+            statementCache.put(cacheKey, statement);
+        }
+        return statement;
+    }
+
+    private static void bindValues(SQLiteStatement statement, Collection<Object> values) {
+        statement.clearBindings();
+        int i = 1;
+        for (Object value : values) {
+            if (value instanceof String) {
+                statement.bindString(i, (String)value);
+            } else if (value instanceof Integer) {
+                statement.bindLong(i, (Integer)value);
+            } else if (value instanceof Long) {
+                statement.bindLong(i, (Long)value);
+            } else if (value instanceof byte[]) {
+                statement.bindBlob(i, (byte[])value);
+            }
+            i++;
+        }
+    }
+
     /**
      * @return An iterator which can provide a list of all of the indices in this table.
      */
@@ -3,11 +3,10 @@ package org.commcare.models.database;
 import android.content.ContentValues;
 
 import org.commcare.interfaces.AppFilePathBuilder;
+import org.commcare.models.encryption.EncryptionIO;
 import org.javarosa.core.services.storage.Persistable;
 
-import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -32,7 +31,7 @@ public class UnencryptedHybridFileBackedSqlStorage<T extends Persistable>
     @Override
     protected InputStream getInputStreamFromFile(String filename, byte[] aesKeyBytes) {
         try {
-            return new BufferedInputStream(new FileInputStream(filename));
+            return EncryptionIO.getMappedFileInputStream(filename, null);
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e.getMessage());
         }
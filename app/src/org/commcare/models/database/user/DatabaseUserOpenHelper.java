@@ -20,6 +20,7 @@ import org.commcare.models.database.DbUtil;
 import org.commcare.models.database.IndexedFixturePathUtils;
 import org.commcare.android.database.user.models.ACase;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.android.database.user.models.FormRecord;
 import org.commcare.android.database.user.models.SessionStateDescriptor;
@@ -64,9 +65,12 @@ public class DatabaseUserOpenHelper extends SQLiteOpenHelper {
      * v.24 - Adds and indexes column for Case external_id
      * v.25 - No DB changes, validates SessionStateDescriptor records corrupted due to an earlier bug in v23 migration (In 2.44 and 2.44.1)
      * v.26 - Adds a column for 'last_sync' in IndexedFixtureIndex
+     * v.27 - Adds a covering (name, target, case_rec_id) index on the case index table
+     * v.28 - Adds the case geo index table, a geohash index over geopoint case properties
+     * v.29 - Adds record title, form name and search text columns to form records, for the saved forms list
      */
 
-    private static final int USER_DB_VERSION = 26;
+    private static final int USER_DB_VERSION = 29;
 
     private static final String USER_DB_LOCATOR = "database_sandbox_";
 
@@ -162,6 +166,9 @@ public class DatabaseUserOpenHelper extends SQLiteOpenHelper {
             database.execSQL(AndroidCaseIndexTable.getTableDefinition());
             AndroidCaseIndexTable.createIndexes(database);
 
+            database.execSQL(CaseGeoIndexTable.getTableDefinition());
+            CaseGeoIndexTable.createIndexes(database);
+
             database.setVersion(USER_DB_VERSION);
 
             database.setTransactionSuccessful();
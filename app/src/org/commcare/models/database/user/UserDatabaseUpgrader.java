@@ -10,6 +10,7 @@ import org.commcare.CommCareApplication;
 import org.commcare.android.database.user.models.ACasePreV24Model;
 import org.commcare.android.database.user.models.FormRecordV2;
 import org.commcare.android.database.user.models.FormRecordV3;
+import org.commcare.android.database.user.models.FormRecordV5;
 import org.commcare.android.database.user.models.SessionStateDescriptor;
 import org.commcare.android.logging.ForceCloseLogEntry;
 import org.commcare.android.javarosa.AndroidLogEntry;
@@ -28,6 +29,7 @@ import org.commcare.android.database.user.models.ACase;
 import org.commcare.android.database.user.models.ACasePreV6Model;
 import org.commcare.android.database.user.models.AUser;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.android.database.user.models.FormRecord;
 import org.commcare.android.database.user.models.FormRecordV1;
@@ -216,6 +218,24 @@ class UserDatabaseUpgrader {
                 oldVersion = 26;
             }
         }
+
+        if (oldVersion == 26) {
+            if (upgradeTwentySixTwentySeven(db)) {
+                oldVersion = 27;
+            }
+        }
+
+        if (oldVersion == 27) {
+            if (upgradeTwentySevenTwentyEight(db)) {
+                oldVersion = 28;
+            }
+        }
+
+        if (oldVersion == 28) {
+            if (upgradeTwentyEightTwentyNine(db)) {
+                oldVersion = 29;
+            }
+        }
     }
 
     private boolean upgradeOneTwo(final SQLiteDatabase db) {
@@ -678,7 +698,7 @@ class UserDatabaseUpgrader {
         db.beginTransaction();
         try {
             boolean strandedRecordObserved = false;
-            SqlStorage<FormRecord> formRecordStorage = UserDbUpgradeUtils.getFormRecordStorage(c, db, FormRecord.class);
+            SqlStorage<FormRecordV5> formRecordStorage = UserDbUpgradeUtils.getFormRecordStorage(c, db, FormRecordV5.class);
             SqlStorage<SessionStateDescriptor> ssdStorage = new SqlStorage<>(
                     SessionStateDescriptor.STORAGE_KEY,
                     SessionStateDescriptor.class,
@@ -687,7 +707,7 @@ class UserDatabaseUpgrader {
                 // we are in invalid state if formRecord with corresponding ssd form id
                 // either doesn't exist or has status unstarted
                 try {
-                    FormRecord formRecord = formRecordStorage.read(ssd.getFormRecordId());
+                    FormRecordV5 formRecord = formRecordStorage.read(ssd.getFormRecordId());
                     if (formRecord.getStatus().contentEquals(FormRecord.STATUS_UNSTARTED)) {
                         strandedRecordObserved = true;
                         break;
@@ -704,8 +724,8 @@ class UserDatabaseUpgrader {
                 // Since we have wiped out SSD records, we won't be able to resume
                 // incomplete forms with their earlier session state. Therfore we are
                 // going to delete all incomplete form records as well
-                Vector<FormRecord> incompleteRecords = formRecordStorage.getRecordsForValue(FormRecord.META_STATUS, FormRecord.STATUS_INCOMPLETE);
-                for (FormRecord incompleteRecord : incompleteRecords) {
+                Vector<FormRecordV5> incompleteRecords = formRecordStorage.getRecordsForValue(FormRecord.META_STATUS, FormRecord.STATUS_INCOMPLETE);
+                for (FormRecordV5 incompleteRecord : incompleteRecords) {
                     formRecordStorage.remove(incompleteRecord);
                 }
             }
@@ -731,6 +751,53 @@ class UserDatabaseUpgrader {
         }
     }
 
+    private boolean upgradeTwentySixTwentySeven(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            AndroidCaseIndexTable.createTargetLookupIndex(db);
+
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private boolean upgradeTwentySevenTwentyEight(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL(CaseGeoIndexTable.getTableDefinition());
+            CaseGeoIndexTable.createIndexes(db);
+
+            SqlStorage<ACase> caseStorage = new SqlStorage<>(ACase.STORAGE_KEY, ACase.class,
+                    new ConcreteAndroidDbHelper(c, db));
+            new CaseGeoIndexTable(db).reIndexAllCases(caseStorage);
+
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private boolean upgradeTwentyEightTwentyNine(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL(DbUtil.addColumnToTable(
+                    FormRecord.STORAGE_KEY, FormRecord.META_RECORD_TITLE, "TEXT"));
+            db.execSQL(DbUtil.addColumnToTable(
+                    FormRecord.STORAGE_KEY, FormRecord.META_FORM_NAME, "TEXT"));
+            db.execSQL(DbUtil.addColumnToTable(
+                    FormRecord.STORAGE_KEY, FormRecord.META_SEARCH_TEXT, "TEXT"));
+            UserDbUpgradeUtils.migrateV5FormRecords(c, db);
+
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     private void migrateV2FormRecordsForSingleApp(String appId,
                                                   SqlStorage<FormRecordV2> oldStorage,
                                                   Vector<FormRecordV3> upgradedRecords) {
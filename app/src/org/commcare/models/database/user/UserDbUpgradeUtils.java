@@ -15,11 +15,13 @@ import org.commcare.android.database.user.models.FormRecordV1;
 import org.commcare.android.database.user.models.FormRecordV2;
 import org.commcare.android.database.user.models.FormRecordV3;
 import org.commcare.android.database.user.models.FormRecordV4;
+import org.commcare.android.database.user.models.FormRecordV5;
 import org.commcare.android.database.user.models.SessionStateDescriptor;
 import org.commcare.cases.ledger.Ledger;
 import org.commcare.models.database.ConcreteAndroidDbHelper;
 import org.commcare.models.database.DbUtil;
 import org.commcare.models.database.SqlStorage;
+import org.commcare.models.database.SqlStorageIterator;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
 import org.commcare.modern.database.DatabaseIndexingUtils;
 import org.commcare.modern.database.TableBuilder;
@@ -206,10 +208,10 @@ public class UserDbUpgradeUtils {
         SqlStorage<FormRecordV4> oldStorage = getFormRecordStorage(c, db, FormRecordV4.class);
 
         Vector<Uri> migratedInstances = new Vector<>();
-        Vector<Pair<FormRecord, Uri>> newRecords = new Vector<>();
+        Vector<Pair<FormRecordV5, Uri>> newRecords = new Vector<>();
 
         for (FormRecordV4 oldRecord : oldStorage) {
-            FormRecord newRecord = new FormRecord(
+            FormRecordV5 newRecord = new FormRecordV5(
                     oldRecord.getStatus(),
                     oldRecord.getFormNamespace(),
                     oldRecord.getAesKey(),
@@ -238,17 +240,17 @@ public class UserDbUpgradeUtils {
 
         // Drop old Table and create it again with new definition
         db.execSQL("DROP TABLE IF EXISTS " + FormRecord.STORAGE_KEY);
-        TableBuilder builder = new TableBuilder(FormRecord.class);
+        TableBuilder builder = new TableBuilder(FormRecordV5.class);
         db.execSQL(builder.getTableCreateString());
 
         // Write to the new table
-        SqlStorage<FormRecord> newStorage = getFormRecordStorage(c, db, FormRecord.class);
+        SqlStorage<FormRecordV5> newStorage = getFormRecordStorage(c, db, FormRecordV5.class);
         SqlStorage<SessionStateDescriptor> ssdStorage = new SqlStorage<>(
                 SessionStateDescriptor.STORAGE_KEY,
                 SessionStateDescriptor.class,
                 new ConcreteAndroidDbHelper(c, db));
         for (Pair entry : newRecords) {
-            FormRecord newRecord = ((FormRecord)entry.first);
+            FormRecordV5 newRecord = ((FormRecordV5)entry.first);
             int oldId = newRecord.getID();
 
             // Since we are writing in new table, reset the id before write
@@ -270,6 +272,42 @@ public class UserDbUpgradeUtils {
         return migratedInstances;
     }
 
+    /**
+     * Rewrite the form records with the record title, form name and search text fields added in
+     * v29. Those are left empty, and are filled in the first time a record is listed.
+     */
+    protected static void migrateV5FormRecords(Context c, SQLiteDatabase db) {
+        SqlStorage<FormRecordV5> oldStorage = getFormRecordStorage(c, db, FormRecordV5.class);
+        SqlStorage<FormRecord> newStorage = getFormRecordStorage(c, db, FormRecord.class);
+
+        // Collect the ids up front, since the records are rewritten into the same table
+        Vector<Integer> recordIds = new Vector<>();
+        for (SqlStorageIterator<FormRecordV5> iterator = oldStorage.iterate(false); iterator.hasMore(); ) {
+            recordIds.add(iterator.nextID());
+        }
+        for (int recordId : recordIds) {
+            FormRecordV5 oldRecord = oldStorage.read(recordId);
+            FormRecord newRecord = new FormRecord(
+                    oldRecord.getStatus(),
+                    oldRecord.getFormNamespace(),
+                    oldRecord.getAesKey(),
+                    oldRecord.getInstanceID(),
+                    oldRecord.lastModified(),
+                    oldRecord.getAppId());
+            if (oldRecord.getSubmissionOrderingNumber() != -1) {
+                newRecord.setFormNumberForSubmissionOrdering(oldRecord.getSubmissionOrderingNumber());
+            }
+            if (oldRecord.getQuarantineReasonType() != null) {
+                newRecord.setQuarantineReason(oldRecord.getQuarantineReasonType(),
+                        oldRecord.getQuarantineReasonDetail());
+            }
+            newRecord.setDisplayName(oldRecord.getDisplayName());
+            newRecord.setFilePath(oldRecord.getFilePath());
+            newRecord.setID(oldRecord.getID());
+            newStorage.write(newRecord);
+        }
+    }
+
     public static SqlStorage getFormRecordStorage(Context c, SQLiteDatabase db, Class formRecordClass) {
         return new SqlStorage<>(
                 FormRecord.STORAGE_KEY,
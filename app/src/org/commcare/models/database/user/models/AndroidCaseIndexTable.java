@@ -2,8 +2,11 @@ package org.commcare.models.database.user.models;
 
 import android.content.ContentValues;
 
+import com.carrotsearch.hppc.IntArrayList;
+
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
 
 import org.commcare.CommCareApplication;
 import org.commcare.android.database.user.models.ACase;
@@ -18,6 +21,7 @@ import org.commcare.modern.database.DatabaseIndexingUtils;
 import org.commcare.modern.engine.cases.CaseIndexTable;
 import org.commcare.modern.util.Pair;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -68,6 +72,19 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
         String typeFirstIndexId = "NAME_TARGET_RECORD";
         String typeFirstIndex = COL_INDEX_NAME + ", " + COL_CASE_RECORD_ID + ", " + COL_INDEX_TARGET;
         db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(typeFirstIndexId, TABLE_NAME, typeFirstIndex));
+
+        createTargetLookupIndex(db);
+    }
+
+    /**
+     * Covers lookups of the cases indexing a given target (or set of
+     * targets) by name, so they can be answered from the index alone
+     * without touching the table rows.
+     */
+    public static void createTargetLookupIndex(SQLiteDatabase db) {
+        String targetFirstIndexId = "NAME_TARGET_CASE_RECORD";
+        String targetFirstIndex = COL_INDEX_NAME + ", " + COL_INDEX_TARGET + ", " + COL_CASE_RECORD_ID;
+        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(targetFirstIndexId, TABLE_NAME, targetFirstIndex));
     }
 
     /**
@@ -92,6 +109,61 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
         }
     }
 
+    /**
+     * Creates all indexes for a set of cases using a single compiled insert
+     * statement.
+     * TODO: this doesn't ensure any sort of uniqueness, you should wipe constraints first
+     */
+    public void indexCases(Collection<? extends Case> cases) {
+        if (!SqlStorage.STORAGE_OPTIMIZATIONS_ACTIVE) {
+            db.beginTransaction();
+            try {
+                for (Case c : cases) {
+                    indexCase(c);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return;
+        }
+
+        String insertSql = "INSERT INTO " + TABLE_NAME + " (" +
+                COL_CASE_RECORD_ID + ", " +
+                COL_INDEX_NAME + ", " +
+                COL_INDEX_TYPE + ", " +
+                COL_INDEX_TARGET + ", " +
+                COL_INDEX_RELATIONSHIP +
+                ") VALUES " + getArgumentBasedVariableSet(5);
+        SQLiteStatement insert = db.compileStatement(insertSql);
+        db.beginTransaction();
+        try {
+            for (Case c : cases) {
+                for (CaseIndex ci : c.getIndices()) {
+                    insert.clearBindings();
+                    insert.bindLong(1, c.getID());
+                    bindStringOrNull(insert, 2, ci.getName());
+                    bindStringOrNull(insert, 3, ci.getTargetType());
+                    bindStringOrNull(insert, 4, ci.getTarget());
+                    bindStringOrNull(insert, 5, ci.getRelationship());
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
     public HashMap<Integer,Vector<Pair<String, String>>> getCaseIndexMap() {
         String[] projection = new String[] {COL_CASE_RECORD_ID, COL_INDEX_TARGET, COL_INDEX_RELATIONSHIP};
         HashMap<Integer,Vector<Pair<String, String>>> caseIndexMap = new HashMap<>();
@@ -182,11 +254,11 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
      */
     public LinkedHashSet<Integer> getCasesMatchingIndex(String indexName, String targetValue) {
         String[] args = new String[]{indexName, targetValue};
+        String whereExpr = getMatchingIndexWhereClause();
         if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
-            String query = String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ?", COL_CASE_RECORD_ID, TABLE_NAME, COL_INDEX_NAME, COL_INDEX_TARGET);
-            DbUtil.explainSql(db, query, args);
+            DbUtil.explainSql(db, getCaseRecordIdQuery(whereExpr), args);
         }
-        Cursor c = db.query(TABLE_NAME, new String[]{COL_CASE_RECORD_ID}, COL_INDEX_NAME + " = ? AND " + COL_INDEX_TARGET + " =  ?", args, null, null, null);
+        Cursor c = db.query(TABLE_NAME, new String[]{COL_CASE_RECORD_ID}, whereExpr, args, null, null, null);
         LinkedHashSet<Integer> ret = new LinkedHashSet<>();
         SqlStorage.fillIdWindow(c, COL_CASE_RECORD_ID, ret);
         return ret;
@@ -205,13 +277,10 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
         for (int i = 0; i < targetValueSet.length; ++i) {
             args[i + 1] = targetValueSet[i];
         }
-        String inSet = getArgumentBasedVariableSet(targetValueSet.length);
-
-        String whereExpr = String.format("%s = ? AND %s IN %s", COL_INDEX_NAME, COL_INDEX_TARGET, inSet);
+        String whereExpr = getMatchingValueSetWhereClause(targetValueSet.length);
 
         if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
-            String query = String.format("SELECT %s FROM %s WHERE %s", COL_CASE_RECORD_ID, TABLE_NAME, whereExpr);
-            DbUtil.explainSql(db, query, args);
+            DbUtil.explainSql(db, getCaseRecordIdQuery(whereExpr), args);
         }
 
         Cursor c = db.query(TABLE_NAME, new String[]{COL_CASE_RECORD_ID}, whereExpr, args, null, null, null);
@@ -221,6 +290,52 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
         return ret;
     }
 
+    /**
+     * Same as getCasesMatchingIndex, without boxing the record ids
+     *
+     * @return The matching case record ids, in ascending order
+     */
+    public int[] getCaseIdsMatchingIndex(String indexName, String targetValue) {
+        return readSortedIds(db.query(TABLE_NAME, new String[]{COL_CASE_RECORD_ID},
+                getMatchingIndexWhereClause(), new String[]{indexName, targetValue},
+                null, null, null));
+    }
+
+    /**
+     * Same as getCasesMatchingValueSet, without boxing the record ids
+     *
+     * @return The matching case record ids, in ascending order and without
+     * duplicates
+     */
+    public int[] getCaseIdsMatchingValueSet(String indexName, String[] targetValueSet) {
+        String[] args = new String[1 + targetValueSet.length];
+        args[0] = indexName;
+        System.arraycopy(targetValueSet, 0, args, 1, targetValueSet.length);
+        return readSortedIds(db.query(TABLE_NAME, new String[]{COL_CASE_RECORD_ID},
+                getMatchingValueSetWhereClause(targetValueSet.length), args,
+                null, null, null));
+    }
+
+    private static int[] readSortedIds(Cursor c) {
+        IntArrayList ids = new IntArrayList();
+        try {
+            while (c.moveToNext()) {
+                ids.add(c.getInt(0));
+            }
+        } finally {
+            c.close();
+        }
+        int[] sorted = ids.toArray();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+
     public int loadIntoIndexTable(HashMap<String, Vector<Integer>> indexCache, String indexName) {
         int resultsReturned = 0;
         String[] args = new String[]{indexName};
@@ -268,28 +383,12 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
      */
     public DualTableSingleMatchModelQuerySet bulkReadIndexToCaseIdMatch(String indexName, Collection<Integer> cuedCases) {
         DualTableSingleMatchModelQuerySet set = new DualTableSingleMatchModelQuerySet();
-        String caseIdIndex = TableBuilder.scrubName(Case.INDEX_CASE_ID);
 
-        //NOTE: This is possibly slower than it appears. I think the cast screws up sqlites's
-        //ability to do an indexed match
+        // The cast on the bound values is on the right hand side of the IN,
+        // so it doesn't stop the lookup from using the NAME_TARGET_RECORD index
         List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(cuedCases, "CAST(? as INT)");
         for (Pair<String, String[]> querySet : whereParamList) {
-
-            String query =String.format(
-                    "SELECT %s,%s " +
-                            "FROM %s " +
-                            "INNER JOIN %s " +
-                            "ON %s = %s " +
-                            "WHERE %s = '%s' " +
-                            "AND " +
-                            "%s IN %s",
-
-                    COL_CASE_RECORD_ID, ACase.STORAGE_KEY + "." + DatabaseHelper.ID_COL,
-                    TABLE_NAME,
-                    ACase.STORAGE_KEY,
-                    COL_INDEX_TARGET, caseIdIndex,
-                    COL_INDEX_NAME, indexName,
-                    COL_CASE_RECORD_ID, querySet.first);
+            String query = getIndexToCaseIdMatchQuery(indexName, querySet.first);
 
             android.database.Cursor c = db.rawQuery(query, querySet.second);
 
@@ -314,6 +413,37 @@ public class AndroidCaseIndexTable implements CaseIndexTable {
 
 
 
+    static String getCaseRecordIdQuery(String whereExpr) {
+        return String.format("SELECT %s FROM %s WHERE %s", COL_CASE_RECORD_ID, TABLE_NAME, whereExpr);
+    }
+
+    static String getMatchingIndexWhereClause() {
+        return String.format("%s = ? AND %s = ?", COL_INDEX_NAME, COL_INDEX_TARGET);
+    }
+
+    static String getMatchingValueSetWhereClause(int valueCount) {
+        return String.format("%s = ? AND %s IN %s",
+                COL_INDEX_NAME, COL_INDEX_TARGET, getArgumentBasedVariableSet(valueCount));
+    }
+
+    static String getIndexToCaseIdMatchQuery(String indexName, String caseRecordIdSet) {
+        return String.format(
+                "SELECT %s,%s " +
+                        "FROM %s " +
+                        "INNER JOIN %s " +
+                        "ON %s = %s " +
+                        "WHERE %s = '%s' " +
+                        "AND " +
+                        "%s IN %s",
+
+                COL_CASE_RECORD_ID, ACase.STORAGE_KEY + "." + DatabaseHelper.ID_COL,
+                TABLE_NAME,
+                ACase.STORAGE_KEY,
+                COL_INDEX_TARGET, TableBuilder.scrubName(Case.INDEX_CASE_ID),
+                COL_INDEX_NAME, indexName,
+                COL_CASE_RECORD_ID, caseRecordIdSet);
+    }
+
     public static String getArgumentBasedVariableSet(int number) {
         StringBuffer sb = new StringBuffer();
         sb.append("(");
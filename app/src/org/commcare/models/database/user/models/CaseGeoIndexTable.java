@@ -0,0 +1,368 @@
+package org.commcare.models.database.user.models;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import org.commcare.CommCareApplication;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.cases.model.Case;
+import org.commcare.models.database.DbUtil;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.modern.database.DatabaseIndexingUtils;
+import org.commcare.modern.database.TableBuilder;
+import org.commcare.modern.util.Pair;
+import org.commcare.utils.GeoHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Spatial index over the case properties that hold geopoints, keyed by
+ * geohash, so that nearest-N and bounding box lookups over a property
+ * only touch the cases near the area of interest.
+ *
+ * Any property whose value parses as a geopoint ("lat lon [alt [acc]]")
+ * is indexed; rows are maintained alongside the case index table whenever
+ * cases are written or purged.
+ */
+public class CaseGeoIndexTable {
+    public static final String TABLE_NAME = "case_geo_index";
+
+    private static final String COL_CASE_RECORD_ID = "case_rec_id";
+    private static final String COL_PROPERTY = "property";
+    private static final String COL_GEOHASH = "geohash";
+    private static final String COL_LATITUDE = "lat";
+    private static final String COL_LONGITUDE = "lon";
+
+    // Sorts after every character of the geohash alphabet, so that
+    // [prefix, prefix + PREFIX_UPPER_BOUND) spans every hash in a cell
+    private static final String PREFIX_UPPER_BOUND = "{";
+
+    private static final double INITIAL_SEARCH_RADIUS_METERS = 500;
+    private static final double MAX_SEARCH_RADIUS_METERS = 20037509;
+
+    private final SQLiteDatabase db;
+
+    /**
+     * A geopoint property value of a case
+     */
+    public static class IndexedPoint {
+        public final int caseRecordId;
+        public final double latitude;
+        public final double longitude;
+
+        IndexedPoint(int caseRecordId, double latitude, double longitude) {
+            this.caseRecordId = caseRecordId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public CaseGeoIndexTable() {
+        this.db = CommCareApplication.instance().getUserDbHandle();
+    }
+
+    public CaseGeoIndexTable(SQLiteDatabase dbHandle) {
+        this.db = dbHandle;
+    }
+
+    public static String getTableDefinition() {
+        return "CREATE TABLE " + TABLE_NAME + "(" +
+                COL_CASE_RECORD_ID + " INTEGER, " +
+                COL_PROPERTY + " TEXT, " +
+                COL_GEOHASH + " TEXT, " +
+                COL_LATITUDE + " REAL, " +
+                COL_LONGITUDE + " REAL" +
+                ")";
+    }
+
+    public static void createIndexes(SQLiteDatabase db) {
+        // covers bounding box lookups without touching the table rows
+        String geohashIndexId = "PROPERTY_GEOHASH_LAT_LON_RECORD";
+        String geohashIndex = COL_PROPERTY + ", " + COL_GEOHASH + ", " + COL_LATITUDE + ", " +
+                COL_LONGITUDE + ", " + COL_CASE_RECORD_ID;
+        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(geohashIndexId, TABLE_NAME, geohashIndex));
+
+        String recordIndexId = "GEO_CASE_RECORD";
+        db.execSQL(DatabaseIndexingUtils.indexOnTableCommand(recordIndexId, TABLE_NAME, COL_CASE_RECORD_ID));
+    }
+
+    /**
+     * Index every geopoint property of a set of cases. Existing rows for the
+     * cases should be cleared first.
+     */
+    public void indexCases(Collection<? extends Case> cases) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME + " (" +
+                COL_CASE_RECORD_ID + ", " +
+                COL_PROPERTY + ", " +
+                COL_GEOHASH + ", " +
+                COL_LATITUDE + ", " +
+                COL_LONGITUDE +
+                ") VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Case c : cases) {
+                insertGeoPoints(insert, c);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    public void indexCase(Case c) {
+        indexCases(Collections.singletonList(c));
+    }
+
+    private static void insertGeoPoints(SQLiteStatement insert, Case c) {
+        for (Enumeration<String> keys = c.getProperties().keys(); keys.hasMoreElements(); ) {
+            String property = keys.nextElement();
+            double[] point = parseGeoPoint(c.getPropertyString(property));
+            if (point == null) {
+                continue;
+            }
+            insert.clearBindings();
+            insert.bindLong(1, c.getID());
+            insert.bindString(2, property);
+            insert.bindString(3, GeoHash.encode(point[0], point[1], GeoHash.MAX_PRECISION));
+            insert.bindDouble(4, point[0]);
+            insert.bindDouble(5, point[1]);
+            insert.executeInsert();
+        }
+    }
+
+    /**
+     * @return The latitude and longitude of a geopoint value, or null if the
+     * value isn't a geopoint
+     */
+    public static double[] parseGeoPoint(String value) {
+        if (value == null || value.length() < 3) {
+            return null;
+        }
+        // cheap rejection of the common case of non-numeric values
+        char first = value.charAt(0);
+        if (first != '-' && first != '.' && (first < '0' || first > '9')) {
+            return null;
+        }
+        String[] parts = value.trim().split("\\s+");
+        if (parts.length < 2 || parts.length > 4) {
+            return null;
+        }
+        try {
+            for (int i = 2; i < parts.length; i++) {
+                Double.parseDouble(parts[i]);
+            }
+            double lat = Double.parseDouble(parts[0]);
+            double lon = Double.parseDouble(parts[1]);
+            if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+                return null;
+            }
+            return new double[]{lat, lon};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void clearCaseIndices(int recordId) {
+        db.delete(TABLE_NAME, COL_CASE_RECORD_ID + " = CAST(? as INT)",
+                new String[]{String.valueOf(recordId)});
+    }
+
+    public void clearCaseIndices(Collection<Integer> idsToClear) {
+        if (idsToClear.size() == 0) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(idsToClear);
+            for (Pair<String, String[]> whereParams : whereParamList) {
+                db.delete(TABLE_NAME, COL_CASE_RECORD_ID + " IN " + whereParams.first, whereParams.second);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void wipeTable() {
+        SqlStorage.wipeTable(db, TABLE_NAME);
+    }
+
+    public void reIndexAllCases(SqlStorage<ACase> caseStorage) {
+        db.beginTransaction();
+        try {
+            wipeTable();
+            List<ACase> batch = new ArrayList<>();
+            for (ACase c : caseStorage) {
+                batch.add(c);
+                if (batch.size() == 500) {
+                    indexCases(batch);
+                    batch.clear();
+                }
+            }
+            indexCases(batch);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return The points of the given property that fall in the box. A box
+     * whose minimum longitude is greater than its maximum is taken to cross
+     * the antimeridian.
+     */
+    public List<IndexedPoint> getPointsInBoundingBox(String property,
+                                                     double minLat, double minLon,
+                                                     double maxLat, double maxLon) {
+        List<IndexedPoint> points = new ArrayList<>();
+        minLat = Math.max(-90, minLat);
+        maxLat = Math.min(90, maxLat);
+        if (minLat > maxLat) {
+            return points;
+        }
+        if (minLon > maxLon) {
+            queryBox(property, minLat, minLon, maxLat, 180, points);
+            queryBox(property, minLat, -180, maxLat, maxLon, points);
+        } else {
+            queryBox(property, minLat, minLon, maxLat, maxLon, points);
+        }
+        return points;
+    }
+
+    private void queryBox(String property, double minLat, double minLon,
+                          double maxLat, double maxLon, List<IndexedPoint> points) {
+        String where = COL_PROPERTY + " = ? AND " +
+                COL_GEOHASH + " >= ? AND " + COL_GEOHASH + " < ? AND " +
+                COL_LATITUDE + " BETWEEN ? AND ? AND " +
+                COL_LONGITUDE + " BETWEEN ? AND ?";
+        String[] projection = new String[]{COL_CASE_RECORD_ID, COL_LATITUDE, COL_LONGITUDE};
+        for (String cell : GeoHash.coveringCells(minLat, minLon, maxLat, maxLon)) {
+            String[] args = new String[]{property, cell, cell + PREFIX_UPPER_BOUND,
+                    String.valueOf(minLat), String.valueOf(maxLat),
+                    String.valueOf(minLon), String.valueOf(maxLon)};
+            if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
+                DbUtil.explainSql(db, "SELECT " + COL_CASE_RECORD_ID + " FROM " + TABLE_NAME +
+                        " WHERE " + where, args);
+            }
+            readPoints(db.query(TABLE_NAME, projection, where, args, null, null, null), points);
+        }
+    }
+
+    private static void readPoints(Cursor c, List<IndexedPoint> points) {
+        try {
+            while (c.moveToNext()) {
+                points.add(new IndexedPoint(c.getInt(0), c.getDouble(1), c.getDouble(2)));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * The points of the given property closest to a location, nearest first.
+     * The search starts with a small box around the location and widens it
+     * until it holds enough points that are closer than the box's edge.
+     *
+     * @throws IllegalArgumentException if count isn't positive
+     */
+    public List<IndexedPoint> getNearestPoints(String property, double lat, double lon, int count) {
+        return getNearestPoints(property, lat, lon, count, null);
+    }
+
+    /**
+     * The points of the given property closest to a location, nearest first,
+     * among those of the given cases. The search keeps widening until it
+     * holds enough of those cases' points, or has covered everywhere.
+     *
+     * @param recordIds Record ids of the cases to consider, or null for all
+     * @throws IllegalArgumentException if count isn't positive
+     */
+    public List<IndexedPoint> getNearestPoints(String property, double lat, double lon, int count,
+                                               Set<Integer> recordIds) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Nearest point count must be positive: " + count);
+        }
+        double radius = INITIAL_SEARCH_RADIUS_METERS;
+        while (true) {
+            double dLat = GeoHash.latitudeDegreesFor(radius);
+            double dLon = GeoHash.longitudeDegreesFor(radius, lat);
+            List<IndexedPoint> candidates;
+            if (dLon >= 180) {
+                candidates = getPointsInBoundingBox(property, lat - dLat, -180, lat + dLat, 180);
+            } else {
+                candidates = getPointsInBoundingBox(property, lat - dLat, wrapLongitude(lon - dLon),
+                        lat + dLat, wrapLongitude(lon + dLon));
+            }
+            if (recordIds != null) {
+                retainCases(candidates, recordIds);
+            }
+            sortByDistance(candidates, lat, lon);
+
+            boolean searchedEverywhere = radius >= MAX_SEARCH_RADIUS_METERS;
+            if (searchedEverywhere || (candidates.size() >= count &&
+                    distance(candidates.get(count - 1), lat, lon) <= radius)) {
+                return candidates.subList(0, Math.min(count, candidates.size()));
+            }
+            radius *= 4;
+        }
+    }
+
+    /**
+     * @return Every indexed point of the given property
+     */
+    public List<IndexedPoint> getAllPoints(String property) {
+        List<IndexedPoint> points = new ArrayList<>();
+        readPoints(db.query(TABLE_NAME,
+                new String[]{COL_CASE_RECORD_ID, COL_LATITUDE, COL_LONGITUDE},
+                COL_PROPERTY + " = ?", new String[]{property}, null, null, null), points);
+        return points;
+    }
+
+    private static void retainCases(List<IndexedPoint> points, Set<Integer> recordIds) {
+        List<IndexedPoint> retained = new ArrayList<>(points.size());
+        for (IndexedPoint point : points) {
+            if (recordIds.contains(point.caseRecordId)) {
+                retained.add(point);
+            }
+        }
+        points.clear();
+        points.addAll(retained);
+    }
+
+    private static void sortByDistance(List<IndexedPoint> points, final double lat, final double lon) {
+        final double[] distances = new double[points.size()];
+        List<Integer> order = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            distances[i] = distance(points.get(i), lat, lon);
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+        List<IndexedPoint> sorted = new ArrayList<>(points.size());
+        for (int i : order) {
+            sorted.add(points.get(i));
+        }
+        points.clear();
+        points.addAll(sorted);
+    }
+
+    private static double distance(IndexedPoint point, double lat, double lon) {
+        return GeoHash.distance(point.latitude, point.longitude, lat, lon);
+    }
+
+    private static double wrapLongitude(double lon) {
+        if (lon > 180) {
+            return lon - 360;
+        } else if (lon < -180) {
+            return lon + 360;
+        }
+        return lon;
+    }
+}
@@ -15,6 +15,7 @@ import org.commcare.modern.database.DatabaseHelper;
 import org.commcare.modern.database.DatabaseIndexingUtils;
 import org.commcare.modern.util.Pair;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -36,6 +37,7 @@ public class EntityStorageCache {
     private final SQLiteDatabase db;
     private final String mCacheName;
     private final String mAppId;
+    private final EntityStorageMemoryCache mMemoryCache;
 
     public EntityStorageCache(String cacheName) {
         this(cacheName, CommCareApplication.instance().getUserDbHandle(), AppUtils.getCurrentAppId());
@@ -45,6 +47,7 @@ public class EntityStorageCache {
         this.db = db;
         this.mCacheName = cacheName;
         this.mAppId = appId;
+        this.mMemoryCache = EntityStorageMemoryCache.getInstance(db);
     }
 
     public static String getTableDefinition() {
@@ -78,6 +81,7 @@ public class EntityStorageCache {
         cv.put(COL_VALUE, value);
         cv.put(COL_TIMESTAMP, System.currentTimeMillis());
         db.insertWithOnConflict(TABLE_NAME, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+        mMemoryCache.put(mCacheName, mAppId, entityKey, cacheKey, value);
 
         if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
             Log.d(TAG, "Cached value|" + entityKey + "|" + cacheKey);
@@ -85,12 +89,19 @@ public class EntityStorageCache {
     }
 
     public String retrieveCacheValue(String entityKey, String cacheKey) {
+        String memoryCachedValue = retrieveMemoryCacheValue(entityKey, cacheKey);
+        if (memoryCachedValue != null) {
+            return memoryCachedValue;
+        }
+
         String whereClause = String.format("%s = ? AND %s = ? AND %s = ? AND %s = ?", COL_APP_ID, COL_CACHE_NAME, COL_ENTITY_KEY, COL_CACHE_KEY);
 
         Cursor c = db.query(TABLE_NAME, new String[]{COL_VALUE}, whereClause, new String[]{mAppId, mCacheName, entityKey, cacheKey}, null, null, null);
         try {
             if (c.moveToNext()) {
-                return c.getString(0);
+                String value = c.getString(0);
+                mMemoryCache.put(mCacheName, mAppId, entityKey, cacheKey, value);
+                return value;
             } else {
                 return null;
             }
@@ -99,10 +110,50 @@ public class EntityStorageCache {
         }
     }
 
+    /**
+     * @return Keys of all entities that have a value cached under the given
+     * key, ordered by that value. Entities without a cached value aren't
+     * included.
+     */
+    public List<String> getEntityKeysOrderedByValue(String cacheKey, boolean descending) {
+        String whereClause = String.format("%s = ? AND %s = ? AND %s = ?", COL_APP_ID, COL_CACHE_NAME, COL_CACHE_KEY);
+        String orderBy = COL_VALUE + (descending ? " DESC" : " ASC");
+
+        List<String> entityKeys = new ArrayList<>();
+        Cursor c = db.query(TABLE_NAME, new String[]{COL_ENTITY_KEY}, whereClause,
+                new String[]{mAppId, mCacheName, cacheKey}, null, null, orderBy);
+        try {
+            while (c.moveToNext()) {
+                entityKeys.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return entityKeys;
+    }
+
+    /**
+     * Looks up a value in the in-memory tier only, without touching the db.
+     *
+     * @return the cached value, or null if it isn't held in memory
+     */
+    public String retrieveMemoryCacheValue(String entityKey, String cacheKey) {
+        return mMemoryCache.get(mCacheName, mAppId, entityKey, cacheKey);
+    }
+
+    /**
+     * Loads a value already read out of the cache table into the in-memory
+     * tier, for use when bulk priming the cache.
+     */
+    public void primeMemoryCache(String entityKey, String cacheKey, String value) {
+        mMemoryCache.put(mCacheName, mAppId, entityKey, cacheKey, value);
+    }
+
     /**
      * Removes cache records associated with the provided ID
      */
     public void invalidateCache(String recordId) {
+        mMemoryCache.invalidate(mCacheName, recordId);
         int removed = db.delete(TABLE_NAME, COL_CACHE_NAME + " = ? AND " + COL_ENTITY_KEY + " = ?", new String[]{mCacheName, recordId});
         if (SqlStorage.STORAGE_OUTPUT_DEBUG) {
             Log.d(TAG, "Invalidated " + removed + " cached values for entity " + recordId);
@@ -113,6 +164,9 @@ public class EntityStorageCache {
      * Removes cache records associated with the provided IDs
      */
     public void invalidateCaches(Collection<Integer> recordIds) {
+        for (Integer recordId : recordIds) {
+            mMemoryCache.invalidate(mCacheName, String.valueOf(recordId));
+        }
         List<Pair<String, String[]>> whereParamList = TableBuilder.sqlList(recordIds);
         int removed = 0;
         for (Pair<String, String[]> querySet : whereParamList) {
@@ -125,6 +179,14 @@ public class EntityStorageCache {
     }
 
 
+    /**
+     * Drops all in-memory cached values, e.g. when the user's session is
+     * closed. The cache table itself is untouched.
+     */
+    public static void clearMemoryCache() {
+        EntityStorageMemoryCache.clearAll();
+    }
+
     public static int getSortFieldIdFromCacheKey(String detailId, String cacheKey) {
         String intId = cacheKey.substring(detailId.length() + 1);
         try {
@@ -136,6 +198,7 @@ public class EntityStorageCache {
     }
 
     public static void wipeCacheForCurrentAppWithoutCommit(SQLiteDatabase userDb) {
+        EntityStorageMemoryCache.clearAll();
         userDb.delete(TABLE_NAME, COL_APP_ID + " = ?", new String[]{AppUtils.getCurrentAppId()});
         setEntityCacheWipedPref();
     }
@@ -144,6 +207,7 @@ public class EntityStorageCache {
         SQLiteDatabase userDb = CommCareApplication.instance().getUserDbHandle();
         userDb.beginTransaction();
         try {
+            EntityStorageMemoryCache.clearAll();
             userDb.delete(TABLE_NAME, COL_APP_ID + " = ?", new String[]{AppUtils.getCurrentAppId()});
             setEntityCacheWipedPref();
             userDb.setTransactionSuccessful();
@@ -0,0 +1,99 @@
+package org.commcare.models.database.user.models;
+
+import android.support.v4.util.LruCache;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded in-memory tier in front of the entity cache table. Values are
+ * grouped by (cache name, entity key) so that invalidating an entity drops
+ * all of its cached values at once; within an entity they are keyed by
+ * (app id, cache key).
+ *
+ * A single instance is shared by all EntityStorageCache objects backed by
+ * the same db, and is replaced whenever a different user db is used.
+ */
+class EntityStorageMemoryCache {
+    /**
+     * Rough bound on the memory used, counted in characters of keys and values
+     */
+    private static final int MAX_CACHED_CHARS = 2 * 1024 * 1024;
+
+    private static EntityStorageMemoryCache instance;
+
+    private final SQLiteDatabase db;
+    private final LruCache<String, Map<String, String>> entityValues =
+            new LruCache<String, Map<String, String>>(MAX_CACHED_CHARS) {
+                @Override
+                protected int sizeOf(String entityId, Map<String, String> values) {
+                    int size = entityId.length();
+                    for (Map.Entry<String, String> entry : values.entrySet()) {
+                        size += entry.getKey().length() + entry.getValue().length();
+                    }
+                    return size;
+                }
+            };
+
+    private EntityStorageMemoryCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    static synchronized EntityStorageMemoryCache getInstance(SQLiteDatabase db) {
+        if (instance == null || instance.db != db) {
+            instance = new EntityStorageMemoryCache(db);
+        }
+        return instance;
+    }
+
+    static synchronized void clearAll() {
+        if (instance != null) {
+            instance.invalidateAll();
+        }
+    }
+
+    String get(String cacheName, String appId, String entityKey, String cacheKey) {
+        Map<String, String> values = entityValues.get(getEntityId(cacheName, entityKey));
+        if (values == null) {
+            return null;
+        }
+        return values.get(getValueId(appId, cacheKey));
+    }
+
+    /**
+     * Entity value maps are never mutated once stored, so that the LRU's
+     * size accounting stays accurate; updates replace the whole map.
+     */
+    synchronized void put(String cacheName, String appId, String entityKey,
+                          String cacheKey, String value) {
+        String entityId = getEntityId(cacheName, entityKey);
+        Map<String, String> existing = entityValues.get(entityId);
+        HashMap<String, String> updated =
+                existing == null ? new HashMap<String, String>() : new HashMap<>(existing);
+        if (value == null) {
+            updated.remove(getValueId(appId, cacheKey));
+        } else {
+            updated.put(getValueId(appId, cacheKey), value);
+        }
+        entityValues.put(entityId, Collections.unmodifiableMap(updated));
+    }
+
+    synchronized void invalidate(String cacheName, String entityKey) {
+        entityValues.remove(getEntityId(cacheName, entityKey));
+    }
+
+    synchronized void invalidateAll() {
+        entityValues.evictAll();
+    }
+
+    private static String getEntityId(String cacheName, String entityKey) {
+        return cacheName + "|" + entityKey;
+    }
+
+    private static String getValueId(String appId, String cacheKey) {
+        return appId + "|" + cacheKey;
+    }
+}
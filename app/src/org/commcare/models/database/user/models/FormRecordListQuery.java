@@ -0,0 +1,199 @@
+package org.commcare.models.database.user.models;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.modern.database.DatabaseHelper;
+import org.commcare.modern.database.TableBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Queries the form records shown in the saved forms list directly against
+ * the form record table's metadata columns: the status and app filters, the
+ * list's ordering and its text search all run in SQLite, and only the
+ * columns the list displays are read, a window of rows at a time. Records
+ * are left serialized until one is actually opened.
+ *
+ * Text search matches against the search text stored with each record, so
+ * records written before it was stored are only listed by empty searches
+ * until it's filled in; see {@link #getIdsWithoutSearchText}.
+ */
+public class FormRecordListQuery {
+
+    private static final String COL_ID = DatabaseHelper.ID_COL;
+    private static final String COL_STATUS = TableBuilder.scrubName(FormRecord.META_STATUS);
+    private static final String COL_APP_ID = TableBuilder.scrubName(FormRecord.META_APP_ID);
+    private static final String COL_XMLNS = TableBuilder.scrubName(FormRecord.META_XMLNS);
+    private static final String COL_LAST_MODIFIED = TableBuilder.scrubName(FormRecord.META_LAST_MODIFIED);
+    private static final String COL_SUBMISSION_ORDERING_NUMBER =
+            TableBuilder.scrubName(FormRecord.META_SUBMISSION_ORDERING_NUMBER);
+    private static final String COL_RECORD_TITLE = TableBuilder.scrubName(FormRecord.META_RECORD_TITLE);
+    private static final String COL_SEARCH_TEXT = TableBuilder.scrubName(FormRecord.META_SEARCH_TEXT);
+
+    private final SQLiteDatabase db;
+    private final String[] statuses;
+    private final String appId;
+    private final boolean inSubmissionOrder;
+
+    /**
+     * The columns of a record that the list displays
+     */
+    public static class Row {
+        public final int recordId;
+        public final String formNamespace;
+        public final String status;
+        public final long lastModified;
+        public final String recordTitle;
+
+        Row(int recordId, String formNamespace, String status, long lastModified,
+            String recordTitle) {
+            this.recordId = recordId;
+            this.formNamespace = formNamespace;
+            this.status = status;
+            this.lastModified = lastModified;
+            this.recordTitle = recordTitle;
+        }
+    }
+
+    /**
+     * @param statuses          Records with any of these statuses are listed
+     * @param inSubmissionOrder Order records in the order they'll be
+     *                          submitted, rather than most recently modified
+     *                          first
+     */
+    public FormRecordListQuery(SQLiteDatabase db, String[] statuses, String appId,
+                               boolean inSubmissionOrder) {
+        this.db = db;
+        this.statuses = statuses;
+        this.appId = appId;
+        this.inSubmissionOrder = inSubmissionOrder;
+    }
+
+    /**
+     * @return The ids of the listed records that were written before search
+     * text was stored with records
+     */
+    public int[] getIdsWithoutSearchText() {
+        List<String> args = new ArrayList<>();
+        String sql = "SELECT " + COL_ID + " FROM " + FormRecord.STORAGE_KEY +
+                " WHERE " + buildFilterClause(args) + " AND " + COL_SEARCH_TEXT + " IS NULL";
+        return readIds(db.rawQuery(sql, args.toArray(new String[args.size()])));
+    }
+
+    /**
+     * @param queryPieces Lower cased words to search for; a record matches if
+     *                    its text contains any of them. Empty to list all
+     *                    records.
+     * @return The ids of the matching records, in list order
+     */
+    public int[] getMatchingIds(String[] queryPieces) {
+        List<String> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COL_ID)
+                .append(" FROM ").append(FormRecord.STORAGE_KEY)
+                .append(" WHERE ").append(buildFilterClause(args));
+        if (queryPieces.length > 0) {
+            sql.append(" AND (");
+            for (int i = 0; i < queryPieces.length; i++) {
+                if (i > 0) {
+                    sql.append(" OR ");
+                }
+                sql.append(COL_SEARCH_TEXT).append(" LIKE ? ESCAPE '\\'");
+                args.add("%" + escapeLikePattern(queryPieces[i]) + "%");
+            }
+            sql.append(")");
+        }
+        sql.append(" ORDER BY ").append(getOrdering());
+
+        return readIds(db.rawQuery(sql.toString(), args.toArray(new String[args.size()])));
+    }
+
+    private static int[] readIds(Cursor c) {
+        try {
+            int[] ids = new int[c.getCount()];
+            int i = 0;
+            while (c.moveToNext()) {
+                ids[i++] = c.getInt(0);
+            }
+            return ids;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Read the displayed columns of a span of records
+     *
+     * @param ids Record ids, in list order
+     * @return The rows of ids[start] through ids[end - 1], in that order,
+     * with null for any record that no longer exists
+     */
+    public Row[] readRows(int[] ids, int start, int end) {
+        Row[] rows = new Row[Math.max(0, end - start)];
+        if (rows.length == 0) {
+            return rows;
+        }
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(COL_ID).append(", ")
+                .append(COL_XMLNS).append(", ")
+                .append(COL_STATUS).append(", ")
+                .append(COL_LAST_MODIFIED).append(", ")
+                .append(COL_RECORD_TITLE)
+                .append(" FROM ").append(FormRecord.STORAGE_KEY)
+                .append(" WHERE ").append(COL_ID).append(" IN (");
+        HashMap<Integer, Integer> positionsById = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            sql.append(i > start ? "," : "").append(ids[i]);
+            positionsById.put(ids[i], i - start);
+        }
+        sql.append(")");
+
+        Cursor c = db.rawQuery(sql.toString(), null);
+        try {
+            while (c.moveToNext()) {
+                int recordId = c.getInt(0);
+                rows[positionsById.get(recordId)] = new Row(recordId, c.getString(1),
+                        c.getString(2), parseTime(c.getString(3)), c.getString(4));
+            }
+        } finally {
+            c.close();
+        }
+        return rows;
+    }
+
+    private String buildFilterClause(List<String> args) {
+        StringBuilder clause = new StringBuilder(COL_STATUS).append(" IN (");
+        for (int i = 0; i < statuses.length; i++) {
+            clause.append(i > 0 ? ", ?" : "?");
+            args.add(statuses[i]);
+        }
+        clause.append(") AND ").append(COL_APP_ID).append(" = ?");
+        args.add(appId);
+        return clause.toString();
+    }
+
+    private String getOrdering() {
+        if (inSubmissionOrder) {
+            // Records without an ordering number sort first, as they do in
+            // StorageUtils.sortRecordsBySubmissionOrderingNumber
+            return "CAST(" + COL_SUBMISSION_ORDERING_NUMBER + " AS INTEGER) ASC, " + COL_ID + " ASC";
+        } else {
+            return "CAST(" + COL_LAST_MODIFIED + " AS INTEGER) DESC, " + COL_ID + " ASC";
+        }
+    }
+
+    private static String escapeLikePattern(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static long parseTime(String timeSinceEpoch) {
+        try {
+            return Long.parseLong(timeSinceEpoch);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -2,58 +2,162 @@ package org.commcare.models.encryption;
 
 import android.util.Log;
 
-import java.util.HashSet;
-import java.util.Stack;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
 
 /**
+ * Pool of ciphers that can be borrowed concurrently without contending on a
+ * shared lock. Ciphers beyond the pool's max size are still handed out when
+ * needed, but are dropped rather than retained when remitted. Free ciphers
+ * in excess of the initial size are released once the pool has been idle
+ * for a while.
+ *
  * @author ctsims
  */
 public abstract class CipherPool {
     private static final String TAG = CipherPool.class.getSimpleName();
 
     private static final int GROWTH_FACTOR = 5;
+    private static final long IDLE_SHRINK_INTERVAL_MS = 60 * 1000;
 
-    private final HashSet<Cipher> issued = new HashSet<>();
-    private final Stack<Cipher> free = new Stack<>();
+    private final int maxSize;
+
+    private final Set<Cipher> issued = Collections.newSetFromMap(new ConcurrentHashMap<Cipher, Boolean>());
+    private final ConcurrentLinkedQueue<Cipher> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    // Counts from the pool's creation, so that a new pool isn't treated as idle
+    private final AtomicLong lastMissTime = new AtomicLong(System.currentTimeMillis());
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong totalBorrowWaitNanos = new AtomicLong();
+    private final AtomicInteger peakSize = new AtomicInteger();
 
     //TODO: Pass in factory and finalize all API's rather than
     //leaving the class to be anonymous?
-    public CipherPool() {
 
+    /**
+     * @param maxSize The max number of ciphers the pool will retain
+     */
+    public CipherPool(int maxSize) {
+        this.maxSize = Math.max(maxSize, GROWTH_FACTOR);
     }
 
-    public synchronized final void init() {
-        grow();
+    public final void init() {
+        for (int i = 0; i < GROWTH_FACTOR; ++i) {
+            addToFree(generateNewCipher());
+        }
+        updatePeakSize();
     }
 
-    public synchronized final Cipher borrow() {
-        if (free.isEmpty()) {
-            grow();
-            Log.d(TAG, "Growing cipher pool. Current size is: " + free.size() + issued.size());
+    public final Cipher borrow() {
+        long start = System.nanoTime();
+        borrowCount.incrementAndGet();
+
+        Cipher toLend = free.poll();
+        if (toLend != null) {
+            freeCount.decrementAndGet();
+            hitCount.incrementAndGet();
+        } else {
+            lastMissTime.set(System.currentTimeMillis());
+            toLend = generateNewCipher();
+            Log.d(TAG, "Growing cipher pool. Current size is: " + (freeCount.get() + issued.size() + 1));
+        }
+        if (toLend != null) {
+            issued.add(toLend);
+            updatePeakSize();
         }
-        Cipher toLend = free.pop();
-        issued.add(toLend);
+
+        totalBorrowWaitNanos.addAndGet(System.nanoTime() - start);
         return toLend;
     }
 
-    public synchronized final void remit(Cipher cipher) {
-        issued.remove(cipher);
-        free.push(cipher);
+    public final void remit(Cipher cipher) {
+        // Ciphers issued before the pool was expired may be for a stale key
+        if (cipher == null || !issued.remove(cipher)) {
+            return;
+        }
+        if (freeCount.get() + issued.size() < maxSize) {
+            addToFree(cipher);
+        }
+        shrinkIfIdle();
     }
 
-    private synchronized void grow() {
-        for (int i = 0; i < GROWTH_FACTOR; ++i) {
-            free.push(generateNewCipher());
+    private void addToFree(Cipher cipher) {
+        if (cipher == null) {
+            return;
+        }
+        free.offer(cipher);
+        freeCount.incrementAndGet();
+    }
+
+    /**
+     * Release free ciphers beyond the initial pool size if there hasn't been
+     * demand for new ones recently. Called on each remit, and periodically by
+     * the pool's owner so that a pool nobody is using still shrinks.
+     */
+    public void shrinkIfIdle() {
+        long lastMiss = lastMissTime.get();
+        if (System.currentTimeMillis() - lastMiss < IDLE_SHRINK_INTERVAL_MS ||
+                !lastMissTime.compareAndSet(lastMiss, System.currentTimeMillis())) {
+            return;
+        }
+        while (freeCount.get() > GROWTH_FACTOR && free.poll() != null) {
+            freeCount.decrementAndGet();
         }
     }
 
+    private void updatePeakSize() {
+        int currentSize = freeCount.get() + issued.size();
+        int peak;
+        do {
+            peak = peakSize.get();
+        } while (currentSize > peak && !peakSize.compareAndSet(peak, currentSize));
+    }
+
     protected abstract Cipher generateNewCipher();
 
-    public synchronized final void expire() {
+    public final void expire() {
         //do we want to try to destroy the final object here?
         issued.clear();
-        free.clear();
+        while (free.poll() != null) {
+            freeCount.decrementAndGet();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return Fraction of borrows served by an existing cipher, rather than
+     * one created on demand
+     */
+    public double getHitRate() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : hitCount.get() / (double)borrows;
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalBorrowWaitNanos.get() / (borrows * 1000000.0);
+    }
+
+    public int getPeakSize() {
+        return peakSize.get();
+    }
+
+    public String getUsageSummary() {
+        return String.format(Locale.US,
+                "Borrows: %d, hit rate: %.1f%%, avg wait: %.3fms, peak size: %d (max %d)",
+                getBorrowCount(), getHitRate() * 100, getAverageBorrowWaitMillis(),
+                getPeakSize(), maxSize);
     }
 }
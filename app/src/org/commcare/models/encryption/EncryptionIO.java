@@ -9,8 +9,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
@@ -26,6 +30,11 @@ import javax.crypto.spec.SecretKeySpec;
  * @author Phillip Mates (pmates@dimagi.com).
  */
 public class EncryptionIO {
+    /**
+     * Below this size mapping a file costs more than it saves
+     */
+    private static final long MIN_MAPPED_FILE_SIZE = 64 * 1024;
+
     public static OutputStream createFileOutputStream(String filename,
                                                       SecretKeySpec symetricKey)
             throws FileNotFoundException {
@@ -85,4 +94,51 @@ public class EncryptionIO {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Like getFileInputStream, but reads large files through a read-only
+     * memory mapping, so that their (encrypted) contents are decrypted
+     * directly out of the page cache instead of being copied onto the heap
+     * first. The mapping stays valid after the returned stream is closed
+     * and is released once the stream is garbage collected.
+     */
+    public static InputStream getMappedFileInputStream(String filepath,
+                                                       SecretKeySpec symetricKey) throws FileNotFoundException {
+        File file = new File(filepath);
+        if (file.length() < MIN_MAPPED_FILE_SIZE) {
+            return getFileInputStream(filepath, symetricKey);
+        }
+
+        MappedByteBuffer mappedFile;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            // e.g. not enough address space for the mapping
+            Logger.log(LogTypes.TYPE_ERROR_STORAGE,
+                    "Unable to map " + filepath + ", reading it as a stream: " + e.getMessage());
+            return getFileInputStream(filepath, symetricKey);
+        } finally {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        InputStream is = new ByteBufferInputStream(mappedFile);
+        if (symetricKey == null) {
+            return is;
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES");
+            cipher.init(Cipher.DECRYPT_MODE, symetricKey);
+            return new BufferedInputStream(new CipherInputStream(is, cipher));
+        } catch (InvalidKeyException | NoSuchPaddingException
+                | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -83,6 +83,11 @@ public class CommcareRequestEndpointsMock implements CommcareRequestEndpoints {
         throw new RuntimeException("Not yet mocked");
     }
 
+    @Override
+    public Response<ResponseBody> rangedGet(String uri, long offset) throws IOException {
+        throw new RuntimeException("Not yet mocked");
+    }
+
     @Override
     public void abortCurrentRequest() {
         throw new RuntimeException("Not yet mocked");
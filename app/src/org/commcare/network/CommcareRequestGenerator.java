@@ -226,12 +226,25 @@ public class CommcareRequestGenerator implements CommcareRequestEndpoints {
 
     @Override
     public Response<ResponseBody> simpleGet(String uri, Map<String, String> httpParams) throws IOException {
+        return get(uri, httpParams, getHeaders(""));
+    }
+
+    @Override
+    public Response<ResponseBody> rangedGet(String uri, long offset) throws IOException {
+        HashMap<String, String> headers = getHeaders("");
+        if (offset > 0) {
+            headers.put("Range", "bytes=" + offset + "-");
+        }
+        return get(uri, new HashMap<>(), headers);
+    }
 
+    private Response<ResponseBody> get(String uri, Map<String, String> httpParams,
+                                       HashMap<String, String> headers) throws IOException {
         ModernHttpRequester requester = CommCareApplication.instance().createGetRequester(
                 CommCareApplication.instance(),
                 uri,
                 httpParams,
-                getHeaders(""),
+                headers,
                 new AuthInfo.ProvidedAuth(username, password),
                 null);
 
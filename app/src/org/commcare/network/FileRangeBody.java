@@ -0,0 +1,71 @@
+package org.commcare.network;
+
+import org.javarosa.core.io.StreamsUtil.InputIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.annotation.Nullable;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Request body holding a single byte range of a file, so that large files
+ * can be sent in independently retryable parts.
+ */
+public class FileRangeBody extends RequestBody {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final MediaType contentType;
+    private final File file;
+    private final long offset;
+    private final long length;
+
+    public FileRangeBody(MediaType contentType, File file, long offset, long length) {
+        this.contentType = contentType;
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.seek(offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read;
+                try {
+                    read = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                } catch (IOException e) {
+                    // keep failures reading the file distinct from network failures
+                    throw new InputIOException(e);
+                }
+                if (read == -1) {
+                    throw new InputIOException(new IOException("File " + file.getName() +
+                            " shorter than expected"));
+                }
+                sink.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.commcare.network;
+
+import org.javarosa.core.io.StreamsUtil;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Input stream that is filled by a background thread reading from a network
+ * source, so that consumers can process a payload while it is still being
+ * downloaded. The amount of downloaded data held in memory is bounded by the
+ * pipe's buffer size; the download thread blocks when the consumer falls
+ * behind.
+ *
+ * Errors hit while downloading are rethrown to the consumer instead of being
+ * presented as a (truncated) end of stream.
+ */
+public class PipedDownloadStream extends InputStream {
+    private final PipedInputStream pipeIn;
+    private volatile IOException downloadError;
+
+    public PipedDownloadStream(final InputStream source, int bufferSize,
+                               final StreamsUtil.StreamReadObserver observer) throws IOException {
+        pipeIn = new PipedInputStream(bufferSize);
+        final PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+
+        Thread downloadThread = new Thread(() -> {
+            try {
+                StreamsUtil.writeFromInputToOutputNew(new BufferedInputStream(source), pipeOut, observer);
+            } catch (IOException e) {
+                downloadError = e;
+            } finally {
+                StreamsUtil.closeStream(pipeOut);
+                StreamsUtil.closeStream(source);
+            }
+        }, PipedDownloadStream.class.getSimpleName());
+        downloadThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = pipeIn.read();
+        if (result == -1) {
+            throwDownloadErrorIfPresent();
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = pipeIn.read(b, off, len);
+        if (result == -1) {
+            throwDownloadErrorIfPresent();
+        }
+        return result;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pipeIn.available();
+    }
+
+    /**
+     * Closing the read end causes the download thread to fail on its next
+     * write, which releases the underlying network stream.
+     */
+    @Override
+    public void close() throws IOException {
+        pipeIn.close();
+    }
+
+    private void throwDownloadErrorIfPresent() throws IOException {
+        if (downloadError != null) {
+            throw new IOException("Restore download failed: " + downloadError.getMessage(), downloadError);
+        }
+    }
+}
@@ -25,6 +25,12 @@ import retrofit2.Response;
  * @author Phillip Mates (pmates@dimagi.com).
  */
 public class RemoteDataPullResponse {
+    /**
+     * Max number of downloaded bytes held in memory ahead of the parser when
+     * streaming a response
+     */
+    private static final int STREAMING_BUFFER_SIZE = 256 * 1024;
+
     private final DataPullTask task;
     public final int responseCode;
     private final Response<ResponseBody> response;
@@ -63,43 +69,7 @@ public class RemoteDataPullResponse {
 
             Log.i("commcare-network", "Starting network read, expected content size: " + dataSizeGuess + "b");
             StreamsUtil.writeFromInputToOutputNew(new BufferedInputStream(input),
-                    cacheOut,
-                    new StreamsUtil.StreamReadObserver() {
-                        long lastOutput = 0;
-
-                        /** The notification threshold. **/
-                        static final int PERCENT_INCREASE_THRESHOLD = 4;
-
-                        @Override
-                        public void notifyCurrentCount(long bytesRead) {
-                            boolean notify;
-
-                            //We always wanna notify when we get our first bytes
-                            if (lastOutput == 0) {
-                                Log.i("commcare-network", "First" + bytesRead + " bytes received from network: ");
-                            }
-                            //After, if we don't know how much data to expect, we can't do
-                            //anything useful
-                            if (dataSizeGuess == -1) {
-                                //set this so the first notification up there doesn't keep firing
-                                lastOutput = bytesRead;
-                                return;
-                            }
-
-                            int percentIncrease = (int)(((bytesRead - lastOutput) * 100) / dataSizeGuess);
-
-                            //Now see if we're over the reporting threshold
-                            //TODO: Is this actually necessary? In theory this shouldn't
-                            //matter due to android task polling magic?
-                            notify = percentIncrease > PERCENT_INCREASE_THRESHOLD;
-
-                            if (notify && task != null) {
-                                lastOutput = bytesRead;
-                                int totalRead = (int)(((bytesRead) * 100) / dataSizeGuess);
-                                task.reportDownloadProgress(totalRead);
-                            }
-                        }
-                    });
+                    cacheOut, buildProgressObserver(dataSizeGuess));
 
             return cache;
 
@@ -111,6 +81,63 @@ public class RemoteDataPullResponse {
         }
     }
 
+    /**
+     * Opens the HttpResponse stream for consumption while it is still being
+     * downloaded, skipping the local cache. Only a bounded amount of the
+     * response is buffered in memory at any time. Notifies listeners of
+     * progress through the download if its size is available.
+     *
+     * Since the payload isn't retained, callers that may need to re-read the
+     * response should use {@link #writeResponseToCache(Context)} instead.
+     *
+     * @throws IOException If there is an issue opening the response.
+     */
+    public InputStream openStreamingResponse() throws IOException {
+        long dataSizeGuess = ModernHttpRequester.getContentLength(response);
+        Log.i("commcare-network", "Starting streaming network read, expected content size: " + dataSizeGuess + "b");
+        return new PipedDownloadStream(getInputStream(), STREAMING_BUFFER_SIZE,
+                buildProgressObserver(dataSizeGuess));
+    }
+
+    private StreamsUtil.StreamReadObserver buildProgressObserver(final long dataSizeGuess) {
+        return new StreamsUtil.StreamReadObserver() {
+            long lastOutput = 0;
+
+            /** The notification threshold. **/
+            static final int PERCENT_INCREASE_THRESHOLD = 4;
+
+            @Override
+            public void notifyCurrentCount(long bytesRead) {
+                boolean notify;
+
+                //We always wanna notify when we get our first bytes
+                if (lastOutput == 0) {
+                    Log.i("commcare-network", "First" + bytesRead + " bytes received from network: ");
+                }
+                //After, if we don't know how much data to expect, we can't do
+                //anything useful
+                if (dataSizeGuess == -1) {
+                    //set this so the first notification up there doesn't keep firing
+                    lastOutput = bytesRead;
+                    return;
+                }
+
+                int percentIncrease = (int)(((bytesRead - lastOutput) * 100) / dataSizeGuess);
+
+                //Now see if we're over the reporting threshold
+                //TODO: Is this actually necessary? In theory this shouldn't
+                //matter due to android task polling magic?
+                notify = percentIncrease > PERCENT_INCREASE_THRESHOLD;
+
+                if (notify && task != null) {
+                    lastOutput = bytesRead;
+                    int totalRead = (int)(((bytesRead) * 100) / dataSizeGuess);
+                    task.reportDownloadProgress(totalRead);
+                }
+            }
+        };
+    }
+
     protected InputStream getInputStream() throws IOException {
         return response.body().byteStream();
     }
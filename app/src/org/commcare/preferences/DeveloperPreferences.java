@@ -21,6 +21,8 @@ import org.commcare.android.database.user.models.FormRecord;
 import org.commcare.dalvik.BuildConfig;
 import org.commcare.dalvik.R;
 import org.commcare.fragments.CommCarePreferenceFragment;
+import org.commcare.utils.ImageCacheStats;
+import org.commcare.utils.SessionUnavailableException;
 import org.javarosa.core.services.locale.Localization;
 
 import java.util.HashSet;
@@ -56,6 +58,14 @@ public class DeveloperPreferences extends CommCarePreferenceFragment {
     private final static String ENFORCE_SECURE_ENDPOINT = "cc-enforce-secure-endpoint";
     private final static String ALLOW_SPACE_IN_SELECT_CHOICES = "cc-allow-space-in-select-choices";
     private final static String USE_EXPRESSION_CACHING_IN_FORMS = "use-expression-caching-in-forms";
+    private final static String ENABLE_STREAMING_RESTORE = "cc-enable-streaming-restore";
+    private final static String CIPHER_POOL_STATS = "cc-cipher-pool-stats";
+    private final static String IMAGE_CACHE_STATS = "cc-image-cache-stats";
+    private final static String ENABLE_PAGED_ENTITY_LOADING = "cc-enable-paged-entity-loading";
+    private final static String ENABLE_ENTITY_SEARCH_INDEX = "cc-enable-entity-search-index";
+    private final static String FORM_SUBMISSION_PARALLELISM = "cc-form-submission-parallelism";
+    private final static String ENABLE_CHUNKED_ATTACHMENT_UPLOAD = "cc-enable-chunked-attachment-upload";
+    private final static String ENABLE_BUFFERED_LOGGING = "cc-enable-buffered-logging";
 
     public final static String PROJECT_SET_ACCESS_CODE = "cc-dev-prefs-access-code";
     public final static String USER_ENTERED_ACCESS_CODE = "cc-dev-prefs-user-entered-code";
@@ -156,6 +166,28 @@ public class DeveloperPreferences extends CommCarePreferenceFragment {
         savedSessionEditTextPreference = findPreference(EDIT_SAVE_SESSION);
         hideOrShowDangerousSettings();
         setSessionEditText();
+        setCipherPoolStatsSummary();
+        setImageCacheStatsSummary();
+    }
+
+    private void setCipherPoolStatsSummary() {
+        Preference cipherPoolStatsPreference = findPreference(CIPHER_POOL_STATS);
+        if (cipherPoolStatsPreference == null) {
+            return;
+        }
+        try {
+            cipherPoolStatsPreference.setSummary(
+                    CommCareApplication.instance().getSession().getCipherPoolUsageSummary());
+        } catch (SessionUnavailableException e) {
+            cipherPoolStatsPreference.setSummary("No active session");
+        }
+    }
+
+    private void setImageCacheStatsSummary() {
+        Preference imageCacheStatsPreference = findPreference(IMAGE_CACHE_STATS);
+        if (imageCacheStatsPreference != null) {
+            imageCacheStatsPreference.setSummary(ImageCacheStats.getUsageSummary());
+        }
     }
 
     private void setSessionEditText() {
@@ -413,6 +445,66 @@ public class DeveloperPreferences extends CommCarePreferenceFragment {
         return doesPropertyMatch(USE_EXPRESSION_CACHING_IN_FORMS, PrefValues.NO, PrefValues.YES);
     }
 
+    /**
+     * Feature flag to parse restore payloads while they download instead of
+     * caching the full payload to disk first
+     */
+    public static boolean isStreamingRestoreEnabled() {
+        return doesPropertyMatch(ENABLE_STREAMING_RESTORE, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * Feature flag to show the first page of a case list while the remaining
+     * entities are still being loaded
+     */
+    public static boolean isPagedEntityLoadingEnabled() {
+        return doesPropertyMatch(ENABLE_PAGED_ENTITY_LOADING, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * Feature flag to answer case list searches from an in-memory index of
+     * the entity fields rather than scanning every entity
+     */
+    public static boolean isEntitySearchIndexEnabled() {
+        return doesPropertyMatch(ENABLE_ENTITY_SEARCH_INDEX, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * @return How many form uploads may be in flight at once; 1 keeps the
+     * default of submitting forms strictly one after the other
+     */
+    public static int getFormSubmissionParallelism() {
+        SharedPreferences properties = CommCareApplication.instance().getCurrentApp().getAppPreferences();
+        try {
+            return Math.max(1, Integer.parseInt(properties.getString(FORM_SUBMISSION_PARALLELISM, "1")));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    public static void setFormSubmissionParallelism(int parallelism) {
+        CommCareApplication.instance().getCurrentApp().getAppPreferences()
+                .edit()
+                .putString(FORM_SUBMISSION_PARALLELISM, String.valueOf(parallelism))
+                .apply();
+    }
+
+    /**
+     * Feature flag to upload large form attachments in resumable, checksummed
+     * parts ahead of the form submission. Needs a server that supports it.
+     */
+    public static boolean isChunkedAttachmentUploadEnabled() {
+        return doesPropertyMatch(ENABLE_CHUNKED_ATTACHMENT_UPLOAD, PrefValues.NO, PrefValues.YES);
+    }
+
+    /**
+     * Feature flag to queue log entries in memory and write them to storage
+     * in batches from a background thread
+     */
+    public static boolean isBufferedLoggingEnabled() {
+        return doesPropertyMatch(ENABLE_BUFFERED_LOGGING, PrefValues.NO, PrefValues.YES);
+    }
+
     private void hideOrShowDangerousSettings() {
         Preference[] onScreenPrefs = getOnScreenPrefs();
         if (!GlobalPrivilegesManager.isAdvancedSettingsAccessEnabled() && !BuildConfig.DEBUG) {
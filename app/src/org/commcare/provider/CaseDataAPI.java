@@ -44,7 +44,10 @@ class CaseDataAPI {
      * Can be queried for an individual case (NOTE: by case ID not by content provider ID)
      * or for all cases.
      *
-     * Projections and Filtering are unsupported for this type
+     * Supports projections over these columns. Selections and sort orders may use
+     * _id, case_id, case_type, owner_ID and status: selections can AND together =,
+     * != and IN comparisons on them. Results can be paged with the limit and offset
+     * URI query parameters.
      *
      * @author ctsims
      */
@@ -69,6 +72,9 @@ class CaseDataAPI {
 
         public static final int MATCH_CASES = 1;
         public static final int MATCH_CASE = 2;
+
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_OFFSET = "offset";
     }
 
 
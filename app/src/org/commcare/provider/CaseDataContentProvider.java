@@ -15,7 +15,6 @@ import org.commcare.utils.SessionUnavailableException;
 import org.javarosa.core.reference.InvalidReferenceException;
 import org.javarosa.core.reference.ReferenceManager;
 
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.NoSuchElementException;
 import java.util.Vector;
@@ -37,13 +36,8 @@ import java.util.Vector;
  *
  */
 public class CaseDataContentProvider extends ContentProvider {
-    
-    //Valid sql selectors
-    private final HashMap<String, String> caseMetaIndexTable = new HashMap<>();
-    
-    
-    //TODO: Caching - Use a cache table here or use an LRU or other system provided cache?
-    
+
+
     @Override
     public String getType(@NonNull Uri uri) {
         int match = CaseDataAPI.UriMatch(uri);
@@ -67,10 +61,6 @@ public class CaseDataContentProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_ID, Case.INDEX_CASE_ID);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.CASE_TYPE, Case.INDEX_CASE_TYPE);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.STATUS, Case.INDEX_CASE_STATUS);
-        caseMetaIndexTable.put(CaseDataAPI.MetadataColumns.OWNER_ID, Case.INDEX_OWNER_ID);
         return true;
     }
 
@@ -91,7 +81,7 @@ public class CaseDataContentProvider extends ContentProvider {
         switch(match) {
         case CaseDataAPI.MetadataColumns.MATCH_CASES:
         case CaseDataAPI.MetadataColumns.MATCH_CASE:
-            return queryCaseList(uri, selection, selectionArgs);
+            return queryCaseList(uri, projection, selection, selectionArgs, sortOrder);
         case CaseDataAPI.DataColumns.MATCH_DATA:
             return queryCaseData(uri.getLastPathSegment());
         case CaseDataAPI.AttachmentColumns.MATCH_ATTACHMENTS:
@@ -106,95 +96,25 @@ public class CaseDataContentProvider extends ContentProvider {
 
 
 
-    //this is the complex case. Querying the full case database for metadata.
-    private Cursor queryCaseList(Uri uri, String selection, String[] selectionArgs) {
-
-        //Not cached yet. Long term this should be a priority.
-        SqlStorage<ACase> storage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
-        
-        //What we'd really like to do here is raw DB queries, but sadly it looks like we don't actually index 
-        //enough of the right fields for that, so we're going to deserialize the models. We'll consider 
-        //revising this API
-        
-        MatrixCursor retCursor = new MatrixCursor(new String[] {CaseDataAPI.MetadataColumns._ID,
-                                                                CaseDataAPI.MetadataColumns.CASE_ID, 
-                                                                CaseDataAPI.MetadataColumns.CASE_NAME,
-                                                                CaseDataAPI.MetadataColumns.CASE_TYPE,
-                                                                CaseDataAPI.MetadataColumns.DATE_OPENED,
-                                                                CaseDataAPI.MetadataColumns.LAST_MODIFIED,
-                                                                CaseDataAPI.MetadataColumns.OWNER_ID,
-                                                                CaseDataAPI.MetadataColumns.STATUS});
-        
-        //Allow for some selection processing, basically very simple AND filtering on indexes
-        
-        Vector<String> keys = new Vector<>();
-        Vector<String> values = new Vector<>();
-
-        //If we don't have any selection args, skip all of this
-        if(selection != null) {
-            int currentArgVal = 0;
-            String[] selections = selection.toLowerCase().split("\\sand\\s");
-            for(String individualSelection : selections) {
-                String[] parts = individualSelection.split("=");
-                
-                if(parts.length != 2) { throw new RuntimeException("Malformed content provider selection string component: " + individualSelection); }
-                String key = parts[0].trim();
-                if(!caseMetaIndexTable.containsKey(key)) {
-                    throw new RuntimeException("Invalid selection key for case metadata: " + key);
-                }
-                
-                String indexName = caseMetaIndexTable.get(key);
-                
-                //remove any quotation marks and trim
-                String value = parts[1].replace("\"","").replace("'", "").trim();
-                
-
-                //replace all "?"'s with arguments
-                while(value.contains("?")) {
-                    if(currentArgVal >= selectionArgs.length) { throw new RuntimeException("Selection string missing required arguments" + selection); }
-                    value = value.substring(0, value.indexOf("?")) + selectionArgs[currentArgVal] + value.substring(value.indexOf("?") + 1);
-                    currentArgVal++;
-                }
-                
-                keys.add(indexName);
-                values.add(value);
-            }
-        
-            //If we're matching a specific case (or trying to), add that as well)
-            if(CaseDataAPI.UriMatch(uri) != CaseDataAPI.MetadataColumns.MATCH_CASES)  {
-                keys.add(ACase.INDEX_CASE_ID);
-                values.add(uri.getLastPathSegment());
-            }
-            
-            //Do the db records fetch (one at a time, so as to not overload our working memory)
-            Vector<Integer> recordIds = storage.getIDsForValues(keys.toArray(new String[keys.size()]), values.toArray(new String[values.size()]));
-            for(int i : recordIds) {
-                Case c = storage.read(i);
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
-            }
-            return retCursor;
-            
+    /**
+     * Query the case metadata in SQL. Only the cases in the requested page
+     * are read, as the returned cursor is moved through, and a case is only
+     * deserialized if a column held in its serialized form is read.
+     */
+    private Cursor queryCaseList(Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
+        CaseMetadataQuery query = new CaseMetadataQuery(projection);
+        query.setSelection(selection, selectionArgs);
+        //If we're matching a specific case (or trying to), add that as well
+        if (CaseDataAPI.UriMatch(uri) != CaseDataAPI.MetadataColumns.MATCH_CASES) {
+            query.restrictToCase(uri.getLastPathSegment());
         }
-        
-        //Otherwise we either need to iterate over all cases, or just get back the one (these are actually both generalizations of the above
-        //that should get centralized)
+        query.setSortOrder(sortOrder);
+        query.setPage(ProviderUtils.getIntParameter(uri, CaseDataAPI.MetadataColumns.PARAM_LIMIT, -1),
+                ProviderUtils.getIntParameter(uri, CaseDataAPI.MetadataColumns.PARAM_OFFSET, 0));
 
-        //No Case
-        if(CaseDataAPI.UriMatch(uri) == CaseDataAPI.MetadataColumns.MATCH_CASES)  {
-            for(Case c: storage) {
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
-            }
-        } else {
-            //Case defined.
-            try {
-                Case c = storage.getRecordForValue(ACase.INDEX_CASE_ID, uri.getLastPathSegment());
-                retCursor.addRow(new Object[] {c.getID(), c.getCaseId(), c.getName(), c.getTypeId(), c.getDateOpened(), c.getLastModified(), c.getUserId(), c.isClosed() ? "closed" : "open"});
-            } catch(NoSuchElementException nsee) {
-                //No cases with a matching index.
-                return retCursor;
-            }
-        }
-        return retCursor;
+        SqlStorage<ACase> storage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+        return query.run(CommCareApplication.instance().getUserDbHandle(), storage);
     }
 
     /**
@@ -0,0 +1,150 @@
+package org.commcare.provider;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.modern.database.DatabaseHelper;
+
+import java.util.Date;
+
+/**
+ * Case metadata rows read from a query over the case table. Rows are read
+ * from the database as the caller moves through them, and the columns that
+ * are only held in the serialized case (name and dates) are filled by
+ * deserializing the case of the current row, only when they are read.
+ */
+class CaseMetadataCursor extends AbstractCursor {
+    private final Cursor rows;
+    private final String[] columnNames;
+    private final SqlStorage<ACase> storage;
+
+    // For each projected column, its index in the query's rows, or -1 if it
+    // comes from the serialized case
+    private final int[] rowColumnIndices;
+    private final int dataColumnIndex;
+    private final int idColumnIndex;
+
+    private ACase currentCase;
+    private int currentCasePosition = -1;
+
+    CaseMetadataCursor(Cursor rows, String[] columnNames, SqlStorage<ACase> storage) {
+        this.rows = rows;
+        this.columnNames = columnNames;
+        this.storage = storage;
+
+        rowColumnIndices = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            rowColumnIndices[i] = CaseMetadataQuery.isTableColumn(columnNames[i]) ?
+                    rows.getColumnIndexOrThrow(CaseMetadataQuery.getTableColumn(columnNames[i])) : -1;
+        }
+        dataColumnIndex = rows.getColumnIndex(DatabaseHelper.DATA_COL);
+        idColumnIndex = rows.getColumnIndexOrThrow(DatabaseHelper.ID_COL);
+    }
+
+    @Override
+    public int getCount() {
+        return rows.getCount();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        return rows.moveToPosition(newPosition);
+    }
+
+    @Override
+    public String getString(int column) {
+        if (rowColumnIndices[column] != -1) {
+            return rows.getString(rowColumnIndices[column]);
+        }
+        Object value = getCaseModelValue(column);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (rowColumnIndices[column] != -1) {
+            return rows.getLong(rowColumnIndices[column]);
+        }
+        Object value = getCaseModelValue(column);
+        if (value instanceof Date) {
+            return ((Date)value).getTime();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int)getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short)getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float)getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        if (rowColumnIndices[column] != -1) {
+            return rows.getDouble(rowColumnIndices[column]);
+        }
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        if (rowColumnIndices[column] != -1) {
+            return rows.isNull(rowColumnIndices[column]);
+        }
+        return getCaseModelValue(column) == null;
+    }
+
+    @Override
+    public int getType(int column) {
+        if (rowColumnIndices[column] == idColumnIndex) {
+            return FIELD_TYPE_INTEGER;
+        }
+        return isNull(column) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+    }
+
+    private Object getCaseModelValue(int column) {
+        ACase c = getCurrentCase();
+        switch (columnNames[column]) {
+            case CaseDataAPI.MetadataColumns.CASE_NAME:
+                return c.getName();
+            case CaseDataAPI.MetadataColumns.DATE_OPENED:
+                return c.getDateOpened();
+            case CaseDataAPI.MetadataColumns.LAST_MODIFIED:
+                return c.getLastModified();
+            default:
+                throw new IllegalArgumentException("Invalid column for case metadata: " + columnNames[column]);
+        }
+    }
+
+    private ACase getCurrentCase() {
+        checkPosition();
+        if (currentCasePosition != getPosition()) {
+            currentCase = storage.newObject(rows.getBlob(dataColumnIndex), rows.getInt(idColumnIndex));
+            currentCasePosition = getPosition();
+        }
+        return currentCase;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        rows.close();
+        currentCase = null;
+    }
+}
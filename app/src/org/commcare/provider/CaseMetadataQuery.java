@@ -0,0 +1,195 @@
+package org.commcare.provider;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.cases.model.Case;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.modern.database.DatabaseHelper;
+import org.commcare.modern.database.TableBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Translates a query against the case metadata table of the case content
+ * provider into parameterized SQL over the case table's metadata columns, so
+ * that filtering, ordering and paging happen in the database rather than by
+ * deserializing every case.
+ *
+ * Selections (see {@link SelectionParser}) and sort orders may only use the
+ * indexed columns (case id, case type, owner id and status) and _id. Columns held only in
+ * the serialized case, like the case name, may be projected but not filtered
+ * or sorted on.
+ */
+class CaseMetadataQuery {
+
+    private static final String CASE_TABLE = ACase.STORAGE_KEY;
+
+    static final String[] DEFAULT_PROJECTION = new String[]{
+            CaseDataAPI.MetadataColumns._ID,
+            CaseDataAPI.MetadataColumns.CASE_ID,
+            CaseDataAPI.MetadataColumns.CASE_NAME,
+            CaseDataAPI.MetadataColumns.CASE_TYPE,
+            CaseDataAPI.MetadataColumns.DATE_OPENED,
+            CaseDataAPI.MetadataColumns.LAST_MODIFIED,
+            CaseDataAPI.MetadataColumns.OWNER_ID,
+            CaseDataAPI.MetadataColumns.STATUS};
+
+    // Provider columns backed by a column of the case table, by lower cased name
+    private static final HashMap<String, String> tableColumns = new HashMap<>();
+
+    // Provider columns that are only available from the serialized case
+    private static final List<String> caseModelColumns = Arrays.asList(
+            CaseDataAPI.MetadataColumns.CASE_NAME,
+            CaseDataAPI.MetadataColumns.DATE_OPENED,
+            CaseDataAPI.MetadataColumns.LAST_MODIFIED);
+
+    static {
+        tableColumns.put(CaseDataAPI.MetadataColumns._ID.toLowerCase(), DatabaseHelper.ID_COL);
+        tableColumns.put(CaseDataAPI.MetadataColumns.CASE_ID.toLowerCase(),
+                TableBuilder.scrubName(Case.INDEX_CASE_ID));
+        tableColumns.put(CaseDataAPI.MetadataColumns.CASE_TYPE.toLowerCase(),
+                TableBuilder.scrubName(Case.INDEX_CASE_TYPE));
+        tableColumns.put(CaseDataAPI.MetadataColumns.OWNER_ID.toLowerCase(),
+                TableBuilder.scrubName(Case.INDEX_OWNER_ID));
+        tableColumns.put(CaseDataAPI.MetadataColumns.STATUS.toLowerCase(),
+                TableBuilder.scrubName(Case.INDEX_CASE_STATUS));
+    }
+
+    private final String[] projection;
+    private final StringBuilder whereClause = new StringBuilder();
+    private final List<String> whereArgs = new ArrayList<>();
+    private String orderBy;
+    private int limit = -1;
+    private int offset = 0;
+
+    /**
+     * @param projection Provider columns to return, or null for all of them
+     * @throws IllegalArgumentException if the projection names an unknown
+     *                                  column
+     */
+    CaseMetadataQuery(String[] projection) {
+        this.projection = projection == null ? DEFAULT_PROJECTION : projection;
+        for (String column : this.projection) {
+            if (!isTableColumn(column) && !isCaseModelColumn(column)) {
+                throw new IllegalArgumentException("Invalid column for case metadata: " + column);
+            }
+        }
+    }
+
+    String[] getProjection() {
+        return projection;
+    }
+
+    static boolean isTableColumn(String column) {
+        return tableColumns.containsKey(column.toLowerCase());
+    }
+
+    static boolean isCaseModelColumn(String column) {
+        return caseModelColumns.contains(column);
+    }
+
+    /**
+     * Only match the case with the given id
+     */
+    void restrictToCase(String caseId) {
+        appendCondition(TableBuilder.scrubName(Case.INDEX_CASE_ID) + " = ?");
+        whereArgs.add(caseId);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the selection isn't supported or
+     *                                  doesn't match its arguments
+     */
+    void setSelection(String selection, String[] selectionArgs) {
+        for (String condition : new SelectionParser(selection, selectionArgs, tableColumns,
+                "case metadata").parse(whereArgs)) {
+            appendCondition(condition);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the order isn't over indexed columns
+     */
+    void setSortOrder(String sortOrder) {
+        orderBy = SelectionParser.parseSortOrder(sortOrder, tableColumns, "case metadata");
+    }
+
+    /**
+     * @param limit  Maximum number of rows to return, or -1 for all of them
+     * @param offset Number of matching rows to skip
+     */
+    void setPage(int limit, int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset for case metadata: " + offset);
+        }
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    String getSql() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        boolean first = true;
+        for (String column : getSelectedTableColumns()) {
+            sql.append(first ? "" : ", ").append(column);
+            first = false;
+        }
+        sql.append(" FROM ").append(CASE_TABLE);
+        if (whereClause.length() > 0) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        // Keep the row order stable across pages when none is requested
+        sql.append(" ORDER BY ").append(orderBy == null ? DatabaseHelper.ID_COL : orderBy);
+        if (limit >= 0 || offset > 0) {
+            sql.append(" LIMIT ").append(limit).append(" OFFSET ").append(offset);
+        }
+        return sql.toString();
+    }
+
+    String[] getSqlArgs() {
+        return whereArgs.toArray(new String[whereArgs.size()]);
+    }
+
+    /**
+     * @return The case table columns the query reads: the row id, the columns
+     * projected directly, and the serialized case if any projected column
+     * comes from it
+     */
+    List<String> getSelectedTableColumns() {
+        List<String> columns = new ArrayList<>();
+        columns.add(DatabaseHelper.ID_COL);
+        boolean needsCaseModel = false;
+        for (String column : projection) {
+            if (isTableColumn(column)) {
+                String tableColumn = tableColumns.get(column.toLowerCase());
+                if (!columns.contains(tableColumn)) {
+                    columns.add(tableColumn);
+                }
+            } else {
+                needsCaseModel = true;
+            }
+        }
+        if (needsCaseModel) {
+            columns.add(DatabaseHelper.DATA_COL);
+        }
+        return columns;
+    }
+
+    static String getTableColumn(String providerColumn) {
+        return tableColumns.get(providerColumn.toLowerCase());
+    }
+
+    CaseMetadataCursor run(SQLiteDatabase db, SqlStorage<ACase> storage) {
+        return new CaseMetadataCursor(db.rawQuery(getSql(), getSqlArgs()), projection, storage);
+    }
+
+    private void appendCondition(String condition) {
+        if (whereClause.length() > 0) {
+            whereClause.append(" AND ");
+        }
+        whereClause.append(condition);
+    }
+}
@@ -0,0 +1,138 @@
+package org.commcare.provider;
+
+import android.database.AbstractCursor;
+
+import org.commcare.utils.AndroidInstanceInitializer;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.model.xform.DataModelSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A page of a fixture's content, with a row for each top level element of
+ * the fixture. Elements are only serialized when their row is read, so a
+ * page of a large fixture costs no more than the elements on it.
+ */
+class FixtureContentCursor extends AbstractCursor {
+    private static final String[] COLUMNS = new String[]{
+            FixtureDataAPI.MetadataColumns._ID,
+            FixtureDataAPI.MetadataColumns.FIXTURE_ID,
+            FixtureDataAPI.MetadataColumns.CONTENT};
+
+    private final FormInstance fixture;
+    private final int offset;
+    private final int count;
+
+    private String currentContent;
+    private int currentContentPosition = -1;
+
+    /**
+     * @param limit  Maximum number of elements to return, or -1 for all of
+     *               them
+     * @param offset Number of elements to skip
+     */
+    FixtureContentCursor(FormInstance fixture, int limit, int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset for fixture content: " + offset);
+        }
+        this.fixture = fixture;
+        this.offset = offset;
+        int remaining = Math.max(0, fixture.getRoot().getNumChildren() - offset);
+        this.count = limit < 0 ? remaining : Math.min(limit, remaining);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public String getString(int column) {
+        checkPosition();
+        switch (column) {
+            case 0:
+                return String.valueOf(getElementIndex());
+            case 1:
+                return fixture.getInstanceId();
+            case 2:
+                return getCurrentContent();
+            default:
+                throw new IllegalArgumentException("Invalid column for fixture content: " + column);
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (column == 0) {
+            checkPosition();
+            return getElementIndex();
+        }
+        return Long.parseLong(getString(column));
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int)getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short)getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getString(column) == null;
+    }
+
+    @Override
+    public int getType(int column) {
+        if (column == 0) {
+            return FIELD_TYPE_INTEGER;
+        }
+        return isNull(column) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+    }
+
+    private int getElementIndex() {
+        return offset + getPosition();
+    }
+
+    private String getCurrentContent() {
+        if (currentContentPosition != getPosition()) {
+            TreeElement element = fixture.getRoot().getChildAt(getElementIndex());
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try {
+                new DataModelSerializer(bos, new AndroidInstanceInitializer(null))
+                        .serialize(fixture, element.getRef());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            currentContent = new String(bos.toByteArray());
+            currentContentPosition = getPosition();
+        }
+        return currentContent;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        currentContent = null;
+    }
+}
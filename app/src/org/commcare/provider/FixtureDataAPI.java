@@ -21,6 +21,8 @@ public class FixtureDataAPI {
         //Load the URI match patterns
         sURIMatcher.addURI(AUTHORITY, "fixturedb/*", MetadataColumns.MATCH_INSTANCE_ID);
         sURIMatcher.addURI(AUTHORITY, "fixturedb/", MetadataColumns.LIST_INSTANCE_ID);
+        sURIMatcher.addURI(AUTHORITY, "indexedfixturedb/*", IndexedFixtureColumns.MATCH_INDEXED_FIXTURE);
+        sURIMatcher.addURI(AUTHORITY, "indexedfixturedb/", IndexedFixtureColumns.LIST_INDEXED_FIXTURES);
     }
 
     /**
@@ -34,10 +36,19 @@ public class FixtureDataAPI {
     }
 
     /**
-     * MetaData table for cases. Includes basic details like case type, ID, and name.
+     * MetaData table for the user's fixtures. Listing all fixtures returns their
+     * instance and user ids, read without loading the fixtures themselves.
      *
-     * Can be queried for an individual case (NOTE: by case ID not by content provider ID)
-     * or for all cases.
+     * Querying an individual fixture (by instance id, not content provider ID)
+     * returns its content: as a single serialized document, or, when the limit
+     * or offset URI query parameters are given, as one row per top level element
+     * of the fixture, serialized as the rows are read. The whole document can
+     * also be streamed by opening the fixture's URI as a file.
+     *
+     * Paging and streaming only bound the size of what is returned: the whole
+     * fixture is still loaded into memory to answer each query or open, so
+     * large lookup tables should be read as indexed fixtures instead. A
+     * negative offset is rejected with an IllegalArgumentException.
      *
      * Projections and Filtering are unsupported for this type
      *
@@ -56,5 +67,32 @@ public class FixtureDataAPI {
 
         public static final String FIXTURE_ID = "instance_id";
         public static final String USER_ID = "user_id";
+        public static final String CONTENT = "content";
+
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_OFFSET = "offset";
+    }
+
+    /**
+     * Rows of the user's indexed fixtures, which are stored as tables with a
+     * column for each indexed element or attribute.
+     *
+     * Listing returns the names of the indexed fixtures. Querying an indexed
+     * fixture by name returns its rows, with _id and the fixture's indexed
+     * columns. Projections, selections and sort orders may use those columns:
+     * selections can AND together =, != and IN comparisons on them. Results can
+     * be paged with the limit and offset URI query parameters.
+     */
+    public static final class IndexedFixtureColumns implements BaseColumns {
+        // This class cannot be instantiated
+        private IndexedFixtureColumns() {
+        }
+
+        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/indexedfixturedb");
+
+        public static final int MATCH_INDEXED_FIXTURE = 4;
+        public static final int LIST_INDEXED_FIXTURES = 5;
+
+        public static final String FIXTURE_NAME = "fixture_name";
     }
 }
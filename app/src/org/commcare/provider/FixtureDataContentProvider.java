@@ -5,17 +5,29 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
 
 import org.commcare.CommCareApplication;
+import org.commcare.models.database.AndroidSandbox;
+import org.commcare.models.database.HybridFileBackedSqlStorage;
+import org.commcare.models.database.IndexedFixturePathUtils;
+import org.commcare.modern.database.DatabaseHelper;
+import org.commcare.modern.database.TableBuilder;
 import org.commcare.utils.AndroidInstanceInitializer;
+import org.commcare.utils.SessionUnavailableException;
 import org.javarosa.core.model.instance.FormInstance;
-import org.javarosa.core.services.storage.IStorageIterator;
 import org.javarosa.core.services.storage.IStorageUtilityIndexed;
 import org.javarosa.model.xform.DataModelSerializer;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Vector;
 
 /**
  * The fixture content provider defines the interface for external applications
@@ -33,6 +45,7 @@ import java.io.IOException;
  * @author wspride
  */
 public class FixtureDataContentProvider extends ContentProvider {
+    private static final String TAG = FixtureDataContentProvider.class.getSimpleName();
 
     @Override
     public boolean onCreate() {
@@ -42,17 +55,28 @@ public class FixtureDataContentProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        //first, determine whether we're logged in and whether we have a valid data set to even be iterating over.
+        try {
+            CommCareApplication.instance().getUserDbHandle();
+        } catch (SessionUnavailableException sue) {
+            //This implies that the user isn't logged in.
+            return null;
+        }
 
         //Standard dispatcher following Android best practices
         int match = FixtureDataAPI.UriMatch(uri);
 
         switch (match) {
             case FixtureDataAPI.MetadataColumns.LIST_INSTANCE_ID:
-                return getFixtureNames();
+                return getFixtureNames(uri);
             case FixtureDataAPI.MetadataColumns.MATCH_INSTANCE_ID:
-                return getFixtureForId(uri.getLastPathSegment());
+                return getFixtureForId(uri);
+            case FixtureDataAPI.IndexedFixtureColumns.LIST_INDEXED_FIXTURES:
+                return getIndexedFixtureNames();
+            case FixtureDataAPI.IndexedFixtureColumns.MATCH_INDEXED_FIXTURE:
+                return getIndexedFixtureRows(uri, projection, selection, selectionArgs, sortOrder);
         }
-        throw new IllegalArgumentException("URI: " + uri.toString() + " is not a valid content path for CommCare Case Data");
+        throw new IllegalArgumentException("URI: " + uri.toString() + " is not a valid content path for CommCare Fixture Data");
     }
 
     @Override
@@ -70,56 +94,155 @@ public class FixtureDataContentProvider extends ContentProvider {
     }
 
     /**
-     * Return a cursor over the list of all fixture IDs and names
+     * Return a cursor over the IDs, instance ids and user ids of all
+     * fixtures, read from the fixture table's metadata columns
      */
-    private Cursor getFixtureNames() {
-        MatrixCursor retCursor = new MatrixCursor(new String[]{FixtureDataAPI.MetadataColumns._ID, FixtureDataAPI.MetadataColumns.FIXTURE_ID});
-
-        IStorageUtilityIndexed<FormInstance> userFixtureStorage = CommCareApplication.instance().getUserStorage("fixture", FormInstance.class);
-
-        for (IStorageIterator<FormInstance> userFixtures = userFixtureStorage.iterate(); userFixtures.hasMore(); ) {
-            FormInstance fi = userFixtures.nextRecord();
-            String instanceId = fi.getInstanceId();
-            retCursor.addRow(new Object[]{fi.getID(), instanceId});
+    private Cursor getFixtureNames(Uri uri) {
+        String sql = "SELECT " + DatabaseHelper.ID_COL + " AS " + FixtureDataAPI.MetadataColumns._ID + ", " +
+                TableBuilder.scrubName(FormInstance.META_ID) + " AS " + FixtureDataAPI.MetadataColumns.FIXTURE_ID + ", " +
+                TableBuilder.scrubName(FormInstance.META_XMLNS) + " AS " + FixtureDataAPI.MetadataColumns.USER_ID +
+                " FROM " + HybridFileBackedSqlStorage.FIXTURE_STORAGE_TABLE_NAME +
+                " ORDER BY " + DatabaseHelper.ID_COL;
+        int limit = ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_LIMIT, -1);
+        int offset = ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_OFFSET, 0);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset for fixture metadata: " + offset);
         }
-
-        return retCursor;
+        if (limit >= 0 || offset > 0) {
+            sql += " LIMIT " + limit + " OFFSET " + offset;
+        }
+        return CommCareApplication.instance().getUserDbHandle().rawQuery(sql, null);
     }
 
     /**
-     * Return a cursor to the fixture associated with this id
+     * Return a cursor to the fixture associated with this id: a single row
+     * with the whole serialized fixture, or a page of its top level elements
+     * when paging parameters are given. Either way the whole fixture is read
+     * from storage.
      */
-    private Cursor getFixtureForId(String instanceId) {
-        MatrixCursor retCursor = new MatrixCursor(new String[]{FixtureDataAPI.MetadataColumns._ID, FixtureDataAPI.MetadataColumns.FIXTURE_ID, "content"});
-
-        IStorageUtilityIndexed<FormInstance> userFixtureStorage = CommCareApplication.instance().getUserStorage("fixture", FormInstance.class);
+    private Cursor getFixtureForId(Uri uri) {
+        String instanceId = uri.getLastPathSegment();
+        int limit = ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_LIMIT, -1);
+        int offset = ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_OFFSET, 0);
+        // a negative offset is rejected by the paged cursor
+        boolean paged = limit >= 0 || offset != 0;
 
-        for (IStorageIterator<FormInstance> userFixtures = userFixtureStorage.iterate(); userFixtures.hasMore(); ) {
+        IStorageUtilityIndexed<FormInstance> userFixtureStorage = getUserFixtureStorage();
+        Vector<Integer> ids = userFixtureStorage.getIDsForValue(FormInstance.META_ID, instanceId);
+        if (paged) {
+            if (ids.isEmpty()) {
+                return new MatrixCursor(new String[]{FixtureDataAPI.MetadataColumns._ID,
+                        FixtureDataAPI.MetadataColumns.FIXTURE_ID, FixtureDataAPI.MetadataColumns.CONTENT});
+            }
+            // Instance ids are unique within a user's fixtures
+            return new FixtureContentCursor(userFixtureStorage.read(ids.firstElement()), limit, offset);
+        }
 
+        MatrixCursor retCursor = new MatrixCursor(new String[]{FixtureDataAPI.MetadataColumns._ID,
+                FixtureDataAPI.MetadataColumns.FIXTURE_ID, FixtureDataAPI.MetadataColumns.CONTENT});
+        for (Integer id : ids) {
             try {
-                FormInstance fi = userFixtures.nextRecord();
+                FormInstance fi = userFixtureStorage.read(id);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                serializeFixture(fi, bos);
+                retCursor.addRow(new Object[]{fi.getID(), fi.getInstanceId(), new String(bos.toByteArray())});
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-                String currentInstanceId = fi.getInstanceId();
+        return retCursor;
+    }
 
-                if (instanceId.equals(currentInstanceId)) {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    /**
+     * Stream the serialized fixture for the URI's instance id through a pipe,
+     * rather than holding the whole document in a cursor row. The fixture
+     * itself is still read from storage in full before streaming starts.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (FixtureDataAPI.UriMatch(uri) != FixtureDataAPI.MetadataColumns.MATCH_INSTANCE_ID) {
+            throw new FileNotFoundException("URI: " + uri.toString() + " is not a fixture");
+        }
+        final FormInstance fixture;
+        try {
+            IStorageUtilityIndexed<FormInstance> userFixtureStorage = getUserFixtureStorage();
+            Vector<Integer> ids = userFixtureStorage.getIDsForValue(FormInstance.META_ID, uri.getLastPathSegment());
+            if (ids.isEmpty()) {
+                throw new FileNotFoundException("No fixture for " + uri.toString());
+            }
+            fixture = userFixtureStorage.read(ids.firstElement());
+        } catch (SessionUnavailableException sue) {
+            throw new FileNotFoundException("No user session is available to read " + uri.toString());
+        }
 
-                    DataModelSerializer s = new DataModelSerializer(bos, new AndroidInstanceInitializer(null));
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Unable to open pipe for " + uri.toString() + ": " + e.getMessage());
+        }
+        new Thread(() -> {
+            OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+            try {
+                serializeFixture(fixture, out);
+                out.close();
+            } catch (IOException e) {
+                // the reader closed its end of the pipe early
+                Log.w(TAG, "Fixture stream ended early: " + e.getMessage());
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }, "fixture-provider-writer").start();
+        return pipe[0];
+    }
 
-                    s.serialize(fi, fi.getRoot().getRef());
+    private static void serializeFixture(FormInstance fixture, OutputStream out) throws IOException {
+        DataModelSerializer s = new DataModelSerializer(out, new AndroidInstanceInitializer(null));
+        s.serialize(fixture, fixture.getRoot().getRef());
+    }
 
-                    String dump = new String(bos.toByteArray());
+    private static IStorageUtilityIndexed<FormInstance> getUserFixtureStorage() {
+        return new AndroidSandbox(CommCareApplication.instance()).getUserFixtureStorage();
+    }
 
-                    retCursor.addRow(new Object[]{fi.getID(), fi.getInstanceId(), dump});
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Return a cursor over the names of the user's indexed fixtures
+     */
+    private Cursor getIndexedFixtureNames() {
+        MatrixCursor retCursor = new MatrixCursor(new String[]{FixtureDataAPI.IndexedFixtureColumns._ID,
+                FixtureDataAPI.IndexedFixtureColumns.FIXTURE_NAME});
+        int i = 0;
+        for (String name : IndexedFixturePathUtils.getAllIndexedFixtureNames(CommCareApplication.instance().getUserDbHandle())) {
+            retCursor.addRow(new Object[]{i++, name});
         }
-
         return retCursor;
     }
 
+    /**
+     * Return a cursor over the rows of the named indexed fixture, filtered,
+     * ordered and paged by the database
+     */
+    private Cursor getIndexedFixtureRows(Uri uri, String[] projection, String selection,
+                                         String[] selectionArgs, String sortOrder) {
+        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        String fixtureName = uri.getLastPathSegment();
+        // Only ever build table names for fixtures that exist
+        if (!IndexedFixturePathUtils.getAllIndexedFixtureNamesAsSet(db).contains(fixtureName)) {
+            return new MatrixCursor(projection == null ?
+                    new String[]{FixtureDataAPI.IndexedFixtureColumns._ID} : projection);
+        }
+        IndexedFixtureQuery query = new IndexedFixtureQuery(db, fixtureName);
+        query.setProjection(projection);
+        query.setSelection(selection, selectionArgs);
+        query.setSortOrder(sortOrder);
+        query.setPage(ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_LIMIT, -1),
+                ProviderUtils.getIntParameter(uri, FixtureDataAPI.MetadataColumns.PARAM_OFFSET, 0));
+        return query.run(db);
+    }
+
     /**
      * All of the below are invalid due to the read-only nature of the content provider. It's not 100% clear from spec how to express
      * the read-only-ness.
@@ -0,0 +1,134 @@
+package org.commcare.provider;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.cases.model.StorageIndexedTreeElementModel;
+import org.commcare.modern.database.DatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Translates a query against an indexed fixture of the fixture content
+ * provider into parameterized SQL over the fixture's table. Rows expose the
+ * fixture's indexed columns, which are read straight from the table without
+ * deserializing the stored elements.
+ *
+ * Projections, selections (see {@link SelectionParser}) and sort orders may
+ * use _id and the indexed columns.
+ */
+class IndexedFixtureQuery {
+    private static final String DESCRIPTION = "indexed fixture";
+
+    private final String tableName;
+    // Provider columns of the fixture's table, by lower cased name
+    private final HashMap<String, String> tableColumns = new HashMap<>();
+    private final List<String> defaultProjection = new ArrayList<>();
+
+    private String[] projection;
+    private final List<String> conditions = new ArrayList<>();
+    private final List<String> whereArgs = new ArrayList<>();
+    private String orderBy;
+    private int limit = -1;
+    private int offset = 0;
+
+    /**
+     * @param fixtureName Name of an existing indexed fixture
+     */
+    IndexedFixtureQuery(SQLiteDatabase db, String fixtureName) {
+        tableName = StorageIndexedTreeElementModel.getTableName(fixtureName);
+
+        tableColumns.put(FixtureDataAPI.IndexedFixtureColumns._ID.toLowerCase(), DatabaseHelper.ID_COL);
+        defaultProjection.add(FixtureDataAPI.IndexedFixtureColumns._ID);
+
+        Cursor c = db.rawQuery("SELECT * FROM " + tableName + " LIMIT 0", null);
+        try {
+            for (String column : c.getColumnNames()) {
+                if (!DatabaseHelper.ID_COL.equals(column) && !DatabaseHelper.DATA_COL.equals(column)) {
+                    tableColumns.put(column.toLowerCase(), column);
+                    defaultProjection.add(column);
+                }
+            }
+        } finally {
+            c.close();
+        }
+        projection = defaultProjection.toArray(new String[defaultProjection.size()]);
+    }
+
+    /**
+     * @param projection Provider columns to return, or null for all of them
+     * @throws IllegalArgumentException if the projection names an unknown
+     *                                  column
+     */
+    void setProjection(String[] projection) {
+        if (projection == null) {
+            return;
+        }
+        for (String column : projection) {
+            if (!tableColumns.containsKey(column.toLowerCase())) {
+                throw new IllegalArgumentException("Invalid column for " + DESCRIPTION + ": " + column);
+            }
+        }
+        this.projection = projection;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the selection isn't supported or
+     *                                  doesn't match its arguments
+     */
+    void setSelection(String selection, String[] selectionArgs) {
+        conditions.addAll(new SelectionParser(selection, selectionArgs, tableColumns,
+                DESCRIPTION).parse(whereArgs));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the order isn't over the fixture's
+     *                                  columns
+     */
+    void setSortOrder(String sortOrder) {
+        orderBy = SelectionParser.parseSortOrder(sortOrder, tableColumns, DESCRIPTION);
+    }
+
+    /**
+     * @param limit  Maximum number of rows to return, or -1 for all of them
+     * @param offset Number of matching rows to skip
+     */
+    void setPage(int limit, int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset for " + DESCRIPTION + ": " + offset);
+        }
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    String getSql() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < projection.length; i++) {
+            // Alias each column so the rows use the caller's names
+            sql.append(i == 0 ? "" : ", ")
+                    .append(tableColumns.get(projection[i].toLowerCase()))
+                    .append(" AS \"").append(projection[i]).append('"');
+        }
+        sql.append(" FROM ").append(tableName);
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+        // Keep the row order stable across pages when none is requested
+        sql.append(" ORDER BY ").append(orderBy == null ? DatabaseHelper.ID_COL : orderBy);
+        if (limit >= 0 || offset > 0) {
+            sql.append(" LIMIT ").append(limit).append(" OFFSET ").append(offset);
+        }
+        return sql.toString();
+    }
+
+    String[] getSqlArgs() {
+        return whereArgs.toArray(new String[whereArgs.size()]);
+    }
+
+    Cursor run(SQLiteDatabase db) {
+        return db.rawQuery(getSql(), getSqlArgs());
+    }
+}
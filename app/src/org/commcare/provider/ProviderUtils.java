@@ -1,10 +1,12 @@
 package org.commcare.provider;
 
+import android.net.Uri;
+
 import org.commcare.CommCareApp;
 
 /**
- * Some utility methods used by InstanceProvider and FormsProvider, and by the db upgrade methods
- * for both
+ * Some utility methods used by the content providers, and by the db upgrade methods for
+ * InstanceProvider and FormsProvider
  *
  * @author amstone
  */
@@ -42,4 +44,21 @@ public class ProviderUtils {
         return currentSandbox.getAppRecord().getApplicationId();
     }
 
+    /**
+     * @return The value of an integer query parameter of a content uri, e.g.
+     * a page size
+     * @throws IllegalArgumentException if the parameter isn't an integer
+     */
+    public static int getIntParameter(Uri uri, String name, int defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter: " + value);
+        }
+    }
+
 }
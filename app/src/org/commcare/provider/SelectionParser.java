@@ -0,0 +1,218 @@
+package org.commcare.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Translates the selection of a content provider query into parameterized
+ * SQL conditions over the columns the provider allows, reading it one token
+ * at a time rather than handing it to the database as is.
+ *
+ * Selections are conjunctions of comparisons, e.g.
+ * "case_type = ? AND status IN ('open', ?)". Supported comparisons are =,
+ * !=, &lt;&gt; and IN; values are '?' placeholders or quoted or bare
+ * literals, and are always bound as arguments. Sort orders are restricted to
+ * the same columns; see {@link #parseSortOrder}.
+ */
+class SelectionParser {
+    private final String selection;
+    private final String[] selectionArgs;
+    private final Map<String, String> columns;
+    private final String description;
+
+    private int pos = 0;
+    private int nextArg = 0;
+
+    /**
+     * @param columns     Table column for each column that may be compared,
+     *                    keyed by lower cased provider column name
+     * @param description What's being queried, for error messages
+     */
+    SelectionParser(String selection, String[] selectionArgs, Map<String, String> columns,
+                    String description) {
+        this.selection = selection;
+        this.selectionArgs = selectionArgs == null ? new String[0] : selectionArgs;
+        this.columns = columns;
+        this.description = description;
+    }
+
+    /**
+     * @param args The values of the returned conditions' placeholders are
+     *             appended to this
+     * @return The selection's comparisons as SQL conditions, all of which
+     * must hold
+     * @throws IllegalArgumentException if the selection isn't supported or
+     *                                  doesn't match its arguments
+     */
+    List<String> parse(List<String> args) {
+        List<String> conditions = new ArrayList<>();
+        if (selection == null || selection.trim().isEmpty()) {
+            return conditions;
+        }
+        conditions.add(parseComparison(args));
+        String token;
+        while ((token = nextToken()) != null) {
+            if (!"and".equalsIgnoreCase(token)) {
+                throw invalid("expected AND but found " + token);
+            }
+            conditions.add(parseComparison(args));
+        }
+        if (nextArg != selectionArgs.length) {
+            throw invalid("expected " + nextArg + " arguments but got " + selectionArgs.length);
+        }
+        return conditions;
+    }
+
+    /**
+     * Translate a sort order over the given columns, e.g. "case_type DESC, _id"
+     *
+     * @return The SQL ordering, or null if no sort order was given
+     * @throws IllegalArgumentException if the order uses other columns or
+     *                                  expressions
+     */
+    static String parseSortOrder(String sortOrder, Map<String, String> columns,
+                                 String description) {
+        if (sortOrder == null || sortOrder.trim().isEmpty()) {
+            return null;
+        }
+        StringBuilder ordering = new StringBuilder();
+        for (String term : sortOrder.split(",")) {
+            String[] parts = term.trim().split("\\s+");
+            String column = columns.get(parts[0].toLowerCase());
+            String direction = parts.length == 2 ? parts[1].toUpperCase(Locale.US) : "ASC";
+            if (parts.length > 2 || column == null ||
+                    !("ASC".equals(direction) || "DESC".equals(direction))) {
+                throw new IllegalArgumentException("Unsupported sort order for " + description + ": " + sortOrder);
+            }
+            if (ordering.length() > 0) {
+                ordering.append(", ");
+            }
+            ordering.append(column).append(' ').append(direction);
+        }
+        return ordering.toString();
+    }
+
+    private String parseComparison(List<String> args) {
+        String key = nextToken();
+        if (key == null) {
+            throw invalid("expected a column");
+        }
+        String column = columns.get(key.toLowerCase());
+        if (column == null) {
+            throw new IllegalArgumentException("Invalid selection key for " + description + ": " + key);
+        }
+
+        String operator = nextToken();
+        if ("=".equals(operator) || "!=".equals(operator) || "<>".equals(operator)) {
+            args.add(nextValue());
+            return column + ("=".equals(operator) ? " = ?" : " != ?");
+        } else if ("in".equalsIgnoreCase(operator)) {
+            expect("(");
+            StringBuilder condition = new StringBuilder(column).append(" IN (?");
+            args.add(nextValue());
+            String token;
+            while (",".equals(token = nextToken())) {
+                condition.append(", ?");
+                args.add(nextValue());
+            }
+            if (!")".equals(token)) {
+                throw invalid("expected )");
+            }
+            return condition.append(")").toString();
+        }
+        throw invalid("unsupported comparison " + operator);
+    }
+
+    private String nextValue() {
+        skipWhitespace();
+        if (pos >= selection.length()) {
+            throw invalid("expected a value");
+        }
+        char c = selection.charAt(pos);
+        if (c == '?') {
+            pos++;
+            if (nextArg >= selectionArgs.length) {
+                throw invalid("missing required arguments");
+            }
+            return selectionArgs[nextArg++];
+        } else if (c == '\'' || c == '"') {
+            return readQuoted(c);
+        }
+        String value = nextToken();
+        if (value == null || !isWordChar(value.charAt(0))) {
+            throw invalid("expected a value");
+        }
+        return value;
+    }
+
+    private String readQuoted(char quote) {
+        StringBuilder value = new StringBuilder();
+        pos++;
+        while (pos < selection.length()) {
+            char c = selection.charAt(pos++);
+            if (c == quote) {
+                // a doubled quote is an escaped quote
+                if (pos < selection.length() && selection.charAt(pos) == quote) {
+                    value.append(quote);
+                    pos++;
+                } else {
+                    return value.toString();
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw invalid("unterminated string");
+    }
+
+    private void expect(String expected) {
+        if (!expected.equals(nextToken())) {
+            throw invalid("expected " + expected);
+        }
+    }
+
+    /**
+     * @return The next word, comparison operator or punctuation mark, or
+     * null at the end of the selection
+     */
+    private String nextToken() {
+        skipWhitespace();
+        if (pos >= selection.length()) {
+            return null;
+        }
+        char c = selection.charAt(pos);
+        if (c == '(' || c == ')' || c == ',' || c == '=') {
+            pos++;
+            return String.valueOf(c);
+        }
+        if (selection.startsWith("!=", pos) || selection.startsWith("<>", pos)) {
+            pos += 2;
+            return selection.substring(pos - 2, pos);
+        }
+        int start = pos;
+        while (pos < selection.length() && isWordChar(selection.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw invalid("unexpected character " + c);
+        }
+        return selection.substring(start, pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < selection.length() && Character.isWhitespace(selection.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '@';
+    }
+
+    private IllegalArgumentException invalid(String problem) {
+        return new IllegalArgumentException("Malformed " + description + " selection, " +
+                problem + ": " + selection);
+    }
+}
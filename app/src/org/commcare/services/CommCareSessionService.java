@@ -81,6 +81,11 @@ public class CommCareSessionService extends Service {
     private Timer maintenanceTimer;
     private CipherPool pool;
 
+    // Enough ciphers for the UI thread and the background loaders that
+    // decrypt records in parallel; any beyond this are dropped when remitted
+    private static final int MAX_POOLED_CIPHERS =
+            Math.max(8, 2 * Runtime.getRuntime().availableProcessors() + 2);
+
     private byte[] key = null;
 
     private Date sessionExpireDate;
@@ -149,7 +154,7 @@ public class CommCareSessionService extends Service {
     }
 
     public void createCipherPool() {
-        pool = new CipherPool() {
+        pool = new CipherPool(MAX_POOLED_CIPHERS) {
             @Override
             public Cipher generateNewCipher() {
                 synchronized (lock) {
@@ -311,6 +316,10 @@ public class CommCareSessionService extends Service {
             @Override
             public void run() {
                 timeToExpireSession();
+                CipherPool currentPool = pool;
+                if (currentPool != null) {
+                    currentPool.shrinkIfIdle();
+                }
             }
 
         }, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD);
@@ -441,6 +450,10 @@ public class CommCareSessionService extends Service {
         }
     }
 
+    public String getCipherPoolUsageSummary() {
+        return pool.getUsageSummary();
+    }
+
     /**
      * Is the session active? Active sessions have an open key pool and user
      * database.
@@ -560,6 +573,17 @@ public class CommCareSessionService extends Service {
                 }
             }
 
+            @Override
+            public void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis) {
+                if (submissionNotification == null || elapsedMillis <= 0) {
+                    return;
+                }
+                double kbPerSecond = (bytesSent / 1024.0) / (elapsedMillis / 1000.0);
+                submissionNotification.setSubText(String.format("%1$d sent, %2$,.1fkb/s",
+                        itemsSent, kbPerSecond));
+                mNM.notify(notificationId, submissionNotification.build());
+            }
+
             @Override
             public void endSubmissionProcess(boolean success) {
                 mNM.cancel(notificationId);
@@ -21,12 +21,14 @@ import org.commcare.google.services.analytics.AnalyticsParamValue;
 import org.commcare.interfaces.CommcareRequestEndpoints;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.models.encryption.ByteEncrypter;
 import org.commcare.modern.models.RecordTooLargeException;
 import org.commcare.network.DataPullRequester;
 import org.commcare.network.HttpUtils;
 import org.commcare.network.RemoteDataPullResponse;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.preferences.HiddenPreferences;
 import org.commcare.preferences.ServerUrls;
 import org.commcare.resources.model.CommCareOTARestoreListener;
@@ -38,6 +40,7 @@ import org.commcare.utils.SessionUnavailableException;
 import org.commcare.utils.SyncDetailCalculations;
 import org.commcare.utils.UnknownSyncError;
 import org.commcare.xml.AndroidTransactionParserFactory;
+import org.javarosa.core.io.StreamsUtil;
 import org.javarosa.core.model.User;
 import org.javarosa.core.services.Logger;
 import org.javarosa.core.services.locale.Localization;
@@ -344,8 +347,13 @@ public abstract class DataPullTask<R>
         Logger.log(LogTypes.TYPE_USER, "Remote Auth Successful|" + username);
 
         try {
-            BitCache cache = pullResponse.writeResponseToCache(context);
-            String syncToken = readInput(cache.retrieveCache(), factory);
+            String syncToken;
+            if (DeveloperPreferences.isStreamingRestoreEnabled()) {
+                syncToken = readInputWhileDownloading(pullResponse, factory);
+            } else {
+                BitCache cache = pullResponse.writeResponseToCache(context);
+                syncToken = readInput(cache.retrieveCache(), factory);
+            }
             updateUserSyncToken(syncToken);
 
             onSuccessfulSync();
@@ -509,7 +517,8 @@ public abstract class DataPullTask<R>
             }
 
             // Grab a cache. The plan is to download the incoming data, wipe (move) the existing
-            // db, and then restore fresh from the downloaded file
+            // db, and then restore fresh from the downloaded file. We always cache here, even
+            // if streaming restores are enabled, since the wipe requires a stable local copy
             cache = pullResponse.writeResponseToCache(context);
         } catch (IOException e) {
             e.printStackTrace();
@@ -554,6 +563,7 @@ public abstract class DataPullTask<R>
         SqlStorage.wipeTableWithoutCommit(userDb, ACase.STORAGE_KEY);
         SqlStorage.wipeTableWithoutCommit(userDb, Ledger.STORAGE_KEY);
         SqlStorage.wipeTableWithoutCommit(userDb, AndroidCaseIndexTable.TABLE_NAME);
+        SqlStorage.wipeTableWithoutCommit(userDb, CaseGeoIndexTable.TABLE_NAME);
         EntityStorageCache.wipeCacheForCurrentAppWithoutCommit(userDb);
     }
 
@@ -616,6 +626,23 @@ public abstract class DataPullTask<R>
         return factory.getSyncToken();
     }
 
+    /**
+     * Parse the restore payload as it is downloaded rather than caching it to
+     * disk first. The whole parse still happens in a single transaction, so a
+     * download failure part way through leaves the user db untouched.
+     */
+    private String readInputWhileDownloading(RemoteDataPullResponse pullResponse,
+                                             AndroidTransactionParserFactory factory)
+            throws InvalidStructureException, IOException, XmlPullParserException,
+            UnfullfilledRequirementsException {
+        InputStream stream = pullResponse.openStreamingResponse();
+        try {
+            return readInput(stream, factory);
+        } finally {
+            StreamsUtil.closeStream(stream);
+        }
+    }
+
     //BEGIN - OTA Listener methods below - Note that most of the methods
     //below weren't really implemented
 
@@ -10,6 +10,16 @@ public interface DataSubmissionListener {
 
     void notifyProgress(int itemNumber, long progress);
 
+    /**
+     * Reports the running totals of a submission process that sends several
+     * items, possibly concurrently
+     *
+     * @param itemsSent     How many items have been sent successfully
+     * @param bytesSent     Approximate size of the items sent
+     * @param elapsedMillis Time since sending started
+     */
+    void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis);
+
     void endSubmissionProcess(boolean success);
 
 }
@@ -13,4 +13,10 @@ public interface EntityLoaderListener {
                            NodeEntityFactory factory, int focusTargetIndex);
 
     void deliverLoadError(Exception e);
+
+    /**
+     * Report how many of the loaded entities have had their sort fields
+     * prepared so far
+     */
+    void deliverLoadProgress(int entitiesPrepared, int totalEntities);
 }
@@ -29,15 +29,35 @@ public class EntityLoaderTask
     private final static Object lock = new Object();
     private static EntityLoaderTask pendingTask = null;
 
+    // How long a detached task waits to be reattached before its work is abandoned
+    private static final long DETACHED_TIMEOUT_MS = 1000;
+
+    // Number of entities loaded up front when the list is loaded in pages
+    private static final int FIRST_PAGE_SIZE = 50;
+
     private final NodeEntityFactory factory;
     private EntityLoaderListener listener;
     private Exception mException = null;
     private int focusTargetIndex;
+    private volatile long detachedAt = -1;
+    private boolean pagedLoading = false;
 
     public EntityLoaderTask(Detail detail, EvaluationContext evalCtx) {
         evalCtx.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
         if (detail.useAsyncStrategy()) {
-            this.factory = new AsyncNodeEntityFactory(detail, evalCtx);
+            AsyncNodeEntityFactory asyncFactory = new AsyncNodeEntityFactory(detail, evalCtx);
+            asyncFactory.setPrimingObserver(new AsyncNodeEntityFactory.PrimingObserver() {
+                @Override
+                public void onPrimingProgress(int entitiesPrimed, int totalEntities) {
+                    publishProgress(entitiesPrimed, totalEntities);
+                }
+
+                @Override
+                public boolean isPrimingCancelled() {
+                    return isCancelled() || hasBeenAbandoned();
+                }
+            });
+            this.factory = asyncFactory;
         } else {
             this.factory = new NodeEntityFactory(detail, evalCtx);
             if (DeveloperPreferences.collectAndDisplayEntityTraces()) {
@@ -46,15 +66,51 @@ public class EntityLoaderTask
         }
     }
 
+    /**
+     * Only build the first page of entities, leaving the rest of the
+     * references to be loaded by an EntityPageLoaderTask once the list is
+     * shown. Only supported for details that use the async strategy; focus
+     * targeting only considers the first page.
+     */
+    public void enablePagedLoading() {
+        pagedLoading = factory instanceof AsyncNodeEntityFactory;
+    }
+
+    /**
+     * Let sort fields be primed on several threads, each evaluating against
+     * its own context from the provider. Only supported for details that use
+     * the async strategy.
+     */
+    public void enableParallelPriming(AsyncNodeEntityFactory.EvaluationContextProvider provider) {
+        if (factory instanceof AsyncNodeEntityFactory) {
+            ((AsyncNodeEntityFactory)factory).setWorkerContextProvider(() -> {
+                EvaluationContext workerContext = provider.newEvaluationContext();
+                workerContext.addFunctionHandler(EntitySelectActivity.getHereFunctionHandler());
+                return workerContext;
+            });
+        }
+    }
+
     @Override
     protected Pair<List<Entity<TreeReference>>, List<TreeReference>> doInBackground(TreeReference... nodeset) {
         try {
             List<TreeReference> references = factory.expandReferenceList(nodeset[0]);
 
+            List<TreeReference> toLoad = references;
+            if (pagedLoading && references.size() > FIRST_PAGE_SIZE) {
+                // Only build the first page here, the rest is loaded in the
+                // background once the list is showing
+                references = ((AsyncNodeEntityFactory)factory).presortReferences(references,
+                        EntitySelectActivity.getHereFunctionHandler().getLocation(), FIRST_PAGE_SIZE);
+                toLoad = references.subList(0, FIRST_PAGE_SIZE);
+                ((AsyncNodeEntityFactory)factory).setPendingReferences(
+                        new ArrayList<>(references.subList(FIRST_PAGE_SIZE, references.size())));
+            }
+
             List<Entity<TreeReference>> full = new ArrayList<>();
             focusTargetIndex = -1;
             int indexInFullList = 0;
-            for (TreeReference ref : references) {
+            for (TreeReference ref : toLoad) {
                 if (this.isCancelled()) {
                     return null;
                 }
@@ -70,6 +126,9 @@ public class EntityLoaderTask
             }
 
             factory.prepareEntities(full);
+            if (this.isCancelled()) {
+                return null;
+            }
             factory.printAndClearTraces("build");
             return new Pair<>(full, references);
         } catch (XPathException xe) {
@@ -81,6 +140,16 @@ public class EntityLoaderTask
         }
     }
 
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        super.onProgressUpdate(values);
+        synchronized (lock) {
+            if (listener != null && detachedAt == -1) {
+                listener.deliverLoadProgress(values[0], values[1]);
+            }
+        }
+    }
+
     @Override
     protected void onPostExecute(Pair<List<Entity<TreeReference>>, List<TreeReference>> result) {
         super.onPostExecute(result);
@@ -111,7 +180,7 @@ public class EntityLoaderTask
 
             // If this is pending for more than about a second, drop it, we
             // never know if it's going to get reattached
-            if (System.currentTimeMillis() - waitingTime > 1000) {
+            if (System.currentTimeMillis() - waitingTime > DETACHED_TIMEOUT_MS) {
                 pendingTask = null;
                 return;
             }
@@ -121,9 +190,20 @@ public class EntityLoaderTask
     public void detachActivity() {
         synchronized (lock) {
             pendingTask = this;
+            detachedAt = System.currentTimeMillis();
         }
     }
 
+    /**
+     * A detached task that hasn't been picked up by a new activity in time
+     * likely never will be, so there is no point in finishing expensive work
+     * for it.
+     */
+    private boolean hasBeenAbandoned() {
+        long detachTime = detachedAt;
+        return detachTime != -1 && System.currentTimeMillis() - detachTime > DETACHED_TIMEOUT_MS;
+    }
+
     public static boolean attachToActivity(EntityLoaderListener listener) {
         synchronized (lock) {
             if (pendingTask == null) {
@@ -137,6 +217,7 @@ public class EntityLoaderTask
     }
 
     public void attachListener(EntityLoaderListener listener) {
+        this.detachedAt = -1;
         this.listener = listener;
         listener.attachLoader(this);
     }
@@ -0,0 +1,242 @@
+package org.commcare.tasks;
+
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
+import org.commcare.suite.model.Detail;
+import org.commcare.suite.model.DetailTemplate;
+import org.commcare.suite.model.Text;
+import org.commcare.tasks.templates.ManagedAsyncTask;
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.data.GeoPointData;
+import org.javarosa.core.model.data.UncastData;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.model.utils.CacheHost;
+import org.javarosa.core.util.OrderedHashtable;
+import org.javarosa.xpath.XPathException;
+import org.javarosa.xpath.expr.FunctionUtils;
+import org.javarosa.xpath.expr.XPathExpression;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the map locations of the entities of a detail, evaluating only the
+ * detail's address fields. The remaining fields of an entity are left to be
+ * computed when its marker is inspected.
+ *
+ * When the address is a plain case property, locations are read straight
+ * from the case geo index instead of being evaluated per entity.
+ */
+public class EntityMapLoaderTask
+        extends ManagedAsyncTask<Void, Void, EntityMapLoaderTask.EntityLocations> {
+    private static final String ADDRESS_FORM = "address";
+    private static final Pattern PLAIN_PROPERTY = Pattern.compile("\\s*(?:\\./)?([\\w-]+)\\s*");
+    private static final int INDEX_SPOT_CHECKS = 3;
+
+    public interface EntityMapLoaderListener {
+        void onLocationsLoaded(EntityLocations locations);
+
+        void onLocationsLoadError(XPathException e);
+    }
+
+    /**
+     * Located entities, as parallel lists of references and coordinates. An
+     * entity with several address fields appears once per address.
+     */
+    public static class EntityLocations {
+        public final List<TreeReference> references = new ArrayList<>();
+        private double[] latitudes = new double[16];
+        private double[] longitudes = new double[16];
+        private int entityCount;
+
+        private void add(TreeReference ref, double latitude, double longitude) {
+            int index = references.size();
+            if (index == latitudes.length) {
+                latitudes = grow(latitudes);
+                longitudes = grow(longitudes);
+            }
+            references.add(ref);
+            latitudes[index] = latitude;
+            longitudes[index] = longitude;
+        }
+
+        private static double[] grow(double[] values) {
+            double[] grown = new double[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, values.length);
+            return grown;
+        }
+
+        /**
+         * @return The number of entities in the list, located or not
+         */
+        public int getEntityCount() {
+            return entityCount;
+        }
+
+        public double[] getLatitudes() {
+            return trim(latitudes);
+        }
+
+        public double[] getLongitudes() {
+            return trim(longitudes);
+        }
+
+        private double[] trim(double[] values) {
+            double[] trimmed = new double[references.size()];
+            System.arraycopy(values, 0, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+    }
+
+    private final Detail detail;
+    private final EvaluationContext evaluationContext;
+    private final TreeReference nodeset;
+    private EntityMapLoaderListener listener;
+    private XPathException error;
+
+    public EntityMapLoaderTask(Detail detail, EvaluationContext evaluationContext,
+                               TreeReference nodeset, EntityMapLoaderListener listener) {
+        this.detail = detail;
+        this.evaluationContext = evaluationContext;
+        this.nodeset = nodeset;
+        this.listener = listener;
+    }
+
+    public void detachListener() {
+        listener = null;
+    }
+
+    @Override
+    protected EntityLocations doInBackground(Void... params) {
+        EntityLocations locations = new EntityLocations();
+        try {
+            Vector<TreeReference> references = evaluationContext.expandReference(nodeset);
+            locations.entityCount = references.size();
+
+            List<Integer> addressFields = new ArrayList<>();
+            for (int i = 0; i < detail.getTemplateForms().length; ++i) {
+                if (ADDRESS_FORM.equals(detail.getTemplateForms()[i])) {
+                    addressFields.add(i);
+                }
+            }
+            if (references.isEmpty() || addressFields.isEmpty()) {
+                return locations;
+            }
+
+            if (addressFields.size() != 1 ||
+                    !loadFromGeoIndex(references, addressFields.get(0), locations)) {
+                evaluateAddresses(references, addressFields, locations);
+            }
+        } catch (XPathException xe) {
+            error = xe;
+        }
+        return locations;
+    }
+
+    private boolean loadFromGeoIndex(Vector<TreeReference> references, int addressField,
+                                     EntityLocations locations) {
+        String property = getPlainProperty(detail.getFields()[addressField].getTemplate());
+        if (property == null || detail.getVariableDeclarations().size() > 0) {
+            return false;
+        }
+        TreeReference first = references.get(0);
+        CacheHost cacheHost = new EvaluationContext(evaluationContext, first).getCacheHost(first);
+        if (cacheHost == null || !cacheHost.isReferencePatternCachable(first)) {
+            return false;
+        }
+
+        HashMap<String, CaseGeoIndexTable.IndexedPoint> pointsByRecord = new HashMap<>();
+        for (CaseGeoIndexTable.IndexedPoint point : new CaseGeoIndexTable().getAllPoints(property)) {
+            pointsByRecord.put(String.valueOf(point.caseRecordId), point);
+        }
+
+        // The template text only looks like a property reference; make sure
+        // it evaluates to what the index holds before trusting the index
+        for (int i = 0; i < Math.min(INDEX_SPOT_CHECKS, references.size()); i++) {
+            TreeReference ref = references.get(i);
+            double[] evaluated = evaluateAddress(new EvaluationContext(evaluationContext, ref), addressField);
+            CaseGeoIndexTable.IndexedPoint point = pointsByRecord.get(cacheHost.getCacheIndex(ref));
+            boolean matches = evaluated == null ? point == null :
+                    (point != null && evaluated[0] == point.latitude && evaluated[1] == point.longitude);
+            if (!matches) {
+                return false;
+            }
+        }
+
+        for (TreeReference ref : references) {
+            if (isCancelled()) {
+                break;
+            }
+            CaseGeoIndexTable.IndexedPoint point = pointsByRecord.get(cacheHost.getCacheIndex(ref));
+            if (point != null) {
+                locations.add(ref, point.latitude, point.longitude);
+            }
+        }
+        return true;
+    }
+
+    private static String getPlainProperty(DetailTemplate template) {
+        if (!(template instanceof Text) || ((Text)template).getArgument() == null) {
+            return null;
+        }
+        Matcher matcher = PLAIN_PROPERTY.matcher(((Text)template).getArgument());
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    private void evaluateAddresses(Vector<TreeReference> references, List<Integer> addressFields,
+                                   EntityLocations locations) {
+        OrderedHashtable<String, XPathExpression> variables = detail.getVariableDeclarations();
+        for (TreeReference ref : references) {
+            if (isCancelled()) {
+                return;
+            }
+            EvaluationContext nodeContext = new EvaluationContext(evaluationContext, ref);
+            for (Enumeration<String> en = variables.keys(); en.hasMoreElements(); ) {
+                String key = en.nextElement();
+                nodeContext.setVariable(key, FunctionUtils.unpack(variables.get(key).eval(nodeContext)));
+            }
+            for (int field : addressFields) {
+                double[] location = evaluateAddress(nodeContext, field);
+                if (location != null) {
+                    locations.add(ref, location[0], location[1]);
+                }
+            }
+        }
+    }
+
+    private double[] evaluateAddress(EvaluationContext nodeContext, int field) {
+        Object value = detail.getFields()[field].getTemplate().evaluate(nodeContext);
+        if (value == null) {
+            return null;
+        }
+        String address = value.toString().trim();
+        if ("".equals(address)) {
+            return null;
+        }
+        try {
+            GeoPointData data = new GeoPointData().cast(new UncastData(address));
+            if (data != null) {
+                return new double[]{data.getLatitude(), data.getLongitude()};
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        return null;
+    }
+
+    @Override
+    protected void onPostExecute(EntityLocations locations) {
+        super.onPostExecute(locations);
+        if (listener == null) {
+            return;
+        }
+        if (error != null) {
+            listener.onLocationsLoadError(error);
+        } else {
+            listener.onLocationsLoaded(locations);
+        }
+    }
+}
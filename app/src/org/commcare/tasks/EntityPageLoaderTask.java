@@ -0,0 +1,101 @@
+package org.commcare.tasks;
+
+import org.commcare.adapters.EntityListAdapter;
+import org.commcare.android.logging.ForceCloseLogger;
+import org.commcare.cases.entity.Entity;
+import org.commcare.logging.XPathErrorLogger;
+import org.commcare.models.AsyncNodeEntityFactory;
+import org.commcare.tasks.templates.ManagedAsyncTask;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.services.Logger;
+import org.javarosa.xpath.XPathException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the entities that remain after the first page of a paged entity
+ * list has been shown, handing them to the list adapter a page at a time.
+ */
+public class EntityPageLoaderTask
+        extends ManagedAsyncTask<Void, List<Entity<TreeReference>>, Void> {
+
+    private static final int PAGE_SIZE = 200;
+
+    private final AsyncNodeEntityFactory factory;
+    private final EntityListAdapter adapter;
+    private final List<TreeReference> references;
+
+    // Set when an error ended loading before all entities were loaded
+    private boolean loadFailed;
+
+    public EntityPageLoaderTask(AsyncNodeEntityFactory factory, EntityListAdapter adapter,
+                                List<TreeReference> references) {
+        this.factory = factory;
+        this.adapter = adapter;
+        this.references = references;
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        factory.setPrimingObserver(new AsyncNodeEntityFactory.PrimingObserver() {
+            @Override
+            public void onPrimingProgress(int entitiesPrimed, int totalEntities) {
+            }
+
+            @Override
+            public boolean isPrimingCancelled() {
+                return isCancelled();
+            }
+        });
+
+        try {
+            List<Entity<TreeReference>> page = new ArrayList<>(PAGE_SIZE);
+            for (TreeReference ref : references) {
+                if (isCancelled()) {
+                    return null;
+                }
+                Entity<TreeReference> e = factory.getEntity(ref);
+                if (e != null) {
+                    page.add(e);
+                }
+                if (page.size() == PAGE_SIZE) {
+                    deliverPage(page);
+                    page = new ArrayList<>(PAGE_SIZE);
+                }
+            }
+            if (!page.isEmpty()) {
+                deliverPage(page);
+            }
+        } catch (XPathException xe) {
+            // The entities loaded so far stay in the list, which is shown as
+            // incomplete
+            loadFailed = true;
+            XPathErrorLogger.INSTANCE.logErrorToCurrentApp(xe);
+            Logger.exception("Error during EntityPageLoaderTask: " + ForceCloseLogger.getStackTrace(xe), xe);
+        }
+        return null;
+    }
+
+    private void deliverPage(List<Entity<TreeReference>> page) {
+        factory.prepareEntityPage(page);
+        publishProgress(page);
+    }
+
+    @Override
+    protected void onProgressUpdate(List<Entity<TreeReference>>... pages) {
+        super.onProgressUpdate(pages);
+        adapter.appendEntities(pages[0]);
+    }
+
+    @Override
+    protected void onPostExecute(Void result) {
+        super.onPostExecute(result);
+        adapter.onAllEntitiesLoaded(!loadFailed);
+        factory.setPendingReferences(null);
+    }
+
+    // When cancelled the pending references are left in place, so filtering
+    // never runs over a partial entity set; the adapter cancels any filtering
+    // that is waiting on it.
+}
@@ -18,6 +18,7 @@ import org.commcare.tasks.templates.CommCareTask;
 import org.commcare.util.CommCarePlatform;
 import org.commcare.util.LogTypes;
 import org.commcare.utils.FileUtil;
+import org.commcare.utils.FormRecordListingUtils;
 import org.commcare.xml.AndroidCaseXmlParser;
 import org.commcare.xml.BestEffortBlockParser;
 import org.commcare.xml.CaseXmlParser;
@@ -152,6 +153,7 @@ public abstract class FormRecordCleanupTask<R> extends CommCareTask<Void, Intege
             throw new RuntimeException("Trying to update an unindexed record without performing the indexing");
         }
 
+        FormRecordListingUtils.populateListingText(context, updated, null);
         storage.write(updated);
         return updated;
     }
@@ -191,13 +193,13 @@ public abstract class FormRecordCleanupTask<R> extends CommCareTask<Void, Intege
         updated = updated.updateStatus(saveStatus);
         String caseId = recordUpdates.second;
 
+        AndroidSessionWrapper asw = null;
         if (caseId != null &&
                 FormRecord.STATUS_UNINDEXED.equals(oldRecord.getStatus())) {
             // There is a case id associated with an unidexed form record,
             // calculate the state descripter and write it.
             // Occurs when loading forms manually onto the device using DataPullTask.
-            AndroidSessionWrapper asw
-                    = AndroidSessionWrapper.mockEasiestRoute(platform,
+            asw = AndroidSessionWrapper.mockEasiestRoute(platform,
                     oldRecord.getFormNamespace(), caseId);
             asw.setFormRecordId(updated.getID());
 
@@ -207,6 +209,7 @@ public abstract class FormRecordCleanupTask<R> extends CommCareTask<Void, Intege
             ssdStorage.write(SessionStateDescriptor.buildFromSessionWrapper(asw));
         }
 
+        FormRecordListingUtils.populateListingText(context, updated, asw);
         storage.write(updated);
     }
 
@@ -1,19 +1,19 @@
 package org.commcare.tasks;
 
 import android.content.Context;
-import android.text.format.DateUtils;
 import android.util.Pair;
 
+import net.sqlcipher.database.SQLiteDatabase;
+
 import org.commcare.CommCareApplication;
 import org.commcare.models.AndroidSessionWrapper;
-import org.commcare.models.database.AndroidSandbox;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.android.database.user.models.FormRecord;
 import org.commcare.android.database.user.models.SessionStateDescriptor;
 import org.commcare.suite.model.Text;
 import org.commcare.tasks.templates.ManagedAsyncTask;
-import org.commcare.util.FormDataUtil;
 import org.commcare.utils.AndroidCommCarePlatform;
+import org.commcare.utils.FormRecordListingUtils;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -27,7 +27,8 @@ import java.util.Set;
  * Loads textual information for a list of FormRecords.
  * <p/>
  * This text currently includes the form name, record title, and last modified
- * date
+ * date. Records store their title when they're written; for records saved
+ * before that, the title is computed here once and stored.
  *
  * @author ctsims
  */
@@ -146,12 +147,16 @@ public class FormRecordLoaderTask extends ManagedAsyncTask<FormRecord, Pair<Form
     }
 
     private ArrayList<String> loadRecordText(FormRecord current) {
+        if (current.getSearchText() == null) {
+            // Saved before listing text was stored with records
+            computeAndStoreListingText(current);
+        }
+
         ArrayList<String> recordTextDesc = new ArrayList<>();
         // Get the date in a searchable format.
-        recordTextDesc.add(DateUtils.formatDateTime(context, current.lastModified().getTime(), DateUtils.FORMAT_NO_MONTH_DAY | DateUtils.FORMAT_NO_YEAR).toLowerCase());
+        recordTextDesc.add(FormRecordListingUtils.getSearchableDate(context, current.lastModified()));
 
-        String dataTitle = loadDataTitle(current.getID());
-        recordTextDesc.add(dataTitle);
+        recordTextDesc.add(current.getRecordTitle() == null ? "" : current.getRecordTitle());
 
         if (formNames.containsKey(current.getFormNamespace())) {
             Text name = formNames.get(current.getFormNamespace());
@@ -160,6 +165,35 @@ public class FormRecordLoaderTask extends ManagedAsyncTask<FormRecord, Pair<Form
         return recordTextDesc;
     }
 
+    /**
+     * Compute the record's listing text by replaying its session and store
+     * it, so this only happens once per record
+     */
+    private void computeAndStoreListingText(FormRecord record) {
+        record.setRecordTitle(loadDataTitle(record.getID()));
+        record.setFormName(FormRecordListingUtils.getFormName(platform, record.getFormNamespace()));
+        record.setSearchText(FormRecordListingUtils.buildSearchText(context, record));
+
+        // Re-read the record in a transaction so a status change made since
+        // it was loaded isn't overwritten
+        SqlStorage<FormRecord> formRecordStorage =
+                CommCareApplication.instance().getUserStorage(FormRecord.class);
+        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        db.beginTransaction();
+        try {
+            FormRecord stored = formRecordStorage.read(record.getID());
+            stored.setRecordTitle(record.getRecordTitle());
+            stored.setFormName(record.getFormName());
+            stored.setSearchText(record.getSearchText());
+            formRecordStorage.write(stored);
+            db.setTransactionSuccessful();
+        } catch (NoSuchElementException e) {
+            // the record was removed since the list was loaded
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     private String loadDataTitle(int formRecordId) {
         // Grab our record hash
         SessionStateDescriptor ssd = null;
@@ -174,17 +208,7 @@ public class FormRecordLoaderTask extends ManagedAsyncTask<FormRecord, Pair<Form
             if (!descriptorCache.containsKey(descriptor)) {
                 AndroidSessionWrapper asw = new AndroidSessionWrapper(platform);
                 asw.loadFromStateDescription(ssd);
-                try {
-                    dataTitle =
-                            FormDataUtil.getTitleFromSession(new AndroidSandbox(CommCareApplication.instance()),
-                                    asw.getSession(), asw.getEvaluationContext());
-                } catch (RuntimeException e) {
-                    dataTitle = "[Unavailable]";
-                }
-
-                if (dataTitle == null) {
-                    dataTitle = "";
-                }
+                dataTitle = FormRecordListingUtils.getTitleFromSession(asw);
 
                 descriptorCache.put(descriptor, dataTitle);
             } else {
@@ -96,6 +96,11 @@ public class FormSubmissionProgressBarListener implements DataSubmissionListener
         return Math.min(actualProgressPercent, maxAllowedProgressByTime);
     }
 
+    @Override
+    public void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis) {
+        // progress is already shown per item
+    }
+
     @Override
     public void endSubmissionProcess(final boolean success) {
         containingActivity.runOnUiThread(() -> {
@@ -10,6 +10,7 @@ import org.commcare.android.logging.ForceCloseLogEntry;
 import org.commcare.android.logging.ForceCloseLogSerializer;
 import org.commcare.logging.AndroidLogSerializer;
 import org.commcare.logging.DeviceReportWriter;
+import org.commcare.logging.PagedDeviceReportElement;
 import org.commcare.logging.XPathErrorEntry;
 import org.commcare.logging.XPathErrorSerializer;
 import org.commcare.models.database.SqlStorage;
@@ -30,6 +31,7 @@ import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -52,6 +54,13 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
     private static final long SUBMISSION_NOTIFY = 64;
     private static final long SUBMISSION_DONE = 128;
 
+    /**
+     * Caps on how much of a backlog of logs goes into each device report, and how many reports
+     * a single run produces; anything left over is picked up by the next run
+     */
+    private static final int MAX_ENTRIES_PER_REPORT = 5000;
+    private static final int MAX_REPORTS_PER_SERIALIZATION = 20;
+
     protected enum LogSubmitOutcomes implements MessageTag {
         /**
          * Logs successfully submitted
@@ -142,8 +151,11 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
 
     /**
      * Serialize all of the entries currently in Android logs, Xpath error logs, and Force close
-     * logs, and write that to a DeviceReportRecord, which then gets added to the internal storage
-     * object of all DeviceReportRecords that have yet to be submitted
+     * logs, and write that to DeviceReportRecords, which then get added to the internal storage
+     * object of all DeviceReportRecords that have yet to be submitted.
+     *
+     * Logs are read a page at a time and each report holds at most MAX_ENTRIES_PER_REPORT entries
+     * of each kind, so a large backlog becomes several reports rather than one huge one.
      */
     private static boolean serializeLogs(SqlStorage<DeviceReportRecord> storage) {
         SharedPreferences settings = CommCareApplication.instance().getCurrentApp().getAppPreferences();
@@ -151,64 +163,56 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
         //update the last recorded record
         settings.edit().putLong(HiddenPreferences.LOG_LAST_DAILY_SUBMIT, new Date().getTime()).commit();
 
-        DeviceReportRecord record = DeviceReportRecord.generateNewRecordStub();
-
-        //Ok, so first, we're going to write the logs to disk in an encrypted file
         try {
-            DeviceReportWriter reporter;
-            try {
-                //Create a report writer
-                reporter = new DeviceReportWriter(record);
-            } catch (IOException e) {
-                //TODO: Bad local file (almost certainly). Throw a better message!
-                e.printStackTrace();
-                return false;
-            }
-
             // Serialize regular and xpath error logs for the current user
             AndroidLogSerializer<AndroidLogEntry> userLogSerializer = new AndroidLogSerializer<>(
                     CommCareApplication.instance().getUserStorage(AndroidLogEntry.STORAGE_KEY, AndroidLogEntry.class));
-            reporter.addReportElement(userLogSerializer);
-
             XPathErrorSerializer xpathErrorSerializer = new XPathErrorSerializer(
                     CommCareApplication.instance().getUserStorage(XPathErrorEntry.STORAGE_KEY, XPathErrorEntry.class));
-            reporter.addReportElement(xpathErrorSerializer);
 
             // Serialize all force close logs -- these can exist in both user and global storage
             ForceCloseLogSerializer globalForceCloseSerializer = new ForceCloseLogSerializer(
                     CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(globalForceCloseSerializer);
             ForceCloseLogSerializer userForceCloseSerializer = new ForceCloseLogSerializer(
                     CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(userForceCloseSerializer);
 
             // TEMPORARILY ONLY - serialize all force close logs in the old format, so that HQ
             // still picks them up, until we start processing the new format
             AndroidLogSerializer<ForceCloseLogEntry> globalForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
                     CommCareApplication.instance().getGlobalStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(globalForceCloseSerializer_oldFormat);
             AndroidLogSerializer<ForceCloseLogEntry> userForceCloseSerializer_oldFormat = new AndroidLogSerializer<>(
                     CommCareApplication.instance().getUserStorage(ForceCloseLogEntry.STORAGE_KEY, ForceCloseLogEntry.class));
-            reporter.addReportElement(userForceCloseSerializer_oldFormat);
 
             // Serialize all logs currently in global storage, since we have no way to determine
             // which app they truly belong to
-            AndroidLogSerializer globalLogSerializer = new AndroidLogSerializer(
+            AndroidLogSerializer<AndroidLogEntry> globalLogSerializer = new AndroidLogSerializer<>(
                     CommCareApplication.instance().getGlobalStorage(AndroidLogEntry.STORAGE_KEY, AndroidLogEntry.class));
-            reporter.addReportElement(globalLogSerializer);
 
-            // Write serialized logs to the record
-            reporter.write();
+            List<PagedDeviceReportElement> elements = Arrays.asList(userLogSerializer,
+                    xpathErrorSerializer, globalForceCloseSerializer, userForceCloseSerializer,
+                    globalForceCloseSerializer_oldFormat, userForceCloseSerializer_oldFormat,
+                    globalLogSerializer);
+            // The old format force close serializers read the same tables as the new format
+            // ones, so only the latter purge
+            List<PagedDeviceReportElement> elementsToPurge = Arrays.asList(userLogSerializer,
+                    xpathErrorSerializer, globalForceCloseSerializer, userForceCloseSerializer,
+                    globalLogSerializer);
+            for (PagedDeviceReportElement element : elements) {
+                element.enablePaging(MAX_ENTRIES_PER_REPORT);
+            }
 
-            // Write this DeviceReportRecord to where all logs are saved to
-            storage.write(record);
+            int reportCount = 0;
+            do {
+                if (!writeDeviceReport(storage, elements)) {
+                    return false;
+                }
+                reportCount++;
 
-            // The logs are saved and recorded, so we can feel safe clearing the logs we serialized.
-            userLogSerializer.purge();
-            globalLogSerializer.purge();
-            xpathErrorSerializer.purge();
-            globalForceCloseSerializer.purge();
-            userForceCloseSerializer.purge();
+                // The logs are saved and recorded, so we can feel safe clearing the logs we serialized.
+                for (PagedDeviceReportElement element : elementsToPurge) {
+                    element.purgeWrittenEntries();
+                }
+            } while (hasMoreEntries(elements) && reportCount < MAX_REPORTS_PER_SERIALIZATION);
         } catch (Exception e) {
             //Bad times!
             e.printStackTrace();
@@ -217,6 +221,45 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
         return true;
     }
 
+    /**
+     * Write the next page of each element's entries to a new DeviceReportRecord, and add the
+     * record to storage
+     */
+    private static boolean writeDeviceReport(SqlStorage<DeviceReportRecord> storage,
+                                             List<PagedDeviceReportElement> elements) throws IOException {
+        DeviceReportRecord record = DeviceReportRecord.generateNewRecordStub();
+
+        //Ok, so first, we're going to write the logs to disk in an encrypted file
+        DeviceReportWriter reporter;
+        try {
+            //Create a report writer
+            reporter = new DeviceReportWriter(record);
+        } catch (IOException e) {
+            //TODO: Bad local file (almost certainly). Throw a better message!
+            e.printStackTrace();
+            return false;
+        }
+        for (PagedDeviceReportElement element : elements) {
+            reporter.addReportElement(element);
+        }
+
+        // Write serialized logs to the record
+        reporter.write();
+
+        // Write this DeviceReportRecord to where all logs are saved to
+        storage.write(record);
+        return true;
+    }
+
+    private static boolean hasMoreEntries(List<PagedDeviceReportElement> elements) {
+        for (PagedDeviceReportElement element : elements) {
+            if (element.hasMoreEntries()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void submitReports(SqlStorage<DeviceReportRecord> storage,
                                ArrayList<Integer> submittedSuccesfullyIds,
                                ArrayList<DeviceReportRecord> submittedSuccesfully) {
@@ -350,6 +393,11 @@ public class LogSubmissionTask extends AsyncTask<Void, Long, LogSubmitOutcomes>
         this.publishProgress(LogSubmissionTask.SUBMISSION_NOTIFY, (long)itemNumber, progress);
     }
 
+    @Override
+    public void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis) {
+        // log submission progress is reported per item only
+    }
+
     @Override
     public void endSubmissionProcess(boolean success) {
         this.publishProgress(LogSubmissionTask.SUBMISSION_DONE);
@@ -2,6 +2,7 @@ package org.commcare.tasks;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 
 import net.sqlcipher.database.SQLiteDatabase;
 
@@ -10,6 +11,7 @@ import org.commcare.CommCareApplication;
 import org.commcare.activities.SyncCapableCommCareActivity;
 import org.commcare.android.database.user.models.FormRecord;
 import org.commcare.models.FormRecordProcessor;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.suite.model.Profile;
 import org.commcare.tasks.templates.CommCareTask;
 import org.commcare.tasks.templates.CommCareTaskConnector;
@@ -34,9 +36,18 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.spec.SecretKeySpec;
 
@@ -61,6 +72,7 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
     public static final long SUBMISSION_START = 32;
     public static final long SUBMISSION_NOTIFY = 64;
     public static final long SUBMISSION_DONE = 128;
+    public static final long SUBMISSION_THROUGHPUT = 256;
 
     private static final long SUBMISSION_SUCCESS = 1;
     private static final long SUBMISSION_FAIL = 0;
@@ -73,6 +85,19 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
 
     private static final Queue<ProcessAndSendTask> processTasks = new LinkedList<>();
 
+    // Estimated upload size of each submission, for throughput reporting
+    private final Map<Integer, Long> submissionSizes = new ConcurrentHashMap<>();
+    private long submissionStartTime;
+    private int formsSent;
+    private long bytesSent;
+
+    // Progress of uploads running ahead of the record being submitted is
+    // held back until that record's turn, so that listeners hear about one
+    // record at a time, in record order, as with sequential submission
+    private final Object progressLock = new Object();
+    private int reportedItem;
+    private final HashMap<Integer, List<Long[]>> heldProgress = new HashMap<>();
+
     public ProcessAndSendTask(Context c, String url) {
         this(c, url, true);
     }
@@ -276,114 +301,250 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
         return needToRefresh;
     }
 
+    /**
+     * Upload the records and apply the outcome of each upload to local
+     * storage. Uploads may run ahead of each other on a bounded pool when
+     * concurrent submission is enabled, but outcomes are always applied in
+     * record order, so cleanup, quarantining and stopping on network errors
+     * behave as they do for sequential submission.
+     *
+     * Concurrent uploads may reach the server out of order, which is why
+     * submission is sequential unless configured otherwise.
+     */
     private void sendForms(FormRecord[] records) throws TaskCancelledException {
-        for (int i = 0; i < records.length; ++i) {
-
-            if (previousFailurePredictsFutureFailures(results, i)) {
-                Logger.log(LogTypes.TYPE_WARNING_NETWORK,
-                        "Cancelling submission due to network errors. " + (i - 1) + " forms successfully sent.");
-                break;
-            }
+        User user = CommCareApplication.instance().getSession().getLoggedInUser();
+        int parallelism = Math.min(DeveloperPreferences.getFormSubmissionParallelism(), records.length);
+        ExecutorService uploadPool = null;
+        if (parallelism > 1) {
+            uploadPool = Executors.newFixedThreadPool(parallelism);
+        }
+        HashMap<Integer, Future<FormUploadResult>> startedUploads = new HashMap<>();
+        int nextUpload = 0;
+        submissionStartTime = SystemClock.elapsedRealtime();
+        advanceReportedItem(0);
 
-            if (isCancelled()) {
-                Logger.log(LogTypes.TYPE_USER, "Cancelling submission due to a manual stop. " + (i - 1) + " forms succesfully sent.");
-                throw new TaskCancelledException();
-            }
+        try {
+            for (int i = 0; i < records.length; ++i) {
+                if (previousFailurePredictsFutureFailures(results, i)) {
+                    Logger.log(LogTypes.TYPE_WARNING_NETWORK,
+                            "Cancelling submission due to network errors. " + (i - 1) + " forms successfully sent.");
+                    break;
+                }
 
-            FormRecord record = records[i];
-            try {
-                if (FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
-                    File folder;
+                if (isCancelled()) {
+                    Logger.log(LogTypes.TYPE_USER, "Cancelling submission due to a manual stop. " + (i - 1) + " forms succesfully sent.");
+                    throw new TaskCancelledException();
+                }
 
-                    //Good!
-                    //Time to Send!
-                    try {
-                        try {
-                            if (StringUtils.isEmpty(record.getFilePath())) {
-                                throw new FileNotFoundException("File path empty for formrecord " +
-                                        record.getID() + " with xmlns " + record.getFormNamespace());
-                            }
-                            folder = new File(record.getFilePath()).getCanonicalFile().getParentFile();
-                        } catch (FileNotFoundException e) {
-                            //This will put us in the same "Missing Form" handling path as below
-                            throw e;
-                        } catch (IOException e) {
-                            // Unexpected/Unknown IO Error path from cannonical file
-                            Logger.log(LogTypes.TYPE_ERROR_WORKFLOW, "Bizarre. Exception just getting the file reference. Not removing." + getExceptionText(e));
-                            continue;
+                if (uploadPool != null) {
+                    // keep up to 'parallelism' uploads in flight, starting with this record's
+                    for (; nextUpload < records.length && nextUpload < i + parallelism; nextUpload++) {
+                        if (FormRecord.STATUS_UNSENT.equals(records[nextUpload].getStatus())) {
+                            startedUploads.put(nextUpload,
+                                    startUpload(uploadPool, nextUpload, records[nextUpload], user));
                         }
+                    }
+                }
 
-                        User user = CommCareApplication.instance().getSession().getLoggedInUser();
-                        int attemptsMade = 0;
-                        logSubmissionAttempt(record);
-                        while (attemptsMade < SUBMISSION_ATTEMPTS) {
-                            results[i] = FormUploadUtil.sendInstance(i, folder,
-                                    new SecretKeySpec(record.getAesKey(), "AES"), url, this, user);
-                            if (results[i] == FormUploadResult.FULL_SUCCESS) {
-                                logSubmissionSuccess(record);
-                                break;
-                            } else if (results[i] == FormUploadResult.PROCESSING_FAILURE) {
-                                // A processing failure indicates that there there is no point in
-                                // trying that submission again immediately
-                                break;
-                            } else {
-                                attemptsMade++;
-                            }
-                        }
-                        if (results[i] == FormUploadResult.RECORD_FAILURE ||
-                                results[i] == FormUploadResult.PROCESSING_FAILURE) {
-                            quarantineRecord(record, results[i]);
-                        }
-                    } catch (FileNotFoundException e) {
-                        if (CommCareApplication.instance().isStorageAvailable()) {
-                            // If storage is available generally, this is a bug in the app design
-                            // Log with multiple tags so we can track more easily
-                            Logger.log(LogTypes.SOFT_ASSERT, String.format(
-                                    "Removed form record with id %s because file was missing| %s",
-                                    record.getInstanceID(), getExceptionText(e)));
-                            Logger.log(LogTypes.TYPE_FORM_SUBMISSION, String.format(
-                                    "Removed form record with id %s because file was missing| %s",
-                                    record.getInstanceID(), getExceptionText(e)));
-                            record.logPendingDeletion(TAG,
-                                    "the xml submission file associated with the record was missing");
-                            quarantineRecord(record,
-                                    FormRecord.QuarantineReason_FILE_NOT_FOUND);
-                            results[i] = FormUploadResult.RECORD_FAILURE;
-                        } else {
-                            // Otherwise, the SD card just got removed, and we need to bail anyway.
-                            CommCareApplication.notificationManager().reportNotificationMessage(
-                                    NotificationMessageFactory.message(ProcessIssues.StorageRemoved), true);
-                            break;
-                        }
-                        continue;
+                boolean keepGoing = submitRecord(i, records[i], startedUploads.remove(i), user);
+                advanceReportedItem(i + 1);
+                if (!keepGoing) {
+                    break;
+                }
+            }
+            commitStartedUploads(records, startedUploads, user, true);
+        } catch (TaskCancelledException e) {
+            commitStartedUploads(records, startedUploads, user, false);
+            throw e;
+        } finally {
+            if (uploadPool != null) {
+                uploadPool.shutdownNow();
+            }
+        }
+    }
+
+    private Future<FormUploadResult> startUpload(ExecutorService uploadPool, final int index,
+                                                 final FormRecord record, final User user) {
+        return uploadPool.submit(() -> uploadRecord(index, record, user));
+    }
+
+    /**
+     * Upload the record, or collect the result of its already started
+     * upload, and then quarantine, wipe or update the record according to
+     * the outcome.
+     *
+     * @return false if submission of the remaining records should stop
+     */
+    private boolean submitRecord(int i, FormRecord record, Future<FormUploadResult> startedUpload,
+                                 User user) throws TaskCancelledException {
+        try {
+            if (FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
+                //Good!
+                //Time to Send!
+                try {
+                    if (startedUpload == null) {
+                        results[i] = uploadRecord(i, record, user);
+                    } else {
+                        results[i] = awaitUpload(startedUpload);
                     }
+                    if (results[i] == FormUploadResult.RECORD_FAILURE ||
+                            results[i] == FormUploadResult.PROCESSING_FAILURE) {
+                        quarantineRecord(record, results[i]);
+                    }
+                } catch (FileNotFoundException e) {
+                    if (CommCareApplication.instance().isStorageAvailable()) {
+                        // If storage is available generally, this is a bug in the app design
+                        // Log with multiple tags so we can track more easily
+                        Logger.log(LogTypes.SOFT_ASSERT, String.format(
+                                "Removed form record with id %s because file was missing| %s",
+                                record.getInstanceID(), getExceptionText(e)));
+                        Logger.log(LogTypes.TYPE_FORM_SUBMISSION, String.format(
+                                "Removed form record with id %s because file was missing| %s",
+                                record.getInstanceID(), getExceptionText(e)));
+                        record.logPendingDeletion(TAG,
+                                "the xml submission file associated with the record was missing");
+                        quarantineRecord(record,
+                                FormRecord.QuarantineReason_FILE_NOT_FOUND);
+                        results[i] = FormUploadResult.RECORD_FAILURE;
+                        return true;
+                    } else {
+                        // Otherwise, the SD card just got removed, and we need to bail anyway.
+                        CommCareApplication.notificationManager().reportNotificationMessage(
+                                NotificationMessageFactory.message(ProcessIssues.StorageRemoved), true);
+                        return false;
+                    }
+                } catch (IOException e) {
+                    // Unexpected/Unknown IO Error path from getting the canonical file
+                    Logger.log(LogTypes.TYPE_ERROR_WORKFLOW, "Bizarre. Exception just getting the file reference. Not removing." + getExceptionText(e));
+                    return true;
+                }
 
-                    Profile p = CommCareApplication.instance().getCommCarePlatform().getCurrentProfile();
-                    // Check for success
-                    if (results[i] == FormUploadResult.FULL_SUCCESS) {
-                        // Only delete if this device isn't set up to review.
-                        if (p == null || !p.isFeatureActive(Profile.FEATURE_REVIEW)) {
-                            FormRecordCleanupTask.wipeRecord(record);
-                        } else {
-                            // Otherwise save and move appropriately
-                            processor.updateRecordStatus(record, FormRecord.STATUS_SAVED);
-                        }
+                Profile p = CommCareApplication.instance().getCommCarePlatform().getCurrentProfile();
+                // Check for success
+                if (results[i] == FormUploadResult.FULL_SUCCESS) {
+                    // Only delete if this device isn't set up to review.
+                    if (p == null || !p.isFeatureActive(Profile.FEATURE_REVIEW)) {
+                        FormRecordCleanupTask.wipeRecord(record);
+                    } else {
+                        // Otherwise save and move appropriately
+                        processor.updateRecordStatus(record, FormRecord.STATUS_SAVED);
                     }
-                } else if (FormRecord.STATUS_QUARANTINED.equals(record.getStatus()) ||
-                        FormRecord.STATUS_JUST_DELETED.equals(record.getStatus())) {
-                    // This record was either quarantined or deleted due to an error during the
-                    // pre-processing phase
-                    results[i] = FormUploadResult.RECORD_FAILURE;
-                } else {
-                    results[i] = FormUploadResult.FULL_SUCCESS;
+                    reportThroughput(i);
                 }
-            } catch (SessionUnavailableException sue) {
-                throw sue;
-            } catch (Exception e) {
-                //Just try to skip for now. Hopefully this doesn't wreck the model :/
-                Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
+            } else if (FormRecord.STATUS_QUARANTINED.equals(record.getStatus()) ||
+                    FormRecord.STATUS_JUST_DELETED.equals(record.getStatus())) {
+                // This record was either quarantined or deleted due to an error during the
+                // pre-processing phase
+                results[i] = FormUploadResult.RECORD_FAILURE;
+            } else {
+                results[i] = FormUploadResult.FULL_SUCCESS;
             }
+        } catch (SessionUnavailableException | TaskCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            //Just try to skip for now. Hopefully this doesn't wreck the model :/
+            Logger.exception("Totally Unexpected Error during form submission: " + getExceptionText(e), e);
         }
+        return true;
+    }
+
+    /**
+     * Send the record's files to the server, retrying on failures that
+     * aren't specific to the record. Doesn't touch local storage, so it is
+     * safe to run for several records at once.
+     */
+    private FormUploadResult uploadRecord(int i, FormRecord record, User user) throws IOException {
+        if (StringUtils.isEmpty(record.getFilePath())) {
+            throw new FileNotFoundException("File path empty for formrecord " +
+                    record.getID() + " with xmlns " + record.getFormNamespace());
+        }
+        File folder = new File(record.getFilePath()).getCanonicalFile().getParentFile();
+
+        FormUploadResult result = FormUploadResult.FAILURE;
+        int attemptsMade = 0;
+        logSubmissionAttempt(record);
+        while (attemptsMade < SUBMISSION_ATTEMPTS) {
+            result = sendInstance(i, folder, new SecretKeySpec(record.getAesKey(), "AES"), user);
+            if (result == FormUploadResult.FULL_SUCCESS) {
+                logSubmissionSuccess(record);
+                break;
+            } else if (result == FormUploadResult.PROCESSING_FAILURE) {
+                // A processing failure indicates that there there is no point in
+                // trying that submission again immediately
+                break;
+            } else {
+                attemptsMade++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Make a single attempt at sending the record's files to the server,
+     * reporting progress to this task. May be called from several threads
+     * at once.
+     */
+    protected FormUploadResult sendInstance(int submissionNumber, File folder, SecretKeySpec key,
+                                            User user) throws FileNotFoundException {
+        return FormUploadUtil.sendInstance(submissionNumber, folder, key, url, this, user);
+    }
+
+    private static FormUploadResult awaitUpload(Future<FormUploadResult> upload)
+            throws IOException, TaskCancelledException {
+        try {
+            return upload.get();
+        } catch (InterruptedException e) {
+            throw new TaskCancelledException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Uploads started ahead of the record at which submission stopped may
+     * still have reached the server, so apply the outcome of those that did,
+     * in order; the others are left to be sent next time.
+     *
+     * @param waitForUploads Whether to wait for uploads still in flight, or
+     *                       to cancel them
+     */
+    private void commitStartedUploads(FormRecord[] records,
+                                      HashMap<Integer, Future<FormUploadResult>> startedUploads,
+                                      User user, boolean waitForUploads) throws TaskCancelledException {
+        ArrayList<Integer> indices = new ArrayList<>(startedUploads.keySet());
+        Collections.sort(indices);
+        for (int i : indices) {
+            Future<FormUploadResult> upload = startedUploads.remove(i);
+            if (!waitForUploads && !upload.isDone()) {
+                upload.cancel(true);
+                continue;
+            }
+            FormUploadResult result;
+            try {
+                result = awaitUpload(upload);
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            if (isRecordSpecificResult(result)) {
+                submitRecord(i, records[i], upload, user);
+            }
+        }
+    }
+
+    private void reportThroughput(int sentItem) {
+        formsSent++;
+        Long size = submissionSizes.get(sentItem);
+        if (size != null) {
+            bytesSent += size;
+        }
+        notifySubmissionThroughput(formsSent, bytesSent,
+                SystemClock.elapsedRealtime() - submissionStartTime);
     }
 
     /**
@@ -396,14 +557,21 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
      */
     private boolean previousFailurePredictsFutureFailures(FormUploadResult[] results, int currentIndex) {
         if (currentIndex > 0) {
-            FormUploadResult lastResult = results[currentIndex - 1];
-            return !(lastResult == FormUploadResult.FULL_SUCCESS ||
-                    lastResult == FormUploadResult.RECORD_FAILURE ||
-                    lastResult == FormUploadResult.PROCESSING_FAILURE);
+            return !isRecordSpecificResult(results[currentIndex - 1]);
         }
         return false;
     }
 
+    /**
+     * @return true if the server handled the submission, whether or not it
+     * accepted it, so the result says nothing about other submissions
+     */
+    private static boolean isRecordSpecificResult(FormUploadResult result) {
+        return result == FormUploadResult.FULL_SUCCESS ||
+                result == FormUploadResult.RECORD_FAILURE ||
+                result == FormUploadResult.PROCESSING_FAILURE;
+    }
+
     private FormRecord quarantineRecord(FormRecord record, FormUploadResult uploadResult) {
         String reasonType =
                 (uploadResult == FormUploadResult.RECORD_FAILURE) ?
@@ -475,6 +643,8 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
                 dispatchNotifyProgressToListeners(item, progress);
             } else if (values[0] == SUBMISSION_DONE) {
                 dispatchEndSubmissionProcessToListeners(values[1] == SUBMISSION_SUCCESS);
+            } else if (values[0] == SUBMISSION_THROUGHPUT) {
+                dispatchThroughputToListeners(values[1].intValue(), values[2], values[3]);
             }
         }
     }
@@ -506,6 +676,12 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
         }
     }
 
+    private void dispatchThroughputToListeners(int itemsSent, long bytesSent, long elapsedMillis) {
+        for (DataSubmissionListener listener : formSubmissionListeners) {
+            listener.notifySubmissionThroughput(itemsSent, bytesSent, elapsedMillis);
+        }
+    }
+
     private void dispatchEndSubmissionProcessToListeners(boolean success) {
         for (DataSubmissionListener listener : formSubmissionListeners) {
             listener.endSubmissionProcess(success);
@@ -562,12 +738,60 @@ public abstract class ProcessAndSendTask<R> extends CommCareTask<FormRecord, Lon
 
     @Override
     public void startSubmission(int itemNumber, long sizeOfItem) {
-        this.publishProgress(SUBMISSION_START, (long)itemNumber, sizeOfItem);
+        submissionSizes.put(itemNumber, sizeOfItem);
+        publishInRecordOrder(itemNumber, SUBMISSION_START, (long)itemNumber, sizeOfItem);
     }
 
     @Override
     public void notifyProgress(int itemNumber, long progress) {
-        this.publishProgress(SUBMISSION_NOTIFY, (long)itemNumber, progress);
+        publishInRecordOrder(itemNumber, SUBMISSION_NOTIFY, (long)itemNumber, progress);
+    }
+
+    private void publishInRecordOrder(int itemNumber, Long... values) {
+        synchronized (progressLock) {
+            if (itemNumber == reportedItem) {
+                this.publishProgress(values);
+            } else if (itemNumber > reportedItem) {
+                List<Long[]> held = heldProgress.get(itemNumber);
+                if (held == null) {
+                    held = new ArrayList<>();
+                    heldProgress.put(itemNumber, held);
+                }
+                // Only the latest progress of a held upload matters
+                if (values[0] == SUBMISSION_NOTIFY && !held.isEmpty() &&
+                        held.get(held.size() - 1)[0] == SUBMISSION_NOTIFY) {
+                    held.remove(held.size() - 1);
+                }
+                held.add(values);
+            }
+            // Progress of records that are already submitted is dropped
+        }
+    }
+
+    /**
+     * Report progress for the given record from now on, starting with any
+     * progress held back while earlier records were being submitted
+     */
+    private void advanceReportedItem(int itemNumber) {
+        synchronized (progressLock) {
+            reportedItem = itemNumber;
+            List<Long[]> held = heldProgress.remove(itemNumber);
+            if (held != null) {
+                for (Long[] values : held) {
+                    this.publishProgress(values);
+                }
+            }
+            for (Iterator<Integer> items = heldProgress.keySet().iterator(); items.hasNext(); ) {
+                if (items.next() < itemNumber) {
+                    items.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis) {
+        this.publishProgress(SUBMISSION_THROUGHPUT, (long)itemsSent, bytesSent, elapsedMillis);
     }
 
     @Override
@@ -4,6 +4,7 @@ import android.os.SystemClock;
 
 import org.commcare.CommCareApp;
 import org.commcare.engine.resource.AppInstallStatus;
+import org.commcare.engine.resource.MediaResourcePrefetcher;
 import org.commcare.engine.resource.ResourceInstallUtils;
 import org.commcare.engine.resource.installers.LocalStorageUnavailableException;
 import org.commcare.resources.ResourceManager;
@@ -53,6 +54,7 @@ public abstract class ResourceEngineTask<R>
     private boolean reinstall = false;
 
     private int authorityForInstall;
+    private String installProfileRef;
 
     public ResourceEngineTask(CommCareApp app, int taskId, boolean shouldSleep, int authority, boolean reinstall) {
         this.app = app;
@@ -66,6 +68,7 @@ public abstract class ResourceEngineTask<R>
     @Override
     protected AppInstallStatus doTaskBackground(String... profileRefs) {
         String profileRef = profileRefs[0];
+        installProfileRef = profileRef;
         ResourceInstallUtils.recordUpdateAttemptTime(app);
 
         app.setupSandbox();
@@ -86,6 +89,9 @@ public abstract class ResourceEngineTask<R>
             }
 
             global.setStateListener(this);
+            MediaResourcePrefetcher prefetcher =
+                    new MediaResourcePrefetcher(MediaResourcePrefetcher.getStagingDir(app));
+            platform.setMediaPrefetcher(prefetcher);
             try {
                 ResourceManager.installAppResources(platform, profileRef, global, reinstall, authorityForInstall);
             } catch (LocalStorageUnavailableException e) {
@@ -119,7 +125,12 @@ public abstract class ResourceEngineTask<R>
             } catch (InvalidResourceException e) {
                 invalidResourceException = e;
                 return AppInstallStatus.InvalidResource;
+            } finally {
+                // downloads are kept for the next attempt if this one failed
+                platform.setMediaPrefetcher(null);
+                prefetcher.shutdown();
             }
+            MediaResourcePrefetcher.discardStagedDownloads(app);
 
             ResourceInstallUtils.initAndCommitApp(app, profileRef);
 
@@ -134,6 +145,11 @@ public abstract class ResourceEngineTask<R>
 
     @Override
     public void compoundResourceAdded(final ResourceTable table) {
+        MediaResourcePrefetcher prefetcher = app.getCommCarePlatform().getMediaPrefetcher();
+        if (prefetcher != null) {
+            prefetcher.prefetchMediaInTable(table, null, installProfileRef);
+        }
+
         synchronized (statusLock) {
             // if last time isn't set or is less than our spacing count, do not
             // perform status update. Also if we are already running one, just skip this.
@@ -13,6 +13,7 @@ import org.commcare.models.database.SqlStorage;
 import org.commcare.models.encryption.EncryptionIO;
 import org.commcare.tasks.templates.CommCareTask;
 import org.commcare.util.LogTypes;
+import org.commcare.utils.FormRecordListingUtils;
 import org.javarosa.core.io.StreamsUtil;
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.model.FormIndex;
@@ -172,6 +173,8 @@ public class SaveToDiskTask extends
         if (formRecord != null) {
             try {
                 formRecord.setDisplayName(recordName);
+                FormRecordListingUtils.populateListingText(CommCareApplication.instance(), formRecord,
+                        CommCareApplication.instance().getCurrentSessionWrapper());
                 formRecord.updateStatus(formRecordStorage, status);
             } catch (IllegalStateException e) {
                 throw new FormInstanceTransactionException(e);
@@ -4,6 +4,7 @@ import org.commcare.CommCareApp;
 import org.commcare.CommCareApplication;
 import org.commcare.android.database.app.models.FormDefRecord;
 import org.commcare.engine.resource.AndroidResourceTable;
+import org.commcare.engine.resource.MediaResourcePrefetcher;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.resources.model.Resource;
 import org.commcare.resources.model.ResourceInitializationException;
@@ -36,6 +37,7 @@ public class AndroidCommCarePlatform extends CommCarePlatform {
     private final Vector<Suite> installedSuites;
     private final CommCareApp app;
     private String mUpdateInfoFormXmlns;
+    private MediaResourcePrefetcher mediaPrefetcher;
 
     public AndroidCommCarePlatform(int majorVersion, int minorVersion, CommCareApp app) {
         super(majorVersion, minorVersion);
@@ -129,6 +131,18 @@ public class AndroidCommCarePlatform extends CommCarePlatform {
         return mUpdateInfoFormXmlns;
     }
 
+    /**
+     * @return The prefetcher downloading media for the install or update in
+     * progress, or null if there isn't one
+     */
+    public MediaResourcePrefetcher getMediaPrefetcher() {
+        return mediaPrefetcher;
+    }
+
+    public void setMediaPrefetcher(MediaResourcePrefetcher mediaPrefetcher) {
+        this.mediaPrefetcher = mediaPrefetcher;
+    }
+
     public CommCareApp getApp() {
         return app;
     }
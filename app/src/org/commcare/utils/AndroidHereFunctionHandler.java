@@ -34,7 +34,7 @@ public class AndroidHereFunctionHandler extends HereFunctionHandler implements L
     // only trigger entity list refresh if distance has changed by this amount
     private static final int REFRESH_METER_DELTA = 30;
 
-    private Location location;
+    private volatile Location location;
     // last location used to render the distance properties of the entity list
     private Location lastDisplayedLocation;
 
@@ -74,6 +74,13 @@ public class AndroidHereFunctionHandler extends HereFunctionHandler implements L
         this.locationGoodEnough = false;
     }
 
+    /**
+     * @return The most recent location obtained, or null if none has been
+     */
+    public Location getLocation() {
+        return location;
+    }
+
     @Override
     public void onLocationChanged(Location updatedLocation) {
         this.location = updatedLocation;
@@ -0,0 +1,123 @@
+package org.commcare.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Holds bitmaps that are no longer referenced by anything on screen so that
+ * later decodes can write into their memory (via BitmapFactory.Options.inBitmap)
+ * instead of allocating a new bitmap each time.
+ *
+ * Only bitmaps that are guaranteed to never have been handed out for display,
+ * like the intermediate decode that gets scaled to its final size, may be
+ * offered to the pool.
+ */
+class BitmapReusePool {
+    private static final int MAX_POOL_BYTES = 4 * 1024 * 1024;
+
+    private static final LinkedList<Bitmap> pool = new LinkedList<>();
+    private static int poolBytes;
+
+    static synchronized void offer(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = getSize(bitmap);
+        if (size > MAX_POOL_BYTES) {
+            return;
+        }
+        while (poolBytes + size > MAX_POOL_BYTES) {
+            poolBytes -= getSize(pool.removeFirst());
+        }
+        pool.addLast(bitmap);
+        poolBytes += size;
+    }
+
+    static synchronized void clear() {
+        pool.clear();
+        poolBytes = 0;
+    }
+
+    /**
+     * Decode the file, reusing a pooled bitmap if one is large enough
+     *
+     * @param width  Width of the full size image, or -1 if unknown
+     * @param height Height of the full size image, or -1 if unknown
+     */
+    static Bitmap decodeFile(String imageFilepath, BitmapFactory.Options options,
+                             int width, int height) {
+        options.inMutable = true;
+        if (width > 0 && height > 0) {
+            options.inBitmap = take(width, height, Math.max(1, options.inSampleSize));
+        }
+        if (options.inBitmap == null) {
+            return BitmapFactory.decodeFile(imageFilepath, options);
+        }
+
+        ImageCacheStats.recordBitmapReuse();
+        try {
+            return BitmapFactory.decodeFile(imageFilepath, options);
+        } catch (IllegalArgumentException e) {
+            // the decoder rejected the pooled bitmap; decode into a fresh one
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(imageFilepath, options);
+        }
+    }
+
+    private static synchronized Bitmap take(int width, int height, int sampleSize) {
+        for (Iterator<Bitmap> it = pool.iterator(); it.hasNext(); ) {
+            Bitmap candidate = it.next();
+            if (canDecodeInto(candidate, width, height, sampleSize)) {
+                it.remove();
+                poolBytes -= getSize(candidate);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean canDecodeInto(Bitmap candidate, int width, int height, int sampleSize) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return canDecodeInto(candidate.getAllocationByteCount(), candidate.getConfig(),
+                    width, height, sampleSize);
+        }
+        // older decoders require an exact match and can't sample into it
+        return sampleSize == 1 && candidate.getWidth() == width && candidate.getHeight() == height;
+    }
+
+    /**
+     * @return Whether a bitmap with the given allocation and config has room
+     * for the image decoded at the given sample size, on decoders that can
+     * reuse any large enough bitmap
+     */
+    static boolean canDecodeInto(long allocationByteCount, Bitmap.Config config,
+                                 int width, int height, int sampleSize) {
+        // decoders only sample by powers of two, so size for the largest
+        // result the requested sample size could produce
+        int effectiveSampleSize = Integer.highestOneBit(sampleSize);
+        int sampledWidth = (width + effectiveSampleSize - 1) / effectiveSampleSize;
+        int sampledHeight = (height + effectiveSampleSize - 1) / effectiveSampleSize;
+        long byteCount = (long)sampledWidth * sampledHeight * getBytesPerPixel(config);
+        return byteCount <= allocationByteCount;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+
+    private static int getSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+}
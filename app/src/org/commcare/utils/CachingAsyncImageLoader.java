@@ -10,38 +10,118 @@ import android.os.AsyncTask;
 import android.util.LruCache;
 import android.widget.ImageView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 /**
  * Class used for managing the LoadImageTasks that load images into a list.
  * Ensures that proper caching occurs and attempts to limit overflows
  *
+ * Decoded images are kept in a memory cache, bounded by bitmap bytes, that is
+ * shared by all loaders and trimmed when the system runs low on memory.
+ * Misses fall through to MediaUtil, which keeps scaled copies of images on
+ * disk. Requests for the same image at the same size are served by a single
+ * load, and requests for views that are being recycled are cancelled.
+ *
+ * All public methods must be called from the main thread.
+ *
  * @author wspride
  */
 @SuppressLint("NewApi")
-public class CachingAsyncImageLoader implements ComponentCallbacks2 {
-    private final LruCache<String, Bitmap> cache;
-    private static final int CACHE_DIVISOR = 2;
+public class CachingAsyncImageLoader {
+    // fraction of the app's heap the memory cache may use
+    private static final int CACHE_DIVISOR = 8;
+
+    private static LruCache<String, Bitmap> cache;
+
     private final Context context;
+    private final Map<String, SetImageTask> inFlightRequests = new HashMap<>();
+    private final Map<ImageView, SetImageTask> viewRequests = new WeakHashMap<>();
 
     public CachingAsyncImageLoader(Context context) {
+        this.context = context;
+        initCache(context);
+    }
+
+    private static synchronized void initCache(Context context) {
+        if (cache != null) {
+            return;
+        }
         ActivityManager am = (ActivityManager)context.getSystemService(
                 Context.ACTIVITY_SERVICE);
-        int memoryClass = (am.getMemoryClass() * 1024 * 1024) / CACHE_DIVISOR;        //basically, set the heap to be everything we can get
-        this.context = context;
-        this.cache = new LruCache<>(memoryClass);
+        cache = createMemoryCache((am.getMemoryClass() * 1024 * 1024) / CACHE_DIVISOR);
+        context.getApplicationContext().registerComponentCallbacks(new MemoryTrimCallbacks());
+    }
+
+    /**
+     * @param maxBytes Bitmap bytes the cache may hold before evicting the
+     *                 least recently used images
+     */
+    static LruCache<String, Bitmap> createMemoryCache(int maxBytes) {
+        return new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
     }
 
     public void display(String url, ImageView imageView, int defaultResource,
                         int boundingWidth, int boundingHeight) {
-        imageView.setImageResource(defaultResource);
-        Bitmap image;
-        synchronized (cache) {
-            image = cache.get(url);
-        }
+        cancel(imageView);
+
+        String cacheKey = getCacheKey(url, boundingWidth, boundingHeight);
+        Bitmap image = cache.get(cacheKey);
         if (image != null) {
+            ImageCacheStats.recordMemoryHit();
             imageView.setImageBitmap(image);
+            return;
+        }
+        ImageCacheStats.recordMemoryMiss();
+        imageView.setImageResource(defaultResource);
+
+        SetImageTask task = inFlightRequests.get(cacheKey);
+        if (task == null) {
+            task = new SetImageTask(cacheKey, url, this.context, boundingWidth, boundingHeight);
+            inFlightRequests.put(cacheKey, task);
+            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         } else {
-            new SetImageTask(imageView, this.context, boundingWidth, boundingHeight).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, url);
+            ImageCacheStats.recordCoalescedRequest();
         }
+        task.addTarget(imageView);
+        viewRequests.put(imageView, task);
+    }
+
+    /**
+     * Stop loading an image into this view, e.g. because it has scrolled
+     * off screen. The load itself is only cancelled once no other view is
+     * waiting on it.
+     */
+    public void cancel(ImageView imageView) {
+        SetImageTask task = viewRequests.remove(imageView);
+        if (task != null && task.removeTarget(imageView)) {
+            inFlightRequests.remove(task.cacheKey);
+            task.cancel(false);
+            ImageCacheStats.recordCancelledRequest();
+        }
+    }
+
+    /**
+     * Stop all loads started by this loader
+     */
+    public void cancelAll() {
+        for (SetImageTask task : inFlightRequests.values()) {
+            task.cancel(false);
+            ImageCacheStats.recordCancelledRequest();
+        }
+        inFlightRequests.clear();
+        viewRequests.clear();
+    }
+
+    private static String getCacheKey(String url, int boundingWidth, int boundingHeight) {
+        return url + "|" + boundingWidth + "x" + boundingHeight;
     }
 
     /**
@@ -49,65 +129,95 @@ public class CachingAsyncImageLoader implements ComponentCallbacks2 {
      *
      * @author wspride
      */
-    private class SetImageTask extends AsyncTask<String, Void, Bitmap> {
-        private final ImageView mImageView;
+    private class SetImageTask extends AsyncTask<Void, Void, Bitmap> {
+        private final String cacheKey;
+        private final String mFilePath;
         private final Context mContext;
         private final int mBoundingWidth;
         private final int mBoundingHeight;
+        private final ArrayList<ImageView> mTargets = new ArrayList<>();
 
-        public SetImageTask(ImageView imageView, Context context,
+        public SetImageTask(String cacheKey, String filePath, Context context,
                             int maxWidth, int maxHeight) {
-            mImageView = imageView;
+            this.cacheKey = cacheKey;
+            mFilePath = filePath;
             mContext = context;
             mBoundingWidth = maxWidth;
             mBoundingHeight = maxHeight;
         }
 
+        void addTarget(ImageView imageView) {
+            mTargets.add(imageView);
+        }
+
+        /**
+         * @return True if no views are waiting on this load anymore
+         */
+        boolean removeTarget(ImageView imageView) {
+            mTargets.remove(imageView);
+            return mTargets.isEmpty();
+        }
+
         @Override
-        protected Bitmap doInBackground(String... file) {
-            return getImageBitmap(file[0]);
+        protected Bitmap doInBackground(Void... params) {
+            if (isCancelled()) {
+                return null;
+            }
+            return getImageBitmap(mFilePath);
         }
 
         @Override
         protected void onPostExecute(Bitmap result) {
-            if (result != null && mImageView != null) {
-                mImageView.setImageBitmap(result);
+            if (inFlightRequests.get(cacheKey) == this) {
+                inFlightRequests.remove(cacheKey);
+            }
+            for (ImageView target : mTargets) {
+                viewRequests.remove(target);
+                if (result != null) {
+                    target.setImageBitmap(result);
+                }
             }
+            mTargets.clear();
         }
 
         public Bitmap getImageBitmap(String filePath) {
+            ImageCacheStats.recordLoad();
             Bitmap bitmap = MediaUtil.inflateDisplayImage(mContext, filePath, mBoundingWidth,
                     mBoundingHeight, true);
 
+            // cache even if the request was cancelled meanwhile, since the
+            // view is likely to be scrolled back to
             if (bitmap != null) {
-                synchronized (cache) {
-                    cache.put(filePath, bitmap);
-                }
+                cache.put(cacheKey, bitmap);
             }
 
             return bitmap;
         }
     }
 
-    /*
-     * Override these methods to ensure that our overriding behavior is maintained
-     * through these calls. come from ComponentCallsback2
+    /**
+     * Shrinks the shared memory cache as the system asks for memory back
      */
+    private static class MemoryTrimCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
 
-    @Override
-    public void onConfigurationChanged(Configuration newConfig) {
-    }
-
-    @Override
-    public void onLowMemory() {
-    }
-
-    @Override
-    public void onTrimMemory(int level) {
-        // TODO PLM: this is probably never called because Context.registerComponentCallbacks
-        // is never used to register instances of CachingAsyncImageLoader
-        if (level >= TRIM_MEMORY_MODERATE) {
+        @Override
+        public void onLowMemory() {
             cache.evictAll();
+            BitmapReusePool.clear();
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_MODERATE) {
+                cache.evictAll();
+                BitmapReusePool.clear();
+            } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                cache.trimToSize(cache.maxSize() / 2);
+                BitmapReusePool.clear();
+            }
         }
     }
 }
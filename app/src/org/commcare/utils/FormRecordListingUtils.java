@@ -0,0 +1,133 @@
+package org.commcare.utils;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import org.commcare.CommCareApplication;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.database.user.models.SessionStateDescriptor;
+import org.commcare.models.AndroidSessionWrapper;
+import org.commcare.models.database.AndroidSandbox;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.suite.model.Entry;
+import org.commcare.suite.model.FormEntry;
+import org.commcare.suite.model.Suite;
+import org.commcare.util.FormDataUtil;
+
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Computes the text shown for a form record in the saved forms list: the
+ * record's title, the name of its form, and the lower cased text the list's
+ * search matches against. It's stored on the record when the record is
+ * written, since computing a title from scratch means replaying the
+ * record's whole session.
+ */
+public class FormRecordListingUtils {
+
+    public static final String UNAVAILABLE_TITLE = "[Unavailable]";
+
+    /**
+     * Fill in the record's listing text, keeping a title that was already
+     * computed
+     *
+     * @param session The live session the record was filled out in, if
+     *                there is one; otherwise the title is computed by
+     *                replaying the session stored for the record
+     */
+    public static void populateListingText(Context context, FormRecord record,
+                                           @Nullable AndroidSessionWrapper session) {
+        AndroidCommCarePlatform platform = CommCareApplication.instance().getCommCarePlatform();
+        if (record.getRecordTitle() == null) {
+            if (session != null) {
+                record.setRecordTitle(getTitleFromSession(session));
+            } else if (record.getID() != -1) {
+                record.setRecordTitle(loadTitle(platform,
+                        CommCareApplication.instance().getUserStorage(SessionStateDescriptor.class),
+                        record.getID()));
+            }
+        }
+        if (record.getFormName() == null) {
+            record.setFormName(getFormName(platform, record.getFormNamespace()));
+        }
+        record.setSearchText(buildSearchText(context, record));
+    }
+
+    /**
+     * @return The title for a form filled out in the given session, e.g. the
+     * name of the case it was filled out for
+     */
+    public static String getTitleFromSession(AndroidSessionWrapper session) {
+        String title;
+        try {
+            title = FormDataUtil.getTitleFromSession(new AndroidSandbox(CommCareApplication.instance()),
+                    session.getSession(), session.getEvaluationContext());
+        } catch (RuntimeException e) {
+            return UNAVAILABLE_TITLE;
+        }
+        return title == null ? "" : title;
+    }
+
+    /**
+     * Replay the session stored for a record to compute its title
+     *
+     * @return The title, or an empty string if no session was stored
+     */
+    public static String loadTitle(AndroidCommCarePlatform platform,
+                                   SqlStorage<SessionStateDescriptor> descriptorStorage,
+                                   int formRecordId) {
+        SessionStateDescriptor ssd;
+        try {
+            ssd = descriptorStorage.getRecordForValue(SessionStateDescriptor.META_FORM_RECORD_ID, formRecordId);
+        } catch (NoSuchElementException nsee) {
+            return "";
+        }
+        AndroidSessionWrapper asw = new AndroidSessionWrapper(platform);
+        asw.loadFromStateDescription(ssd);
+        return getTitleFromSession(asw);
+    }
+
+    /**
+     * @return The text of the menu entry for the form with the given
+     * namespace, or null if no installed suite has one
+     */
+    public static String getFormName(AndroidCommCarePlatform platform, String xmlns) {
+        if (xmlns == null) {
+            return null;
+        }
+        for (Suite s : platform.getInstalledSuites()) {
+            for (Enumeration en = s.getEntries().elements(); en.hasMoreElements(); ) {
+                Entry entry = (Entry)en.nextElement();
+                if (!(entry.isView() || entry.isRemoteRequest()) &&
+                        xmlns.equals(((FormEntry)entry).getXFormNamespace())) {
+                    return entry.getText().evaluate();
+                }
+            }
+        }
+        return null;
+    }
+
+    public static String buildSearchText(Context context, FormRecord record) {
+        StringBuilder searchText = new StringBuilder(getSearchableDate(context, record.lastModified()));
+        if (record.getRecordTitle() != null) {
+            searchText.append(' ').append(record.getRecordTitle());
+        }
+        if (record.getFormName() != null) {
+            searchText.append(' ').append(record.getFormName());
+        }
+        return searchText.toString().toLowerCase();
+    }
+
+    /**
+     * @return The month the record was last modified in, which the list's
+     * search has always matched against
+     */
+    public static String getSearchableDate(Context context, Date lastModified) {
+        return DateUtils.formatDateTime(context, lastModified.getTime(),
+                DateUtils.FORMAT_NO_MONTH_DAY | DateUtils.FORMAT_NO_YEAR).toLowerCase();
+    }
+}
@@ -8,6 +8,7 @@ import android.webkit.MimeTypeMap;
 import org.commcare.core.network.AuthenticationInterceptor;
 import org.commcare.network.CommcareRequestGenerator;
 import org.commcare.network.EncryptedFileBody;
+import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.tasks.DataSubmissionListener;
 import org.commcare.util.LogTypes;
 import org.javarosa.core.io.StreamsUtil;
@@ -33,6 +34,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
@@ -148,12 +150,61 @@ public class FormUploadUtil {
 
         List<MultipartBody.Part> parts = new ArrayList<>();
 
-        if (!buildMultipartEntity(parts, key, files)) {
+        ResumableAttachmentUploader chunkedUploader = null;
+        if (DeveloperPreferences.isChunkedAttachmentUploadEnabled()) {
+            chunkedUploader = new ResumableAttachmentUploader(folder,
+                    new ResumableAttachmentUploader.HttpPartReceiver(url, user),
+                    hasListener ? getPartProgressListener(myListener, submissionNumber) : null);
+            FormUploadResult attachmentResult = uploadLargeAttachments(chunkedUploader, files);
+            if (attachmentResult != FormUploadResult.FULL_SUCCESS) {
+                return attachmentResult;
+            }
+        }
+
+        if (!buildMultipartEntity(parts, key, files, chunkedUploader)) {
             return FormUploadResult.RECORD_FAILURE;
         }
 
         CommcareRequestGenerator generator = new CommcareRequestGenerator(user);
-        return submitEntity(parts, url, generator);
+        FormUploadResult result = submitEntity(parts, url, generator);
+        if (result == FormUploadResult.FULL_SUCCESS && chunkedUploader != null) {
+            chunkedUploader.clearState();
+        }
+        return result;
+    }
+
+    /**
+     * Upload the parts of large attachments that the server doesn't have
+     * yet, ahead of the submission that references them
+     */
+    private static FormUploadResult uploadLargeAttachments(ResumableAttachmentUploader uploader,
+                                                           File[] files) {
+        for (File f : files) {
+            if (isChunkedAttachment(f, uploader)) {
+                FormUploadResult result = uploader.upload(f);
+                if (result != FormUploadResult.FULL_SUCCESS) {
+                    return result;
+                }
+            }
+        }
+        return FormUploadResult.FULL_SUCCESS;
+    }
+
+    /**
+     * @return Listener reporting the bytes of all acknowledged attachment
+     * parts as the submission's progress
+     */
+    private static ResumableAttachmentUploader.ProgressListener getPartProgressListener(
+            final DataSubmissionListener listener, final int submissionNumber) {
+        final AtomicLong bytesAcknowledged = new AtomicLong();
+        return bytes -> listener.notifyProgress(submissionNumber, bytesAcknowledged.addAndGet(bytes));
+    }
+
+    private static boolean isChunkedAttachment(File f, ResumableAttachmentUploader uploader) {
+        return uploader != null &&
+                !f.getName().endsWith(".xml") &&
+                (getFileContentType(f) != null || isSupportedMultimediaFile(f.getName())) &&
+                ResumableAttachmentUploader.shouldUploadInParts(f);
     }
 
     /**
@@ -294,7 +345,8 @@ public class FormUploadUtil {
         long bytes = 0;
         for (File file : files) {
             // Make sure we'll be sending it
-            if (!isSupportedMultimediaFile(file.getName())) {
+            if (ResumableAttachmentUploader.isStateFile(file) ||
+                    !isSupportedMultimediaFile(file.getName())) {
                 continue;
             }
 
@@ -312,20 +364,30 @@ public class FormUploadUtil {
      * @param parts Add files to this
      * @param key   Used to encrypt xml files
      * @param files The files to be added to the entity,
+     * @param chunkedUploader If present, has already uploaded the large
+     *                        attachments, which are then only referenced
      * @return false if invalid xml files are found; otherwise true.
      * @throws FileNotFoundException Is raised when an xml doesn't exist on the
      *                               file-system
      */
     private static boolean buildMultipartEntity(List<MultipartBody.Part> parts,
                                                 SecretKeySpec key,
-                                                File[] files)
+                                                File[] files,
+                                                ResumableAttachmentUploader chunkedUploader)
             throws FileNotFoundException {
 
         int numAttachmentsInInstanceFolder = 0;
         int numAttachmentsSuccessfullyAdded = 0;
 
         for (File f : files) {
-            if (f.getName().endsWith(".xml")) {
+            if (ResumableAttachmentUploader.isStateFile(f)) {
+                continue;
+            }
+            if (isChunkedAttachment(f, chunkedUploader)) {
+                numAttachmentsInInstanceFolder++;
+                numAttachmentsSuccessfullyAdded++;
+                parts.add(chunkedUploader.createReferencePart(f));
+            } else if (f.getName().endsWith(".xml")) {
                 if (key != null) {
                     if (!validateSubmissionFile(f)) {
                         return false;
@@ -0,0 +1,136 @@
+package org.commcare.utils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding of coordinates, where nearby points share a common
+ * prefix, so that an ordinary string index can serve spatial lookups.
+ */
+public class GeoHash {
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    public static final int MAX_PRECISION = 12;
+
+    // Upper bound on the cells used to cover a bounding box before falling
+    // back to a coarser precision
+    private static final int MAX_COVERING_CELLS = 16;
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double METERS_PER_DEGREE_LATITUDE = Math.PI * EARTH_RADIUS_METERS / 180;
+
+    public static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return Height in degrees of a cell at the given precision
+     */
+    public static double cellHeight(int precision) {
+        return 180 / Math.pow(2, (5 * precision) / 2);
+    }
+
+    /**
+     * @return Width in degrees of a cell at the given precision
+     */
+    public static double cellWidth(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    /**
+     * Geohash prefixes of the cells that together cover the given box, at
+     * the finest precision that keeps the number of cells small. The box
+     * must not cross the antimeridian.
+     */
+    public static Set<String> coveringCells(double minLat, double minLon,
+                                            double maxLat, double maxLon) {
+        int precision = MAX_PRECISION;
+        while (precision > 1 &&
+                cellsAcross(minLat, maxLat, cellHeight(precision)) *
+                        cellsAcross(minLon, maxLon, cellWidth(precision)) > MAX_COVERING_CELLS) {
+            precision--;
+        }
+
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        for (double lat = minLat; ; lat = Math.min(lat + height, maxLat)) {
+            for (double lon = minLon; ; lon = Math.min(lon + width, maxLon)) {
+                cells.add(encode(lat, lon, precision));
+                if (lon >= maxLon) {
+                    break;
+                }
+            }
+            if (lat >= maxLat) {
+                break;
+            }
+        }
+        return cells;
+    }
+
+    private static long cellsAcross(double min, double max, double cellSize) {
+        return (long)(Math.floor(max / cellSize) - Math.floor(min / cellSize)) + 1;
+    }
+
+    /**
+     * Great-circle distance between two points, in meters
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * @return Half the height of a box around a point that contains every
+     * point within the given distance of it, in degrees
+     */
+    public static double latitudeDegreesFor(double meters) {
+        return meters / METERS_PER_DEGREE_LATITUDE;
+    }
+
+    /**
+     * @return Half the width of a box around a point at the given latitude
+     * that contains every point within the given distance of it, in degrees
+     */
+    public static double longitudeDegreesFor(double meters, double lat) {
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(lat) + latitudeDegreesFor(meters))));
+        return Math.min(180, meters / (METERS_PER_DEGREE_LATITUDE * cosLat));
+    }
+}
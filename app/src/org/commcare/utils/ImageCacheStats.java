@@ -0,0 +1,87 @@
+package org.commcare.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for how image requests were served: by the memory cache, the
+ * disk cache, or a background load
+ */
+public final class ImageCacheStats {
+    private static final AtomicLong memoryHits = new AtomicLong();
+    private static final AtomicLong memoryMisses = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong loads = new AtomicLong();
+    private static final AtomicLong coalescedRequests = new AtomicLong();
+    private static final AtomicLong cancelledRequests = new AtomicLong();
+    private static final AtomicLong bitmapReuses = new AtomicLong();
+
+    private ImageCacheStats() {
+    }
+
+    static void recordMemoryHit() {
+        memoryHits.incrementAndGet();
+    }
+
+    static void recordMemoryMiss() {
+        memoryMisses.incrementAndGet();
+    }
+
+    static void recordDiskHit() {
+        diskHits.incrementAndGet();
+    }
+
+    static void recordLoad() {
+        loads.incrementAndGet();
+    }
+
+    static void recordCoalescedRequest() {
+        coalescedRequests.incrementAndGet();
+    }
+
+    static void recordCancelledRequest() {
+        cancelledRequests.incrementAndGet();
+    }
+
+    static void recordBitmapReuse() {
+        bitmapReuses.incrementAndGet();
+    }
+
+    static long getLoads() {
+        return loads.get();
+    }
+
+    static long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    static long getCancelledRequests() {
+        return cancelledRequests.get();
+    }
+
+    /**
+     * @return Fraction of image lookups served straight from memory
+     */
+    public static double getMemoryHitRate() {
+        long lookups = memoryHits.get() + memoryMisses.get();
+        return lookups == 0 ? 0 : memoryHits.get() / (double)lookups;
+    }
+
+    public static String getUsageSummary() {
+        return String.format(Locale.US,
+                "Memory hit rate: %.1f%%, disk hits: %d, loads: %d, coalesced: %d, " +
+                        "cancelled: %d, bitmaps reused: %d",
+                getMemoryHitRate() * 100, diskHits.get(), loads.get(),
+                coalescedRequests.get(), cancelledRequests.get(), bitmapReuses.get());
+    }
+
+    public static void reset() {
+        memoryHits.set(0);
+        memoryMisses.set(0);
+        diskHits.set(0);
+        loads.set(0);
+        coalescedRequests.set(0);
+        cancelledRequests.set(0);
+        bitmapReuses.set(0);
+    }
+}
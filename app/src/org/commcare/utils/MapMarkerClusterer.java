@@ -0,0 +1,154 @@
+package org.commcare.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Groups map points that would render close together at a given zoom level,
+ * so that a map shows one marker per group instead of one per point.
+ *
+ * Points are bucketed into a grid of cells roughly CELL_SIZE_PIXELS wide on
+ * screen; only points inside the visible region are considered. Safe to
+ * call from a background thread, since the points are never modified.
+ */
+public class MapMarkerClusterer {
+    private static final int TILE_SIZE_PIXELS = 256;
+    private static final int CELL_SIZE_PIXELS = 80;
+
+    // Zoom level past which every point is shown on its own
+    private static final float MAX_CLUSTERING_ZOOM = 18;
+
+    // Few enough points to show individually at any zoom level
+    private static final int MIN_POINTS_FOR_CLUSTERING = 200;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public static class Cluster {
+        private double latitudeSum;
+        private double longitudeSum;
+        private int size;
+        private int firstIndex;
+
+        private double minLatitude = Double.MAX_VALUE;
+        private double maxLatitude = -Double.MAX_VALUE;
+        private double minLongitude = Double.MAX_VALUE;
+        private double maxLongitude = -Double.MAX_VALUE;
+
+        private void add(int index, double latitude, double longitude) {
+            if (size == 0) {
+                firstIndex = index;
+            }
+            size++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+            minLongitude = Math.min(minLongitude, longitude);
+            maxLongitude = Math.max(maxLongitude, longitude);
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return Index of one of the points in the cluster, the only one
+         * for a cluster of size 1
+         */
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public double getLatitude() {
+            return latitudeSum / size;
+        }
+
+        public double getLongitude() {
+            return longitudeSum / size;
+        }
+
+        public double getMinLatitude() {
+            return minLatitude;
+        }
+
+        public double getMaxLatitude() {
+            return maxLatitude;
+        }
+
+        public double getMinLongitude() {
+            return minLongitude;
+        }
+
+        public double getMaxLongitude() {
+            return maxLongitude;
+        }
+    }
+
+    public MapMarkerClusterer(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Mismatched coordinate arrays");
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    public int getPointCount() {
+        return latitudes.length;
+    }
+
+    /**
+     * Cluster the points within the given region. A region whose western
+     * edge is east of its eastern edge is taken to cross the antimeridian.
+     */
+    public List<Cluster> cluster(double south, double west, double north, double east, float zoom) {
+        List<Cluster> clusters = new ArrayList<>();
+        boolean clustering = zoom < MAX_CLUSTERING_ZOOM && latitudes.length > MIN_POINTS_FOR_CLUSTERING;
+        // cells are laid out over the web mercator projection the map is
+        // drawn in, so they stay put as the map is panned
+        double cellsPerWorld = TILE_SIZE_PIXELS * Math.pow(2, zoom) / CELL_SIZE_PIXELS;
+
+        HashMap<Long, Cluster> cells = new HashMap<>();
+        for (int i = 0; i < latitudes.length; i++) {
+            double lat = latitudes[i];
+            double lon = longitudes[i];
+            if (lat < south || lat > north || !isLongitudeWithin(lon, west, east)) {
+                continue;
+            }
+            if (!clustering) {
+                Cluster single = new Cluster();
+                single.add(i, lat, lon);
+                clusters.add(single);
+                continue;
+            }
+            long column = (long)Math.floor((lon + 180) / 360 * cellsPerWorld);
+            long row = (long)Math.floor(mercatorY(lat) * cellsPerWorld);
+            Long key = (row << 32) ^ column;
+            Cluster cluster = cells.get(key);
+            if (cluster == null) {
+                cluster = new Cluster();
+                cells.put(key, cluster);
+                clusters.add(cluster);
+            }
+            cluster.add(i, lat, lon);
+        }
+        return clusters;
+    }
+
+    /**
+     * @return Distance of the latitude from the top of a web mercator map,
+     * as a fraction of the map's height
+     */
+    private static double mercatorY(double lat) {
+        double sinLat = Math.sin(Math.toRadians(Math.max(-85, Math.min(85, lat))));
+        return 0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI);
+    }
+
+    private static boolean isLongitudeWithin(double lon, double west, double east) {
+        if (west <= east) {
+            return lon >= west && lon <= east;
+        }
+        return lon >= west || lon <= east;
+    }
+}
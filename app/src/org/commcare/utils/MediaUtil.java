@@ -200,7 +200,15 @@ public class MediaUtil {
         Bitmap b = null;
         if (cacheKey.exists()) {
             try {
-                b = inflateImageSafe(cacheKey.getPath()).first;
+                // cached files are already at their display size, so decode
+                // straight into a pooled bitmap when one fits
+                BitmapFactory.Options o = new BitmapFactory.Options();
+                o.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(cacheKey.getPath(), o);
+                b = performSafeScaleDown(cacheKey.getPath(), 1, 0, o.outWidth, o.outHeight).first;
+                if (b != null) {
+                    ImageCacheStats.recordDiskHit();
+                }
             } catch (RuntimeException e) {
                 try {
                     cacheKey.delete();
@@ -364,7 +372,8 @@ public class MediaUtil {
         }
 
         int approximateScaleDownFactor = getApproxScaleDownFactor(newWidth, originalWidth);
-        Bitmap b = inflateImageSafe(imageFilepath, approximateScaleDownFactor).first;
+        Bitmap b = performSafeScaleDown(imageFilepath, approximateScaleDownFactor, 0,
+                originalWidth, originalHeight).first;
 
         if (scaleByContainerOnly && !respectBoundsExactly) {
             // Not worth performance loss of creating an exact scaled bitmap in this case
@@ -373,7 +382,12 @@ public class MediaUtil {
             try {
                 // Here we want to be more precise because we have a target width and height, or
                 // specified that respecting the bounding container precisely is important
-                return Bitmap.createScaledBitmap(b, newWidth, newHeight, false);
+                Bitmap scaled = Bitmap.createScaledBitmap(b, newWidth, newHeight, false);
+                if (scaled != b) {
+                    // the sampled decode was never handed out, so its memory can back the next one
+                    BitmapReusePool.offer(b);
+                }
+                return scaled;
             } catch (OutOfMemoryError e) {
                 Log.d(TAG, "Ran out of memory attempting to scale image at: " + imageFilepath);
                 return null;
@@ -447,7 +461,7 @@ public class MediaUtil {
         } catch (OutOfMemoryError e) {
             // Just inflating the image at its original size caused an OOM error, don't have a
             // choice but to scale down
-            return performSafeScaleDown(imageFilepath, 2, 1).first;
+            return performSafeScaleDown(imageFilepath, 2, 1, -1, -1).first;
         }
     }
 
@@ -476,7 +490,7 @@ public class MediaUtil {
      * @return the bitmap, plus a boolean value representing whether the image had to be downsized
      */
     public static Pair<Bitmap, Boolean> inflateImageSafe(String imageFilepath, int scaleDownFactor) {
-        return performSafeScaleDown(imageFilepath, scaleDownFactor, 0);
+        return performSafeScaleDown(imageFilepath, scaleDownFactor, 0, -1, -1);
     }
 
     public static Pair<Bitmap, Boolean> inflateImageSafe(String imageFilepath) {
@@ -484,12 +498,17 @@ public class MediaUtil {
     }
 
     /**
+     * @param originalWidth  Width of the full size image, or -1 if unknown. When both dimensions
+     *                       are known the decode may reuse a pooled bitmap.
+     * @param originalHeight Height of the full size image, or -1 if unknown
      * @return A scaled-down bitmap for the given image file, progressively increasing the
      * scale-down factor by 1 until allocating memory for the bitmap does not cause an OOM error,
      * and a boolean value representing whether the image had to be downsized
      */
     private static Pair<Bitmap, Boolean> performSafeScaleDown(String imageFilepath,
-                                                              int scaleDownFactor, int depth) {
+                                                              int scaleDownFactor, int depth,
+                                                              int originalWidth,
+                                                              int originalHeight) {
         if (depth == 5) {
             // Limit the number of recursive calls
             return new Pair<>(null, true);
@@ -497,9 +516,16 @@ public class MediaUtil {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inSampleSize = scaleDownFactor;
         try {
-            return new Pair<>(BitmapFactory.decodeFile(imageFilepath, options), scaleDownFactor > 1);
+            Bitmap b;
+            if (originalWidth > 0 && originalHeight > 0) {
+                b = BitmapReusePool.decodeFile(imageFilepath, options, originalWidth, originalHeight);
+            } else {
+                b = BitmapFactory.decodeFile(imageFilepath, options);
+            }
+            return new Pair<>(b, scaleDownFactor > 1);
         } catch (OutOfMemoryError e) {
-            return performSafeScaleDown(imageFilepath, scaleDownFactor + 1, depth + 1);
+            return performSafeScaleDown(imageFilepath, scaleDownFactor + 1, depth + 1,
+                    originalWidth, originalHeight);
         }
     }
 
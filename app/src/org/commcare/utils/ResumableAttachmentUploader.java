@@ -0,0 +1,387 @@
+package org.commcare.utils;
+
+import org.commcare.network.CommcareRequestGenerator;
+import org.commcare.network.FileRangeBody;
+import org.commcare.util.LogTypes;
+import org.javarosa.core.io.StreamsUtil;
+import org.javarosa.core.model.User;
+import org.javarosa.core.services.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Uploads large form attachments ahead of the form submission itself, as a
+ * series of fixed size parts, so that a dropped connection only costs the
+ * parts that were in flight rather than the whole attachment.
+ *
+ * Each part is sent with the MD5 checksum of its bytes, which the server
+ * verifies before acknowledging the part. Acknowledged parts are recorded
+ * in a state file kept in the form's instance folder next to its
+ * attachments, so a later attempt (even after an app restart) only sends the
+ * parts the server hasn't acknowledged. Parts of an attachment are sent
+ * over a couple of connections at once.
+ *
+ * Once every part of an attachment is acknowledged, the form submission
+ * carries a reference to the assembled upload in place of the attachment's
+ * bytes; see {@link #createReferencePart}.
+ */
+public class ResumableAttachmentUploader {
+    private static final String STATE_FILE_NAME = ".resumable_upload_state";
+
+    /**
+     * Attachments at least this large are uploaded in parts
+     */
+    public static final long CHUNKED_UPLOAD_THRESHOLD = 1024 * 1024;
+    static final int PART_SIZE = 256 * 1024;
+    private static final int PART_UPLOAD_THREADS = 2;
+
+    public static final String REFERENCE_CONTENT_TYPE = "application/x-commcare-chunked-upload";
+
+    /**
+     * The receiving end of part uploads
+     */
+    public interface PartReceiver {
+        /**
+         * @return The http status code of the server's response; 2xx means
+         * the part was stored and its checksum verified
+         */
+        int sendPart(String uploadId, String fileName, int partIndex, long offset,
+                     long totalLength, String checksum, RequestBody part) throws IOException;
+    }
+
+    /**
+     * Told how much of an attachment the server holds as parts are
+     * acknowledged
+     */
+    public interface ProgressListener {
+        /**
+         * Called from the part upload threads, and once at the start of an
+         * upload for the parts acknowledged by earlier attempts
+         *
+         * @param bytes Length of the parts acknowledged since the last call
+         */
+        void onBytesAcknowledged(long bytes);
+    }
+
+    private final File instanceFolder;
+    private final PartReceiver receiver;
+    private final ProgressListener progressListener;
+    private final Properties state = new Properties();
+
+    public ResumableAttachmentUploader(File instanceFolder, PartReceiver receiver) {
+        this(instanceFolder, receiver, null);
+    }
+
+    /**
+     * @param progressListener Told about acknowledged parts; may be null
+     */
+    public ResumableAttachmentUploader(File instanceFolder, PartReceiver receiver,
+                                       ProgressListener progressListener) {
+        this.instanceFolder = instanceFolder;
+        this.receiver = receiver;
+        this.progressListener = progressListener;
+        loadState();
+    }
+
+    public static boolean shouldUploadInParts(File attachment) {
+        return attachment.length() >= CHUNKED_UPLOAD_THRESHOLD;
+    }
+
+    public static boolean isStateFile(File file) {
+        return STATE_FILE_NAME.equals(file.getName());
+    }
+
+    /**
+     * Upload all parts of the attachment the server hasn't acknowledged yet
+     *
+     * @return FULL_SUCCESS once every part is acknowledged, otherwise the
+     * result describing the first failure; acknowledged parts are kept for
+     * the next attempt either way
+     */
+    public FormUploadResult upload(final File attachment) {
+        final String uploadId = getUploadId(attachment);
+        final long totalLength = attachment.length();
+        final int partCount = getPartCount(totalLength);
+        final BitSet acknowledged = getAcknowledgedParts(attachment);
+        long acknowledgedBytes = 0;
+        for (int i = acknowledged.nextSetBit(0); i >= 0 && i < partCount; i = acknowledged.nextSetBit(i + 1)) {
+            acknowledgedBytes += getPartLength(i, totalLength);
+        }
+        reportProgress(acknowledgedBytes);
+
+        ExecutorService pool = Executors.newFixedThreadPool(PART_UPLOAD_THREADS);
+        List<Future<Integer>> pendingParts = new ArrayList<>();
+        try {
+            for (int i = acknowledged.nextClearBit(0); i < partCount; i = acknowledged.nextClearBit(i + 1)) {
+                final int partIndex = i;
+                pendingParts.add(pool.submit(() ->
+                        sendPart(attachment, uploadId, partIndex, totalLength)));
+            }
+
+            FormUploadResult result = FormUploadResult.FULL_SUCCESS;
+            for (Future<Integer> pendingPart : pendingParts) {
+                FormUploadResult partResult = getPartResult(pendingPart);
+                if (result == FormUploadResult.FULL_SUCCESS) {
+                    result = partResult;
+                }
+            }
+            if (result != FormUploadResult.FULL_SUCCESS) {
+                Logger.log(LogTypes.TYPE_FORM_SUBMISSION, "Uploaded " +
+                        getAcknowledgedParts(attachment).cardinality() + " of " + partCount +
+                        " parts of " + attachment.getName() + " before failing");
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int sendPart(File attachment, String uploadId, int partIndex, long totalLength)
+            throws IOException {
+        long offset = (long)partIndex * PART_SIZE;
+        long length = getPartLength(partIndex, totalLength);
+        String checksum = checksumRange(attachment, offset, length);
+        RequestBody part = new FileRangeBody(
+                MediaType.parse("application/octet-stream"), attachment, offset, length);
+
+        int responseCode = receiver.sendPart(uploadId, attachment.getName(), partIndex,
+                offset, totalLength, checksum, part);
+        if (responseCode >= 200 && responseCode < 300) {
+            markPartAcknowledged(attachment, partIndex);
+            reportProgress(length);
+        }
+        return responseCode;
+    }
+
+    private void reportProgress(long bytes) {
+        if (progressListener != null && bytes > 0) {
+            progressListener.onBytesAcknowledged(bytes);
+        }
+    }
+
+    private static FormUploadResult getPartResult(Future<Integer> pendingPart) {
+        int responseCode;
+        try {
+            responseCode = pendingPart.get();
+        } catch (InterruptedException e) {
+            return FormUploadResult.TRANSPORT_FAILURE;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StreamsUtil.InputIOException) {
+                Logger.log(LogTypes.TYPE_ERROR_STORAGE,
+                        "Internal error reading attachment during submission: " + e.getCause().getMessage());
+                return FormUploadResult.RECORD_FAILURE;
+            }
+            Logger.log(LogTypes.TYPE_WARNING_NETWORK,
+                    "Attachment part upload failed: " + e.getCause().getMessage());
+            return FormUploadResult.TRANSPORT_FAILURE;
+        }
+
+        if (responseCode >= 200 && responseCode < 300) {
+            return FormUploadResult.FULL_SUCCESS;
+        } else if (responseCode == 401) {
+            return FormUploadResult.AUTH_FAILURE;
+        } else {
+            // includes checksum mismatches, which are worth retrying
+            return FormUploadResult.FAILURE;
+        }
+    }
+
+    /**
+     * @return A form submission part that stands in for the attachment,
+     * which must have been fully uploaded
+     */
+    public MultipartBody.Part createReferencePart(File attachment) {
+        RequestBody reference = RequestBody.create(MediaType.parse(REFERENCE_CONTENT_TYPE),
+                getUploadId(attachment));
+        return MultipartBody.Part.createFormData(attachment.getName(), attachment.getName(), reference);
+    }
+
+    /**
+     * Forget all upload progress, e.g. once the form has been submitted
+     */
+    public synchronized void clearState() {
+        state.clear();
+        new File(instanceFolder, STATE_FILE_NAME).delete();
+    }
+
+    static int getPartCount(long totalLength) {
+        return (int)((totalLength + PART_SIZE - 1) / PART_SIZE);
+    }
+
+    private static long getPartLength(int partIndex, long totalLength) {
+        return Math.min(PART_SIZE, totalLength - (long)partIndex * PART_SIZE);
+    }
+
+    /**
+     * The attachment's upload id, which stays the same across attempts as
+     * long as the attachment doesn't change
+     */
+    private synchronized String getUploadId(File attachment) {
+        String fileKey = attachment.getName();
+        String version = attachment.length() + ":" + attachment.lastModified();
+        if (!version.equals(state.getProperty(fileKey + ".version"))) {
+            state.setProperty(fileKey + ".version", version);
+            state.setProperty(fileKey + ".id", UUID.randomUUID().toString());
+            state.remove(fileKey + ".parts");
+            saveState();
+        }
+        return state.getProperty(fileKey + ".id");
+    }
+
+    synchronized BitSet getAcknowledgedParts(File attachment) {
+        BitSet parts = new BitSet();
+        String stored = state.getProperty(attachment.getName() + ".parts", "");
+        for (String part : stored.split(",")) {
+            if (!"".equals(part)) {
+                parts.set(Integer.parseInt(part));
+            }
+        }
+        return parts;
+    }
+
+    private synchronized void markPartAcknowledged(File attachment, int partIndex) {
+        String key = attachment.getName() + ".parts";
+        String stored = state.getProperty(key, "");
+        state.setProperty(key, "".equals(stored) ? String.valueOf(partIndex) : stored + "," + partIndex);
+        saveState();
+    }
+
+    private void loadState() {
+        File stateFile = new File(instanceFolder, STATE_FILE_NAME);
+        if (!stateFile.exists()) {
+            return;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(stateFile);
+            state.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            // start the uploads over rather than trusting a damaged record
+            state.clear();
+        } finally {
+            StreamsUtil.closeStream(in);
+        }
+    }
+
+    /**
+     * Written through a temporary file, so a crash mid-write can't lose the
+     * parts acknowledged before
+     */
+    private void saveState() {
+        File stateFile = new File(instanceFolder, STATE_FILE_NAME);
+        File tempFile = new File(instanceFolder, STATE_FILE_NAME + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            state.store(out, null);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(stateFile)) {
+                throw new IOException("Unable to replace " + stateFile);
+            }
+        } catch (IOException e) {
+            // progress is only lost for this attempt; parts will be resent
+            Logger.log(LogTypes.TYPE_ERROR_STORAGE,
+                    "Unable to save attachment upload progress: " + e.getMessage());
+        } finally {
+            StreamsUtil.closeStream(out);
+        }
+    }
+
+    static String checksumRange(File file, long offset, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.seek(offset);
+            byte[] buffer = new byte[8192];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new StreamsUtil.InputIOException(
+                            new IOException("File " + file.getName() + " shorter than expected"));
+                }
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            input.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Sends parts to the form submission url as small multipart posts
+     */
+    public static class HttpPartReceiver implements PartReceiver {
+        private final String url;
+        private final User user;
+
+        public HttpPartReceiver(String url, User user) {
+            this.url = url;
+            this.user = user;
+        }
+
+        @Override
+        public int sendPart(String uploadId, String fileName, int partIndex, long offset,
+                            long totalLength, String checksum, RequestBody part) throws IOException {
+            List<MultipartBody.Part> parts = new ArrayList<>();
+            parts.add(MultipartBody.Part.createFormData("upload_id", uploadId));
+            parts.add(MultipartBody.Part.createFormData("file_name", fileName));
+            parts.add(MultipartBody.Part.createFormData("part_index", String.valueOf(partIndex)));
+            parts.add(MultipartBody.Part.createFormData("offset", String.valueOf(offset)));
+            parts.add(MultipartBody.Part.createFormData("total_length", String.valueOf(totalLength)));
+            parts.add(MultipartBody.Part.createFormData("checksum", checksum));
+            parts.add(MultipartBody.Part.createFormData("part", fileName, part));
+
+            // generators track their current request, so parts sent
+            // concurrently each need their own
+            Response<ResponseBody> response =
+                    new CommcareRequestGenerator(user).postMultipart(url, parts);
+            if (response.body() != null) {
+                response.body().close();
+            }
+            if (response.errorBody() != null) {
+                response.errorBody().close();
+            }
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.commcare.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs application startup as a graph of named stages. Each stage runs once
+ * the stages it depends on have finished, either on the calling thread or,
+ * where it is safe to, on a background thread alongside other stages. Work
+ * that isn't needed before the first screen can be deferred until startup
+ * has finished.
+ *
+ * The time each stage takes is recorded and logged under the StartupStages
+ * tag when startup finishes, for startup benchmarks.
+ */
+public class StartupStages {
+    private static final String TAG = StartupStages.class.getSimpleName();
+
+    private static final int BACKGROUND_THREADS = 2;
+
+    private final boolean parallel;
+    private final long startTime = SystemClock.elapsedRealtime();
+
+    // Stages started so far, by name. Only touched by the thread running startup
+    private final HashMap<String, Future<?>> stages = new HashMap<>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<Runnable> deferredWork = new ArrayList<>();
+
+    private ExecutorService stagePool;
+    private ThreadPoolExecutor deferredWorkExecutor;
+    private boolean finished;
+
+    /**
+     * @param parallel Whether background stages and deferred work should run
+     *                 on other threads, or in order on the calling thread
+     */
+    public StartupStages(boolean parallel) {
+        this.parallel = parallel;
+        if (parallel) {
+            stagePool = Executors.newFixedThreadPool(BACKGROUND_THREADS,
+                    runnable -> new Thread(runnable, "startup-stage"));
+        }
+    }
+
+    /**
+     * Run a stage on the calling thread, after the stages it depends on
+     */
+    public void run(String name, Runnable work, String... dependsOn) {
+        await(dependsOn);
+        runTimed(name, work);
+        stages.put(name, null);
+    }
+
+    /**
+     * Start a stage on a background thread, to be run after the stages it
+     * depends on. The stage must not touch state that the calling thread uses
+     * before awaiting it.
+     */
+    public void runInBackground(String name, Runnable work, String... dependsOn) {
+        if (!parallel) {
+            run(name, work, dependsOn);
+            return;
+        }
+        final List<Future<?>> dependencies = new ArrayList<>();
+        for (String dependency : dependsOn) {
+            dependencies.add(getStage(dependency));
+        }
+        stages.put(name, stagePool.submit(() -> {
+            for (Future<?> dependency : dependencies) {
+                waitFor(dependency);
+            }
+            runTimed(name, work);
+        }));
+    }
+
+    /**
+     * Block until the given stages have finished
+     *
+     * @throws RuntimeException if one of the stages failed, with the cause of
+     *                          its failure
+     */
+    public void await(String... names) {
+        for (String name : names) {
+            waitFor(getStage(name));
+        }
+    }
+
+    /**
+     * Run work once startup has finished, on a background thread. After
+     * startup, work is run as soon as possible.
+     */
+    public synchronized void defer(String name, Runnable work) {
+        Runnable timedWork = () -> {
+            try {
+                runTimed("deferred: " + name, work);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Deferred startup work " + name + " failed: " + e.getMessage());
+            }
+        };
+        if (finished) {
+            runDeferred(timedWork);
+        } else {
+            deferredWork.add(timedWork);
+        }
+    }
+
+    /**
+     * Wait for all stages, log their timings and start the deferred work
+     */
+    public void finish() {
+        for (Future<?> stage : stages.values()) {
+            waitFor(stage);
+        }
+        if (stagePool != null) {
+            stagePool.shutdown();
+        }
+        timings.put("total", SystemClock.elapsedRealtime() - startTime);
+        logTimings();
+
+        synchronized (this) {
+            finished = true;
+            for (Runnable work : deferredWork) {
+                runDeferred(work);
+            }
+            deferredWork.clear();
+        }
+    }
+
+    /**
+     * @return Milliseconds taken by each stage that has finished, in the
+     * order they finished, and by startup as a whole
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    private void logTimings() {
+        StringBuilder summary = new StringBuilder("Startup stage timings (ms):");
+        for (Map.Entry<String, Long> timing : getTimings().entrySet()) {
+            summary.append(' ').append(timing.getKey()).append('=').append(timing.getValue());
+        }
+        Log.i(TAG, summary.toString());
+    }
+
+    private void runTimed(String name, Runnable work) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            work.run();
+        } finally {
+            timings.put(name, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    private void runDeferred(Runnable work) {
+        if (!parallel) {
+            work.run();
+            return;
+        }
+        if (deferredWorkExecutor == null) {
+            // A single thread that goes away when there's nothing left to do
+            deferredWorkExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "startup-deferred");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        deferredWorkExecutor.execute(work);
+    }
+
+    private Future<?> getStage(String name) {
+        if (!stages.containsKey(name)) {
+            throw new IllegalStateException("Startup stage " + name + " hasn't been started");
+        }
+        return stages.get(name);
+    }
+
+    private static void waitFor(Future<?> stage) {
+        if (stage == null) {
+            // ran on the calling thread
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    stage.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -266,6 +266,7 @@ public class EntityViewTile extends GridLayout {
      * @param entity - the Entity describing the actual data of each entry
      */
     public void addFieldViews(Context context, Detail detail, Entity entity) {
+        cancelImageLoads();
         this.removeAllViews();
         addBuffers(context);  // add spacers to enforce regularized column and row size
 
@@ -292,6 +293,21 @@ public class EntityViewTile extends GridLayout {
         }
     }
 
+    /**
+     * Images still loading for the entity this tile showed before being
+     * recycled are no longer needed
+     */
+    private void cancelImageLoads() {
+        if (mImageLoader == null || mFieldViews == null) {
+            return;
+        }
+        for (View fieldView : mFieldViews) {
+            if (fieldView instanceof ImageView) {
+                mImageLoader.cancel((ImageView)fieldView);
+            }
+        }
+    }
+
     private void addFieldView(Context context, String form,
                               GridStyle style, GridCoordinate coordinateData, String fieldString,
                               String sortField, int index) {
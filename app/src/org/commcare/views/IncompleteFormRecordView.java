@@ -57,8 +57,24 @@ public class IncompleteFormRecordView extends LinearLayout {
 
     public void setParams(FormRecord record, String dataTitle,
                           Long timestamp, Hashtable<String, Text> names) {
-        if (names.containsKey(record.getFormNamespace())) {
-            Text name = names.get(record.getFormNamespace());
+        setParams(record.getFormNamespace(), record.getStatus(), dataTitle, timestamp, names);
+
+        if (FormRecord.STATUS_QUARANTINED.equals(record.getStatus())) {
+            reasonForQuarantineView.setVisibility(View.VISIBLE);
+            reasonForQuarantineView.setText(
+                    Localization.get("reason.for.quarantine.prefix") +
+                    QuarantineUtil.getQuarantineReasonDisplayString(record, false));
+        }
+    }
+
+    /**
+     * Show a record from its listed columns alone. Quarantined records
+     * should be shown with the record itself, to include the reason.
+     */
+    public void setParams(String formNamespace, String status, String dataTitle,
+                          Long timestamp, Hashtable<String, Text> names) {
+        if (formNamespace != null && names.containsKey(formNamespace)) {
+            Text name = names.get(formNamespace);
             mPrimaryTextView.setText(MarkupUtil.styleSpannable(getContext(), name.evaluate()));
         } else {
             mPrimaryTextView.setText(MarkupUtil.localizeStyleSpannable(getContext(), "form.record.gone"));
@@ -74,7 +90,7 @@ public class IncompleteFormRecordView extends LinearLayout {
         } else {
             mRightTextView.setText("Never");
         }
-        if (FormRecord.STATUS_UNSENT.equals(record.getStatus())) {
+        if (FormRecord.STATUS_UNSENT.equals(status)) {
             mUpperRight.setText(MarkupUtil.localizeStyleSpannable(getContext(), "form.record.unsent"));
             mUpperRight.setTextAppearance(getContext(), R.style.WarningTextStyle);
 
@@ -84,13 +100,6 @@ public class IncompleteFormRecordView extends LinearLayout {
             syncIcon.setVisibility(View.GONE);
         }
 
-        if (FormRecord.STATUS_QUARANTINED.equals(record.getStatus())) {
-            reasonForQuarantineView.setVisibility(View.VISIBLE);
-            reasonForQuarantineView.setText(
-                    Localization.get("reason.for.quarantine.prefix") +
-                    QuarantineUtil.getQuarantineReasonDisplayString(record, false));
-        } else {
-            reasonForQuarantineView.setVisibility(View.GONE);
-        }
+        reasonForQuarantineView.setVisibility(View.GONE);
     }
 }
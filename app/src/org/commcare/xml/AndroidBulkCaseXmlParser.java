@@ -7,6 +7,7 @@ import org.commcare.android.database.user.models.ACase;
 import org.commcare.cases.model.Case;
 import org.commcare.models.database.SqlStorage;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.xml.bulk.BulkProcessingCaseXmlParser;
 import org.javarosa.xml.util.InvalidStructureException;
@@ -75,22 +76,25 @@ public class AndroidBulkCaseXmlParser extends BulkProcessingCaseXmlParser {
         db = getDbHandle();
         ArrayList<Integer> recordIdsToWipe = new ArrayList<>();
 
+        ArrayList<ACase> casesToWrite = new ArrayList<>(writeLog.size());
+        for (Case c : writeLog.values()) {
+            casesToWrite.add((ACase)c);
+        }
+
         db.beginTransaction();
         try {
-            for (String cid : writeLog.keySet()) {
-                Case c = writeLog.get(cid);
-                storage.write(c);
+            storage.writeAll(casesToWrite);
+            for (Case c : casesToWrite) {
                 recordIdsToWipe.add(c.getID());
             }
             if (mEntityCache != null) {
                 mEntityCache.invalidateCaches(recordIdsToWipe);
             }
             mCaseIndexTable.clearCaseIndices(recordIdsToWipe);
-
-            for (String cid : writeLog.keySet()) {
-                Case c = writeLog.get(cid);
-                mCaseIndexTable.indexCase(c);
-            }
+            mCaseIndexTable.indexCases(casesToWrite);
+            CaseGeoIndexTable geoIndexTable = new CaseGeoIndexTable(db);
+            geoIndexTable.clearCaseIndices(recordIdsToWipe);
+            geoIndexTable.indexCases(casesToWrite);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
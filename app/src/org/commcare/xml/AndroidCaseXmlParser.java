@@ -12,6 +12,7 @@ import org.commcare.cases.model.Case;
 import org.commcare.engine.references.JavaHttpReference;
 import org.commcare.interfaces.CommcareRequestEndpoints;
 import org.commcare.models.database.user.models.AndroidCaseIndexTable;
+import org.commcare.models.database.user.models.CaseGeoIndexTable;
 import org.commcare.models.database.user.models.EntityStorageCache;
 import org.commcare.util.LogTypes;
 import org.commcare.utils.FileUtil;
@@ -101,6 +102,9 @@ public class AndroidCaseXmlParser extends CaseXmlParser {
             }
             mCaseIndexTable.clearCaseIndices(parsed);
             mCaseIndexTable.indexCase(parsed);
+            CaseGeoIndexTable geoIndexTable = new CaseGeoIndexTable(db);
+            geoIndexTable.clearCaseIndices(parsed.getID());
+            geoIndexTable.indexCase(parsed);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -28,6 +28,7 @@ import org.commcare.network.LocalReferencePullResponseFactory;
 import org.commcare.preferences.DeveloperPreferences;
 import org.commcare.services.CommCareSessionService;
 import org.commcare.utils.AndroidCacheDirSetup;
+import org.commcare.utils.StartupStages;
 import org.javarosa.core.model.User;
 import org.javarosa.core.reference.ReferenceManager;
 import org.javarosa.core.reference.ResourceReferenceFactory;
@@ -79,6 +80,12 @@ public class CommCareTestApplication extends CommCareApplication implements Test
         });
     }
 
+    @Override
+    protected StartupStages createStartupStages() {
+        // keep startup, and the work it defers, in order on the test thread
+        return new StartupStages(false);
+    }
+
     @Override
     public <T extends Persistable> HybridFileBackedSqlStorage<T> getFileBackedAppStorage(String name, Class<T> c) {
         return getCurrentApp().getFileBackedStorage(name, c);
@@ -215,6 +222,11 @@ public class CommCareTestApplication extends CommCareApplication implements Test
         cachedUserPassword = password;
     }
 
+    @Override
+    public void prewarmFormDefCache(CommCareApp app) {
+        // Forms are cached on first load in tests, keeping installs synchronous
+    }
+
     @Override
     public DataPullRequester getDataPullRequester() {
         return LocalReferencePullResponseFactory.INSTANCE;
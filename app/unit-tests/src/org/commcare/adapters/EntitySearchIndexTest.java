@@ -0,0 +1,134 @@
+package org.commcare.adapters;
+
+import org.commcare.cases.entity.Entity;
+import org.javarosa.core.model.instance.TreeReference;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests building, querying and updating the entity search index
+ */
+public class EntitySearchIndexTest {
+    // The second field is a distance from here()
+    private static final boolean[] LOCATION_DEPENDENT_FIELDS = new boolean[]{false, true};
+
+    private EntitySearchIndex index;
+
+    @Before
+    public void setup() {
+        index = new EntitySearchIndex(Locale.ENGLISH, LOCATION_DEPENDENT_FIELDS);
+        index.addEntity(entity(0, "Kathryn Smith", "1 km"));
+        index.addEntity(entity(1, "John Smithson", "12 km"));
+        index.addEntity(entity(2, "Mary Jones", "30 km"));
+    }
+
+    @Test
+    public void testSubstringQueries() {
+        assertEquals(2, index.query(new String[]{"smith"}, false).size());
+        assertEquals(1, index.query(new String[]{"smith", "john"}, false).size());
+        assertEquals(1, index.query(new String[]{"ARY"}, false).size());
+        assertTrue(index.query(new String[]{"smith", "mary"}, false).isEmpty());
+        assertTrue(index.query(new String[]{"xyz"}, false).isEmpty());
+    }
+
+    @Test
+    public void testFuzzyQueries() {
+        assertTrue(index.query(new String[]{"katheryn"}, false).isEmpty());
+        Map<Entity<TreeReference>, Integer> matches = index.query(new String[]{"katheryn"}, true);
+        assertEquals(1, matches.size());
+        assertTrue(matches.values().iterator().next() > 0);
+    }
+
+    @Test
+    public void testEntitiesAreAddedIncrementally() {
+        Entity<TreeReference> mary = entity(2, "Mary Jones", "30 km");
+        index.addEntity(mary);
+        assertEquals(3, index.size());
+
+        Entity<TreeReference> anne = entity(3, "Anne Smith", "4 km");
+        assertFalse(index.contains(anne));
+        index.addEntity(anne);
+        assertTrue(index.contains(anne));
+        assertEquals(4, index.size());
+        assertEquals(3, index.query(new String[]{"smith"}, false).size());
+    }
+
+    @Test
+    public void testLocationDependentFieldsAreSearched() {
+        assertEquals(1, index.query(new String[]{"12 km"}, false).size());
+        // "1 km" is only a substring of the first distance
+        assertEquals(1, index.query(new String[]{"1 km"}, false).size());
+    }
+
+    @Test
+    public void testLocationChangeOnlyReloadsLocationDependentFields() {
+        index.invalidateLocationDependentFields();
+        assertEquals(0, index.size());
+        assertTrue(index.query(new String[]{"smith"}, false).isEmpty());
+
+        // Re-added entities for the same cases, with distances from the new
+        // location; names that the index already holds are not reloaded
+        Entity<TreeReference> kathryn = entity(0, "not reloaded", "25 km");
+        Entity<TreeReference> john = entity(1, "not reloaded", "2 km");
+        index.addEntity(kathryn);
+        index.addEntity(john);
+        assertEquals(2, index.size());
+        assertTrue(index.contains(john));
+
+        Map<Entity<TreeReference>, Integer> matches = index.query(new String[]{"smith"}, false);
+        assertEquals(2, matches.size());
+        assertTrue(matches.containsKey(kathryn));
+        assertTrue(matches.containsKey(john));
+
+        assertTrue(index.query(new String[]{"12 km"}, false).isEmpty());
+        assertEquals(1, index.query(new String[]{"25 km"}, false).size());
+        assertTrue(index.query(new String[]{"2 km"}, false).containsKey(john));
+        // Not re-added since the location changed
+        assertTrue(index.query(new String[]{"mary"}, false).isEmpty());
+    }
+
+    private static Entity<TreeReference> entity(int caseIndex, String... fields) {
+        return new TestEntity(TreeReference.rootRef().extendRef("case", caseIndex), fields);
+    }
+
+    private static class TestEntity extends Entity<TreeReference> {
+        private final String[] fields;
+
+        TestEntity(TreeReference ref, String[] fields) {
+            super(ref, null);
+            this.fields = fields;
+        }
+
+        @Override
+        public Object getField(int i) {
+            return fields[i];
+        }
+
+        @Override
+        public String getNormalizedField(int i) {
+            return fields[i];
+        }
+
+        @Override
+        public String getSortField(int i) {
+            return fields[i];
+        }
+
+        @Override
+        public int getNumFields() {
+            return fields.length;
+        }
+
+        @Override
+        public String[] getSortFieldPieces(int i) {
+            return fields[i].toLowerCase(Locale.ENGLISH).split(" ");
+        }
+    }
+}
@@ -123,6 +123,30 @@ public class DataPullTaskTest {
         Assert.assertEquals(DataPullTask.PullTaskResult.BAD_DATA_REQUIRES_INTERVENTION, dataPullResult.data);
     }
 
+    @Test
+    public void dataPullStreamingRestoreTest() {
+        installAndUseLocalKeys();
+        enableStreamingRestore();
+        runDataPull(200, GOOD_RESTORE);
+        Assert.assertEquals(DataPullTask.PullTaskResult.DOWNLOAD_SUCCESS, dataPullResult.data);
+    }
+
+    @Test
+    public void dataPullStreamingBadRestoreXMLTest() {
+        installAndUseLocalKeys();
+        enableStreamingRestore();
+        runDataPull(200, BAD_RESTORE_XML);
+        Assert.assertEquals(DataPullTask.PullTaskResult.BAD_DATA, dataPullResult.data);
+    }
+
+    @Test
+    public void dataPullStreamingRecoverTest() {
+        installLoginAndUseLocalKeys();
+        enableStreamingRestore();
+        runDataPull(new Integer[]{412, 200}, new String[]{GOOD_RESTORE, GOOD_RESTORE});
+        Assert.assertEquals(DataPullTask.PullTaskResult.DOWNLOAD_SUCCESS, dataPullResult.data);
+    }
+
     @Test
     public void asyncRestoreTest() {
         installAndUseLocalKeys();
@@ -193,6 +217,11 @@ public class DataPullTaskTest {
         useLocalKeys();
     }
 
+    private static void enableStreamingRestore() {
+        CommCareApp app = CommCareApplication.instance().getCurrentApp();
+        app.getAppPreferences().edit().putString("cc-enable-streaming-restore", "yes").commit();
+    }
+
     private static void useLocalKeys() {
         CommCareApp app = CommCareApplication.instance().getCurrentApp();
         app.getAppPreferences().edit().putString("key_server", null).commit();
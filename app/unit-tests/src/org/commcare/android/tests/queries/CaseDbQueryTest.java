@@ -5,6 +5,7 @@ import org.commcare.android.CommCareTestRunner;
 import org.commcare.android.util.TestUtils;
 import org.commcare.cases.query.QueryContext;
 import org.commcare.cases.query.queryset.CurrentModelQuerySet;
+import org.commcare.engine.cases.CaseClauseMatchCache;
 import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.core.model.trace.EvaluationTraceReporter;
@@ -106,6 +107,49 @@ public class CaseDbQueryTest {
         evaluate("join(',',instance('casedb')/casedb/case[selected('', index/parent)]/@case_id)", "", ec);
     }
 
+    /**
+     * Multi-clause queries are answered by intersecting the matches of each
+     * clause, which are shared between the queries evaluated in a context
+     */
+    @Test
+    public void testMultiClauseQueryIntersections() {
+        TestUtils.processResourceTransaction("/inputs/case_test_db_optimizations.xml");
+        TestUtils.processResourceTransaction("/inputs/case_create.xml");
+        EvaluationContext ec = TestUtils.getEvaluationContextWithoutSession();
+
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='open'])", "3", ec);
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='open'][index/parent = 'test_case_parent'])", "3", ec);
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='closed'])", "0", ec);
+        evaluate("count(instance('casedb')/casedb/case[@status='open'][@case_type='unit_test_parent'])", "1", ec);
+        evaluate("join(',',instance('casedb')/casedb/case[@status='open'][selected('test_case_parent', index/parent)][@case_id != 'child_one']/@case_id)", "child_two,child_three", ec);
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][index/parent = 'missing_parent'][@status='open'])", "0", ec);
+        evaluate("count(instance('casedb')/casedb/case[@status='open']) - count(instance('casedb')/casedb/case[@status='open'][@case_type='unit_test_child'])", "3", ec);
+    }
+
+    /**
+     * Clauses repeated between queries in the same context are fetched once
+     */
+    @Test
+    public void testClauseMatchesAreCachedInQueryContext() {
+        TestUtils.processResourceTransaction("/inputs/case_test_db_optimizations.xml");
+        EvaluationContext ec = TestUtils.getEvaluationContextWithoutSession();
+        CaseClauseMatchCache cache =
+                ec.getCurrentQueryContext().getQueryCache(CaseClauseMatchCache.class);
+
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='open'])", "3", ec);
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getHitCount());
+
+        // only the status clause is new
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='closed'])", "0", ec);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getHitCount());
+
+        evaluate("count(instance('casedb')/casedb/case[@case_type='unit_test_child'][@status='open'])", "3", ec);
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getHitCount());
+    }
+
     @Test
     public void testModelQueryLookupDerivations() {
         TestUtils.processResourceTransaction("/inputs/case_test_model_query_lookups.xml");
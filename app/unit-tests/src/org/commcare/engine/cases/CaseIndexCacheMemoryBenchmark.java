@@ -0,0 +1,64 @@
+package org.commcare.engine.cases;
+
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+
+/**
+ * Compares the heap held by the case instance's index caches against the
+ * boxed hashtables they replaced, for a 50k case caseload. Heap deltas
+ * depend on the collector, so this is run by hand rather than as part of
+ * the unit suite.
+ */
+public class CaseIndexCacheMemoryBenchmark {
+    private static final int CASE_COUNT = 50000;
+    // enough cached child lookups to hold every case once
+    private static final int INDEX_CACHE_ENTRIES = 1000;
+
+    public static void main(String[] args) {
+        // record ids are offset from multiplicities, like after cases have been purged
+        long before = usedHeap();
+        Hashtable<Integer, Integer> boxedMapping = new Hashtable<>();
+        for (int mult = 0; mult < CASE_COUNT; mult++) {
+            boxedMapping.put(mult, mult + 1000);
+        }
+        Hashtable<String, LinkedHashSet<Integer>> boxedIndexCache = new Hashtable<>();
+        for (int entry = 0; entry < INDEX_CACHE_ENTRIES; entry++) {
+            LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+            for (int id = entry; id < CASE_COUNT; id += INDEX_CACHE_ENTRIES) {
+                ids.add(id + 1000);
+            }
+            boxedIndexCache.put("parent|" + entry, ids);
+        }
+        long boxedBytes = usedHeap() - before;
+
+        before = usedHeap();
+        MultiplicityIdMap compactMapping = new MultiplicityIdMap();
+        for (int mult = 0; mult < CASE_COUNT; mult++) {
+            compactMapping.append(mult + 1000);
+        }
+        compactMapping.trimToSize();
+        Hashtable<String, CaseIdSet> compactIndexCache = new Hashtable<>();
+        for (int entry = 0; entry < INDEX_CACHE_ENTRIES; entry++) {
+            int[] ids = new int[CASE_COUNT / INDEX_CACHE_ENTRIES];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entry + i * INDEX_CACHE_ENTRIES + 1000;
+            }
+            compactIndexCache.put("parent|" + entry, new CaseIdSet(ids));
+        }
+        long compactBytes = usedHeap() - before;
+
+        // keep both alive through the measurements
+        System.out.println("Boxed caches: " + boxedMapping.size() + " mappings, " +
+                boxedIndexCache.size() + " index entries, " + boxedBytes + " bytes");
+        System.out.println("Primitive caches: " + compactMapping.size() + " mappings, " +
+                compactIndexCache.size() + " index entries, " + compactBytes + " bytes");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
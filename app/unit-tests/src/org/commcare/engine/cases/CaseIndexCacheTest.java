@@ -0,0 +1,213 @@
+package org.commcare.engine.cases;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the primitive collections backing the case instance's index caches.
+ * Their heap use is compared against boxed collections by
+ * CaseIndexCacheMemoryBenchmark, outside of the unit suite.
+ */
+public class CaseIndexCacheTest {
+
+    @Test
+    public void multiplicityMapMatchesHashtable() {
+        MultiplicityIdMap map = new MultiplicityIdMap();
+        map.append(7);
+        map.append(3);
+        map.append(12);
+
+        assertEquals(Integer.valueOf(3), map.get(1));
+        assertEquals(-1, map.getId(3));
+        assertFalse(map.containsKey(-1));
+        Hashtable<Integer, Integer> expected = new Hashtable<>();
+        expected.put(0, 7);
+        expected.put(1, 3);
+        expected.put(2, 12);
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void multiplicityMapLookups() {
+        MultiplicityIdMap map = new MultiplicityIdMap();
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+        assertEquals(-1, map.getId(0));
+
+        map.append(1005);
+        map.append(1001);
+        assertEquals(1005, map.getId(0));
+        assertEquals(Integer.valueOf(1001), map.get(1));
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+        assertEquals(-1, map.getId(-1));
+        assertNull(map.get(2));
+        assertNull(map.get("0"));
+        assertFalse(map.containsKey("0"));
+        assertTrue(map.containsValue(1001));
+        assertFalse(map.containsValue(1));
+    }
+
+    @Test
+    public void multiplicityMapGrows() {
+        MultiplicityIdMap map = new MultiplicityIdMap();
+        int count = 50000;
+        for (int mult = 0; mult < count; mult++) {
+            map.append(mult + 1000);
+        }
+        assertEquals(count, map.size());
+        assertEquals(1000, map.getId(0));
+        assertEquals(count + 999, map.getId(count - 1));
+        assertEquals(-1, map.getId(count));
+
+        map.trimToSize();
+        assertEquals(count, map.size());
+        assertEquals(count + 999, map.getId(count - 1));
+
+        map.append(7);
+        assertEquals(count + 1, map.size());
+        assertEquals(7, map.getId(count));
+
+        int expectedMult = 0;
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            assertEquals(Integer.valueOf(expectedMult), entry.getKey());
+            assertEquals(Integer.valueOf(map.getId(expectedMult)), entry.getValue());
+            expectedMult++;
+        }
+        assertEquals(count + 1, expectedMult);
+    }
+
+    @Test
+    public void multiplicityMapRejectsRemoval() {
+        MultiplicityIdMap map = new MultiplicityIdMap();
+        map.append(7);
+        map.append(3);
+
+        try {
+            map.remove(0);
+            fail("Removing a multiplicity should be unsupported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            map.put(2, 9);
+            fail("Putting a multiplicity should be unsupported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(2, map.size());
+        assertEquals(7, map.getId(0));
+        assertEquals(3, map.getId(1));
+
+        Iterator<Map.Entry<Integer, Integer>> entries = map.entrySet().iterator();
+        entries.next();
+        entries.next();
+        try {
+            entries.next();
+            fail("Iterating past the last multiplicity should fail");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void intersection() {
+        CaseIdSet a = new CaseIdSet(new int[]{1, 3, 5, 7, 9});
+        CaseIdSet b = new CaseIdSet(new int[]{2, 3, 4, 9, 10});
+        List<Integer> intersected = new ArrayList<>(a.intersect(b));
+        assertEquals(Arrays.asList(3, 9), intersected);
+        assertTrue(a.contains(Integer.valueOf(7)));
+        assertFalse(a.contains(Integer.valueOf(8)));
+        assertEquals(0, a.intersect(new CaseIdSet(new int[0])).size());
+    }
+
+    @Test
+    public void caseIdSetLookups() {
+        CaseIdSet ids = new CaseIdSet(new int[]{-4, 0, 12, 1000, Integer.MAX_VALUE});
+        assertEquals(5, ids.size());
+        assertTrue(ids.contains(-4));
+        assertTrue(ids.contains(0));
+        assertTrue(ids.contains(Integer.MAX_VALUE));
+        assertFalse(ids.contains(11));
+        assertFalse(ids.contains(Integer.MIN_VALUE));
+        assertFalse(ids.contains("12"));
+        assertFalse(ids.contains(null));
+
+        assertEquals(Arrays.asList(-4, 0, 12, 1000, Integer.MAX_VALUE), new ArrayList<>(ids));
+        assertEquals(new HashSet<>(Arrays.asList(-4, 0, 12, 1000, Integer.MAX_VALUE)), ids);
+
+        CaseIdSet empty = new CaseIdSet(new int[0]);
+        assertEquals(0, empty.size());
+        assertFalse(empty.contains(0));
+        assertFalse(empty.iterator().hasNext());
+    }
+
+    @Test
+    public void caseIdSetIntersectionsOfDifferentSizes() {
+        int[] evens = new int[5000];
+        for (int i = 0; i < evens.length; i++) {
+            evens[i] = i * 2;
+        }
+        int[] multiplesOfThree = new int[2000];
+        for (int i = 0; i < multiplesOfThree.length; i++) {
+            multiplesOfThree[i] = i * 3;
+        }
+        CaseIdSet a = new CaseIdSet(evens);
+        CaseIdSet b = new CaseIdSet(multiplesOfThree);
+
+        // multiples of six below 6000
+        CaseIdSet intersected = a.intersect(b);
+        assertEquals(1000, intersected.size());
+        assertEquals(intersected, b.intersect(a));
+        int expected = 0;
+        for (int id : intersected) {
+            assertEquals(expected, id);
+            expected += 6;
+        }
+        assertEquals(a, a.intersect(a));
+    }
+
+    @Test
+    public void caseIdSetRejectsRemoval() {
+        CaseIdSet ids = new CaseIdSet(new int[]{1, 2, 3});
+        try {
+            ids.remove(2);
+            fail("Removing an id should be unsupported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ids.add(4);
+            fail("Adding an id should be unsupported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(3, ids.size());
+        assertTrue(ids.contains(2));
+
+        Iterator<Integer> iterator = ids.iterator();
+        iterator.next();
+        iterator.next();
+        iterator.next();
+        try {
+            iterator.next();
+            fail("Iterating past the last id should fail");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+}
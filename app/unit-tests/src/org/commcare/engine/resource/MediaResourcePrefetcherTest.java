@@ -0,0 +1,184 @@
+package org.commcare.engine.resource;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.javarosa.core.io.StreamsUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Okio;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class MediaResourcePrefetcherTest {
+    private static final String URI = "https://www.example.com/hq/multimedia/file/image.png";
+
+    @Rule
+    public final TemporaryFolder stagingFolder = new TemporaryFolder();
+
+    private final byte[] content = new byte[100 * 1024];
+
+    public MediaResourcePrefetcherTest() {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte)i;
+        }
+    }
+
+    @Test
+    public void prefetchedDownloadIsHandedToInstaller() throws IOException {
+        FakeServer server = new FakeServer(-1);
+        MediaResourcePrefetcher prefetcher = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        prefetcher.prefetch(URI, server);
+
+        File download = prefetcher.takeDownload(URI);
+        assertNotNull(download);
+        assertArrayEquals(content, readFile(download));
+        assertNull("Downloads are only handed out once", prefetcher.takeDownload(URI));
+        assertNull(prefetcher.takeDownload("https://www.example.com/not-prefetched.png"));
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void interruptedDownloadResumesFromPartialFile() throws IOException {
+        int failAfter = 40 * 1024;
+        FakeServer failingServer = new FakeServer(failAfter);
+        MediaResourcePrefetcher firstAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        firstAttempt.prefetch(URI, failingServer);
+        assertNull(firstAttempt.takeDownload(URI));
+        firstAttempt.shutdown();
+
+        FakeServer server = new FakeServer(-1);
+        MediaResourcePrefetcher secondAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        secondAttempt.prefetch(URI, server);
+        File download = secondAttempt.takeDownload(URI);
+        secondAttempt.shutdown();
+
+        assertEquals(Arrays.asList((long)failAfter), server.requestedOffsets);
+        assertArrayEquals(content, readFile(download));
+    }
+
+    @Test
+    public void serverIgnoringRangeRestartsDownload() throws IOException {
+        MediaResourcePrefetcher firstAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        firstAttempt.prefetch(URI, new FakeServer(10 * 1024));
+        assertNull(firstAttempt.takeDownload(URI));
+        firstAttempt.shutdown();
+
+        FakeServer server = new FakeServer(-1);
+        server.supportsRanges = false;
+        MediaResourcePrefetcher secondAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        secondAttempt.prefetch(URI, server);
+        File download = secondAttempt.takeDownload(URI);
+        secondAttempt.shutdown();
+
+        assertArrayEquals(content, readFile(download));
+    }
+
+    @Test
+    public void verifiedDownloadIsReusedWithoutRequest() throws IOException {
+        MediaResourcePrefetcher firstAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        firstAttempt.prefetch(URI, new FakeServer(-1));
+        // the install failed before moving the download into place
+        assertNotNull(firstAttempt.takeDownload(URI));
+        firstAttempt.shutdown();
+
+        FakeServer server = new FakeServer(-1);
+        MediaResourcePrefetcher secondAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        secondAttempt.prefetch(URI, server);
+        File download = secondAttempt.takeDownload(URI);
+        secondAttempt.shutdown();
+
+        assertEquals(0, server.requestedOffsets.size());
+        assertArrayEquals(content, readFile(download));
+    }
+
+    @Test
+    public void corruptedDownloadIsFetchedAgain() throws IOException {
+        MediaResourcePrefetcher firstAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        firstAttempt.prefetch(URI, new FakeServer(-1));
+        assertNotNull(firstAttempt.takeDownload(URI));
+        firstAttempt.shutdown();
+        for (File staged : stagingFolder.getRoot().listFiles()) {
+            if (staged.length() == content.length) {
+                FileOutputStream out = new FileOutputStream(staged, true);
+                out.write(1);
+                out.close();
+            }
+        }
+
+        FakeServer server = new FakeServer(-1);
+        MediaResourcePrefetcher secondAttempt = new MediaResourcePrefetcher(stagingFolder.getRoot());
+        secondAttempt.prefetch(URI, server);
+        File download = secondAttempt.takeDownload(URI);
+        secondAttempt.shutdown();
+
+        assertEquals(Arrays.asList(0L), server.requestedOffsets);
+        assertArrayEquals(content, readFile(download));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return StreamsUtil.inputStreamToByteArray(new FileInputStream(file));
+    }
+
+    /**
+     * Serves the test content, optionally dropping the connection part way
+     */
+    private class FakeServer implements MediaResourcePrefetcher.RangedSource {
+        private final int failAfter;
+        private boolean supportsRanges = true;
+        private final List<Long> requestedOffsets = new ArrayList<>();
+
+        FakeServer(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public Response<ResponseBody> getRangeResponse(long offset) {
+            requestedOffsets.add(offset);
+            int start = supportsRanges ? (int)offset : 0;
+            int length = content.length - start;
+            InputStream body = new ByteArrayInputStream(content, start, length) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    if (failAfter != -1 && pos >= failAfter) {
+                        throw new IllegalStateException("Connection dropped");
+                    }
+                    int limit = failAfter == -1 ? len : Math.min(len, failAfter - pos);
+                    return super.read(b, off, limit);
+                }
+            };
+            ResponseBody responseBody = ResponseBody.create(
+                    MediaType.parse("image/png"), length, Okio.buffer(Okio.source(body)));
+            okhttp3.Response rawResponse = new okhttp3.Response.Builder()
+                    .code(start > 0 ? 206 : 200)
+                    .message("OK")
+                    .protocol(Protocol.HTTP_1_1)
+                    .request(new Request.Builder().url(URI).build())
+                    .build();
+            return Response.success(responseBody, rawResponse);
+        }
+    }
+}
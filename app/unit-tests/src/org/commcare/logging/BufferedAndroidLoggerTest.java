@@ -0,0 +1,131 @@
+package org.commcare.logging;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.javarosa.AndroidLogEntry;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.util.LogTypes;
+import org.javarosa.core.services.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests when buffered log entries are written to storage
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class BufferedAndroidLoggerTest {
+    private static final long NEVER_MS = 60 * 60 * 1000;
+    private static final long WAIT_TIMEOUT_MS = 5000;
+
+    private SqlStorage<AndroidLogEntry> storage;
+    private BufferedAndroidLogger logger;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        // keep the app's own logging out of the table under test
+        Logger.detachLogger();
+
+        storage = CommCareApplication.instance().getUserStorage(AndroidLogEntry.STORAGE_KEY,
+                AndroidLogEntry.class);
+        storage.removeAll();
+    }
+
+    @After
+    public void tearDown() {
+        if (logger != null) {
+            logger.halt();
+        }
+    }
+
+    @Test
+    public void testFlushesOnceBufferFillsUp() throws InterruptedException {
+        logger = new BufferedAndroidLogger(storage, 16, 4, NEVER_MS);
+        for (int i = 0; i < 3; i++) {
+            logger.log("test", "message " + i, new Date());
+        }
+        assertEquals(0, storage.getNumRecords());
+
+        logger.log("test", "message 3", new Date());
+        waitForRecords(4);
+        assertEquals(4, storage.getNumRecords());
+    }
+
+    @Test
+    public void testFlushesPeriodically() throws InterruptedException {
+        logger = new BufferedAndroidLogger(storage, 16, 16, 50);
+        logger.log("test", "message", new Date());
+
+        waitForRecords(1);
+        assertEquals(1, storage.getNumRecords());
+    }
+
+    @Test
+    public void testFlushesOnHalt() {
+        logger = new BufferedAndroidLogger(storage, 16, 16, NEVER_MS);
+        for (int i = 0; i < 3; i++) {
+            logger.log("test", "message " + i, new Date());
+        }
+        assertEquals(0, storage.getNumRecords());
+
+        logger.halt();
+        assertEquals(3, storage.getNumRecords());
+
+        // written straight to storage once halted
+        logger.log("test", "after halt", new Date());
+        assertEquals(4, storage.getNumRecords());
+    }
+
+    @Test
+    public void testReportsDroppedEntries() {
+        logger = new BufferedAndroidLogger(storage, 4, 16, NEVER_MS);
+        for (int i = 0; i < 10; i++) {
+            logger.log("test", "message " + i, new Date());
+        }
+        assertEquals(6, logger.getDroppedEntryCount());
+
+        logger.flush();
+        List<AndroidLogEntry> entries = readEntries();
+        assertEquals(5, entries.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("message " + (i + 6), entries.get(i).getMessage());
+        }
+        assertEquals(LogTypes.TYPE_MAINTENANCE, entries.get(4).getType());
+        assertEquals("Log buffer overflowed, dropped 6 entries", entries.get(4).getMessage());
+
+        // the same drops aren't reported twice
+        logger.log("test", "message 10", new Date());
+        logger.flush();
+        entries = readEntries();
+        assertEquals(6, entries.size());
+        assertEquals("message 10", entries.get(5).getMessage());
+    }
+
+    private void waitForRecords(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+        while (storage.getNumRecords() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<AndroidLogEntry> readEntries() {
+        List<AndroidLogEntry> entries = new ArrayList<>();
+        for (AndroidLogEntry entry : storage) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,95 @@
+package org.commcare.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DropOldestRingBufferTest {
+
+    @Test
+    public void drainsInOrder() {
+        DropOldestRingBuffer<Integer> buffer = new DropOldestRingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(5, buffer.drainTo(drained));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+
+        drained.clear();
+        assertEquals(0, buffer.drainTo(drained));
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void overflowDropsOldest() {
+        DropOldestRingBuffer<Integer> buffer = new DropOldestRingBuffer<>(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained);
+        assertEquals(Arrays.asList(6, 7, 8, 9), drained);
+        assertEquals(6, buffer.getDroppedCount());
+
+        // keeps working after wrapping around
+        buffer.add(10);
+        drained.clear();
+        buffer.drainTo(drained);
+        assertEquals(Arrays.asList(10), drained);
+        assertEquals(6, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingWithinCapacity() throws InterruptedException {
+        final int producers = 4;
+        final int itemsPerProducer = 1000;
+        final DropOldestRingBuffer<Integer> buffer =
+                new DropOldestRingBuffer<>(Integer.highestOneBit(producers * itemsPerProducer) * 2);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    buffer.add(producer * itemsPerProducer + i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // drain while producers are still writing
+        List<Integer> drained = new ArrayList<>();
+        start.countDown();
+        for (Thread thread : threads) {
+            buffer.drainTo(drained);
+            thread.join();
+        }
+        buffer.drainTo(drained);
+
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(producers * itemsPerProducer, drained.size());
+        Set<Integer> unique = new HashSet<>(drained);
+        assertEquals(drained.size(), unique.size());
+        for (int i = 0; i < producers * itemsPerProducer; i++) {
+            assertTrue(unique.contains(i));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.commcare.logging;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.javarosa.AndroidLogEntry;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.javarosa.core.services.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests splitting a large log table over several device reports
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class LogReportPagerTest {
+    private static final int LOG_COUNT = 1234;
+
+    private SqlStorage<AndroidLogEntry> storage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        // keep the app's own logging out of the table under test
+        Logger.detachLogger();
+
+        storage = CommCareApplication.instance().getUserStorage(AndroidLogEntry.STORAGE_KEY,
+                AndroidLogEntry.class);
+        storage.removeAll();
+        for (int i = 0; i < LOG_COUNT; i++) {
+            storage.write(new AndroidLogEntry("test", "message " + i, new Date()));
+        }
+    }
+
+    @Test
+    public void testEntriesSplitAcrossReportsInOrder() throws Exception {
+        LogReportPager<AndroidLogEntry> pager = new LogReportPager<>(storage, 500);
+        final List<String> written = new ArrayList<>();
+
+        assertEquals(500, pager.writeNextReport(entry -> written.add(entry.getMessage())));
+        assertTrue(pager.hasMoreEntries());
+        assertEquals(500, pager.writeNextReport(entry -> written.add(entry.getMessage())));
+        assertEquals(234, pager.writeNextReport(entry -> written.add(entry.getMessage())));
+        assertFalse(pager.hasMoreEntries());
+
+        assertEquals(LOG_COUNT, written.size());
+        for (int i = 0; i < LOG_COUNT; i++) {
+            assertEquals("message " + i, written.get(i));
+        }
+    }
+
+    @Test
+    public void testNoEmptyReportWhenEntriesEndAtReportBoundary() throws Exception {
+        storage.write(new AndroidLogEntry("test", "message " + LOG_COUNT, new Date()));
+        // 1235 entries split into reports of exactly 247
+        LogReportPager<AndroidLogEntry> pager = new LogReportPager<>(storage, 247);
+        int reports = 0;
+        int total = 0;
+        while (pager.hasMoreEntries()) {
+            int written = pager.writeNextReport(entry -> {
+            });
+            assertEquals(247, written);
+            total += written;
+            reports++;
+        }
+        assertEquals(5, reports);
+        assertEquals(LOG_COUNT + 1, total);
+    }
+
+    @Test
+    public void testPurgeRemovesOnlyWrittenEntries() throws Exception {
+        LogReportPager<AndroidLogEntry> pager = new LogReportPager<>(storage, 1000);
+        pager.writeNextReport(entry -> {
+        });
+        pager.purgeWritten();
+        assertEquals(LOG_COUNT - 1000, storage.getNumRecords());
+
+        // entries logged meanwhile are left for the next report
+        storage.write(new AndroidLogEntry("test", "late", new Date()));
+        pager.writeNextReport(entry -> {
+        });
+        pager.purgeWritten();
+        assertEquals(0, storage.getNumRecords());
+        assertFalse(pager.hasMoreEntries());
+    }
+}
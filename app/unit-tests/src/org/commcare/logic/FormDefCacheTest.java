@@ -0,0 +1,201 @@
+package org.commcare.logic;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.util.TestAppInstaller;
+import org.javarosa.core.io.StreamsUtil;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for FormDefCache round trips, entry verification, invalidation and
+ * eviction
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class FormDefCacheTest {
+
+    private static final String FORM_RESOURCE = "/forms/placeholder.xml";
+    private static final int BUILD_VERSION = 100;
+    private static final int APP_VERSION = 7;
+
+    private File cacheDir;
+    private FormDefCache cache;
+
+    @Before
+    public void setup() {
+        // reading forms consults the current app's preferences
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        cacheDir = new File(RuntimeEnvironment.application.getCacheDir(), "formdef-cache-test");
+        cacheDir.mkdirs();
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+        cache = new FormDefCache(cacheDir, BUILD_VERSION, APP_VERSION);
+    }
+
+    @Test
+    public void testWrittenFormReadsBackWithSameStructure() throws IOException {
+        FormDef original = XFormUtils.getFormFromResource(FORM_RESOURCE);
+        cache.write("placeholder", original);
+        assertTrue(cache.hasEntry("placeholder"));
+
+        FormDef cached = cache.read("placeholder", RuntimeEnvironment.application);
+        assertNotNull(cached);
+        assertEquals(original.getTitle(), cached.getTitle());
+        assertEquals(original.getChildren().size(), cached.getChildren().size());
+        assertEquals(original.getMainInstance().getRoot().getName(),
+                cached.getMainInstance().getRoot().getName());
+        assertEquals(getChildNames(original.getMainInstance().getRoot()),
+                getChildNames(cached.getMainInstance().getRoot()));
+        assertEquals(Arrays.asList(original.getLocalizer().getAvailableLocales()),
+                Arrays.asList(cached.getLocalizer().getAvailableLocales()));
+
+        // reading doesn't consume the entry
+        assertNotNull(cache.read("placeholder", RuntimeEnvironment.application));
+    }
+
+    @Test
+    public void testEntriesOfOtherAppOrBuildVersionsAreDiscarded() throws IOException {
+        cache.write("placeholder", XFormUtils.getFormFromResource(FORM_RESOURCE));
+
+        FormDefCache updatedApp = new FormDefCache(cacheDir, BUILD_VERSION, APP_VERSION + 1);
+        assertNull(updatedApp.read("placeholder", RuntimeEnvironment.application));
+        assertFalse(cache.hasEntry("placeholder"));
+
+        cache.write("placeholder", XFormUtils.getFormFromResource(FORM_RESOURCE));
+        FormDefCache updatedBuild = new FormDefCache(cacheDir, BUILD_VERSION + 1, APP_VERSION);
+        assertNull(updatedBuild.read("placeholder", RuntimeEnvironment.application));
+        assertFalse(cache.hasEntry("placeholder"));
+    }
+
+    @Test
+    public void testNewFormVersionMissesTheCache() throws IOException {
+        String formXml = new String(readResource(FORM_RESOURCE), "UTF-8");
+        File oldVersion = writeForm("old_version.xml", formXml);
+        File newVersion = writeForm("new_version.xml",
+                formXml.replace("version=\"486\"", "version=\"487\""));
+
+        String oldHash = FormDefCache.getFormHash(oldVersion);
+        String newHash = FormDefCache.getFormHash(newVersion);
+        assertNotEquals(oldHash, newHash);
+
+        cache.write(oldHash, FormDefCache.parseForm(oldVersion));
+        assertNull(cache.read(newHash, RuntimeEnvironment.application));
+        assertNotNull(cache.read(oldHash, RuntimeEnvironment.application));
+    }
+
+    @Test
+    public void testUnverifiableEntriesAreDiscarded() throws IOException {
+        // entries written without the checksum header by older versions
+        File legacyEntry = writeEntry("legacy", new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertNull(cache.read("legacy", RuntimeEnvironment.application));
+        assertFalse(legacyEntry.exists());
+        assertFalse(cache.hasEntry("legacy"));
+    }
+
+    @Test
+    public void testEvictionDropsEntriesOfRemovedForms() throws IOException {
+        File live = writeEntry("live", new byte[16]);
+        File removed = writeEntry("removed", new byte[16]);
+
+        cache.evict(Collections.singleton("live"));
+
+        assertTrue(live.exists());
+        assertFalse(removed.exists());
+    }
+
+    @Test
+    public void testEvictionKeepsEntriesWithinLimits() throws IOException {
+        File first = writeEntry("first", new byte[16]);
+        File second = writeEntry("second", new byte[16]);
+
+        cache.evict(null);
+
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+    }
+
+    @Test
+    public void testEvictionDropsLeastRecentlyUsedEntriesOverLimit() throws IOException {
+        long now = System.currentTimeMillis();
+        File[] entries = new File[FormDefCache.MAX_ENTRIES + 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = writeEntry("form" + i, new byte[16]);
+            entries[i].setLastModified(now - (entries.length - i) * 1000L);
+        }
+        // the oldest entry was read recently, so it is kept
+        entries[0].setLastModified(now);
+
+        cache.evict(null);
+
+        assertTrue(entries[0].exists());
+        assertFalse(entries[1].exists());
+        assertFalse(entries[2].exists());
+        for (int i = 3; i < entries.length; i++) {
+            assertTrue(entries[i].exists());
+        }
+    }
+
+    private static String getChildNames(TreeElement element) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < element.getNumChildren(); i++) {
+            names.append(element.getChildAt(i).getName()).append(' ');
+        }
+        return names.toString();
+    }
+
+    private static byte[] readResource(String path) throws IOException {
+        InputStream in = FormDefCacheTest.class.getResourceAsStream(path);
+        try {
+            return StreamsUtil.inputStreamToByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private File writeForm(String name, String contents) throws IOException {
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "formdef-cache-test-forms");
+        dir.mkdirs();
+        File form = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(form);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return form;
+    }
+
+    private File writeEntry(String hash, byte[] contents) throws IOException {
+        File entry = new File(cacheDir, hash + ".formdef");
+        FileOutputStream out = new FileOutputStream(entry);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return entry;
+    }
+}
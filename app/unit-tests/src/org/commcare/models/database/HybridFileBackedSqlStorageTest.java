@@ -1,5 +1,7 @@
 package org.commcare.models.database;
 
+import net.sqlcipher.database.SQLiteDatabase;
+
 import org.commcare.CommCareApp;
 import org.commcare.CommCareApplication;
 import org.commcare.CommCareTestApplication;
@@ -13,6 +15,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Test hybrid storage update logic that moves object from db to fs, or vice-versa,
@@ -172,6 +177,64 @@ public class HybridFileBackedSqlStorageTest {
         Assert.assertTrue(fileCountBefore - fileCountAfter == 1);
     }
 
+    /**
+     * Repeated reads of a file-backed record are served from the decoded
+     * record cache, and updates, which write a new file, are never masked
+     * by a cached copy of the old record
+     */
+    @Test
+    public void decodedRecordCacheTest() {
+        HybridFileBackedSqlStorage<FormInstance> userFixtureStorage =
+                CommCareApplication.instance().getFileBackedUserStorage(
+                        HybridFileBackedSqlStorage.FIXTURE_STORAGE_TABLE_NAME, FormInstance.class);
+        userFixtureStorage.enableDecodedRecordCache();
+
+        FormInstance form = userFixtureStorage.getRecordForValues(new String[]{FormInstance.META_ID},
+                new String[]{"commtrack:programs"});
+        FormInstance cachedRead = userFixtureStorage.read(form.getID());
+        Assert.assertNotSame(form, cachedRead);
+        Assert.assertEquals(form.getName(), cachedRead.getName());
+
+        String newName = "updated_fixture";
+        FormInstance updated = userFixtureStorage.read(form.getID());
+        updated.setName(newName);
+        userFixtureStorage.update(updated.getID(), updated);
+
+        FormInstance reread = userFixtureStorage.read(form.getID());
+        Assert.assertNotSame(form, reread);
+        Assert.assertEquals(newName, reread.getName());
+
+        DecodedRecordCache.clear();
+        Assert.assertNotSame(reread, userFixtureStorage.read(form.getID()));
+        Assert.assertEquals(newName, userFixtureStorage.read(form.getID()).getName());
+    }
+
+    /**
+     * Records served from the decoded record cache are copies, so changing
+     * one reader's record doesn't change what the next reader gets
+     */
+    @Test
+    public void decodedRecordCacheReturnsCopiesTest() {
+        HybridFileBackedSqlStorage<FormInstance> userFixtureStorage =
+                CommCareApplication.instance().getFileBackedUserStorage(
+                        HybridFileBackedSqlStorage.FIXTURE_STORAGE_TABLE_NAME, FormInstance.class);
+        userFixtureStorage.enableDecodedRecordCache();
+
+        FormInstance form = userFixtureStorage.getRecordForValues(new String[]{FormInstance.META_ID},
+                new String[]{"commtrack:programs"});
+        String originalName = form.getName();
+        int originalChildCount = form.getRoot().getNumChildren();
+
+        FormInstance firstRead = userFixtureStorage.read(form.getID());
+        firstRead.setName("changed_in_place");
+        firstRead.getRoot().removeChildAt(0);
+
+        FormInstance secondRead = userFixtureStorage.read(form.getID());
+        Assert.assertEquals(originalName, secondRead.getName());
+        Assert.assertEquals(originalChildCount, secondRead.getRoot().getNumChildren());
+        DecodedRecordCache.clear();
+    }
+
     @Test
     public void testDbWriteAndUpdate() {
         HybridFileBackedSqlStorageMock.alwaysPutInDatabase();
@@ -229,6 +292,33 @@ public class HybridFileBackedSqlStorageTest {
         Assert.assertEquals(newName, userLevelFixture.getName());
     }
 
+    /**
+     * Files orphaned while a cleanup is removing the ones it read are left
+     * for the next cleanup, rather than losing their entries
+     */
+    @Test
+    public void orphansAddedDuringCleanupAreKeptTest() throws IOException {
+        SQLiteDatabase db = CommCareApplication.instance().getUserDbHandle();
+        clearOrphanedFiles();
+
+        File first = File.createTempFile("orphan", null);
+        HybridFileBackedSqlHelpers.setFileAsOrphan(db, first.getAbsolutePath());
+        List<String> read = HybridFileBackedSqlHelpers.getOrphanedFiles(db);
+
+        File late = File.createTempFile("orphan", null);
+        HybridFileBackedSqlHelpers.setFileAsOrphan(db, late.getAbsolutePath());
+        HybridFileBackedSqlHelpers.removeOrphanedFiles(db, read);
+
+        Assert.assertFalse(first.exists());
+        Assert.assertTrue(late.exists());
+        Assert.assertEquals(Collections.singletonList(late.getAbsolutePath()),
+                HybridFileBackedSqlHelpers.getOrphanedFiles(db));
+
+        clearOrphanedFiles();
+        Assert.assertFalse(late.exists());
+        Assert.assertTrue(HybridFileBackedSqlHelpers.getOrphanedFiles(db).isEmpty());
+    }
+
     private static void clearOrphanedFiles() {
         HybridFileBackedSqlHelpers.removeOrphanedFiles(CommCareApplication.instance().getUserDbHandle());
     }
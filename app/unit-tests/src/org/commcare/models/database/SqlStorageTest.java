@@ -0,0 +1,86 @@
+package org.commcare.models.database;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests writing records to sql storage in bulk
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class SqlStorageTest {
+    private SqlStorage<ACase> caseStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        caseStorage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+    }
+
+    @Test
+    public void testWriteAllInsertsNewAndUpdatesExistingRecords() {
+        ACase first = newCase("existing-1");
+        ACase second = newCase("existing-2");
+        caseStorage.write(first);
+        caseStorage.write(second);
+        int firstId = first.getID();
+        int secondId = second.getID();
+        int recordCount = caseStorage.getNumRecords();
+
+        first.setName("renamed");
+        second.setCaseId("existing-2-moved");
+        ACase added = newCase("added-1");
+        ACase alsoAdded = newCase("added-2");
+        List<ACase> records = new ArrayList<>();
+        records.add(added);
+        records.add(first);
+        records.add(alsoAdded);
+        records.add(second);
+        caseStorage.writeAll(records);
+
+        // existing records keep their ids, new ones get fresh ids
+        assertEquals(firstId, first.getID());
+        assertEquals(secondId, second.getID());
+        Set<Integer> ids = new HashSet<>();
+        for (ACase c : records) {
+            assertNotEquals(-1, c.getID());
+            ids.add(c.getID());
+        }
+        assertEquals(4, ids.size());
+        assertEquals(recordCount + 2, caseStorage.getNumRecords());
+
+        assertEquals("renamed", caseStorage.read(firstId).getName());
+        assertEquals("existing-2-moved", caseStorage.read(secondId).getCaseId());
+        assertEquals("added-1", caseStorage.read(added.getID()).getCaseId());
+        assertEquals("added-2", caseStorage.read(alsoAdded.getID()).getCaseId());
+
+        // the metadata columns follow the records
+        assertTrue(caseStorage.getIDsForValue(ACase.INDEX_CASE_ID, "existing-2").isEmpty());
+        assertEquals(secondId, (int)caseStorage.getIDsForValue(ACase.INDEX_CASE_ID, "existing-2-moved").get(0));
+        assertEquals(1, caseStorage.getIDsForValue(ACase.INDEX_CASE_ID, "existing-1").size());
+        assertEquals(added.getID(), (int)caseStorage.getIDsForValue(ACase.INDEX_CASE_ID, "added-1").get(0));
+    }
+
+    private static ACase newCase(String caseId) {
+        ACase c = new ACase(caseId, "person");
+        c.setCaseId(caseId);
+        return c;
+    }
+}
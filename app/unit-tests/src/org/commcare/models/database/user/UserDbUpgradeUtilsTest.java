@@ -0,0 +1,80 @@
+package org.commcare.models.database.user;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.database.user.models.FormRecordV5;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests rewriting form records during user db upgrades
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class UserDbUpgradeUtilsTest {
+    private static final int RECORD_COUNT = 5;
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr", "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+    }
+
+    /**
+     * Records from before v29 keep their data and are left without listing
+     * text, to be filled in when they're first listed
+     */
+    @Test
+    public void testV5FormRecordsMigrateToV29() {
+        SqlStorage<FormRecordV5> oldStorage =
+                UserDbUpgradeUtils.getFormRecordStorage(RuntimeEnvironment.application, db, FormRecordV5.class);
+        int[] ids = new int[RECORD_COUNT];
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            FormRecordV5 oldRecord = new FormRecordV5(FormRecord.STATUS_SAVED, "http://example.com/form",
+                    new byte[0], "uuid-" + i, new Date(1000L * i), "app-id");
+            oldRecord.setDisplayName("form " + i);
+            oldRecord.setFilePath("/instances/" + i + ".xml");
+            oldStorage.write(oldRecord);
+            ids[i] = oldRecord.getID();
+        }
+
+        db.beginTransaction();
+        try {
+            UserDbUpgradeUtils.migrateV5FormRecords(RuntimeEnvironment.application, db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        SqlStorage<FormRecord> newStorage =
+                UserDbUpgradeUtils.getFormRecordStorage(RuntimeEnvironment.application, db, FormRecord.class);
+        assertEquals(RECORD_COUNT, newStorage.getNumRecords());
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            FormRecord record = newStorage.read(ids[i]);
+            assertEquals("uuid-" + i, record.getInstanceID());
+            assertEquals(FormRecord.STATUS_SAVED, record.getStatus());
+            assertEquals(1000L * i, record.lastModified().getTime());
+            assertEquals("form " + i, record.getDisplayName());
+            assertEquals("/instances/" + i + ".xml", record.getFilePath());
+            assertNull(record.getRecordTitle());
+            assertNull(record.getSearchText());
+        }
+    }
+}
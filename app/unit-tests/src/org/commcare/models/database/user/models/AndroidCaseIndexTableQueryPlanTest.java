@@ -0,0 +1,109 @@
+package org.commcare.models.database.user.models;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards against the case index table queries regressing into table scans,
+ * by checking the plans sqlite chooses for them against the indexes that
+ * the user db creates.
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class AndroidCaseIndexTableQueryPlanTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+    }
+
+    @Test
+    public void testMatchingIndexUsesCoveringIndex() {
+        String query = AndroidCaseIndexTable.getCaseRecordIdQuery(
+                AndroidCaseIndexTable.getMatchingIndexWhereClause());
+        List<String> plan = explain(query, new String[]{"parent", "some-case-id"});
+
+        assertNoTableScans(plan);
+        assertIndexTableLookupsCovered(plan);
+    }
+
+    @Test
+    public void testMatchingValueSetUsesCoveringIndex() {
+        String query = AndroidCaseIndexTable.getCaseRecordIdQuery(
+                AndroidCaseIndexTable.getMatchingValueSetWhereClause(3));
+        List<String> plan = explain(query, new String[]{"parent", "case-a", "case-b", "case-c"});
+
+        assertNoTableScans(plan);
+        assertIndexTableLookupsCovered(plan);
+    }
+
+    @Test
+    public void testIndexToCaseIdMatchAvoidsScans() {
+        String query = AndroidCaseIndexTable.getIndexToCaseIdMatchQuery("parent",
+                "(CAST(? as INT),CAST(? as INT),CAST(? as INT))");
+        List<String> plan = explain(query, new String[]{"1", "2", "3"});
+
+        assertNoTableScans(plan);
+        assertIndexTableLookupsCovered(plan);
+    }
+
+    private List<String> explain(String query, String[] args) {
+        List<String> details = new ArrayList<>();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+        try {
+            int detailColumn = c.getColumnIndexOrThrow("detail");
+            while (c.moveToNext()) {
+                details.add(c.getString(detailColumn));
+            }
+        } finally {
+            c.close();
+        }
+        assertFalse("No query plan for " + query, details.isEmpty());
+        return details;
+    }
+
+    /**
+     * Plans reading either table should only search it through an index;
+     * a 'SCAN' step means every row (or index entry) is visited.
+     */
+    private static void assertNoTableScans(List<String> plan) {
+        for (String step : plan) {
+            boolean readsTable = step.contains(AndroidCaseIndexTable.TABLE_NAME) ||
+                    step.contains(ACase.STORAGE_KEY);
+            assertFalse("Query plan scans a table: " + plan,
+                    readsTable && step.startsWith("SCAN"));
+        }
+    }
+
+    private static void assertIndexTableLookupsCovered(List<String> plan) {
+        boolean sawIndexTable = false;
+        for (String step : plan) {
+            if (step.contains(AndroidCaseIndexTable.TABLE_NAME)) {
+                sawIndexTable = true;
+                assertTrue("Case index lookup isn't covered by an index: " + plan,
+                        step.contains("COVERING INDEX"));
+            }
+        }
+        assertTrue("Query plan doesn't read the case index table: " + plan, sawIndexTable);
+    }
+}
@@ -0,0 +1,91 @@
+package org.commcare.models.database.user.models;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.cases.model.CaseIndex;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that indexing cases in bulk writes the same rows as indexing them
+ * one at a time
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class AndroidCaseIndexTableTest {
+    private SQLiteDatabase db;
+    private AndroidCaseIndexTable indexTable;
+    private SqlStorage<ACase> caseStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+        indexTable = new AndroidCaseIndexTable(db);
+        caseStorage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+    }
+
+    @Test
+    public void testBulkIndexingMatchesPerCaseIndexing() {
+        List<ACase> cases = new ArrayList<>();
+        cases.add(writeCase("mother"));
+        ACase child = writeCase("child");
+        child.setIndex(new CaseIndex("parent", "person", "mother", CaseIndex.RELATIONSHIP_CHILD));
+        child.setIndex(new CaseIndex("host", "household", "house-1", CaseIndex.RELATIONSHIP_EXTENSION));
+        cases.add(child);
+        ACase visit = writeCase("visit");
+        visit.setIndex(new CaseIndex("parent", "person", "child", CaseIndex.RELATIONSHIP_CHILD));
+        visit.setIndex(new CaseIndex("referral", null, "clinic-3", null));
+        cases.add(visit);
+
+        db.delete(AndroidCaseIndexTable.TABLE_NAME, null, null);
+        indexTable.indexCases(cases);
+        List<String> bulkRows = readIndexRows();
+
+        db.delete(AndroidCaseIndexTable.TABLE_NAME, null, null);
+        for (ACase c : cases) {
+            indexTable.indexCase(c);
+        }
+        List<String> perCaseRows = readIndexRows();
+
+        assertEquals(4, bulkRows.size());
+        assertEquals(perCaseRows, bulkRows);
+    }
+
+    private ACase writeCase(String caseId) {
+        ACase c = new ACase(caseId, "person");
+        c.setCaseId(caseId);
+        caseStorage.write(c);
+        return c;
+    }
+
+    private List<String> readIndexRows() {
+        List<String> rows = new ArrayList<>();
+        Cursor c = db.rawQuery("SELECT case_rec_id, name, type, target, relationship FROM " +
+                AndroidCaseIndexTable.TABLE_NAME + " ORDER BY case_rec_id, name", new String[0]);
+        try {
+            while (c.moveToNext()) {
+                rows.add(c.getInt(0) + "|" + c.getString(1) + "|" + c.getString(2) + "|" +
+                        c.getString(3) + "|" + c.getString(4));
+            }
+        } finally {
+            c.close();
+        }
+        return rows;
+    }
+}
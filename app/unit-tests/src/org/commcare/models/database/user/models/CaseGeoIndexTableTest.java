@@ -0,0 +1,173 @@
+package org.commcare.models.database.user.models;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.utils.GeoHash;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests nearest and bounding box lookups against the case geo index
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class CaseGeoIndexTableTest {
+    private CaseGeoIndexTable geoIndex;
+    private SqlStorage<ACase> caseStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        geoIndex = new CaseGeoIndexTable(CommCareApplication.instance().getUserDbHandle());
+        caseStorage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+    }
+
+    private int writeCase(String name, String gps) {
+        ACase c = new ACase(name, "clinic");
+        c.setCaseId(name);
+        c.setProperty("gps", gps);
+        c.setProperty("note", "not a location");
+        caseStorage.write(c);
+        geoIndex.indexCase(c);
+        return c.getID();
+    }
+
+    @Test
+    public void testGeoHashEncoding() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+    }
+
+    @Test
+    public void testGeoPointParsing() {
+        assertEquals(2, CaseGeoIndexTable.parseGeoPoint("42.6 -5.6 0.0 10.0").length);
+        assertNull(CaseGeoIndexTable.parseGeoPoint("12 main street"));
+        assertNull(CaseGeoIndexTable.parseGeoPoint("95.0 10.0"));
+        assertNull(CaseGeoIndexTable.parseGeoPoint("2017-01-01"));
+    }
+
+    @Test
+    public void testNearestAndBoundingBox() {
+        // a 20 x 20 grid of cases, 0.01 degrees apart
+        int[][] ids = new int[20][20];
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                ids[i][j] = writeCase("case-" + i + "-" + j,
+                        (10 + i * 0.01) + " " + (20 + j * 0.01) + " 0.0 5.0");
+            }
+        }
+
+        List<CaseGeoIndexTable.IndexedPoint> nearest =
+                geoIndex.getNearestPoints("gps", 10.0505, 20.0705, 5);
+        assertEquals(5, nearest.size());
+        assertEquals(ids[5][7], nearest.get(0).caseRecordId);
+        Set<Integer> expectedNeighbours = new HashSet<>();
+        Collections.addAll(expectedNeighbours, ids[6][7], ids[5][8], ids[4][7], ids[5][6]);
+        Set<Integer> neighbours = new HashSet<>();
+        for (int i = 1; i < 5; i++) {
+            neighbours.add(nearest.get(i).caseRecordId);
+        }
+        assertEquals(expectedNeighbours, neighbours);
+
+        // more than there are cases nearby: everything, nearest first
+        nearest = geoIndex.getNearestPoints("gps", 0, 0, 1000);
+        assertEquals(400, nearest.size());
+        assertEquals(ids[0][0], nearest.get(0).caseRecordId);
+        assertEquals(ids[19][19], nearest.get(399).caseRecordId);
+
+        List<CaseGeoIndexTable.IndexedPoint> inBox =
+                geoIndex.getPointsInBoundingBox("gps", 10.025, 20.045, 10.055, 20.095);
+        Set<Integer> expectedInBox = new HashSet<>();
+        for (int i = 3; i <= 5; i++) {
+            for (int j = 5; j <= 9; j++) {
+                expectedInBox.add(ids[i][j]);
+            }
+        }
+        Set<Integer> actualInBox = new HashSet<>();
+        for (CaseGeoIndexTable.IndexedPoint point : inBox) {
+            actualInBox.add(point.caseRecordId);
+        }
+        assertEquals(expectedInBox, actualInBox);
+        assertEquals(expectedInBox.size(), inBox.size());
+
+        assertEquals(0, geoIndex.getPointsInBoundingBox("note", -90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void testBoundingBoxAcrossAntimeridian() {
+        int east = writeCase("east", "0.5 179.9");
+        int west = writeCase("west", "0.5 -179.9");
+        writeCase("elsewhere", "0.5 0.0");
+
+        Set<Integer> found = new HashSet<>();
+        for (CaseGeoIndexTable.IndexedPoint point :
+                geoIndex.getPointsInBoundingBox("gps", 0, 179, 1, -179)) {
+            found.add(point.caseRecordId);
+        }
+        Set<Integer> expected = new HashSet<>();
+        Collections.addAll(expected, east, west);
+        assertEquals(expected, found);
+
+        List<CaseGeoIndexTable.IndexedPoint> nearest =
+                geoIndex.getNearestPoints("gps", 0.5, 179.95, 2);
+        assertEquals(east, nearest.get(0).caseRecordId);
+        assertEquals(west, nearest.get(1).caseRecordId);
+    }
+
+    @Test
+    public void testClearedCasesAreDropped() {
+        int first = writeCase("first", "1.0 1.0");
+        int second = writeCase("second", "1.0 1.001");
+        List<CaseGeoIndexTable.IndexedPoint> ordered = geoIndex.getNearestPoints("gps", 1.0, 1.002, 2);
+        assertEquals(second, ordered.get(0).caseRecordId);
+        assertEquals(first, ordered.get(1).caseRecordId);
+
+        List<Integer> cleared = new ArrayList<>();
+        cleared.add(second);
+        geoIndex.clearCaseIndices(cleared);
+        ordered = geoIndex.getNearestPoints("gps", 1.0, 1.002, 2);
+        assertEquals(1, ordered.size());
+        assertEquals(first, ordered.get(0).caseRecordId);
+    }
+
+    @Test
+    public void testNearestPointsAmongGivenCases() {
+        writeCase("nearest", "1.0 1.0");
+        writeCase("near", "1.0 1.001");
+        int listed = writeCase("listed", "1.0 1.5");
+        int farListed = writeCase("far-listed", "5.0 5.0");
+
+        Set<Integer> listedIds = new HashSet<>();
+        Collections.addAll(listedIds, listed, farListed);
+        // the search widens past the unlisted cases until it finds enough listed ones
+        List<CaseGeoIndexTable.IndexedPoint> nearest =
+                geoIndex.getNearestPoints("gps", 1.0, 1.0, 2, listedIds);
+        assertEquals(2, nearest.size());
+        assertEquals(listed, nearest.get(0).caseRecordId);
+        assertEquals(farListed, nearest.get(1).caseRecordId);
+
+        nearest = geoIndex.getNearestPoints("gps", 1.0, 1.0, 5, listedIds);
+        assertEquals(2, nearest.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestPointsCountMustBePositive() {
+        geoIndex.getNearestPoints("gps", 0, 0, 0);
+    }
+}
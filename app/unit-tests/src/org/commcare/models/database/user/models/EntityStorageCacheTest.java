@@ -0,0 +1,67 @@
+package org.commcare.models.database.user.models;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.util.TestAppInstaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the in-memory tier of the entity cache
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class EntityStorageCacheTest {
+    private SQLiteDatabase db;
+    private EntityStorageCache cache;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        db = CommCareApplication.instance().getUserDbHandle();
+        cache = new EntityStorageCache("case", db, "test-app");
+    }
+
+    @Test
+    public void testCachedValuesServedFromMemory() {
+        cache.cache("1", "m1_0", "sort value");
+        wipeCacheTable();
+
+        assertEquals("sort value", cache.retrieveCacheValue("1", "m1_0"));
+        assertEquals("sort value", new EntityStorageCache("case", db, "test-app").retrieveMemoryCacheValue("1", "m1_0"));
+        assertNull(new EntityStorageCache("case", db, "other-app").retrieveMemoryCacheValue("1", "m1_0"));
+    }
+
+    @Test
+    public void testInvalidationClearsMemory() {
+        cache.cache("1", "m1_0", "first");
+        cache.cache("2", "m1_0", "second");
+        cache.cache("3", "m1_0", "third");
+
+        cache.invalidateCache("1");
+        cache.invalidateCaches(Collections.singletonList(2));
+
+        assertNull(cache.retrieveMemoryCacheValue("1", "m1_0"));
+        assertNull(cache.retrieveMemoryCacheValue("2", "m1_0"));
+        assertEquals("third", cache.retrieveMemoryCacheValue("3", "m1_0"));
+
+        EntityStorageCache.clearMemoryCache();
+        assertNull(cache.retrieveMemoryCacheValue("3", "m1_0"));
+        assertEquals("third", cache.retrieveCacheValue("3", "m1_0"));
+    }
+
+    private void wipeCacheTable() {
+        db.delete(EntityStorageCache.TABLE_NAME, null, null);
+    }
+}
@@ -0,0 +1,132 @@
+package org.commcare.models.database.user.models;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests filtering, ordering and searching the saved forms list in SQL
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class FormRecordListQueryTest {
+    private static final String APP_ID = "list-query-app";
+    private static final String[] SAVED_AND_UNSENT =
+            new String[]{FormRecord.STATUS_SAVED, FormRecord.STATUS_UNSENT};
+
+    private SqlStorage<FormRecord> storage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr",
+                "test", "123");
+        storage = CommCareApplication.instance().getUserStorage(FormRecord.class);
+    }
+
+    private int writeRecord(String status, String appId, long lastModified,
+                            String title, String searchText) {
+        FormRecord record = new FormRecord(status, "http://example.com/form", new byte[0],
+                null, new Date(lastModified), appId);
+        record.setRecordTitle(title);
+        record.setSearchText(searchText);
+        storage.write(record);
+        return record.getID();
+    }
+
+    private FormRecordListQuery query(String[] statuses, boolean inSubmissionOrder) {
+        return new FormRecordListQuery(CommCareApplication.instance().getUserDbHandle(),
+                statuses, APP_ID, inSubmissionOrder);
+    }
+
+    @Test
+    public void testFilterAndOrderByLastModified() {
+        int older = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 1000, "older", "older");
+        int newer = writeRecord(FormRecord.STATUS_UNSENT, APP_ID, 20000, "newer", "newer");
+        writeRecord(FormRecord.STATUS_INCOMPLETE, APP_ID, 3000, "incomplete", "incomplete");
+        writeRecord(FormRecord.STATUS_SAVED, "other-app", 4000, "other app", "other app");
+
+        int[] ids = query(SAVED_AND_UNSENT, false).getMatchingIds(new String[0]);
+        assertArrayEquals(new int[]{newer, older}, ids);
+    }
+
+    @Test
+    public void testOrderBySubmissionNumber() {
+        int second = writeRecord(FormRecord.STATUS_UNSENT, APP_ID, 1000, "second", "second");
+        int first = writeRecord(FormRecord.STATUS_UNSENT, APP_ID, 2000, "first", "first");
+        int tenth = writeRecord(FormRecord.STATUS_UNSENT, APP_ID, 3000, "tenth", "tenth");
+        setSubmissionNumber(second, 2);
+        setSubmissionNumber(first, 1);
+        setSubmissionNumber(tenth, 10);
+
+        int[] ids = query(new String[]{FormRecord.STATUS_UNSENT}, true).getMatchingIds(new String[0]);
+        assertArrayEquals(new int[]{first, second, tenth}, ids);
+    }
+
+    private void setSubmissionNumber(int recordId, int number) {
+        FormRecord record = storage.read(recordId);
+        record.setFormNumberForSubmissionOrdering(number);
+        storage.write(record);
+    }
+
+    @Test
+    public void testTextSearchMatchesAnyPiece() {
+        int mary = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 1000, "Mary", "october mary registration");
+        int john = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 2000, "John", "october john followup");
+        writeRecord(FormRecord.STATUS_SAVED, APP_ID, 3000, "Percent", "october 100% done");
+
+        FormRecordListQuery query = query(SAVED_AND_UNSENT, false);
+        assertArrayEquals(new int[]{mary}, query.getMatchingIds(new String[]{"regis"}));
+        assertArrayEquals(new int[]{john, mary}, query.getMatchingIds(new String[]{"mary", "john"}));
+        assertEquals(0, query.getMatchingIds(new String[]{"0_"}).length);
+        assertEquals(1, query.getMatchingIds(new String[]{"0%"}).length);
+    }
+
+    @Test
+    public void testRecordsWithoutSearchText() {
+        int mary = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 1000, "Mary", "october mary");
+        FormRecordListQuery query = query(SAVED_AND_UNSENT, false);
+        assertEquals(0, query.getIdsWithoutSearchText().length);
+
+        int untitled = writeRecord(FormRecord.STATUS_UNSENT, APP_ID, 2000, null, null);
+        writeRecord(FormRecord.STATUS_UNSENT, "other-app", 2000, null, null);
+        assertArrayEquals(new int[]{untitled}, query.getIdsWithoutSearchText());
+
+        // Still listed, but only matched once its text is stored
+        assertArrayEquals(new int[]{untitled, mary}, query.getMatchingIds(new String[0]));
+        assertArrayEquals(new int[]{mary}, query.getMatchingIds(new String[]{"mary"}));
+    }
+
+    @Test
+    public void testReadRowWindow() {
+        int first = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 3000, "first", "first");
+        int second = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 2000, "second", "second");
+        int third = writeRecord(FormRecord.STATUS_SAVED, APP_ID, 1000, "third", "third");
+
+        FormRecordListQuery query = query(SAVED_AND_UNSENT, false);
+        int[] ids = query.getMatchingIds(new String[0]);
+        assertArrayEquals(new int[]{first, second, third}, ids);
+
+        storage.remove(second);
+        FormRecordListQuery.Row[] rows = query.readRows(ids, 1, 3);
+        assertEquals(2, rows.length);
+        assertNull(rows[0]);
+        assertEquals(third, rows[1].recordId);
+        assertEquals("third", rows[1].recordTitle);
+        assertEquals(1000, rows[1].lastModified);
+        assertEquals(FormRecord.STATUS_SAVED, rows[1].status);
+    }
+}
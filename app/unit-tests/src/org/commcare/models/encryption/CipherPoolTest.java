@@ -0,0 +1,102 @@
+package org.commcare.models.encryption;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CipherPool reuse, size bounding and usage metrics
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class CipherPoolTest {
+
+    private int ciphersGenerated;
+    private CipherPool pool;
+
+    @Before
+    public void setup() {
+        ciphersGenerated = 0;
+        pool = new CipherPool(8) {
+            @Override
+            protected Cipher generateNewCipher() {
+                ciphersGenerated++;
+                try {
+                    return Cipher.getInstance("AES");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        pool.init();
+    }
+
+    @Test
+    public void testRemittedCiphersAreReused() {
+        Cipher first = pool.borrow();
+        assertNotNull(first);
+        pool.remit(first);
+
+        int generatedBefore = ciphersGenerated;
+        for (int i = 0; i < 20; i++) {
+            pool.remit(pool.borrow());
+        }
+        assertEquals(generatedBefore, ciphersGenerated);
+        assertEquals(1.0, pool.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testPoolDropsCiphersBeyondMaxSize() {
+        List<Cipher> borrowed = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            borrowed.add(pool.borrow());
+        }
+        assertEquals(12, pool.getPeakSize());
+        for (Cipher cipher : borrowed) {
+            pool.remit(cipher);
+        }
+
+        // Borrowing the whole pool again shouldn't need new ciphers until
+        // the retained max size is exhausted
+        int generatedBefore = ciphersGenerated;
+        for (int i = 0; i < 8; i++) {
+            pool.borrow();
+        }
+        assertEquals(generatedBefore, ciphersGenerated);
+        pool.borrow();
+        assertEquals(generatedBefore + 1, ciphersGenerated);
+    }
+
+    @Test
+    public void testCiphersIssuedBeforeExpiryAreNotReturned() {
+        Cipher staleCipher = pool.borrow();
+        pool.expire();
+        pool.remit(staleCipher);
+
+        pool.init();
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(staleCipher, pool.borrow());
+        }
+    }
+
+    @Test
+    public void testUsageSummary() {
+        pool.remit(pool.borrow());
+        pool.remit(pool.borrow());
+        assertEquals(2, pool.getBorrowCount());
+        assertTrue(pool.getUsageSummary().startsWith("Borrows: 2"));
+    }
+}
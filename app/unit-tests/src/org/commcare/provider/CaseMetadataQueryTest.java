@@ -0,0 +1,143 @@
+package org.commcare.provider;
+
+import android.database.Cursor;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.ACase;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.commcare.modern.database.DatabaseHelper.DATA_COL;
+import static org.commcare.modern.database.DatabaseHelper.ID_COL;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests translating case content provider queries to SQL and reading their rows
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class CaseMetadataQueryTest {
+    private SqlStorage<ACase> caseStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/index_and_cache_test/profile.ccpr", "test", "123");
+        caseStorage = CommCareApplication.instance().getUserStorage(ACase.STORAGE_KEY, ACase.class);
+    }
+
+    private void writeCase(String caseId, String name, String type, String ownerId, boolean closed) {
+        ACase c = new ACase(name, type);
+        c.setCaseId(caseId);
+        c.setUserId(ownerId);
+        c.setClosed(closed);
+        caseStorage.write(c);
+    }
+
+    private CaseMetadataQuery query(String[] projection, String selection, String[] args) {
+        CaseMetadataQuery query = new CaseMetadataQuery(projection);
+        query.setSelection(selection, args);
+        return query;
+    }
+
+    @Test
+    public void testSelectionIsParameterized() {
+        CaseMetadataQuery query = query(null,
+                "case_type = ? AND Status IN ('open', \"closed\") and owner_id != 'o''brien'",
+                new String[]{"patient"});
+        assertEquals("SELECT " + ID_COL + ", case_id, case_type, owner_id, case_status, " + DATA_COL +
+                        " FROM AndroidCase" +
+                        " WHERE case_type = ? AND case_status IN (?, ?) AND owner_id != ?" +
+                        " ORDER BY " + ID_COL,
+                query.getSql());
+        assertArrayEquals(new String[]{"patient", "open", "closed", "o'brien"}, query.getSqlArgs());
+    }
+
+    @Test
+    public void testProjectionOfIndexedColumnsSkipsCaseData() {
+        CaseMetadataQuery query = query(new String[]{CaseDataAPI.MetadataColumns.CASE_ID}, null, null);
+        query.setSortOrder("case_type DESC, _id");
+        query.setPage(10, 20);
+        assertEquals("SELECT " + ID_COL + ", case_id FROM AndroidCase" +
+                        " ORDER BY case_type DESC, " + ID_COL + " ASC LIMIT 10 OFFSET 20",
+                query.getSql());
+    }
+
+    @Test
+    public void testUnsupportedQueriesAreRejected() {
+        assertRejected(new String[]{"case_name"}, "case_name = 'x'", null);
+        assertRejected(null, "case_type = ?", new String[0]);
+        assertRejected(null, "case_type = ?", new String[]{"a", "b"});
+        assertRejected(null, "case_type LIKE 'a%'", null);
+        assertRejected(null, "case_type = 'a' OR status = 'open'", null);
+        assertRejected(new String[]{"not_a_column"}, null, null);
+        try {
+            new CaseMetadataQuery(null).setSortOrder("case_name");
+            fail("Sorting on a column of the serialized case should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertRejected(String[] projection, String selection, String[] args) {
+        try {
+            new CaseMetadataQuery(projection).setSelection(selection, args);
+            fail("Expected query to be rejected: " + selection);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQueryRows() {
+        writeCase("c1", "Alice", "test_patient", "owner-a", false);
+        writeCase("c2", "Bob", "test_patient", "owner-b", true);
+        writeCase("c3", "Carol", "test_patient", "owner-a", false);
+        writeCase("c4", "Dan", "test_household", "owner-a", false);
+
+        CaseMetadataQuery query = query(new String[]{
+                        CaseDataAPI.MetadataColumns.CASE_NAME,
+                        CaseDataAPI.MetadataColumns.CASE_ID,
+                        CaseDataAPI.MetadataColumns.STATUS},
+                "case_type = ? AND owner_ID = ?", new String[]{"test_patient", "owner-a"});
+        query.setSortOrder("case_id DESC");
+        Cursor cursor = query.run(CommCareApplication.instance().getUserDbHandle(), caseStorage);
+        try {
+            assertEquals(2, cursor.getCount());
+            List<String> rows = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                rows.add(cursor.getString(0) + "," + cursor.getString(1) + "," + cursor.getString(2));
+            }
+            assertEquals(Arrays.asList("Carol,c3,open", "Alice,c1,open"), rows);
+        } finally {
+            cursor.close();
+        }
+
+        // test cases only, should the restore hold others
+        query = query(new String[]{CaseDataAPI.MetadataColumns.CASE_ID},
+                "case_type IN (test_patient, test_household)", null);
+        query.setPage(2, 1);
+        cursor = query.run(CommCareApplication.instance().getUserDbHandle(), caseStorage);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("c2", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("c3", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.commcare.provider;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests paging through the top level elements of a fixture
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class FixtureContentCursorTest {
+    private FormInstance fixture;
+
+    @Before
+    public void setup() {
+        TreeElement root = new TreeElement("products");
+        for (int i = 0; i < 5; i++) {
+            TreeElement product = new TreeElement("product", i);
+            product.setValue(new StringData("item-" + i));
+            root.addChild(product);
+        }
+        fixture = new FormInstance(root, "commcare:products");
+    }
+
+    @Test
+    public void testPageOfElements() {
+        FixtureContentCursor cursor = new FixtureContentCursor(fixture, 2, 1);
+        assertEquals(2, cursor.getCount());
+
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(0));
+        assertEquals("commcare:products", cursor.getString(1));
+        assertTrue(cursor.getString(2).contains("item-1"));
+        assertFalse(cursor.getString(2).contains("item-2"));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(2, cursor.getInt(0));
+        assertTrue(cursor.getString(2).contains("item-2"));
+        assertFalse(cursor.moveToNext());
+        cursor.close();
+    }
+
+    @Test
+    public void testPageBoundsAreClamped() {
+        assertEquals(5, new FixtureContentCursor(fixture, -1, 0).getCount());
+        assertEquals(1, new FixtureContentCursor(fixture, 10, 4).getCount());
+        assertEquals(0, new FixtureContentCursor(fixture, 10, 7).getCount());
+    }
+}
@@ -0,0 +1,76 @@
+package org.commcare.tasks;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.database.user.models.SessionStateDescriptor;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+import java.util.Hashtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that records saved without listing text get it stored the first
+ * time they're listed
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class FormRecordLoaderTaskTest {
+    private static final String FORM_XMLNS =
+            "http://openrosa.org/formdesigner/886049B2-BCAA-41EB-85B6-0AD4F9469605";
+
+    private SqlStorage<FormRecord> formRecordStorage;
+    private FormRecordLoaderTask loader;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr", "test", "123");
+        formRecordStorage = CommCareApplication.instance().getUserStorage(FormRecord.class);
+        loader = new FormRecordLoaderTask(RuntimeEnvironment.application,
+                CommCareApplication.instance().getUserStorage(SessionStateDescriptor.class),
+                CommCareApplication.instance().getCommCarePlatform());
+        loader.init(new Hashtable<>(), new Hashtable<>());
+    }
+
+    @Test
+    public void testMissingListingTextIsStored() {
+        FormRecord record = writeRecord(null);
+        loader.doInBackground(record);
+
+        FormRecord stored = formRecordStorage.read(record.getID());
+        assertEquals("", stored.getRecordTitle());
+        assertEquals("archived-form-purge", stored.getFormName());
+        assertTrue(stored.getSearchText().endsWith(" archived-form-purge"));
+        assertEquals(FormRecord.STATUS_SAVED, stored.getStatus());
+    }
+
+    @Test
+    public void testStoredListingTextIsLeftAlone() {
+        FormRecord record = writeRecord("stored text");
+        loader.doInBackground(record);
+
+        FormRecord stored = formRecordStorage.read(record.getID());
+        assertEquals("stored text", stored.getSearchText());
+        assertNull(stored.getFormName());
+    }
+
+    private FormRecord writeRecord(String searchText) {
+        FormRecord record = new FormRecord(FormRecord.STATUS_SAVED, FORM_XMLNS, new byte[0], null,
+                new Date(), "app-id");
+        record.setSearchText(searchText);
+        formRecordStorage.write(record);
+        return record;
+    }
+}
@@ -0,0 +1,195 @@
+package org.commcare.tasks;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.mocks.CommCareTaskConnectorFake;
+import org.commcare.android.util.TestAppInstaller;
+import org.commcare.models.database.SqlStorage;
+import org.commcare.preferences.DeveloperPreferences;
+import org.commcare.utils.FormUploadResult;
+import org.javarosa.core.model.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests submitting several form records with uploads running in parallel
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class ProcessAndSendTaskTest {
+    private static final int RECORD_COUNT = 4;
+    // The server rejects this record, which should then be quarantined
+    private static final int REJECTED_RECORD = 1;
+
+    private SqlStorage<FormRecord> formRecordStorage;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/form_nav_tests/profile.ccpr", "test", "123");
+        formRecordStorage = CommCareApplication.instance().getUserStorage(FormRecord.class);
+        DeveloperPreferences.setFormSubmissionParallelism(3);
+    }
+
+    @Test
+    public void testParallelSubmissionResultsAndReportingOrder() throws IOException {
+        FormRecord[] records = new FormRecord[RECORD_COUNT];
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            records[i] = writeUnsentRecord("record-" + i);
+        }
+
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        StaggeredUploadTask task = new StaggeredUploadTask();
+        task.connect(new CommCareTaskConnectorFake<>());
+        task.addSubmissionListener(new RecordingListener(events));
+
+        FormUploadResult result = task.doTaskBackground(records);
+        Robolectric.flushForegroundThreadScheduler();
+
+        // Later records finished uploading first, but every upload happened
+        assertEquals(RECORD_COUNT, task.uploadCompletionOrder.size());
+        assertFalse(Arrays.asList(0, 1, 2, 3).equals(task.uploadCompletionOrder));
+
+        assertEquals(FormUploadResult.RECORD_FAILURE, result);
+        assertEquals(RECORD_COUNT - 1, task.getSuccessfulSends());
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            if (i == REJECTED_RECORD) {
+                assertEquals(FormRecord.STATUS_QUARANTINED,
+                        formRecordStorage.read(records[i].getID()).getStatus());
+            } else {
+                assertFalse(formRecordStorage.exists(records[i].getID()));
+            }
+        }
+
+        // Listeners hear about each record's upload in record order, with no
+        // interleaving between records
+        List<String> expected = new ArrayList<>();
+        expected.add("begin " + RECORD_COUNT);
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            expected.add("start " + i);
+            expected.add("progress " + i + " 50");
+            expected.add("progress " + i + " 100");
+            if (i != REJECTED_RECORD) {
+                expected.add("sent " + (i < REJECTED_RECORD ? i + 1 : i));
+            }
+        }
+        expected.add("end false");
+        assertEquals(expected, events);
+    }
+
+    private FormRecord writeUnsentRecord(String uuid) throws IOException {
+        File instanceDir = new File(RuntimeEnvironment.application.getFilesDir(), "instances/" + uuid);
+        assertTrue(instanceDir.mkdirs() || instanceDir.isDirectory());
+        File instance = new File(instanceDir, uuid + ".xml");
+        FileOutputStream out = new FileOutputStream(instance);
+        try {
+            out.write("<data/>".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        FormRecord record = new FormRecord(FormRecord.STATUS_UNSENT, "http://test/xmlns",
+                new byte[16], uuid, new Date(), "app-id");
+        record.setFilePath(instance.getAbsolutePath());
+        formRecordStorage.write(record);
+        return record;
+    }
+
+    /**
+     * Uploads that take longer the earlier their record is, so that later
+     * uploads finish first
+     */
+    private static class StaggeredUploadTask extends ProcessAndSendTask<Object> {
+        final List<Integer> uploadCompletionOrder = Collections.synchronizedList(new ArrayList<>());
+
+        StaggeredUploadTask() {
+            super(RuntimeEnvironment.application, "https://test.server/submit", false);
+        }
+
+        @Override
+        protected FormUploadResult sendInstance(int submissionNumber, File folder, SecretKeySpec key,
+                                                User user) {
+            startSubmission(submissionNumber, 100);
+            sleep((RECORD_COUNT - submissionNumber) * 100);
+            notifyProgress(submissionNumber, 50);
+            notifyProgress(submissionNumber, 100);
+            uploadCompletionOrder.add(submissionNumber);
+            return submissionNumber == REJECTED_RECORD ?
+                    FormUploadResult.RECORD_FAILURE : FormUploadResult.FULL_SUCCESS;
+        }
+
+        @Override
+        protected void deliverResult(Object receiver, FormUploadResult result) {
+        }
+
+        @Override
+        protected void deliverUpdate(Object receiver, Long... update) {
+        }
+
+        @Override
+        protected void deliverError(Object receiver, Exception e) {
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class RecordingListener implements DataSubmissionListener {
+        private final List<String> events;
+
+        RecordingListener(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void beginSubmissionProcess(int totalItems) {
+            events.add("begin " + totalItems);
+        }
+
+        @Override
+        public void startSubmission(int itemNumber, long sizeOfItem) {
+            events.add("start " + itemNumber);
+        }
+
+        @Override
+        public void notifyProgress(int itemNumber, long progress) {
+            events.add("progress " + itemNumber + " " + progress);
+        }
+
+        @Override
+        public void notifySubmissionThroughput(int itemsSent, long bytesSent, long elapsedMillis) {
+            events.add("sent " + itemsSent);
+        }
+
+        @Override
+        public void endSubmissionProcess(boolean success) {
+            events.add("end " + success);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.commcare.utils;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the image memory cache, coalescing of image requests and which
+ * bitmaps can be reused for decoding
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class CachingAsyncImageLoaderTest {
+
+    @Before
+    public void setup() {
+        ImageCacheStats.reset();
+    }
+
+    @Test
+    public void testMemoryCacheEvictsByByteSize() {
+        Bitmap first = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+        Bitmap large = Bitmap.createBitmap(20, 40, Bitmap.Config.ARGB_8888);
+        int imageBytes = first.getByteCount();
+        assertTrue(imageBytes > 0);
+
+        // Room for two small images, or one that is twice as big
+        LruCache<String, Bitmap> cache = CachingAsyncImageLoader.createMemoryCache(imageBytes * 2);
+        cache.put("first", first);
+        cache.put("second", second);
+        assertEquals(imageBytes * 2, cache.size());
+        assertNotNull(cache.get("first"));
+
+        // Evicts both of the others, the least recently used first
+        cache.put("large", large);
+        assertNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("large"));
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    public void testRequestsForTheSameImageAreCoalesced() {
+        Robolectric.getBackgroundThreadScheduler().pause();
+        CachingAsyncImageLoader loader = new CachingAsyncImageLoader(RuntimeEnvironment.application);
+        ImageView firstView = new ImageView(RuntimeEnvironment.application);
+        ImageView secondView = new ImageView(RuntimeEnvironment.application);
+        ImageView otherSizeView = new ImageView(RuntimeEnvironment.application);
+
+        loader.display("jr://file/coalesced.png", firstView, 0, 50, 50);
+        loader.display("jr://file/coalesced.png", secondView, 0, 50, 50);
+        loader.display("jr://file/coalesced.png", otherSizeView, 0, 100, 100);
+        assertEquals(1, ImageCacheStats.getCoalescedRequests());
+
+        // The shared load keeps going while another view still waits on it
+        loader.cancel(firstView);
+        assertEquals(0, ImageCacheStats.getCancelledRequests());
+        loader.cancel(otherSizeView);
+        assertEquals(1, ImageCacheStats.getCancelledRequests());
+
+        Robolectric.flushBackgroundThreadScheduler();
+        Robolectric.flushForegroundThreadScheduler();
+        assertEquals(1, ImageCacheStats.getLoads());
+    }
+
+    @Test
+    public void testReuseEligibility() {
+        int fullSize = 100 * 100 * 4;
+        assertTrue(BitmapReusePool.canDecodeInto(fullSize, Bitmap.Config.ARGB_8888, 100, 100, 1));
+        assertFalse(BitmapReusePool.canDecodeInto(fullSize - 1, Bitmap.Config.ARGB_8888, 100, 100, 1));
+        // Smaller images fit into larger allocations
+        assertTrue(BitmapReusePool.canDecodeInto(fullSize, Bitmap.Config.ARGB_8888, 80, 60, 1));
+        // Fewer bytes per pixel need less room
+        assertTrue(BitmapReusePool.canDecodeInto(fullSize / 2, Bitmap.Config.RGB_565, 100, 100, 1));
+        assertFalse(BitmapReusePool.canDecodeInto(fullSize / 2, Bitmap.Config.ARGB_8888, 100, 100, 1));
+
+        // Sampling by 2 quarters the bytes needed, rounding odd sizes up
+        assertTrue(BitmapReusePool.canDecodeInto(50 * 50 * 4, Bitmap.Config.ARGB_8888, 100, 100, 2));
+        assertFalse(BitmapReusePool.canDecodeInto(50 * 50 * 4, Bitmap.Config.ARGB_8888, 101, 101, 2));
+        assertTrue(BitmapReusePool.canDecodeInto(51 * 51 * 4, Bitmap.Config.ARGB_8888, 101, 101, 2));
+
+        // Decoders round a sample size of 3 down to 2
+        assertFalse(BitmapReusePool.canDecodeInto(34 * 34 * 4, Bitmap.Config.ARGB_8888, 100, 100, 3));
+        assertTrue(BitmapReusePool.canDecodeInto(50 * 50 * 4, Bitmap.Config.ARGB_8888, 100, 100, 3));
+    }
+}
@@ -0,0 +1,83 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareApplication;
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.commcare.android.database.user.models.FormRecord;
+import org.commcare.android.util.TestAppInstaller;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests computing the text shown and searched for saved form records
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class FormRecordListingUtilsTest {
+    private static final String FORM_XMLNS =
+            "http://openrosa.org/formdesigner/886049B2-BCAA-41EB-85B6-0AD4F9469605";
+
+    private AndroidCommCarePlatform platform;
+
+    @Before
+    public void setup() {
+        TestAppInstaller.installAppAndLogin(
+                "jr://resource/commcare-apps/archive_form_tests/profile.ccpr", "test", "123");
+        platform = CommCareApplication.instance().getCommCarePlatform();
+    }
+
+    @Test
+    public void testFormNameComesFromSuiteEntry() {
+        assertEquals("archived-form-purge", FormRecordListingUtils.getFormName(platform, FORM_XMLNS));
+        assertNull(FormRecordListingUtils.getFormName(platform, "http://example.com/unknown"));
+        assertNull(FormRecordListingUtils.getFormName(platform, null));
+    }
+
+    @Test
+    public void testSearchTextIsLowerCased() {
+        FormRecord record = newRecord();
+        record.setRecordTitle("Jane DOE");
+        record.setFormName("Follow Up");
+        String searchText = FormRecordListingUtils.buildSearchText(RuntimeEnvironment.application, record);
+
+        String date = FormRecordListingUtils.getSearchableDate(RuntimeEnvironment.application,
+                record.lastModified());
+        assertEquals(date + " jane doe follow up", searchText);
+    }
+
+    @Test
+    public void testPopulateKeepsComputedTitle() {
+        FormRecord record = newRecord();
+        record.setRecordTitle("Stored Title");
+        FormRecordListingUtils.populateListingText(RuntimeEnvironment.application, record, null);
+
+        assertEquals("Stored Title", record.getRecordTitle());
+        assertEquals("archived-form-purge", record.getFormName());
+        assertTrue(record.getSearchText().endsWith(" stored title archived-form-purge"));
+    }
+
+    @Test
+    public void testPopulateUnsavedRecordWithoutSession() {
+        // No stored session to replay, so there's no title to compute
+        FormRecord record = newRecord();
+        FormRecordListingUtils.populateListingText(RuntimeEnvironment.application, record, null);
+
+        assertNull(record.getRecordTitle());
+        assertEquals("archived-form-purge", record.getFormName());
+        assertTrue(record.getSearchText().endsWith(" archived-form-purge"));
+    }
+
+    private static FormRecord newRecord() {
+        return new FormRecord(FormRecord.STATUS_INCOMPLETE, FORM_XMLNS, new byte[0], null,
+                new Date(), "app-id");
+    }
+}
@@ -0,0 +1,112 @@
+package org.commcare.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ * In-memory stand-in for a server accepting resumable attachment uploads.
+ * Verifies part checksums like the real server would, and can be told to
+ * drop the connection after a number of parts to simulate a flaky network.
+ */
+public class LocalPartServer implements ResumableAttachmentUploader.PartReceiver {
+    private final Map<String, TreeMap<Integer, byte[]>> uploads = new HashMap<>();
+    private int partsUntilFailure = -1;
+    private boolean corruptNextPart;
+    private long bytesReceived;
+    private int partsReceived;
+
+    /**
+     * Accept this many more parts, then fail every part after that
+     */
+    public synchronized void failAfter(int parts) {
+        partsUntilFailure = parts;
+    }
+
+    public synchronized void stopFailing() {
+        partsUntilFailure = -1;
+    }
+
+    /**
+     * Alter the bytes of the next part received, as if they were damaged in
+     * transit
+     */
+    public synchronized void corruptNextPart() {
+        corruptNextPart = true;
+    }
+
+    @Override
+    public int sendPart(String uploadId, String fileName, int partIndex, long offset,
+                        long totalLength, String checksum, RequestBody part) throws IOException {
+        Buffer received = new Buffer();
+        part.writeTo(received);
+        byte[] bytes = received.readByteArray();
+
+        synchronized (this) {
+            if (partsUntilFailure == 0) {
+                throw new IOException("Connection reset");
+            } else if (partsUntilFailure > 0) {
+                partsUntilFailure--;
+            }
+            bytesReceived += bytes.length;
+            partsReceived++;
+            if (corruptNextPart) {
+                corruptNextPart = false;
+                bytes[0] ^= 0xFF;
+            }
+
+            if (!checksum.equals(md5(bytes))) {
+                return 409;
+            }
+            TreeMap<Integer, byte[]> parts = uploads.get(uploadId);
+            if (parts == null) {
+                parts = new TreeMap<>();
+                uploads.put(uploadId, parts);
+            }
+            parts.put(partIndex, bytes);
+            return 201;
+        }
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized int getPartsReceived() {
+        return partsReceived;
+    }
+
+    public synchronized int getUploadCount() {
+        return uploads.size();
+    }
+
+    /**
+     * @return The bytes of the upload, assembled from its parts in order
+     */
+    public synchronized byte[] assemble(String uploadId) throws IOException {
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (byte[] part : uploads.get(uploadId).values()) {
+            assembled.write(part);
+        }
+        return assembled.toByteArray();
+    }
+
+    public synchronized String getOnlyUploadId() {
+        return uploads.keySet().iterator().next();
+    }
+
+    private static String md5(byte[] bytes) {
+        try {
+            return ResumableAttachmentUploader.toHex(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
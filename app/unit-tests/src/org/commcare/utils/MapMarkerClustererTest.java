@@ -0,0 +1,75 @@
+package org.commcare.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MapMarkerClustererTest {
+
+    /**
+     * Two dense groups of points far apart from each other
+     */
+    private static MapMarkerClusterer twoGroups() {
+        double[] latitudes = new double[600];
+        double[] longitudes = new double[600];
+        for (int i = 0; i < 300; i++) {
+            latitudes[i] = 10 + (i % 20) * 0.0001;
+            longitudes[i] = 20 + (i / 20) * 0.0001;
+            latitudes[300 + i] = -10 + (i % 20) * 0.0001;
+            longitudes[300 + i] = -20 + (i / 20) * 0.0001;
+        }
+        return new MapMarkerClusterer(latitudes, longitudes);
+    }
+
+    @Test
+    public void zoomedOutGroupsCollapse() {
+        List<MapMarkerClusterer.Cluster> clusters = twoGroups().cluster(-80, -180, 80, 180, 3);
+        assertEquals(2, clusters.size());
+        int total = 0;
+        for (MapMarkerClusterer.Cluster cluster : clusters) {
+            total += cluster.getSize();
+        }
+        assertEquals(600, total);
+    }
+
+    @Test
+    public void onlyVisiblePointsAreClustered() {
+        List<MapMarkerClusterer.Cluster> clusters = twoGroups().cluster(0, 0, 80, 180, 3);
+        assertEquals(1, clusters.size());
+        assertEquals(300, clusters.get(0).getSize());
+        assertEquals(10.00095, clusters.get(0).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void fullyZoomedInShowsEveryPoint() {
+        List<MapMarkerClusterer.Cluster> clusters = twoGroups().cluster(9, 19, 11, 21, 20);
+        assertEquals(300, clusters.size());
+        for (MapMarkerClusterer.Cluster cluster : clusters) {
+            assertEquals(1, cluster.getSize());
+        }
+    }
+
+    @Test
+    public void smallSetsAreNeverClustered() {
+        MapMarkerClusterer clusterer = new MapMarkerClusterer(
+                new double[]{1.0, 1.0001, 1.0002}, new double[]{2.0, 2.0, 2.0});
+        assertEquals(3, clusterer.cluster(-80, -180, 80, 180, 1).size());
+    }
+
+    @Test
+    public void regionAcrossAntimeridian() {
+        double[] latitudes = new double[300];
+        double[] longitudes = new double[300];
+        for (int i = 0; i < 300; i++) {
+            latitudes[i] = 0;
+            longitudes[i] = i % 3 == 0 ? 179.5 : (i % 3 == 1 ? -179.5 : 0);
+        }
+        List<MapMarkerClusterer.Cluster> clusters =
+                new MapMarkerClusterer(latitudes, longitudes).cluster(-1, 179, 1, -179, 8);
+        assertEquals(2, clusters.size());
+        assertEquals(100, clusters.get(0).getSize());
+        assertEquals(100, clusters.get(1).getSize());
+    }
+}
@@ -0,0 +1,153 @@
+package org.commcare.utils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests resuming attachment uploads against a local stand-in server
+ */
+public class ResumableAttachmentUploaderTest {
+    private static final int PART_COUNT = 10;
+
+    @Rule
+    public TemporaryFolder instanceFolder = new TemporaryFolder();
+
+    private LocalPartServer server;
+    private File attachment;
+    private byte[] attachmentBytes;
+
+    @Before
+    public void setup() throws IOException {
+        server = new LocalPartServer();
+
+        // end with a partial part
+        attachmentBytes = new byte[ResumableAttachmentUploader.PART_SIZE * (PART_COUNT - 1) + 1234];
+        new Random(42).nextBytes(attachmentBytes);
+        attachment = instanceFolder.newFile("video.mp4");
+        FileOutputStream out = new FileOutputStream(attachment);
+        try {
+            out.write(attachmentBytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testUploadInParts() throws IOException {
+        assertEquals(PART_COUNT, ResumableAttachmentUploader.getPartCount(attachment.length()));
+
+        FormUploadResult result = newUploader().upload(attachment);
+
+        assertEquals(FormUploadResult.FULL_SUCCESS, result);
+        assertEquals(PART_COUNT, server.getPartsReceived());
+        assertArrayEquals(attachmentBytes, server.assemble(server.getOnlyUploadId()));
+    }
+
+    @Test
+    public void testResumeSendsOnlyMissingParts() throws IOException {
+        server.failAfter(4);
+        assertEquals(FormUploadResult.TRANSPORT_FAILURE, newUploader().upload(attachment));
+        long bytesBeforeFailure = server.getBytesReceived();
+        assertTrue(bytesBeforeFailure < attachment.length());
+
+        // a new uploader, as after an app restart, picks up the saved progress
+        server.stopFailing();
+        ResumableAttachmentUploader resumed = newUploader();
+        assertEquals(4, resumed.getAcknowledgedParts(attachment).cardinality());
+        assertEquals(FormUploadResult.FULL_SUCCESS, resumed.upload(attachment));
+
+        assertEquals(attachment.length(), server.getBytesReceived());
+        assertEquals(1, server.getUploadCount());
+        assertArrayEquals(attachmentBytes, server.assemble(server.getOnlyUploadId()));
+    }
+
+    @Test
+    public void testProgressReportedPerPart() {
+        final List<Long> reported = Collections.synchronizedList(new ArrayList<Long>());
+        server.failAfter(4);
+        new ResumableAttachmentUploader(instanceFolder.getRoot(), server, reported::add).upload(attachment);
+        assertEquals(4, reported.size());
+        assertEquals(4L * ResumableAttachmentUploader.PART_SIZE, sum(reported));
+
+        // a resumed upload first reports the parts acknowledged before
+        reported.clear();
+        server.stopFailing();
+        new ResumableAttachmentUploader(instanceFolder.getRoot(), server, reported::add).upload(attachment);
+        assertEquals(PART_COUNT - 4 + 1, reported.size());
+        assertEquals(4L * ResumableAttachmentUploader.PART_SIZE, (long)reported.get(0));
+        assertEquals(attachment.length(), sum(reported));
+    }
+
+    private static long sum(List<Long> values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    @Test
+    public void testCorruptedPartIsResent() throws IOException {
+        server.corruptNextPart();
+        assertEquals(FormUploadResult.FAILURE, newUploader().upload(attachment));
+        assertEquals(PART_COUNT - 1, newUploader().getAcknowledgedParts(attachment).cardinality());
+
+        assertEquals(FormUploadResult.FULL_SUCCESS, newUploader().upload(attachment));
+        assertEquals(PART_COUNT + 1, server.getPartsReceived());
+        assertArrayEquals(attachmentBytes, server.assemble(server.getOnlyUploadId()));
+    }
+
+    @Test
+    public void testChangedAttachmentStartsOver() throws IOException {
+        server.failAfter(3);
+        newUploader().upload(attachment);
+        server.stopFailing();
+
+        FileOutputStream out = new FileOutputStream(attachment, true);
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+        attachment.setLastModified(attachment.lastModified() + 1000);
+
+        ResumableAttachmentUploader uploader = newUploader();
+        assertEquals(FormUploadResult.FULL_SUCCESS, uploader.upload(attachment));
+        assertEquals(2, server.getUploadCount());
+    }
+
+    @Test
+    public void testClearStateForgetsProgress() {
+        ResumableAttachmentUploader uploader = newUploader();
+        assertEquals(FormUploadResult.FULL_SUCCESS, uploader.upload(attachment));
+
+        uploader.clearState();
+        for (File file : instanceFolder.getRoot().listFiles()) {
+            assertFalse(ResumableAttachmentUploader.isStateFile(file));
+        }
+        assertEquals(0, newUploader().getAcknowledgedParts(attachment).cardinality());
+
+        // starting over uses a new upload id
+        newUploader().upload(attachment);
+        assertEquals(2, server.getUploadCount());
+    }
+
+    private ResumableAttachmentUploader newUploader() {
+        return new ResumableAttachmentUploader(instanceFolder.getRoot(), server);
+    }
+}
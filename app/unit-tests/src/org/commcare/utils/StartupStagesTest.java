@@ -0,0 +1,93 @@
+package org.commcare.utils;
+
+import org.commcare.CommCareTestApplication;
+import org.commcare.android.CommCareTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests ordering, failures and timings of startup stages
+ */
+@Config(application = CommCareTestApplication.class)
+@RunWith(CommCareTestRunner.class)
+public class StartupStagesTest {
+
+    @Test
+    public void testBackgroundStagesRunAfterDependencies() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        StartupStages stages = new StartupStages(true);
+        stages.runInBackground("a", () -> {
+            sleep(50);
+            order.add("a");
+        });
+        stages.runInBackground("b", () -> order.add("b"), "a");
+        stages.run("c", () -> order.add("c"), "b");
+        stages.finish();
+
+        assertEquals(Arrays.asList("a", "b", "c"), order);
+        assertTrue(stages.getTimings().keySet().containsAll(Arrays.asList("a", "b", "c", "total")));
+    }
+
+    @Test
+    public void testBackgroundFailureIsRethrown() {
+        StartupStages stages = new StartupStages(true);
+        stages.runInBackground("broken", () -> {
+            throw new IllegalStateException("broken stage");
+        });
+        try {
+            stages.await("broken");
+            fail("Awaiting a failed stage should throw its exception");
+        } catch (IllegalStateException e) {
+            assertEquals("broken stage", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWorkIsDeferredUntilFinished() throws InterruptedException {
+        StartupStages stages = new StartupStages(true);
+        CountDownLatch deferredRan = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        stages.defer("cleanup", () -> {
+            order.add("cleanup");
+            deferredRan.countDown();
+        });
+        stages.run("first-screen", () -> order.add("first-screen"));
+        assertEquals(Collections.singletonList("first-screen"), order);
+
+        stages.finish();
+        assertTrue(deferredRan.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first-screen", "cleanup"), order);
+    }
+
+    @Test
+    public void testSequentialStagesRunInOrder() {
+        List<String> order = new ArrayList<>();
+        StartupStages stages = new StartupStages(false);
+        stages.defer("later", () -> order.add("later"));
+        stages.runInBackground("a", () -> order.add("a"));
+        stages.run("b", () -> order.add("b"), "a");
+        stages.finish();
+        stages.defer("after", () -> order.add("after"));
+        assertEquals(Arrays.asList("a", "b", "later", "after"), order);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}